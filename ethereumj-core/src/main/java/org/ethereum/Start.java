@@ -20,6 +20,7 @@ package org.ethereum;
 import org.apache.commons.lang3.StringUtils;
 import org.ethereum.cli.CLIInterface;
 import org.ethereum.config.SystemProperties;
+import org.ethereum.db.DbStoresMigration;
 import org.ethereum.facade.Ethereum;
 import org.ethereum.facade.EthereumFactory;
 import org.ethereum.mine.Ethash;
@@ -39,6 +40,7 @@ public class Start {
         final SystemProperties config = SystemProperties.getDefault();
         final boolean actionBlocksLoader = !config.blocksLoader().equals("");
         final boolean actionGenerateDag = !StringUtils.isEmpty(System.getProperty("ethash.blockNumber"));
+        final boolean actionMigrateDb = Boolean.parseBoolean(System.getProperty("database.migrate"));
 
         if (actionBlocksLoader || actionGenerateDag) {
             config.setSyncEnabled(false);
@@ -49,6 +51,10 @@ public class Start {
             new Ethash(config, Long.parseLong(System.getProperty("ethash.blockNumber"))).getFullDataset();
             // DAG file has been created, lets exit
             System.exit(0);
+        } else if (actionMigrateDb) {
+            // migrating the database offline (without starting the node)
+            boolean migrated = new DbStoresMigration(config).migrate();
+            System.exit(migrated ? 0 : 1);
         } else {
             Ethereum ethereum = EthereumFactory.createEthereum();
 
@@ -18,7 +18,6 @@
 package org.ethereum.config;
 
 import org.ethereum.core.*;
-import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.*;
 import org.ethereum.datasource.inmem.HashMapDB;
 import org.ethereum.datasource.leveldb.LevelDbDataSource;
@@ -26,8 +25,6 @@ import org.ethereum.db.*;
 import org.ethereum.listener.EthereumListener;
 import org.ethereum.sync.FastSyncManager;
 import org.ethereum.validator.*;
-import org.ethereum.vm.DataWord;
-import org.ethereum.vm.program.ProgramPrecompile;
 import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,10 +32,7 @@ import org.springframework.beans.factory.config.BeanPostProcessor;
 import org.springframework.context.annotation.*;
 import org.springframework.transaction.annotation.EnableTransactionManagement;
 
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Set;
+import java.util.*;
 
 import static java.util.Arrays.asList;
 
@@ -49,18 +43,33 @@ import static java.util.Arrays.asList;
         excludeFilters = @ComponentScan.Filter(NoAutoscan.class))
 public class CommonConfig {
     private static final Logger logger = LoggerFactory.getLogger("general");
+
+    /**
+     * The logical stores filled by the sync, each one is kept in a separate DB
+     * The DBs are reset when the fast sync was interrupted
+     */
+    public static final List<String> BLOCKCHAIN_STORES = Collections.unmodifiableList(asList(
+            "state", "journal", "block", "index", "transactions", "receipts", "bloomIndex", "flatstate", "fastsyncNodes"));
+
+    /**
+     * The order the store DBs are flushed in (the unlisted stores go before the blocks data)
+     * Each store is written to its DB atomically but a crash can interrupt the flush between
+     * the DBs. The state goes first and the blocks index goes last: after a crash the best
+     * block in the index always has its state, transactions, receipts and bloom bits in the DB
+     * (along with the data of the blocks not yet indexed which are overwritten on the reimport)
+     */
+    static final List<String> DB_FLUSH_ORDER = Collections.unmodifiableList(asList(
+            "state", "journal", "flatstate", "fastsyncNodes", "transactions", "receipts", "bloomIndex", "block", "index"));
+
     private Set<DbSource> dbSources = new HashSet<>();
+    private final Map<String, DbSource<byte[]>> storeDbs = new HashMap<>();
+    private final Map<String, AbstractCachedSource<byte[], byte[]>> storeDbCaches = new HashMap<>();
 
     private static CommonConfig defaultInstance;
 
     public static CommonConfig getDefault() {
         if (defaultInstance == null && !SystemProperties.isUseOnlySpringConfig()) {
-            defaultInstance = new CommonConfig() {
-                @Override
-                public Source<byte[], ProgramPrecompile> precompileSource() {
-                    return null;
-                }
-            };
+            defaultInstance = new CommonConfig();
         }
         return defaultInstance;
     }
@@ -83,12 +92,18 @@ public class CommonConfig {
 
     @Bean
     public Repository defaultRepository() {
-        return new RepositoryRoot(stateSource(), null);
+        return new RepositoryRoot(stateSource(), null, systemProperties().flatStateEnabled() ? flatState() : null);
     }
 
     @Bean @Scope("prototype")
     public Repository repository(byte[] stateRoot) {
-        return new RepositoryRoot(stateSource(), stateRoot);
+        return new RepositoryRoot(stateSource(), stateRoot, systemProperties().flatStateEnabled() ? flatState() : null);
+    }
+
+    @Bean
+    public FlatState flatState() {
+        return new FlatState(cachedDbSource("flatstate"), systemProperties().flatStateDiffLayers())
+                .withFlushManager(dbFlushManager());
     }
 
 
@@ -119,18 +134,41 @@ public class CommonConfig {
         return writeCache;
     }
 
+    /**
+     * Returns the logical store backed by its own physical DB named after the store,
+     * so each store has separate LevelDB options profile (see database.leveldb)
+     * The store writes are buffered until the {@link DbFlushManager} flush,
+     * the stores are flushed in the {@link #DB_FLUSH_ORDER}
+     */
     @Bean
     @Scope("prototype")
     public Source<byte[], byte[]> blockchainSource(String name) {
-        return new XorDataSource<>(blockchainDbCache(), HashUtil.sha3(name.getBytes()));
+        synchronized (storeDbs) {
+            AbstractCachedSource<byte[], byte[]> ret = storeDbCaches.get(name);
+            if (ret == null) {
+                WriteCache.BytesKey<byte[]> writeCache = new WriteCache.BytesKey<>(
+                        new BatchSourceWriter<>(storeDB(name)), WriteCache.CacheType.SIMPLE);
+                writeCache.setFlushSource(true);
+                dbFlushManager().addDbCache(writeCache, dbFlushOrder(name));
+                storeDbCaches.put(name, ret = writeCache);
+            }
+            return ret;
+        }
     }
 
-    @Bean
-    public AbstractCachedSource<byte[], byte[]> blockchainDbCache() {
-        WriteCache.BytesKey<byte[]> ret = new WriteCache.BytesKey<>(
-                new BatchSourceWriter<>(blockchainDB()), WriteCache.CacheType.SIMPLE);
-        ret.setFlushSource(true);
-        return ret;
+    static int dbFlushOrder(String name) {
+        int ret = DB_FLUSH_ORDER.indexOf(name);
+        return ret >= 0 ? ret : DB_FLUSH_ORDER.indexOf("fastsyncNodes");
+    }
+
+    private DbSource<byte[]> storeDB(String name) {
+        synchronized (storeDbs) {
+            DbSource<byte[]> ret = storeDbs.get(name);
+            if (ret == null) {
+                storeDbs.put(name, ret = keyValueDataSource(name));
+            }
+            return ret;
+        }
     }
 
     @Bean
@@ -167,6 +205,12 @@ public class CommonConfig {
 
         EthereumListener.SyncState syncStage = EthereumListener.SyncState.values()[fastsyncStageBytes[0]];
 
+        if (systemProperties().isFastSyncEnabled() && syncStage == EthereumListener.SyncState.UNSECURE &&
+                blockchainDB().get(FastSyncManager.FASTSYNC_DB_KEY_STATE_PIVOT) != null) {
+            // the state trie download was interrupted and is resumed from the saved checkpoint
+            return;
+        }
+
         if (!systemProperties().isFastSyncEnabled() || syncStage == EthereumListener.SyncState.UNSECURE) {
             // we need to cleanup state/blocks/tranasaction DBs when previous fast sync was not complete:
             // - if we now want to do regular sync
@@ -174,6 +218,10 @@ public class CommonConfig {
 
             logger.warn("Last fastsync was interrupted. Removing inconsistent DBs...");
 
+            for (String store : BLOCKCHAIN_STORES) {
+                resetDataSource(storeDB(store));
+            }
+            // the fastsync stage is dropped the last
             DbSource bcSource = blockchainDB();
             resetDataSource(bcSource);
         }
@@ -200,30 +248,6 @@ public class CommonConfig {
         return dataSourceArray;
     }
 
-    @Bean
-    public Source<byte[], ProgramPrecompile> precompileSource() {
-
-        StateSource source = stateSource();
-        return new SourceCodec<byte[], ProgramPrecompile, byte[], byte[]>(source,
-                new Serializer<byte[], byte[]>() {
-                    public byte[] serialize(byte[] object) {
-                        DataWord ret = new DataWord(object);
-                        ret.add(new DataWord(1));
-                        return ret.getLast20Bytes();
-                    }
-                    public byte[] deserialize(byte[] stream) {
-                        throw new RuntimeException("Shouldn't be called");
-                    }
-                }, new Serializer<ProgramPrecompile, byte[]>() {
-                    public byte[] serialize(ProgramPrecompile object) {
-                        return object == null ? null : object.serialize();
-                    }
-                    public ProgramPrecompile deserialize(byte[] stream) {
-                        return stream == null ? null : ProgramPrecompile.deserialize(stream);
-                    }
-        });
-    }
-
     @Bean
     public DbSource<byte[]> blockchainDB() {
         return keyValueDataSource("blockchain");
@@ -231,7 +255,7 @@ public class CommonConfig {
 
     @Bean
     public DbFlushManager dbFlushManager() {
-        return new DbFlushManager(systemProperties(), dbSources, blockchainDbCache());
+        return new DbFlushManager(systemProperties(), dbSources);
     }
 
     @Bean
@@ -19,6 +19,7 @@ package org.ethereum.config;
 
 import org.ethereum.datasource.*;
 import org.ethereum.db.BlockStore;
+import org.ethereum.db.BloomIndex;
 import org.ethereum.db.IndexedBlockStore;
 import org.ethereum.db.PruneManager;
 import org.ethereum.db.TransactionStore;
@@ -72,7 +73,13 @@ public class DefaultConfig {
     @Bean
     public TransactionStore transactionStore() {
         commonConfig.fastSyncCleanUp();
-        return new TransactionStore(commonConfig.cachedDbSource("transactions"));
+        return new TransactionStore(commonConfig.cachedDbSource("transactions"), commonConfig.cachedDbSource("receipts"));
+    }
+
+    @Bean
+    public BloomIndex bloomIndex() {
+        commonConfig.fastSyncCleanUp();
+        return new BloomIndex(commonConfig.cachedDbSource("bloomIndex"));
     }
 
     @Bean
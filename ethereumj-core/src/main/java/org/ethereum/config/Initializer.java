@@ -17,6 +17,7 @@
  */
 package org.ethereum.config;
 
+import org.ethereum.db.DbStoresMigration;
 import org.ethereum.net.eth.EthVersion;
 import org.ethereum.net.shh.ShhHandler;
 import org.ethereum.net.swarm.bzz.BzzHandler;
@@ -130,9 +131,11 @@ class Initializer implements BeanPostProcessor {
                 } else {
                     logger.warn("Detected incompatible database version. Detected:{}, required:{}", actualVersion, expectedVersion);
                     if (behavior == Behavior.EXIT) {
+                        String migrate = actualVersion.equals(DbStoresMigration.LEGACY_VERSION) ?
+                                "migrate it running with -Ddatabase.migrate=true, " : "";
                         Utils.showErrorAndExit(
                                 "Incompatible database version " + actualVersion,
-                                "Please remove database directory manually or set `database.incompatibleDatabaseBehavior` to `RESET`",
+                                "Please " + migrate + "remove database directory manually or set `database.incompatibleDatabaseBehavior` to `RESET`",
                                 "Database directory location is " + config.databaseDir()
                         );
                     } else if (behavior == Behavior.RESET) {
@@ -36,6 +36,8 @@ import org.ethereum.util.BuildInfo;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.validator.BlockCustomHashRule;
 import org.ethereum.validator.BlockHeaderValidator;
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.Options;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
@@ -419,6 +421,43 @@ public class SystemProperties {
         return config.getLong("database.resetBlock");
     }
 
+    /**
+     * Returns LevelDB options for the database. Options are taken from the
+     * database.leveldb.[dbName] profile falling back to database.leveldb.default
+     */
+    public Options levelDbOptions(String dbName) {
+        Config profile = config.getConfig("database.leveldb.default");
+        if (config.hasPath("database.leveldb." + dbName)) {
+            profile = config.getConfig("database.leveldb." + dbName).withFallback(profile);
+        }
+
+        Options options = new Options();
+        options.createIfMissing(true);
+        options.compressionType(profile.getBoolean("compression") ? CompressionType.SNAPPY : CompressionType.NONE);
+        options.blockSize(profile.getBytes("blockSize").intValue());
+        options.writeBufferSize(profile.getBytes("writeBufferSize").intValue());
+        options.cacheSize(profile.getBytes("cacheSize"));
+        options.maxOpenFiles(profile.getInt("maxOpenFiles"));
+        options.paranoidChecks(profile.getBoolean("paranoidChecks"));
+        options.verifyChecksums(profile.getBoolean("verifyChecksums"));
+        return options;
+    }
+
+    @ValidateMe
+    public Options levelDbDefaultOptions() {
+        return levelDbOptions("default");
+    }
+
+    @ValidateMe
+    public boolean flatStateEnabled() {
+        return config.getBoolean("database.flatState.enabled");
+    }
+
+    @ValidateMe
+    public int flatStateDiffLayers() {
+        return config.getInt("database.flatState.diffLayers");
+    }
+
     @ValidateMe
     public int databasePruneDepth() {
         return config.getBoolean("database.prune.enabled") ? config.getInt("database.prune.maxDepth") : -1;
@@ -550,6 +589,11 @@ public class SystemProperties {
         return config.getBoolean("play.vm");
     }
 
+    @ValidateMe
+    public int parallelExecutionThreads() {
+        return config.getInt("blockchain.parallelExecutionThreads");
+    }
+
     @ValidateMe
     public boolean blockChainOnly() {
         return config.getBoolean("blockchain.only");
@@ -567,6 +611,16 @@ public class SystemProperties {
         return config.getInt("sync.version");
     }
 
+    @ValidateMe
+    public int senderRecoveryThreads() {
+        return config.getInt("sync.senderRecoveryThreads");
+    }
+
+    @ValidateMe
+    public int headerValidationThreads() {
+        return config.getInt("sync.headerValidationThreads");
+    }
+
     @ValidateMe
     public boolean exitOnBlockConflict() {
         return config.getBoolean("sync.exitOnBlockConflict");
@@ -612,11 +666,24 @@ public class SystemProperties {
         return config.getBoolean("vm.structured.compressed");
     }
 
+    /**
+     * @return true if the trace should be streamed to the binary file instead of the JSON one
+     */
+    @ValidateMe
+    public boolean vmTraceBinary() {
+        return "binary".equals(config.getString("vm.structured.format"));
+    }
+
     @ValidateMe
     public int vmTraceInitStorageLimit() {
         return config.getInt("vm.structured.initStorageLimit");
     }
 
+    @ValidateMe
+    public boolean vmBlockGasMetering() {
+        return config.getBoolean("vm.blockGasMetering");
+    }
+
     @ValidateMe
     public int cacheFlushBlocks() {
         return config.getInt("cache.flush.blocks");
@@ -776,6 +843,11 @@ public class SystemProperties {
         return isSyncEnabled() && config.getBoolean("sync.fast.enabled");
     }
 
+    @ValidateMe
+    public boolean fastSyncEthashValidation() {
+        return config.getBoolean("sync.fast.ethashValidation");
+    }
+
     @ValidateMe
     public byte[] getFastSyncPivotBlockHash() {
         if (!config.hasPath("sync.fast.pivotBlockHash")) return null;
@@ -797,6 +869,51 @@ public class SystemProperties {
         return config.getInt("transaction.outdated.threshold");
     }
 
+    @ValidateMe
+    public int txPendingPoolMaxSize() {
+        return config.getInt("transaction.pending.maxSize");
+    }
+
+    @ValidateMe
+    public int txPendingMaxNonceGap() {
+        return config.getInt("transaction.pending.maxNonceGap");
+    }
+
+    @ValidateMe
+    public int callThreads() {
+        return config.getInt("transaction.call.threads");
+    }
+
+    @ValidateMe
+    public long callGasCap() {
+        return config.getLong("transaction.call.gasCap");
+    }
+
+    @ValidateMe
+    public long callTimeoutMsec() {
+        return config.getLong("transaction.call.timeoutMsec");
+    }
+
+    @ValidateMe
+    public int callSnapshots() {
+        return config.getInt("transaction.call.snapshots");
+    }
+
+    @ValidateMe
+    public int eventsQueueSize() {
+        return config.getInt("events.queueSize");
+    }
+
+    @ValidateMe
+    public String eventsOverflowPolicy() {
+        return config.getString("events.overflowPolicy");
+    }
+
+    @ValidateMe
+    public int eventsListenerLanes() {
+        return config.getInt("events.listenerLanes");
+    }
+
     public void setGenesisInfo(String genesisInfo){
         this.genesisInfo = genesisInfo;
     }
@@ -902,4 +1019,21 @@ public class SystemProperties {
         return config.hasPath("blocks.loader") ?
                 config.getString("blocks.loader") : DEFAULT_BLOCKS_LOADER;
     }
+
+    /**
+     * The blocks dump format: 'rlp' or 'hex' (the default)
+     */
+    public String blocksFormat() {
+        return config.hasPath("blocks.format") ? config.getString("blocks.format") : null;
+    }
+
+    @ValidateMe
+    public int blocksLoaderThreads() {
+        return config.getInt("blocks.loaderThreads");
+    }
+
+    @ValidateMe
+    public int blocksLoaderWriteCacheSize() {
+        return config.getInt("blocks.loaderWriteCacheSize");
+    }
 }
@@ -67,7 +67,7 @@ public class Block {
     }
 
     public Block(byte[] rawData) {
-        logger.debug("new from [" + Hex.toHexString(rawData) + "]");
+        if (logger.isDebugEnabled()) logger.debug("new from [" + Hex.toHexString(rawData) + "]");
         this.rlpEncoded = rawData;
     }
 
@@ -137,23 +137,19 @@ public class Block {
     private synchronized void parseRLP() {
         if (parsed) return;
 
-        RLPList params = RLP.decode2(rlpEncoded);
-        RLPList block = (RLPList) params.get(0);
+        RLP.LList block = RLP.decodeLazyList(rlpEncoded);
 
         // Parse Header
-        RLPList header = (RLPList) block.get(0);
-        this.header = new BlockHeader(header);
+        this.header = new BlockHeader(block.getList(0));
 
         // Parse Transactions
-        RLPList txTransactions = (RLPList) block.get(1);
+        RLP.LList txTransactions = block.getList(1);
         this.parseTxs(this.header.getTxTrieRoot(), txTransactions, false);
 
         // Parse Uncles
-        RLPList uncleBlocks = (RLPList) block.get(2);
-        for (RLPElement rawUncle : uncleBlocks) {
-
-            RLPList uncleHeader = (RLPList) rawUncle;
-            BlockHeader blockData = new BlockHeader(uncleHeader);
+        RLP.LList uncleBlocks = block.getList(2);
+        for (int i = 0; i < uncleBlocks.size(); i++) {
+            BlockHeader blockData = new BlockHeader(uncleBlocks.getList(i));
             this.uncleList.add(blockData);
         }
         this.parsed = true;
@@ -349,21 +345,21 @@ public class Block {
         return toStringBuff.toString();
     }
 
-    private byte[] parseTxs(RLPList txTransactions, boolean validate) {
+    private byte[] parseTxs(RLP.LList txTransactions, boolean validate) {
 
         Trie<byte[]> txsState = new TrieImpl();
         for (int i = 0; i < txTransactions.size(); i++) {
-            RLPElement transactionRaw = txTransactions.get(i);
-            Transaction tx = new Transaction(transactionRaw.getRLPData());
+            byte[] transactionRaw = txTransactions.getEncoded(i);
+            Transaction tx = new Transaction(transactionRaw);
             if (validate) tx.verify();
             this.transactionsList.add(tx);
-            txsState.put(RLP.encodeInt(i), transactionRaw.getRLPData());
+            txsState.put(RLP.encodeInt(i), transactionRaw);
         }
         return txsState.getRootHash();
     }
 
 
-    private boolean parseTxs(byte[] expectedRoot, RLPList txTransactions, boolean validate) {
+    private boolean parseTxs(byte[] expectedRoot, RLP.LList txTransactions, boolean validate) {
 
         byte[] rootHash = parseTxs(txTransactions, validate);
         String calculatedRoot = Hex.toHexString(rootHash);
@@ -493,24 +489,22 @@ public class Block {
             block.header = header;
             block.parsed = true;
 
-            RLPList items = (RLPList) RLP.decode2(body).get(0);
+            RLP.LList items = RLP.decodeLazyList(body);
 
-            RLPList transactions = (RLPList) items.get(0);
-            RLPList uncles = (RLPList) items.get(1);
+            RLP.LList transactions = items.getList(0);
+            RLP.LList uncles = items.getList(1);
 
             if (!block.parseTxs(header.getTxTrieRoot(), transactions, false)) {
                 return null;
             }
 
-            byte[] unclesHash = HashUtil.sha3(uncles.getRLPData());
+            byte[] unclesHash = HashUtil.sha3(uncles.getEncoded());
             if (!java.util.Arrays.equals(header.getUnclesHash(), unclesHash)) {
                 return null;
             }
 
-            for (RLPElement rawUncle : uncles) {
-
-                RLPList uncleHeader = (RLPList) rawUncle;
-                BlockHeader blockData = new BlockHeader(uncleHeader);
+            for (int i = 0; i < uncles.size(); i++) {
+                BlockHeader blockData = new BlockHeader(uncles.getList(i));
                 block.uncleList.add(blockData);
             }
 
@@ -95,41 +95,39 @@ public class BlockHeader {
     private byte[] hashCache;
 
     public BlockHeader(byte[] encoded) {
-        this((RLPList) RLP.decode2(encoded).get(0));
+        this(RLP.decodeLazyList(encoded));
     }
 
     public BlockHeader(RLPList rlpHeader) {
+        this(RLP.decodeLazyList(rlpHeader.getRLPData()));
+    }
+
+    public BlockHeader(RLP.LList rlpHeader) {
 
-        this.parentHash = rlpHeader.get(0).getRLPData();
-        this.unclesHash = rlpHeader.get(1).getRLPData();
-        this.coinbase = rlpHeader.get(2).getRLPData();
-        this.stateRoot = rlpHeader.get(3).getRLPData();
+        this.parentHash = rlpHeader.getBytesOrNull(0);
+        this.unclesHash = rlpHeader.getBytesOrNull(1);
+        this.coinbase = rlpHeader.getBytesOrNull(2);
+        this.stateRoot = rlpHeader.getBytesOrNull(3);
 
-        this.txTrieRoot = rlpHeader.get(4).getRLPData();
+        this.txTrieRoot = rlpHeader.getBytesOrNull(4);
         if (this.txTrieRoot == null)
             this.txTrieRoot = EMPTY_TRIE_HASH;
 
-        this.receiptTrieRoot = rlpHeader.get(5).getRLPData();
+        this.receiptTrieRoot = rlpHeader.getBytesOrNull(5);
         if (this.receiptTrieRoot == null)
             this.receiptTrieRoot = EMPTY_TRIE_HASH;
 
-        this.logsBloom = rlpHeader.get(6).getRLPData();
-        this.difficulty = rlpHeader.get(7).getRLPData();
-
-        byte[] nrBytes = rlpHeader.get(8).getRLPData();
-        byte[] glBytes = rlpHeader.get(9).getRLPData();
-        byte[] guBytes = rlpHeader.get(10).getRLPData();
-        byte[] tsBytes = rlpHeader.get(11).getRLPData();
-
-        this.number = nrBytes == null ? 0 : (new BigInteger(1, nrBytes)).longValue();
+        this.logsBloom = rlpHeader.getBytesOrNull(6);
+        this.difficulty = rlpHeader.getBytesOrNull(7);
 
-        this.gasLimit = glBytes;
-        this.gasUsed = guBytes == null ? 0 : (new BigInteger(1, guBytes)).longValue();
-        this.timestamp = tsBytes == null ? 0 : (new BigInteger(1, tsBytes)).longValue();
+        this.number = rlpHeader.getLong(8);
+        this.gasLimit = rlpHeader.getBytesOrNull(9);
+        this.gasUsed = rlpHeader.getLong(10);
+        this.timestamp = rlpHeader.getLong(11);
 
-        this.extraData = rlpHeader.get(12).getRLPData();
-        this.mixHash = rlpHeader.get(13).getRLPData();
-        this.nonce = rlpHeader.get(14).getRLPData();
+        this.extraData = rlpHeader.getBytesOrNull(12);
+        this.mixHash = rlpHeader.getBytesOrNull(13);
+        this.nonce = rlpHeader.getBytesOrNull(14);
     }
 
     public BlockHeader(byte[] parentHash, byte[] unclesHash, byte[] coinbase,
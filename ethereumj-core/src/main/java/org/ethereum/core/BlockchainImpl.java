@@ -116,6 +116,9 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     @Autowired
     private TransactionStore transactionStore;
 
+    @Autowired(required = false)
+    private BloomIndex bloomIndex;
+
     private Block bestBlock;
 
     private BigInteger totalDifficulty = ZERO;
@@ -173,6 +176,8 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     private Stack<State> stateStack = new Stack<>();
 
+    private ParallelBlockExecutor parallelExecutor;
+
     /** Tests only **/
     public BlockchainImpl() {
     }
@@ -201,6 +206,11 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return this;
     }
 
+    public BlockchainImpl withBloomIndex(BloomIndex bloomIndex) {
+        this.bloomIndex = bloomIndex;
+        return this;
+    }
+
     public BlockchainImpl withAdminInfo(AdminInfo adminInfo) {
         this.adminInfo = adminInfo;
         return this;
@@ -248,30 +258,33 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     @Override
     public TransactionInfo getTransactionInfo(byte[] hash) {
 
-        List<TransactionInfo> infos = transactionStore.get(hash);
+        List<byte[]> blockHashes = transactionStore.getBlockHashes(hash);
 
-        if (infos == null || infos.isEmpty())
+        if (blockHashes.isEmpty())
             return null;
 
-        TransactionInfo txInfo = null;
-        if (infos.size() == 1) {
-            txInfo = infos.get(0);
+        byte[] blockHash = null;
+        if (blockHashes.size() == 1) {
+            blockHash = blockHashes.get(0);
         } else {
             // pick up the receipt from the block on the main chain
-            for (TransactionInfo info : infos) {
-                Block block = blockStore.getBlockByHash(info.blockHash);
-                Block mainBlock = blockStore.getChainBlockByNumber(block.getNumber());
-                if (FastByteComparisons.equal(info.blockHash, mainBlock.getHash())) {
-                    txInfo = info;
+            for (byte[] hashCandidate : blockHashes) {
+                Block block = blockStore.getBlockByHash(hashCandidate);
+                byte[] mainHash = blockStore.getBlockHashByNumber(block.getNumber());
+                if (FastByteComparisons.equal(hashCandidate, mainHash)) {
+                    blockHash = hashCandidate;
                     break;
                 }
             }
         }
-        if (txInfo == null) {
+        if (blockHash == null) {
             logger.warn("Can't find block from main chain for transaction " + Hex.toHexString(hash));
             return null;
         }
 
+        TransactionInfo txInfo = transactionStore.get(hash, blockHash);
+        if (txInfo == null) return null;
+
         Transaction tx = this.getBlockByHash(txInfo.getBlockHash()).getTransactionsList().get(txInfo.getIndex());
         txInfo.setTransaction(tx);
 
@@ -406,7 +419,18 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     }
 
 
-    public synchronized ImportResult tryToConnect(final Block block) {
+    public ImportResult tryToConnect(final Block block) {
+        // the block events are fired when the lock is released, the listeners
+        // may wait for it while the producer waits for the room in their lane
+        EventDispatchThread.deferEvents();
+        try {
+            return tryToConnectImpl(block);
+        } finally {
+            EventDispatchThread.fireDeferredEvents();
+        }
+    }
+
+    private synchronized ImportResult tryToConnectImpl(final Block block) {
 
         if (logger.isDebugEnabled())
             logger.debug("Try connect block hash: {}, number: {}",
@@ -868,42 +892,61 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         List<TransactionReceipt> receipts = new ArrayList<>();
         List<TransactionExecutionSummary> summaries = new ArrayList<>();
 
-        for (Transaction tx : block.getTransactionsList()) {
-            stateLogger.debug("apply block: [{}] tx: [{}] ", block.getNumber(), i);
+        ParallelBlockExecutor.Execution parallel = null;
+        if (getParallelExecutor() != null && block.getTransactionsList().size() > 1) {
+            parallel = getParallelExecutor().start(track, block, blockStore, programInvokeFactory, commonConfig, listener);
+        }
 
-            Repository txTrack = track.startTracking();
-            TransactionExecutor executor = new TransactionExecutor(tx, block.getCoinbase(),
-                    txTrack, blockStore, programInvokeFactory, block, listener, totalGasUsed)
-                    .withCommonConfig(commonConfig);
+        try {
+            for (Transaction tx : block.getTransactionsList()) {
+                stateLogger.debug("apply block: [{}] tx: [{}] ", block.getNumber(), i);
+
+                TransactionExecutor executor;
+                TransactionExecutionSummary summary;
+                if (parallel != null) {
+                    ParallelBlockExecutor.Result result = parallel.next(totalGasUsed);
+                    executor = result.executor;
+                    summary = result.summary;
+                } else {
+                    Repository txTrack = track.startTracking();
+                    executor = new TransactionExecutor(tx, block.getCoinbase(),
+                            txTrack, blockStore, programInvokeFactory, block, listener, totalGasUsed)
+                            .withCommonConfig(commonConfig);
 
-            executor.init();
-            executor.execute();
-            executor.go();
-            TransactionExecutionSummary summary = executor.finalization();
+                    executor.init();
+                    executor.execute();
+                    executor.go();
+                    summary = executor.finalization();
 
-            totalGasUsed += executor.getGasUsed();
+                    txTrack.commit();
+                }
+
+                totalGasUsed += executor.getGasUsed();
 
-            txTrack.commit();
-            final TransactionReceipt receipt = executor.getReceipt();
+                final TransactionReceipt receipt = executor.getReceipt();
 
-            receipt.setPostTxState(track.getRoot());
+                receipt.setPostTxState(track.getRoot());
 
-            stateLogger.info("block: [{}] executed tx: [{}] \n  state: [{}]", block.getNumber(), i,
-                    Hex.toHexString(track.getRoot()));
+                stateLogger.info("block: [{}] executed tx: [{}] \n  state: [{}]", block.getNumber(), i,
+                        Hex.toHexString(track.getRoot()));
 
-            stateLogger.info("[{}] ", receipt.toString());
+                stateLogger.info("[{}] ", receipt.toString());
 
-            if (stateLogger.isInfoEnabled())
-                stateLogger.info("tx[{}].receipt: [{}] ", i, Hex.toHexString(receipt.getEncoded()));
+                if (stateLogger.isInfoEnabled())
+                    stateLogger.info("tx[{}].receipt: [{}] ", i, Hex.toHexString(receipt.getEncoded()));
 
-            // TODO
-//            if (block.getNumber() >= config.traceStartBlock())
-//                repository.dumpState(block, totalGasUsed, i++, tx.getHash());
+                // TODO
+//                if (block.getNumber() >= config.traceStartBlock())
+//                    repository.dumpState(block, totalGasUsed, i++, tx.getHash());
 
-            receipts.add(receipt);
-            if (summary != null) {
-                summaries.add(summary);
+                receipts.add(receipt);
+                if (summary != null) {
+                    summaries.add(summary);
+                }
             }
+        } finally {
+            // nothing to cancel unless a transaction has failed
+            if (parallel != null) parallel.cancel();
         }
 
         Map<byte[], BigInteger> rewards = addReward(track, block, summaries);
@@ -924,6 +967,15 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return new BlockSummary(block, rewards, receipts, summaries);
     }
 
+    private synchronized ParallelBlockExecutor getParallelExecutor() {
+        // vm traces and dumps are produced while executing, so can't be speculative
+        if (parallelExecutor == null && config.parallelExecutionThreads() > 0 &&
+                !config.vmTrace() && config.dumpBlock() < 0) {
+            parallelExecutor = new ParallelBlockExecutor(config.parallelExecutionThreads());
+        }
+        return parallelExecutor;
+    }
+
     /**
      * Add reward to block- and every uncle coinbase
      * assuming the entire block is valid.
@@ -971,8 +1023,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         else
             blockStore.saveBlock(block, totalDifficulty, true);
 
-        for (int i = 0; i < receipts.size(); i++) {
-            transactionStore.put(new TransactionInfo(receipts.get(i), block.getHash(), i));
+        transactionStore.put(block.getHash(), receipts);
+
+        if (bloomIndex != null) {
+            bloomIndex.addBlock(block.getNumber(), block.getLogBloom());
         }
 
         if (pruneManager != null) {
@@ -1010,6 +1064,10 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
         return transactionStore;
     }
 
+    public BloomIndex getBloomIndex() {
+        return bloomIndex;
+    }
+
     @Override
     public void setBestBlock(Block block) {
         bestBlock = block;
@@ -1025,6 +1083,7 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
 
     @Override
     public synchronized void close() {
+        if (parallelExecutor != null) parallelExecutor.shutdown();
         blockStore.close();
     }
 
@@ -1293,4 +1352,8 @@ public class BlockchainImpl implements Blockchain, org.ethereum.facade.Blockchai
     public void setPruneManager(PruneManager pruneManager) {
         this.pruneManager = pruneManager;
     }
+
+    public synchronized void setParallelExecutor(ParallelBlockExecutor parallelExecutor) {
+        this.parallelExecutor = parallelExecutor;
+    }
 }
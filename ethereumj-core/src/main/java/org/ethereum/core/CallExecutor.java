@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.collections4.map.LRUMap;
+import org.ethereum.config.CommonConfig;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.manager.WorldManager;
+import org.ethereum.vm.VM;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.*;
+
+import static org.ethereum.util.ByteUtil.byteArrayToLong;
+import static org.ethereum.util.ByteUtil.bytesToBigInteger;
+import static org.ethereum.util.ByteUtil.longToBytesNoLeadZeroes;
+
+/**
+ * Executes local calls (eth_call, eth_estimateGas, constant contract calls) which don't
+ * change the state
+ *
+ * Calls are unsigned transactions with the sender set explicitly (see {@link Transaction#setSender(byte[])}).
+ * They are executed on a bounded pool of threads against read-only snapshots of the state.
+ * The snapshots are not thread safe (trie nodes are resolved lazily on read) thus each thread
+ * keeps its own snapshots of recent state roots which are reused by its subsequent calls so their
+ * caches stay warm. Each call is limited by the gas cap and the execution time
+ */
+@Component
+public class CallExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger("execute");
+
+    // the time to let the call fail on the deadline by itself before it is interrupted
+    private static final long INTERRUPT_DELAY = 1000;
+
+    @Autowired
+    WorldManager worldManager;
+
+    @Autowired
+    ProgramInvokeFactory programInvokeFactory;
+
+    @Autowired
+    CommonConfig commonConfig = CommonConfig.getDefault();
+
+    private final SystemProperties config;
+    private final long gasCap;
+    private final long timeout;
+    private final ExecutorService executor;
+    private final ThreadLocal<Map<ByteArrayWrapper, Repository>> snapshots;
+
+    public CallExecutor() {
+        this(SystemProperties.getDefault());
+    }
+
+    @Autowired
+    public CallExecutor(SystemProperties config) {
+        this.config = config;
+        gasCap = config.callGasCap();
+        timeout = config.callTimeoutMsec();
+        int threads = config.callThreads() > 0 ? config.callThreads() : Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("CallExecutor-%d").build());
+        final int snapshotsCount = config.callSnapshots();
+        snapshots = new ThreadLocal<Map<ByteArrayWrapper, Repository>>() {
+            @Override
+            protected Map<ByteArrayWrapper, Repository> initialValue() {
+                return new LRUMap<>(snapshotsCount);
+            }
+        };
+    }
+
+    /**
+     * Executes the call on top of the block state
+     * @return executor after the finalization, its receipt and result contain the call outcome
+     */
+    public TransactionExecutor call(final Transaction tx, final Block block) {
+        return submit(new Callable<TransactionExecutor>() {
+            @Override
+            public TransactionExecutor call() {
+                return execute(capGas(tx), block, getSnapshot(block.getStateRoot()));
+            }
+        });
+    }
+
+    /**
+     * Executes the call on top of the specified repository (e.g. pending state), the repository
+     * is not changed
+     */
+    public TransactionExecutor call(final Transaction tx, final Block block, final Repository repository) {
+        return submit(new Callable<TransactionExecutor>() {
+            @Override
+            public TransactionExecutor call() {
+                return execute(capGas(tx), block, repository);
+            }
+        });
+    }
+
+    /**
+     * Finds the minimal gas limit the call succeeds with by the binary search between
+     * the intrinsic transaction cost and the call gas limit (capped) or the gas the sender
+     * can pay for with the non zero gas price whichever is less
+     * @throws IllegalArgumentException if the call fails with the max gas limit
+     */
+    public long estimateGas(final Transaction tx, final Block block) {
+        return submit(new Callable<Long>() {
+            @Override
+            public Long call() {
+                Repository snapshot = getSnapshot(block.getStateRoot());
+                Transaction capped = capGasByBalance(capGas(tx), snapshot);
+                TransactionExecutor executor = execute(capped, block, snapshot);
+                if (!isSuccessful(executor)) {
+                    throw new IllegalArgumentException("Call fails with max gas " +
+                            byteArrayToLong(capped.getGasLimit()) + ": " + executor.getReceipt().getError());
+                }
+                byte[] expectedResult = executor.getReceipt().getExecutionResult();
+
+                // the call always fails with lo as it can't get less gas than it has used
+                // (not counting the refund) and always succeeds with hi
+                long hi = byteArrayToLong(capped.getGasLimit());
+                long intrinsic = capped.transactionCost(config.getBlockchainConfig(), block);
+                long lo = Math.max(intrinsic, executor.getGasUsed()) - 1;
+                while (lo + 1 < hi) {
+                    long mid = lo + (hi - lo) / 2;
+                    if (isSuccessful(execute(withGasLimit(capped, mid), block, snapshot), expectedResult)) {
+                        hi = mid;
+                    } else {
+                        lo = mid;
+                    }
+                }
+                return hi;
+            }
+        });
+    }
+
+    // should be called by the executing thread only
+    private Repository getSnapshot(byte[] stateRoot) {
+        Map<ByteArrayWrapper, Repository> threadSnapshots = snapshots.get();
+        ByteArrayWrapper key = new ByteArrayWrapper(stateRoot);
+        Repository ret = threadSnapshots.get(key);
+        if (ret == null) {
+            ret = ((Repository) worldManager.getRepository()).getSnapshotTo(stateRoot);
+            threadSnapshots.put(key, ret);
+        }
+        return ret;
+    }
+
+    private <T> T submit(final Callable<T> task) {
+        final long deadline = System.currentTimeMillis() + timeout;
+        Future<T> future = executor.submit(new Callable<T>() {
+            @Override
+            public T call() throws Exception {
+                VM.setDeadline(deadline);
+                try {
+                    T ret = task.call();
+                    if (System.currentTimeMillis() > deadline) {
+                        throw new TimeoutException();
+                    }
+                    return ret;
+                } finally {
+                    VM.setDeadline(0);
+                }
+            }
+        });
+
+        try {
+            return future.get(timeout + INTERRUPT_DELAY, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (TimeoutException e) {
+            future.cancel(true);
+            throw timeoutError();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof TimeoutException) throw timeoutError();
+            if (e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private RuntimeException timeoutError() {
+        return new RuntimeException("Call execution time limit exceeded: " + timeout + "ms");
+    }
+
+    private TransactionExecutor execute(Transaction tx, Block block, Repository repository) {
+        Repository track = repository.startTracking();
+        BlockStore blockStore = worldManager.getBlockStore();
+        try {
+            TransactionExecutor executor = new TransactionExecutor
+                    (tx, block.getCoinbase(), track, blockStore,
+                            programInvokeFactory, block, new EthereumListenerAdapter(), 0)
+                    .withCommonConfig(commonConfig)
+                    .setLocalCall(true);
+
+            executor.init();
+            executor.execute();
+            executor.go();
+            executor.finalization();
+
+            return executor;
+        } finally {
+            track.rollback();
+        }
+    }
+
+    private static boolean isSuccessful(TransactionExecutor executor) {
+        return executor.getReceipt().isSuccessful() &&
+                (executor.getResult() == null || executor.getResult().getException() == null);
+    }
+
+    // the call with less gas may also complete with another result, e.g. the contract
+    // is created without the code when there is no gas to save it (Frontier)
+    private static boolean isSuccessful(TransactionExecutor executor, byte[] expectedResult) {
+        return isSuccessful(executor) && Arrays.equals(executor.getReceipt().getExecutionResult(), expectedResult);
+    }
+
+    private Transaction capGas(Transaction tx) {
+        if (bytesToBigInteger(tx.getGasLimit()).compareTo(BigInteger.valueOf(gasCap)) <= 0) return tx;
+        logger.debug("Call gas limit capped to {}", gasCap);
+        return withGasLimit(tx, gasCap);
+    }
+
+    private Transaction capGasByBalance(Transaction tx, Repository repository) {
+        BigInteger gasPrice = bytesToBigInteger(tx.getGasPrice());
+        if (gasPrice.signum() == 0) return tx;
+
+        BigInteger available = repository.getBalance(tx.getSender()).subtract(bytesToBigInteger(tx.getValue()));
+        if (available.signum() < 0) {
+            throw new IllegalArgumentException("Insufficient funds for the call value");
+        }
+        BigInteger allowance = available.divide(gasPrice);
+        if (bytesToBigInteger(tx.getGasLimit()).compareTo(allowance) <= 0) return tx;
+        logger.debug("Call gas limit capped by the sender balance to {}", allowance);
+        return withGasLimit(tx, allowance.longValue());
+    }
+
+    private static Transaction withGasLimit(Transaction tx, long gasLimit) {
+        Transaction ret = new Transaction(tx.getNonce(), tx.getGasPrice(), longToBytesNoLeadZeroes(gasLimit),
+                tx.getReceiveAddress(), tx.getValue(), tx.getData(), tx.getChainId());
+        ret.setSender(tx.getSender());
+        return ret;
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+}
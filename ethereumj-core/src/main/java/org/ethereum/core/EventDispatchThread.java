@@ -17,12 +17,17 @@
  */
 package org.ethereum.core;
 
+import org.ethereum.config.SystemProperties;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * The class intended to serve as an 'Event Bus' where all EthereumJ events are
@@ -32,6 +37,14 @@ import java.util.concurrent.*;
  * This made for decoupling different components which are intended to work
  * asynchronously and to avoid complex synchronisation and deadlocks between them
  *
+ * The events are dispatched through lanes, each lane is served by its own thread and
+ * keeps the order of its events. A lane queue is bounded, when it is full the
+ * {@link OverflowPolicy} of the lane decides what happens to the new event.
+ * {@link #invokeLater(Runnable)} dispatches through the main lane which never drops events.
+ * A lane thread never waits for the room in a lane, and the producers firing events
+ * under a lock hold them back with {@link #deferEvents()} so they never wait while
+ * the lane listeners may wait for that lock
+ *
  * Created by Anton Nashatyrev on 29.12.2015.
  */
 @Component
@@ -39,21 +52,63 @@ public class EventDispatchThread {
     private static final Logger logger = LoggerFactory.getLogger("blockchain");
     private static EventDispatchThread eventDispatchThread;
 
+    // the events held back by the current thread, see deferEvents()
+    private static final ThreadLocal<Deferred> deferred = new ThreadLocal<>();
+
     private static final int[] queueSizeWarnLevels = new int[]{0, 10_000, 50_000, 100_000, 250_000, 500_000, 1_000_000, 10_000_000};
 
-    private final BlockingQueue<Runnable> executorQueue = new LinkedBlockingQueue<Runnable>();
-    private final ExecutorService executor = new ThreadPoolExecutor(1, 1,
-            0L, TimeUnit.MILLISECONDS, executorQueue, new ThreadFactory() {
-        @Override
-        public Thread newThread(Runnable r) {
-            return new Thread(r, "EDT");
-        }
-    });
+    /**
+     * What to do with the new event when the lane queue is full
+     */
+    public enum OverflowPolicy {
+        /**
+         * The caller waits until the lane has room for the event (back pressure),
+         * a lane thread never waits and overfills the lane
+         */
+        BLOCK,
+        /**
+         * The event is dropped
+         */
+        DROP,
+        /**
+         * The event replaces the pending event with the same coalesce key, the
+         * events without the key are handled like with {@link #BLOCK}
+         */
+        COALESCE
+    }
+
+    private final int queueSize;
+    private final OverflowPolicy overflowPolicy;
+    private final int listenerLanes;
+    private final List<Lane> lanes = new CopyOnWriteArrayList<>();
+    private final Lane mainLane;
+
+    public EventDispatchThread() {
+        this(SystemProperties.getDefault());
+    }
+
+    @Autowired
+    public EventDispatchThread(SystemProperties config) {
+        this(config.eventsQueueSize(), OverflowPolicy.valueOf(config.eventsOverflowPolicy().toUpperCase()),
+                config.eventsListenerLanes());
+    }
+
+    public EventDispatchThread(int queueSize, OverflowPolicy overflowPolicy) {
+        this(queueSize, overflowPolicy, 0);
+    }
 
-    private long taskStart;
-    private Runnable lastTask;
-    private int lastQueueSizeWarnLevel = 0;
-    private int counter;
+    /**
+     * @param queueSize max number of pending events in a lane
+     * @param overflowPolicy the policy of lanes created by {@link #newLane(String)}
+     * @param listenerLanes number of lanes shared by the listeners, 0 if each listener has its own lane
+     */
+    public EventDispatchThread(int queueSize, OverflowPolicy overflowPolicy, int listenerLanes) {
+        this.queueSize = queueSize;
+        this.overflowPolicy = overflowPolicy;
+        this.listenerLanes = listenerLanes;
+        // the internal tasks (like pending state update) can't be dropped
+        this.mainLane = newLane("EDT", queueSize, OverflowPolicy.BLOCK);
+    }
 
     /**
      * Returns the default instance for initialization of Autowired instances
@@ -61,9 +116,9 @@ public class EventDispatchThread {
      */
     public static EventDispatchThread getDefault() {
         if (eventDispatchThread == null) {
-            eventDispatchThread = new EventDispatchThread() {
+            eventDispatchThread = new EventDispatchThread(Integer.MAX_VALUE, OverflowPolicy.BLOCK) {
                 @Override
-                public void invokeLater(Runnable r) {
+                protected void dispatch(Lane lane, Runnable r, Object coalesceKey) {
                     r.run();
                 }
             };
@@ -72,48 +127,312 @@ public class EventDispatchThread {
     }
 
     public void invokeLater(final Runnable r) {
-        if (executor.isShutdown()) return;
-        if (counter++ % 1000 == 0) logStatus();
-
-        executor.submit(new Runnable() {
-            @Override
-            public void run() {
-                try {
-                    lastTask = r;
-                    taskStart = System.nanoTime();
-                    r.run();
-                    long t = (System.nanoTime() - taskStart) / 1_000_000;
-                    taskStart = 0;
-                    if (t > 1000) {
-                        logger.warn("EDT task executed in more than 1 sec: " + t + "ms, " +
-                        "Executor queue size: " + executorQueue.size());
+        mainLane.invokeLater(r);
+    }
+
+    private static class Deferred {
+        int depth;
+        final List<Runnable> events = new ArrayList<>();
+    }
+
+    /**
+     * Holds back the events the current thread dispatches to any lane until the matching
+     * {@link #fireDeferredEvents()}. For the producers which fire events while holding a lock:
+     * a full lane would block such producer while the lane listeners wait for its lock.
+     * The calls may be nested, the outermost {@link #fireDeferredEvents()} dispatches the events
+     */
+    public static void deferEvents() {
+        Deferred d = deferred.get();
+        if (d == null) {
+            d = new Deferred();
+            deferred.set(d);
+        }
+        d.depth++;
+    }
+
+    /**
+     * Dispatches the events held back since {@link #deferEvents()} in their order,
+     * must be called after the lock is released
+     */
+    public static void fireDeferredEvents() {
+        Deferred d = deferred.get();
+        if (--d.depth > 0) return;
+        deferred.remove();
+        for (Runnable event : d.events) {
+            event.run();
+        }
+    }
+
+    /**
+     * Creates the lane with the default queue size and overflow policy
+     */
+    public Lane newLane(String name) {
+        return newLane(name, queueSize, overflowPolicy);
+    }
+
+    public Lane newLane(String name, int queueSize, OverflowPolicy overflowPolicy) {
+        Lane lane = new Lane(name, queueSize, overflowPolicy);
+        lanes.add(lane);
+        return lane;
+    }
+
+    /**
+     * @return number of lanes shared by the listeners, 0 if each listener has its own lane
+     */
+    public int getListenerLanes() {
+        return listenerLanes;
+    }
+
+    /**
+     * @return all the active lanes, the main one first
+     */
+    public List<Lane> getLanes() {
+        return lanes;
+    }
+
+    protected void dispatch(Lane lane, Runnable r, Object coalesceKey) {
+        lane.enqueue(r, coalesceKey);
+    }
+
+    private boolean isLaneThread(Thread t) {
+        for (Lane lane : lanes) {
+            if (lane.thread == t) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The events queue served by the dedicated thread
+     */
+    public class Lane {
+        private final String name;
+        private final int capacity;
+        private final OverflowPolicy policy;
+
+        private final BlockingQueue<Runnable> executorQueue = new LinkedBlockingQueue<>();
+        private final ThreadPoolExecutor executor;
+        // room in the queue for the callers waiting with BLOCK policy
+        private final Semaphore permits;
+        private final ConcurrentMap<Object, Runnable> coalesced = new ConcurrentHashMap<>();
+        private volatile Thread thread;
+
+        private final AtomicLong processed = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong coalescedCount = new AtomicLong();
+        private final AtomicLong totalLatency = new AtomicLong();
+        private volatile long maxLatency;
+
+        private volatile long taskStart;
+        private volatile Runnable lastTask;
+        private int lastQueueSizeWarnLevel = 0;
+        private final AtomicLong counter = new AtomicLong();
 
+        private Lane(final String name, int capacity, OverflowPolicy policy) {
+            this.name = name;
+            this.capacity = capacity;
+            this.policy = policy;
+            this.permits = new Semaphore(capacity);
+            this.executor = new ThreadPoolExecutor(1, 1,
+                    0L, TimeUnit.MILLISECONDS, executorQueue, new ThreadFactory() {
+                @Override
+                public Thread newThread(Runnable r) {
+                    thread = new Thread(r, name.equals("EDT") ? name : "EDT-" + name);
+                    return thread;
+                }
+            });
+        }
+
+        public void invokeLater(Runnable r) {
+            invokeLater(r, null);
+        }
+
+        /**
+         * @param coalesceKey events with the same key replace each other while pending
+         *                    if the lane policy is {@link OverflowPolicy#COALESCE}
+         */
+        public void invokeLater(final Runnable r, final Object coalesceKey) {
+            Deferred d = deferred.get();
+            if (d != null) {
+                d.events.add(new Runnable() {
+                    @Override
+                    public void run() {
+                        dispatch(Lane.this, r, coalesceKey);
+                    }
+                });
+                return;
+            }
+            dispatch(this, r, coalesceKey);
+        }
+
+        private void enqueue(final Runnable r, final Object coalesceKey) {
+            if (executor.isShutdown()) return;
+            if (counter.incrementAndGet() % 1000 == 0) logStatus();
+
+            if (coalesceKey != null && policy == OverflowPolicy.COALESCE) {
+                if (coalesced.put(coalesceKey, r) != null) {
+                    coalescedCount.incrementAndGet();
+                    return;
+                }
+                // the first pending event with this key, the queued task runs the latest one
+                submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        coalesced.remove(coalesceKey).run();
+                    }
+
+                    @Override
+                    public String toString() {
+                        return r.toString();
                     }
-                } catch (Exception e) {
-                    logger.error("EDT task exception", e);
+                }, false);
+                return;
+            }
+
+            if (policy == OverflowPolicy.DROP) {
+                if (executorQueue.size() >= capacity) {
+                    if (dropped.incrementAndGet() % 1000 == 1) {
+                        logger.warn("EDT lane " + name + " is full, events dropped: " + dropped.get());
+                    }
+                    return;
                 }
+                submit(r, false);
+            } else if (permits.tryAcquire()) {
+                submit(r, true);
+            } else if (isLaneThread(Thread.currentThread())) {
+                // a lane thread never waits: two lanes dispatching to each other
+                // or to themselves would wait forever
+                submit(r, false);
+            } else {
+                permits.acquireUninterruptibly();
+                submit(r, true);
+            }
+        }
+
+        private void submit(final Runnable r, final boolean permit) {
+            final long enqueued = System.nanoTime();
+            try {
+                executor.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        if (permit) permits.release();
+                        try {
+                            lastTask = r;
+                            taskStart = System.nanoTime();
+                            r.run();
+                            long t = (System.nanoTime() - taskStart) / 1_000_000;
+                            taskStart = 0;
+                            if (t > 1000) {
+                                logger.warn("EDT task executed in more than 1 sec: " + t + "ms, " +
+                                        "lane: " + name + ", queue size: " + executorQueue.size());
+
+                            }
+                        } catch (Exception e) {
+                            logger.error("EDT task exception", e);
+                        }
+                        long latency = System.nanoTime() - enqueued;
+                        processed.incrementAndGet();
+                        totalLatency.addAndGet(latency);
+                        if (latency > maxLatency) maxLatency = latency;
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                // the lane is closed
+                if (permit) permits.release();
             }
-        });
-    }
-
-    // monitors EDT queue size and prints warning if exceeds thresholds
-    private void logStatus() {
-        int curLevel = getSizeWarnLevel(executorQueue.size());
-        if (lastQueueSizeWarnLevel == curLevel) return;
-
-        synchronized (this) {
-            if (curLevel > lastQueueSizeWarnLevel) {
-                long t = taskStart == 0 ? 0 : (System.nanoTime() - taskStart) / 1_000_000;
-                String msg = "EDT size grown up to " + executorQueue.size() + " (last task executing for " + t + " ms: " + lastTask;
-                if (curLevel < 3) {
-                    logger.info(msg);
-                } else {
-                    logger.warn(msg);
+        }
+
+        // monitors the lane queue size and prints warning if exceeds thresholds
+        private void logStatus() {
+            int curLevel = getSizeWarnLevel(executorQueue.size());
+            if (lastQueueSizeWarnLevel == curLevel) return;
+
+            synchronized (this) {
+                if (curLevel > lastQueueSizeWarnLevel) {
+                    long t = taskStart == 0 ? 0 : (System.nanoTime() - taskStart) / 1_000_000;
+                    String msg = "EDT lane " + name + " size grown up to " + executorQueue.size() +
+                            " (last task executing for " + t + " ms: " + lastTask;
+                    if (curLevel < 3) {
+                        logger.info(msg);
+                    } else {
+                        logger.warn(msg);
+                    }
+                } else if (curLevel < lastQueueSizeWarnLevel) {
+                    logger.info("EDT lane " + name + " size shrunk down to " + executorQueue.size());
                 }
-            } else if (curLevel < lastQueueSizeWarnLevel) {
-                logger.info("EDT size shrunk down to " + executorQueue.size());
+                lastQueueSizeWarnLevel = curLevel;
             }
-            lastQueueSizeWarnLevel = curLevel;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public OverflowPolicy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * @return number of events waiting in the queue
+         */
+        public int getQueueSize() {
+            return executorQueue.size();
+        }
+
+        public long getProcessedCount() {
+            return processed.get();
+        }
+
+        public long getDroppedCount() {
+            return dropped.get();
+        }
+
+        /**
+         * @return number of events replaced by the later ones with the same coalesce key
+         */
+        public long getCoalescedCount() {
+            return coalescedCount.get();
+        }
+
+        /**
+         * @return average time from the event dispatch to the end of its processing
+         */
+        public long getAverageLatencyMsec() {
+            long count = processed.get();
+            return count == 0 ? 0 : totalLatency.get() / count / 1_000_000;
+        }
+
+        public long getMaxLatencyMsec() {
+            return maxLatency / 1_000_000;
+        }
+
+        /**
+         * Stops the lane after the pending events are processed
+         */
+        public void close() {
+            lanes.remove(this);
+            executor.shutdown();
+            releaseWaiting();
+        }
+
+        private void shutdownNow() {
+            executor.shutdownNow();
+            releaseWaiting();
+        }
+
+        // let the callers waiting for the room go, their events are rejected
+        private void releaseWaiting() {
+            permits.release(permits.getQueueLength());
+        }
+
+        private void awaitTermination(long timeout) throws InterruptedException {
+            executor.awaitTermination(timeout, TimeUnit.MILLISECONDS);
+        }
+
+        @Override
+        public String toString() {
+            return "Lane[" + name + ": queue " + getQueueSize() + ", processed " + getProcessedCount() +
+                    ", dropped " + getDroppedCount() + ", coalesced " + getCoalescedCount() +
+                    ", latency avg " + getAverageLatencyMsec() + "ms, max " + getMaxLatencyMsec() + "ms]";
         }
     }
 
@@ -123,9 +442,14 @@ public class EventDispatchThread {
     }
 
     public void shutdown() {
-        executor.shutdownNow();
+        for (Lane lane : lanes) {
+            lane.shutdownNow();
+        }
+        long deadline = System.currentTimeMillis() + 10_000;
         try {
-            executor.awaitTermination(10L, TimeUnit.SECONDS);
+            for (Lane lane : lanes) {
+                lane.awaitTermination(Math.max(0, deadline - System.currentTimeMillis()));
+            }
         } catch (InterruptedException e) {
             logger.warn("shutdown: executor interrupted: {}", e.getMessage());
         }
@@ -0,0 +1,275 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.config.CommonConfig;
+import org.ethereum.crypto.HashUtil;
+import org.ethereum.db.BlockStore;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.db.RecordingRepository;
+import org.ethereum.db.RepositoryImpl;
+import org.ethereum.db.RepositoryRoot;
+import org.ethereum.listener.EthereumListener;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.util.FastByteComparisons;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.math.BigInteger;
+import java.util.*;
+import java.util.concurrent.*;
+
+/**
+ * Executes block transactions optimistically in parallel
+ *
+ * Each transaction is first executed speculatively on a separate thread against the block
+ * parent state (see {@link RecordingRepository}) recording the accounts and storage cells it reads
+ * and the journal of modifications it makes. The transactions are then committed to the block
+ * state strictly in order: if a transaction hasn't read anything modified by preceding
+ * transactions of the block its journal is just replayed, else it is executed again sequentially.
+ * The resulting state, receipts and summaries are identical to the sequential execution.
+ *
+ * Every transaction pays fee to the block coinbase which would make all of them conflicting,
+ * so speculative executions pay fees to a fake address and the real fee is credited on commit.
+ * Transactions touching the coinbase account itself are always re-executed.
+ *
+ * If the block processing fails the pending speculative executions should be dropped
+ * with {@link Execution#cancel()}.
+ */
+public class ParallelBlockExecutor {
+
+    private static final Logger logger = LoggerFactory.getLogger("blockchain");
+
+    private final ExecutorService executor;
+
+    public ParallelBlockExecutor(int threads) {
+        executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("ParallelBlockExecutor-%d").build());
+    }
+
+    /**
+     * Result of a transaction committed to the block state
+     */
+    public static class Result {
+        public final TransactionExecutor executor;
+        public final TransactionExecutionSummary summary;
+
+        Result(TransactionExecutor executor, TransactionExecutionSummary summary) {
+            this.executor = executor;
+            this.summary = summary;
+        }
+    }
+
+    private static class Speculative {
+        final TransactionExecutor executor;
+        final TransactionExecutionSummary summary;
+        final RecordingRepository track;
+
+        Speculative(TransactionExecutor executor, TransactionExecutionSummary summary, RecordingRepository track) {
+            this.executor = executor;
+            this.summary = summary;
+            this.track = track;
+        }
+    }
+
+    /**
+     * Starts speculative execution of the block transactions
+     *
+     * @param track the block state, should be the parent block state
+     * @return the execution to be committed transaction by transaction with {@link Execution#next(long)}
+     *          or null if the parallel execution is not possible for this block
+     */
+    public Execution start(Repository track, Block block, BlockStore blockStore, ProgramInvokeFactory programInvokeFactory,
+                           CommonConfig commonConfig, EthereumListener listener) {
+        // speculative executions read the state from the DB thus it should be committed
+        // (this also excludes blocks with hard fork state changes applied prior to transactions)
+        if (!(track instanceof RepositoryRoot)) return null;
+        Block parent = blockStore.getBlockByHash(block.getParentHash());
+        if (parent == null || !FastByteComparisons.equal(parent.getStateRoot(), track.getRoot())) return null;
+
+        return new Execution((RepositoryRoot) track, block, blockStore, programInvokeFactory, commonConfig, listener);
+    }
+
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    public class Execution {
+        private final RepositoryRoot track;
+        private final Block block;
+        private final byte[] feeSink;
+        private final BlockStore blockStore;
+        private final ProgramInvokeFactory programInvokeFactory;
+        private final CommonConfig commonConfig;
+        private final EthereumListener listener;
+
+        private final List<Future<Speculative>> speculative = new ArrayList<>();
+        private final Set<ByteArrayWrapper> accountsWritten = new HashSet<>();
+        private final Set<ByteArrayWrapper> storageWritten = new HashSet<>();
+        private int nextTx = 0;
+        private int reExecuted = 0;
+
+        private Execution(RepositoryRoot track, Block block, BlockStore blockStore, ProgramInvokeFactory programInvokeFactory,
+                          CommonConfig commonConfig, EthereumListener listener) {
+            this.track = track;
+            this.block = block;
+            this.blockStore = blockStore;
+            this.programInvokeFactory = programInvokeFactory;
+            this.commonConfig = commonConfig;
+            this.listener = listener;
+            // an address nobody can touch in practice
+            this.feeSink = Arrays.copyOfRange(HashUtil.sha3(block.getHash()), 0, 20);
+
+            final byte[] stateRoot = track.getRoot();
+            for (final Transaction tx : block.getTransactionsList()) {
+                speculative.add(executor.submit(new Callable<Speculative>() {
+                    @Override
+                    public Speculative call() throws Exception {
+                        return speculate(tx, stateRoot);
+                    }
+                }));
+            }
+        }
+
+        private Speculative speculate(Transaction tx, byte[] stateRoot) {
+            Repository snapshot = track.getSnapshotTo(stateRoot);
+            RecordingRepository txTrack = new RecordingRepository(snapshot.startTracking(),
+                    Collections.singleton(new ByteArrayWrapper(feeSink)));
+            TransactionExecutor executor = new TransactionExecutor(tx, feeSink, txTrack, blockStore,
+                    programInvokeFactory, block, new EthereumListenerAdapter(), 0)
+                    .withCommonConfig(commonConfig);
+
+            executor.init();
+            executor.execute();
+            executor.go();
+            TransactionExecutionSummary summary = executor.finalization();
+            return new Speculative(executor, summary, txTrack);
+        }
+
+        /**
+         * Commits the next transaction of the block to the track
+         * @param gasUsedInTheBlock the gas used by the preceding transactions
+         */
+        public Result next(long gasUsedInTheBlock) {
+            Transaction tx = block.getTransactionsList().get(nextTx);
+            Speculative spec;
+            try {
+                spec = speculative.get(nextTx++).get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new RuntimeException(e);
+            } catch (ExecutionException e) {
+                logger.warn("Speculative execution of tx failed, executing sequentially", e.getCause());
+                spec = null;
+            }
+
+            Result ret = spec != null && !isConflicting(spec, tx, gasUsedInTheBlock) ?
+                    commit(spec, gasUsedInTheBlock) : execute(tx, gasUsedInTheBlock);
+
+            if (nextTx == speculative.size()) {
+                logger.debug("Block {} executed in parallel, {} of {} txs re-executed",
+                        block.getNumber(), reExecuted, speculative.size());
+            }
+            return ret;
+        }
+
+        /**
+         * Cancels the speculative executions which are not started yet,
+         * does nothing if all the transactions were committed
+         */
+        public void cancel() {
+            for (int i = nextTx; i < speculative.size(); i++) {
+                speculative.get(i).cancel(false);
+            }
+        }
+
+        private boolean isConflicting(Speculative spec, Transaction tx, long gasUsedInTheBlock) {
+            // the cumulative gas check result may differ
+            BigInteger cumulativeGas = new BigInteger(1, tx.getGasLimit()).add(BigInteger.valueOf(gasUsedInTheBlock));
+            if (cumulativeGas.compareTo(new BigInteger(1, block.getGasLimit())) > 0) return true;
+
+            ByteArrayWrapper coinbase = new ByteArrayWrapper(block.getCoinbase());
+            if (spec.track.getAccountsRead().contains(coinbase) ||
+                    spec.track.getAccountsWritten().contains(coinbase)) return true;
+
+            for (ByteArrayWrapper addr : spec.track.getAccountsRead()) {
+                if (accountsWritten.contains(addr)) return true;
+            }
+            for (ByteArrayWrapper cell : spec.track.getStorageRead()) {
+                if (storageWritten.contains(cell)) return true;
+            }
+            return false;
+        }
+
+        private Result commit(Speculative spec, long gasUsedInTheBlock) {
+            spec.executor.getReceipt().setCumulativeGas(gasUsedInTheBlock + spec.executor.getGasUsed());
+
+            Repository txTrack = track.startTracking();
+            spec.track.replay(txTrack);
+
+            if (spec.summary != null) {
+                // the same as TransactionExecutor.finalization() does with the coinbase
+                txTrack.addBalance(block.getCoinbase(), spec.summary.getFee());
+                if (commonConfig.systemProperties().getBlockchainConfig().
+                        getConfigForBlock(block.getNumber()).eip161()) {
+                    AccountState state = txTrack.getAccountState(block.getCoinbase());
+                    if (state != null && state.isEmpty()) {
+                        txTrack.delete(block.getCoinbase());
+                    }
+                }
+                listener.onTransactionExecuted(spec.summary);
+            }
+            txTrack.commit();
+
+            accountsWritten.addAll(spec.track.getAccountsWritten());
+            storageWritten.addAll(spec.track.getStorageWritten());
+            accountsWritten.add(new ByteArrayWrapper(block.getCoinbase()));
+
+            return new Result(spec.executor, spec.summary);
+        }
+
+        private Result execute(Transaction tx, long gasUsedInTheBlock) {
+            reExecuted++;
+            RepositoryImpl txTrack = track.startTracking();
+            TransactionExecutor executor = new TransactionExecutor(tx, block.getCoinbase(),
+                    txTrack, blockStore, programInvokeFactory, block, listener, gasUsedInTheBlock)
+                    .withCommonConfig(commonConfig);
+
+            executor.init();
+            executor.execute();
+            executor.go();
+            TransactionExecutionSummary summary = executor.finalization();
+
+            for (byte[] addr : txTrack.getModifiedAccounts()) {
+                accountsWritten.add(new ByteArrayWrapper(addr));
+            }
+            for (Map.Entry<byte[], Collection<DataWord>> entry : txTrack.getModifiedStorage().entrySet()) {
+                for (DataWord key : entry.getValue()) {
+                    storageWritten.add(RecordingRepository.storageKey(entry.getKey(), key));
+                }
+            }
+
+            txTrack.commit();
+
+            return new Result(executor, summary);
+        }
+    }
+}
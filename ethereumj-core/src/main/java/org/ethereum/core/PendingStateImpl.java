@@ -22,11 +22,15 @@ import static org.ethereum.listener.EthereumListener.PendingTransactionState.INC
 import static org.ethereum.listener.EthereumListener.PendingTransactionState.NEW_PENDING;
 import static org.ethereum.listener.EthereumListener.PendingTransactionState.PENDING;
 
+import java.math.BigInteger;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeSet;
 
 import org.apache.commons.collections4.map.LRUMap;
@@ -50,6 +54,16 @@ import org.springframework.stereotype.Component;
 /**
  * Keeps logic providing pending state management
  *
+ * Pending transactions are kept in the {@link PendingTransactionPool}. The pending state
+ * is the best block state with the executable pool transactions applied, it is built lazily
+ * on the first access after a new best block so the block import doesn't wait for the
+ * pending transactions execution. On a new best block only the senders touched by the
+ * block are revalidated.
+ *
+ * The PENDING update fired on a new best block carries the receipt without the execution
+ * results: the results of the previous pending state are outdated and the transactions are
+ * executed again when the pending state is rebuilt.
+ *
  * @author Mikhail Kalinin
  * @since 28.09.2015
  */
@@ -96,15 +110,20 @@ public class PendingStateImpl implements PendingState {
     @Autowired
     private ProgramInvokeFactory programInvokeFactory;
 
+    @Autowired(required = false)
+    private SenderRecovery senderRecovery;
+
 //    private Repository repository;
 
-    private final List<PendingTransaction> pendingTransactions = new ArrayList<>();
+    private PendingTransactionPool pool;
 
     // to filter out the transactions we have already processed
     // transactions could be sent by peers even if they were already included into blocks
     private final Map<ByteArrayWrapper, Object> receivedTxs = new LRUMap<>(100000);
     private final Object dummyObject = new Object();
 
+    private Repository bestState;
+
     private Repository pendingState;
 
     private Block best = null;
@@ -119,8 +138,28 @@ public class PendingStateImpl implements PendingState {
         this.transactionStore = blockchain.getTransactionStore();
     }
 
-    public void init() {
-        this.pendingState = getOrigRepository().startTracking();
+    /**
+     * Builds the pending state executing all the executable pending transactions
+     */
+    public synchronized void init() {
+        this.pendingState = getBestState().startTracking();
+        for (PendingTransaction tx : getPool().getExecutable()) {
+            tx.setReceipt(executeTx(tx.getTransaction(), pendingState));
+        }
+    }
+
+    private PendingTransactionPool getPool() {
+        if (pool == null) {
+            pool = new PendingTransactionPool(config.txPendingPoolMaxSize(), config.txPendingMaxNonceGap());
+        }
+        return pool;
+    }
+
+    private Repository getBestState() {
+        if (bestState == null) {
+            bestState = getOrigRepository();
+        }
+        return bestState;
     }
 
     private Repository getOrigRepository() {
@@ -140,7 +179,21 @@ public class PendingStateImpl implements PendingState {
 
         List<Transaction> txs = new ArrayList<>();
 
-        for (PendingTransaction tx : pendingTransactions) {
+        for (PendingTransaction tx : getPool().getExecutable()) {
+            txs.add(tx.getTransaction());
+        }
+
+        return txs;
+    }
+
+    /**
+     * @return pending transactions waiting for the missing nonces of their senders
+     */
+    public synchronized List<Transaction> getQueuedTransactions() {
+
+        List<Transaction> txs = new ArrayList<>();
+
+        for (PendingTransaction tx : getPool().getQueued()) {
             txs.add(tx.getTransaction());
         }
 
@@ -164,7 +217,31 @@ public class PendingStateImpl implements PendingState {
     }
 
     @Override
-    public synchronized List<Transaction> addPendingTransactions(List<Transaction> transactions) {
+    public List<Transaction> addPendingTransactions(List<Transaction> transactions) {
+        // senders recovery is heavy so it is done in parallel and outside of the lock
+        if (senderRecovery != null) {
+            senderRecovery.recover(getUnknownTransactions(transactions));
+        }
+        // the events are fired when the lock is released
+        EventDispatchThread.deferEvents();
+        try {
+            return addPendingTransactionsImpl(transactions);
+        } finally {
+            EventDispatchThread.fireDeferredEvents();
+        }
+    }
+
+    private synchronized List<Transaction> getUnknownTransactions(List<Transaction> transactions) {
+        List<Transaction> ret = new ArrayList<>();
+        for (Transaction tx : transactions) {
+            if (!receivedTxs.containsKey(new ByteArrayWrapper(tx.getHash()))) {
+                ret.add(tx);
+            }
+        }
+        return ret;
+    }
+
+    private synchronized List<Transaction> addPendingTransactionsImpl(List<Transaction> transactions) {
         int unknownTx = 0;
         List<Transaction> newPending = new ArrayList<>();
         for (Transaction tx : transactions) {
@@ -187,26 +264,31 @@ public class PendingStateImpl implements PendingState {
         return newPending;
     }
 
-    public synchronized void trackTransaction(Transaction tx) {
-        List<TransactionInfo> infos = transactionStore.get(tx.getHash());
-        if (!infos.isEmpty()) {
-            for (TransactionInfo info : infos) {
-                Block txBlock = blockStore.getBlockByHash(info.getBlockHash());
-                if (txBlock.isEqual(blockStore.getChainBlockByNumber(txBlock.getNumber()))) {
-                    // transaction included to the block on main chain
-                    info.getReceipt().setTransaction(tx);
-                    fireTxUpdate(info.getReceipt(), INCLUDED, txBlock);
-                    return;
+    public void trackTransaction(Transaction tx) {
+        EventDispatchThread.deferEvents();
+        try {
+            synchronized (this) {
+                List<TransactionInfo> infos = transactionStore.get(tx.getHash());
+                for (TransactionInfo info : infos) {
+                    Block txBlock = blockStore.getBlockByHash(info.getBlockHash());
+                    if (txBlock.isEqual(blockStore.getChainBlockByNumber(txBlock.getNumber()))) {
+                        // transaction included to the block on main chain
+                        info.getReceipt().setTransaction(tx);
+                        fireTxUpdate(info.getReceipt(), INCLUDED, txBlock);
+                        return;
+                    }
                 }
             }
+            addPendingTransaction(tx);
+        } finally {
+            EventDispatchThread.fireDeferredEvents();
         }
-        addPendingTransaction(tx);
     }
 
     private void fireTxUpdate(TransactionReceipt txReceipt, PendingTransactionState state, Block block) {
         if (logger.isDebugEnabled()) {
             logger.debug(String.format("PendingTransactionUpdate: (Tot: %3s) %12s : %s %8s %s [%s]",
-                    getPendingTransactions().size(),
+                    getPool().size(),
                     state, Hex.toHexString(txReceipt.getTransaction().getSender()).substring(0, 8),
                     ByteUtil.byteArrayToLong(txReceipt.getTransaction().getNonce()),
                     block.getShortDescr(), txReceipt.getError()));
@@ -215,31 +297,78 @@ public class PendingStateImpl implements PendingState {
     }
 
     /**
-     * Executes pending tx on the latest best block
+     * Adds pending tx to the pool and executes it on the pending state if it is executable
      * Fires pending state update
      * @param tx    Transaction
      * @return True if transaction gets NEW_PENDING state, False if DROPPED
      */
     private boolean addPendingTransactionImpl(final Transaction tx) {
-        TransactionReceipt newReceipt = new TransactionReceipt();
-        newReceipt.setTransaction(tx);
-
         String err = validate(tx);
-
-        TransactionReceipt txReceipt;
         if (err != null) {
-            txReceipt = createDroppedReceipt(tx, err);
-        } else {
-            txReceipt = executeTx(tx);
+            fireTxUpdate(createDroppedReceipt(tx, err), DROPPED, getBestBlock());
+            return false;
+        }
+
+        PendingTransaction pendingTx = new PendingTransaction(tx, getBestBlock().getNumber());
+        PendingTransactionPool.AddResult result = getPool().add(pendingTx,
+                getBestState().getNonce(tx.getSender()).longValue(), getBestState().getBalance(tx.getSender()));
+        if (result.getError() != null) {
+            fireTxUpdate(createDroppedReceipt(tx, result.getError()), DROPPED, getBestBlock());
+            return false;
+        }
+        if (result.getReplaced() != null) {
+            fireTxUpdate(createDroppedReceipt(result.getReplaced().getTransaction(),
+                    "Replaced by the transaction with higher gas price"), DROPPED, getBestBlock());
+        }
+        if (result.getEvicted() != null) {
+            fireTxUpdate(createDroppedReceipt(result.getEvicted().getTransaction(),
+                    "Evicted by the transaction with higher gas price"), DROPPED, getBestBlock());
+        }
+
+        if (result.isRebuildRequired()) {
+            pendingState = null;
+        }
+        boolean rebuilt = pendingState == null && !result.getExecutable().isEmpty();
+        if (rebuilt) {
+            init();
+        }
+        for (PendingTransaction executable : result.getExecutable()) {
+            TransactionReceipt receipt = rebuilt ? executable.getReceipt() :
+                    executeTx(executable.getTransaction(), pendingState);
+            executable.setReceipt(receipt);
+            if (!receipt.isValid()) {
+                // the following sender transactions are queued back
+                getPool().remove(executable.getTransaction());
+                if (rebuilt) {
+                    pendingState = null;
+                }
+                if (executable != pendingTx) {
+                    fireTxUpdate(receipt, DROPPED, getBestBlock());
+                }
+                break;
+            }
+            if (executable != pendingTx) {
+                fireTxUpdate(receipt, PENDING, getBestBlock());
+            }
         }
 
-        if (!txReceipt.isValid()) {
+        TransactionReceipt txReceipt = pendingTx.getReceipt();
+        if (txReceipt == null) {
+            // queued until the nonce gap is filled
+            txReceipt = createReceipt(tx);
+            pendingTx.setReceipt(txReceipt);
+        } else if (!txReceipt.isValid()) {
             fireTxUpdate(txReceipt, DROPPED, getBestBlock());
-        } else {
-            pendingTransactions.add(new PendingTransaction(tx, getBestBlock().getNumber()));
-            fireTxUpdate(txReceipt, NEW_PENDING, getBestBlock());
+            return false;
         }
-        return txReceipt.isValid();
+        fireTxUpdate(txReceipt, NEW_PENDING, getBestBlock());
+        return true;
+    }
+
+    private TransactionReceipt createReceipt(Transaction tx) {
+        TransactionReceipt txReceipt = new TransactionReceipt();
+        txReceipt.setTransaction(tx);
+        return txReceipt;
     }
 
     private TransactionReceipt createDroppedReceipt(Transaction tx, String error) {
@@ -281,8 +410,27 @@ public class PendingStateImpl implements PendingState {
         return b1;
     }
 
+    /**
+     * Removes the block transactions from the pool, revalidates the transactions
+     * of the senders touched by the block(s) and drops outdated transactions.
+     * The pending state is rebuilt lazily on the next access
+     */
     @Override
-    public synchronized void processBest(Block newBlock, List<TransactionReceipt> receipts) {
+    public void processBest(Block newBlock, List<TransactionReceipt> receipts) {
+        // an event per pool transaction is fired, the lanes may have no room for them
+        // while their listeners wait for the pending state lock
+        EventDispatchThread.deferEvents();
+        try {
+            processBestImpl(newBlock, receipts);
+        } finally {
+            EventDispatchThread.fireDeferredEvents();
+        }
+    }
+
+    private synchronized void processBestImpl(Block newBlock, List<TransactionReceipt> receipts) {
+
+        Set<ByteArrayWrapper> touchedSenders = new HashSet<>();
+        Set<PendingTransaction> returned = new LinkedHashSet<>();
 
         if (getBestBlock() != null && !getBestBlock().isParentOf(newBlock)) {
             // need to switch the state to another fork
@@ -293,21 +441,22 @@ public class PendingStateImpl implements PendingState {
                     + newBlock.getShortDescr() + ", old best: " + getBestBlock().getShortDescr()
                     + ", ancestor: " + commonAncestor.getShortDescr());
 
-            // first return back the transactions from forked blocks
+            // first collect the transactions from forked blocks to return them back
+            List<Block> rollbackFork = new ArrayList<>();
             Block rollback = getBestBlock();
             while(!rollback.isEqual(commonAncestor)) {
-                List<PendingTransaction> blockTxs = new ArrayList<>();
-                for (Transaction tx : rollback.getTransactionsList()) {
+                rollbackFork.add(rollback);
+                rollback = blockchain.getBlockByHash(rollback.getParentHash());
+            }
+            // in the chain order so the sender transactions are returned in the nonce order
+            for (int i = rollbackFork.size() - 1; i >= 0; i--) {
+                for (Transaction tx : rollbackFork.get(i).getTransactionsList()) {
                     logger.trace("Returning transaction back to pending: " + tx);
-                    blockTxs.add(new PendingTransaction(tx, commonAncestor.getNumber()));
+                    returned.add(new PendingTransaction(tx, commonAncestor.getNumber()));
+                    touchedSenders.add(new ByteArrayWrapper(tx.getSender()));
                 }
-                pendingTransactions.addAll(0, blockTxs);
-                rollback = blockchain.getBlockByHash(rollback.getParentHash());
             }
 
-            // rollback the state snapshot to the ancestor
-            pendingState = getOrigRepository().getSnapshotTo(commonAncestor.getStateRoot()).startTracking();
-
             // next process blocks from new fork
             Block main = newBlock;
             List<Block> mainFork = new ArrayList<>();
@@ -318,38 +467,66 @@ public class PendingStateImpl implements PendingState {
 
             // processing blocks from ancestor to new block
             for (int i = mainFork.size() - 1; i >= 0; i--) {
-                processBestInternal(mainFork.get(i), null);
+                clearPending(mainFork.get(i), null, returned, touchedSenders);
             }
         } else {
             logger.debug("PendingStateImpl.processBest: " + newBlock.getShortDescr());
-            processBestInternal(newBlock, receipts);
+            clearPending(newBlock, receipts, returned, touchedSenders);
         }
 
         best = newBlock;
+        bestState = null;
+        pendingState = null;
+
+        // the pool senders nonces are updated first, otherwise the returned transactions
+        // would be checked against the nonces of the forked chain
+        revalidate(touchedSenders, newBlock);
+
+        for (PendingTransaction tx : returned) {
+            PendingTransactionPool.AddResult result = getPool().add(tx,
+                    getBestState().getNonce(tx.getSender()).longValue(), getBestState().getBalance(tx.getSender()));
+            if (result.getError() != null) {
+                fireTxUpdate(createDroppedReceipt(tx.getTransaction(), result.getError()), DROPPED, newBlock);
+            }
+        }
+        if (!returned.isEmpty()) {
+            // the returned transactions are paid before the pending ones with higher nonces
+            revalidate(touchedSenders, newBlock);
+        }
 
-        updateState(newBlock);
+        clearOutdated(newBlock.getNumber());
+
+        for (PendingTransaction tx : getPool().getAll()) {
+            tx.setReceipt(createReceipt(tx.getTransaction()));
+            fireTxUpdate(tx.getReceipt(), PENDING, newBlock);
+        }
 
         listener.onPendingStateChanged(PendingStateImpl.this);
     }
 
-    private void processBestInternal(Block block, List<TransactionReceipt> receipts) {
-
-        clearPending(block, receipts);
-
-        clearOutdated(block.getNumber());
+    private void revalidate(Set<ByteArrayWrapper> senders, Block block) {
+        for (ByteArrayWrapper sender : senders) {
+            if (!getPool().hasSender(sender.getData())) continue;
+
+            BigInteger nonce = getBestState().getNonce(sender.getData());
+            BigInteger balance = getBestState().getBalance(sender.getData());
+            for (PendingTransaction tx : getPool().revalidate(sender.getData(), nonce.longValue(), balance)) {
+                String err = tx.getNonce() < nonce.longValue() ?
+                        String.format("Invalid nonce: required: %s , tx.nonce: %s", nonce, tx.getNonce()) :
+                        String.format("Not enough cash: Require: %s, Sender cash: %s",
+                                PendingTransactionPool.getCost(tx.getTransaction()), balance);
+                fireTxUpdate(createDroppedReceipt(tx.getTransaction(), err), DROPPED, block);
+            }
+        }
     }
 
     private void clearOutdated(final long blockNumber) {
-        List<PendingTransaction> outdated = new ArrayList<>();
-
-        for (PendingTransaction tx : pendingTransactions) {
-            if (blockNumber - tx.getBlockNumber() > config.txOutdatedThreshold()) {
-                outdated.add(tx);
+        List<PendingTransaction> outdated = getPool().removeOutdated(blockNumber - config.txOutdatedThreshold());
 
-                fireTxUpdate(createDroppedReceipt(tx.getTransaction(),
-                        "Tx was not included into last " + config.txOutdatedThreshold() + " blocks"),
-                        DROPPED, getBestBlock());
-            }
+        for (PendingTransaction tx : outdated) {
+            fireTxUpdate(createDroppedReceipt(tx.getTransaction(),
+                    "Tx was not included into last " + config.txOutdatedThreshold() + " blocks"),
+                    DROPPED, getBestBlock());
         }
 
         if (outdated.isEmpty()) return;
@@ -361,16 +538,19 @@ public class PendingStateImpl implements PendingState {
                         tx.getBlockNumber(),
                         Hex.toHexString(tx.getHash())
                 );
-
-        pendingTransactions.removeAll(outdated);
     }
 
-    private void clearPending(Block block, List<TransactionReceipt> receipts) {
+    /**
+     * Removes the block transactions from the pool and from the transactions returned
+     * from the forked blocks, the senders of the block transactions are collected to be revalidated
+     */
+    private void clearPending(Block block, List<TransactionReceipt> receipts,
+                              Set<PendingTransaction> returned, Set<ByteArrayWrapper> touchedSenders) {
         for (int i = 0; i < block.getTransactionsList().size(); i++) {
             Transaction tx = block.getTransactionsList().get(i);
-            PendingTransaction pend = new PendingTransaction(tx);
+            touchedSenders.add(new ByteArrayWrapper(tx.getSender()));
 
-            if (pendingTransactions.remove(pend)) {
+            if (returned.remove(new PendingTransaction(tx)) || getPool().remove(tx) != null) {
                 try {
                     logger.trace("Clear pending transaction, hash: [{}]", Hex.toHexString(tx.getHash()));
                     TransactionReceipt receipt;
@@ -395,24 +575,14 @@ public class PendingStateImpl implements PendingState {
         return info;
     }
 
-    private void updateState(Block block) {
-
-        pendingState = getOrigRepository().startTracking();
-
-        for (PendingTransaction tx : pendingTransactions) {
-            TransactionReceipt receipt = executeTx(tx.getTransaction());
-            fireTxUpdate(receipt, PENDING, block);
-        }
-    }
-
-    private TransactionReceipt executeTx(Transaction tx) {
+    private TransactionReceipt executeTx(Transaction tx, Repository repository) {
 
         logger.trace("Apply pending state tx: {}", Hex.toHexString(tx.getHash()));
 
         Block best = getBestBlock();
 
         TransactionExecutor executor = new TransactionExecutor(
-                tx, best.getCoinbase(), getRepository(),
+                tx, best.getCoinbase(), repository,
                 blockStore, programInvokeFactory, createFakePendingBlock(), new EthereumListenerAdapter(), 0)
                 .withCommonConfig(commonConfig);
 
@@ -41,6 +41,11 @@ public class PendingTransaction {
      */
     private long blockNumber;
 
+    /**
+     * receipt of the latest transaction execution on the pending state
+     */
+    private TransactionReceipt receipt;
+
     public PendingTransaction(byte[] bytes) {
         parse(bytes);
     }
@@ -62,6 +67,22 @@ public class PendingTransaction {
         return blockNumber;
     }
 
+    public TransactionReceipt getReceipt() {
+        return receipt;
+    }
+
+    public void setReceipt(TransactionReceipt receipt) {
+        this.receipt = receipt;
+    }
+
+    public long getNonce() {
+        return ByteUtil.byteArrayToLong(transaction.getNonce());
+    }
+
+    public BigInteger getGasPrice() {
+        return ByteUtil.bytesToBigInteger(transaction.getGasPrice());
+    }
+
     public byte[] getSender() {
         return transaction.getSender();
     }
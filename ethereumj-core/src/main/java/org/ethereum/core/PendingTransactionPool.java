@@ -0,0 +1,362 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.FastByteComparisons;
+
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Pending transactions indexed by sender and nonce
+ *
+ * The sender transactions with contiguous nonces starting from the sender nonce
+ * in the best state are executable, the ones following a nonce gap are queued
+ * until the gap is filled. The sender balance should cover the total cost of its transactions
+ * up to the transaction nonce. The pool size is bounded, when it is full the lowest priced
+ * transaction is evicted in favor of the new one paying more.
+ *
+ * The class is not thread safe
+ */
+public class PendingTransactionPool {
+
+    /**
+     * The outcome of {@link #add(PendingTransaction, long, BigInteger)}
+     */
+    public static class AddResult {
+        private String error;
+        private List<PendingTransaction> executable = Collections.emptyList();
+        private PendingTransaction replaced;
+        private PendingTransaction evicted;
+        private boolean rebuildRequired;
+
+        /**
+         * @return the reason the transaction was rejected or null if it was added
+         */
+        public String getError() {
+            return error;
+        }
+
+        /**
+         * @return transactions which became executable in the nonce order, that is the added
+         * transaction followed by the queued ones it has unlocked
+         */
+        public List<PendingTransaction> getExecutable() {
+            return executable;
+        }
+
+        /**
+         * @return the pending transaction with the same sender and nonce replaced by the added one
+         */
+        public PendingTransaction getReplaced() {
+            return replaced;
+        }
+
+        /**
+         * @return the lowest priced transaction evicted to make room for the added one
+         */
+        public PendingTransaction getEvicted() {
+            return evicted;
+        }
+
+        /**
+         * @return true if an executable transaction was removed so the pending state
+         * should be rebuilt from scratch
+         */
+        public boolean isRebuildRequired() {
+            return rebuildRequired;
+        }
+    }
+
+    private static class SenderTxs {
+        final TreeMap<Long, PendingTransaction> txs = new TreeMap<>();
+        long stateNonce;
+        // the nonce following the last executable transaction
+        long executableNonce;
+
+        SenderTxs(long stateNonce) {
+            this.stateNonce = stateNonce;
+            this.executableNonce = stateNonce;
+        }
+
+        boolean isExecutable(long nonce) {
+            return nonce >= stateNonce && nonce < executableNonce;
+        }
+
+        Collection<PendingTransaction> getExecutable() {
+            return txs.subMap(stateNonce, executableNonce).values();
+        }
+
+        void extendExecutable() {
+            while (txs.containsKey(executableNonce)) executableNonce++;
+        }
+    }
+
+    // the cheapest first, the latest nonce of the sender first when the price is the same
+    private static final Comparator<PendingTransaction> EVICTION_ORDER = new Comparator<PendingTransaction>() {
+        @Override
+        public int compare(PendingTransaction tx1, PendingTransaction tx2) {
+            int ret = tx1.getGasPrice().compareTo(tx2.getGasPrice());
+            if (ret != 0) return ret;
+            ret = Long.compare(tx2.getNonce(), tx1.getNonce());
+            if (ret != 0) return ret;
+            return FastByteComparisons.compareTo(tx1.getHash(), 0, 32, tx2.getHash(), 0, 32);
+        }
+    };
+
+    private final int maxSize;
+    private final long maxNonceGap;
+
+    private final Map<ByteArrayWrapper, SenderTxs> senders = new LinkedHashMap<>();
+    private final TreeSet<PendingTransaction> byPrice = new TreeSet<>(EVICTION_ORDER);
+
+    /**
+     * @param maxSize max number of executable and queued transactions
+     * @param maxNonceGap max distance between the nonce of a queued transaction
+     *                    and the nonce expected next from its sender
+     */
+    public PendingTransactionPool(int maxSize, long maxNonceGap) {
+        this.maxSize = maxSize;
+        this.maxNonceGap = maxNonceGap;
+    }
+
+    /**
+     * Adds the transaction as executable or queued one
+     * @param stateNonce sender nonce in the best state, used when the sender has no pending transactions yet
+     * @param balance sender balance in the best state which should pay for the transaction
+     *                along with the sender transactions having lower nonces
+     */
+    public AddResult add(PendingTransaction tx, long stateNonce, BigInteger balance) {
+        AddResult ret = new AddResult();
+        ByteArrayWrapper key = new ByteArrayWrapper(tx.getSender());
+        SenderTxs sender = senders.get(key);
+        if (sender == null) {
+            sender = new SenderTxs(stateNonce);
+        }
+
+        long nonce = tx.getNonce();
+        if (nonce < sender.stateNonce) {
+            ret.error = String.format("Invalid nonce: required: %s , tx.nonce: %s", sender.stateNonce, nonce);
+            return ret;
+        }
+        if (nonce - sender.executableNonce > maxNonceGap) {
+            ret.error = String.format("Too large nonce gap: next nonce: %s , tx.nonce: %s", sender.executableNonce, nonce);
+            return ret;
+        }
+
+        BigInteger cost = getCost(tx.getTransaction());
+        for (PendingTransaction prev : sender.txs.headMap(nonce).values()) {
+            cost = cost.add(getCost(prev.getTransaction()));
+        }
+        if (cost.compareTo(balance) > 0) {
+            ret.error = String.format("Not enough cash: Require: %s, Sender cash: %s", cost, balance);
+            return ret;
+        }
+
+        PendingTransaction existing = sender.txs.get(nonce);
+        if (existing != null) {
+            if (tx.getGasPrice().compareTo(existing.getGasPrice()) <= 0) {
+                ret.error = "Pending transaction with the same nonce and not lower gas price exists: " +
+                        existing.getGasPrice();
+                return ret;
+            }
+            ret.rebuildRequired |= sender.isExecutable(nonce);
+            ret.replaced = existing;
+            removeImpl(key, sender, existing);
+        } else if (size() >= maxSize) {
+            PendingTransaction cheapest = byPrice.first();
+            if (tx.getGasPrice().compareTo(cheapest.getGasPrice()) <= 0) {
+                ret.error = "Pending transactions pool is full, min gas price: " + cheapest.getGasPrice();
+                return ret;
+            }
+            ByteArrayWrapper cheapestKey = new ByteArrayWrapper(cheapest.getSender());
+            SenderTxs cheapestSender = senders.get(cheapestKey);
+            ret.rebuildRequired |= cheapestSender.isExecutable(cheapest.getNonce());
+            ret.evicted = cheapest;
+            removeImpl(cheapestKey, cheapestSender, cheapest);
+        }
+
+        senders.put(key, sender);
+        sender.txs.put(nonce, tx);
+        byPrice.add(tx);
+
+        if (nonce == sender.executableNonce) {
+            sender.extendExecutable();
+            ret.executable = new ArrayList<>(sender.txs.subMap(nonce, sender.executableNonce).values());
+        }
+        return ret;
+    }
+
+    /**
+     * Removes the transaction with the same sender and nonce, the following sender
+     * transactions become queued
+     * @return removed transaction or null if there was no such one
+     */
+    public PendingTransaction remove(Transaction tx) {
+        ByteArrayWrapper key = new ByteArrayWrapper(tx.getSender());
+        SenderTxs sender = senders.get(key);
+        if (sender == null) return null;
+
+        PendingTransaction ret = sender.txs.get(ByteUtil.byteArrayToLong(tx.getNonce()));
+        if (ret != null) {
+            removeImpl(key, sender, ret);
+        }
+        return ret;
+    }
+
+    /**
+     * Checks the sender transactions against the new sender state,
+     * removes those with the outdated nonce and those the sender can't pay for
+     * (in the nonce order, along with the kept ones before them),
+     * promotes the queued transactions which became executable
+     * @return removed transactions
+     */
+    public List<PendingTransaction> revalidate(byte[] senderAddr, long stateNonce, BigInteger balance) {
+        ByteArrayWrapper key = new ByteArrayWrapper(senderAddr);
+        SenderTxs sender = senders.get(key);
+        if (sender == null) return Collections.emptyList();
+
+        List<PendingTransaction> ret = new ArrayList<>();
+        BigInteger totalCost = BigInteger.ZERO;
+        for (PendingTransaction tx : sender.txs.values()) {
+            if (tx.getNonce() < stateNonce) {
+                ret.add(tx);
+                continue;
+            }
+            BigInteger cost = totalCost.add(getCost(tx.getTransaction()));
+            if (cost.compareTo(balance) > 0) {
+                ret.add(tx);
+            } else {
+                totalCost = cost;
+            }
+        }
+        for (PendingTransaction tx : ret) {
+            removeImpl(key, sender, tx);
+        }
+
+        sender.stateNonce = stateNonce;
+        sender.executableNonce = stateNonce;
+        sender.extendExecutable();
+        return ret;
+    }
+
+    /**
+     * Removes transactions added before the block with the specified number
+     * @return removed transactions
+     */
+    public List<PendingTransaction> removeOutdated(long minBlockNumber) {
+        List<PendingTransaction> ret = new ArrayList<>();
+        for (PendingTransaction tx : byPrice) {
+            if (tx.getBlockNumber() < minBlockNumber) {
+                ret.add(tx);
+            }
+        }
+        for (PendingTransaction tx : ret) {
+            ByteArrayWrapper key = new ByteArrayWrapper(tx.getSender());
+            removeImpl(key, senders.get(key), tx);
+        }
+        return ret;
+    }
+
+    public boolean hasSender(byte[] senderAddr) {
+        return senders.containsKey(new ByteArrayWrapper(senderAddr));
+    }
+
+    /**
+     * @return executable transactions ordered by the gas price of the next
+     * sender transaction, the transactions of each sender are in the nonce order
+     */
+    public List<PendingTransaction> getExecutable() {
+        PriorityQueue<PeekingIterator> heads = new PriorityQueue<>(Math.max(1, senders.size()));
+        for (SenderTxs sender : senders.values()) {
+            PeekingIterator it = new PeekingIterator(sender.getExecutable().iterator());
+            if (it.head != null) heads.add(it);
+        }
+
+        List<PendingTransaction> ret = new ArrayList<>();
+        while (!heads.isEmpty()) {
+            PeekingIterator it = heads.poll();
+            ret.add(it.head);
+            if (it.next() != null) heads.add(it);
+        }
+        return ret;
+    }
+
+    /**
+     * @return transactions waiting for the missing nonces
+     */
+    public List<PendingTransaction> getQueued() {
+        List<PendingTransaction> ret = new ArrayList<>();
+        for (SenderTxs sender : senders.values()) {
+            ret.addAll(sender.txs.tailMap(sender.executableNonce).values());
+        }
+        return ret;
+    }
+
+    public List<PendingTransaction> getAll() {
+        List<PendingTransaction> ret = new ArrayList<>(size());
+        for (SenderTxs sender : senders.values()) {
+            ret.addAll(sender.txs.values());
+        }
+        return ret;
+    }
+
+    public int size() {
+        return byPrice.size();
+    }
+
+    private void removeImpl(ByteArrayWrapper key, SenderTxs sender, PendingTransaction tx) {
+        long nonce = tx.getNonce();
+        sender.txs.remove(nonce);
+        byPrice.remove(tx);
+        if (sender.isExecutable(nonce)) {
+            sender.executableNonce = nonce;
+        }
+        if (sender.txs.isEmpty()) {
+            senders.remove(key);
+        }
+    }
+
+    static BigInteger getCost(Transaction tx) {
+        return ByteUtil.bytesToBigInteger(tx.getGasLimit())
+                .multiply(ByteUtil.bytesToBigInteger(tx.getGasPrice()))
+                .add(ByteUtil.bytesToBigInteger(tx.getValue()));
+    }
+
+    private static class PeekingIterator implements Comparable<PeekingIterator> {
+        final Iterator<PendingTransaction> it;
+        PendingTransaction head;
+
+        PeekingIterator(Iterator<PendingTransaction> it) {
+            this.it = it;
+            next();
+        }
+
+        PendingTransaction next() {
+            return head = it.hasNext() ? it.next() : null;
+        }
+
+        @Override
+        public int compareTo(PeekingIterator o) {
+            // the highest price first
+            return o.head.getGasPrice().compareTo(head.getGasPrice());
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.config.SystemProperties;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
+/**
+ * Recovers transaction senders (ECDSA public key recovery) on a pool of threads
+ *
+ * The recovered sender is cached by the {@link Transaction} itself so the following
+ * {@link Transaction#getSender()} calls on the block import or pending state thread
+ * return immediately
+ */
+@Component
+public class SenderRecovery {
+
+    private static final Logger logger = LoggerFactory.getLogger("sync");
+
+    // the recovery takes ~0.1ms so splitting into smaller tasks doesn't pay off
+    private static final int MIN_BATCH = 16;
+
+    private final int threads;
+    private final ExecutorService executor;
+
+    public SenderRecovery() {
+        this(SystemProperties.getDefault());
+    }
+
+    @Autowired
+    public SenderRecovery(SystemProperties config) {
+        int cfgThreads = config.senderRecoveryThreads();
+        threads = cfgThreads > 0 ? cfgThreads : Runtime.getRuntime().availableProcessors();
+        executor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("SenderRecovery-%d").build());
+    }
+
+    /**
+     * Recovers senders of the transactions splitting the work between the pool threads
+     * and the calling thread. Returns when all the senders are recovered
+     */
+    public void recover(List<Transaction> txs) {
+        int batches = Math.min(threads, txs.size() / MIN_BATCH);
+        if (batches < 2) {
+            recoverBatch(txs);
+            return;
+        }
+
+        int batchSize = (txs.size() + batches - 1) / batches;
+        List<Future<?>> futures = new ArrayList<>();
+        for (int from = batchSize; from < txs.size(); from += batchSize) {
+            final List<Transaction> batch = txs.subList(from, Math.min(txs.size(), from + batchSize));
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    recoverBatch(batch);
+                }
+            }));
+        }
+        recoverBatch(txs.subList(0, batchSize));
+
+        for (Future<?> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                logger.error("Unexpected error recovering tx senders", e.getCause());
+            }
+        }
+    }
+
+    private static void recoverBatch(List<Transaction> txs) {
+        for (Transaction tx : txs) {
+            try {
+                tx.getSender();
+            } catch (RuntimeException e) {
+                // invalid transactions are rejected later by the regular validation
+                logger.debug("Error recovering tx sender: " + e);
+            }
+        }
+    }
+
+    @PreDestroy
+    public void close() {
+        executor.shutdownNow();
+    }
+}
@@ -32,9 +32,6 @@ import org.ethereum.crypto.ECKey.MissingPrivateKeyException;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPItem;
-import org.ethereum.util.RLPList;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.BigIntegers;
@@ -190,29 +187,27 @@ public class Transaction {
     public synchronized void rlpParse() {
         if (parsed) return;
         try {
-            RLPList decodedTxList = RLP.decode2(rlpEncoded);
-            RLPList transaction = (RLPList) decodedTxList.get(0);
+            RLP.LList transaction = RLP.decodeLazyList(rlpEncoded);
 
             // Basic verification
             if (transaction.size() > 9 ) throw new RuntimeException("Too many RLP elements");
-            for (RLPElement rlpElement : transaction) {
-                if (!(rlpElement instanceof RLPItem))
+            for (int i = 0; i < transaction.size(); i++) {
+                if (transaction.isList(i))
                     throw new RuntimeException("Transaction RLP elements shouldn't be lists");
             }
 
-            this.nonce = transaction.get(0).getRLPData();
-            this.gasPrice = transaction.get(1).getRLPData();
-            this.gasLimit = transaction.get(2).getRLPData();
-            this.receiveAddress = transaction.get(3).getRLPData();
-            this.value = transaction.get(4).getRLPData();
-            this.data = transaction.get(5).getRLPData();
+            this.nonce = transaction.getBytesOrNull(0);
+            this.gasPrice = transaction.getBytesOrNull(1);
+            this.gasLimit = transaction.getBytesOrNull(2);
+            this.receiveAddress = transaction.getBytesOrNull(3);
+            this.value = transaction.getBytesOrNull(4);
+            this.data = transaction.getBytesOrNull(5);
             // only parse signature in case tx is signed
-            if (transaction.get(6).getRLPData() != null) {
-                byte[] vData =  transaction.get(6).getRLPData();
-                BigInteger v = ByteUtil.bytesToBigInteger(vData);
+            if (!transaction.isEmpty(6)) {
+                BigInteger v = transaction.getBigInteger(6);
                 this.chainId = extractChainIdFromV(v);
-                byte[] r = transaction.get(7).getRLPData();
-                byte[] s = transaction.get(8).getRLPData();
+                byte[] r = transaction.getBytesOrNull(7);
+                byte[] s = transaction.getBytesOrNull(8);
                 this.signature = ECDSASignature.fromComponents(r, s, getRealV(v));
             } else {
                 logger.debug("RLP encoded tx is not signed!");
@@ -384,6 +379,14 @@ public class Transaction {
         return null;
     }
 
+    /**
+     * Sets the sender of the unsigned transaction which is executed locally
+     * (see {@link CallExecutor}) and thus doesn't need the signature
+     */
+    public synchronized void setSender(byte[] sendAddress) {
+        this.sendAddress = sendAddress;
+    }
+
     public Integer getChainId() {
         rlpParse();
         return chainId == null ? null : (int) chainId;
@@ -30,6 +30,7 @@ import org.ethereum.vm.program.Program;
 import org.ethereum.vm.program.ProgramResult;
 import org.ethereum.vm.program.invoke.ProgramInvoke;
 import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
+import org.ethereum.vm.trace.ProgramTraceSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
@@ -43,6 +44,10 @@ import static org.apache.commons.lang3.ArrayUtils.isEmpty;
 import static org.ethereum.util.BIUtil.*;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.ByteUtil.toHexString;
+import static org.ethereum.listener.CompositeEthereumListener.isSubscribed;
+import static org.ethereum.vm.VMUtils.closeQuietly;
+import static org.ethereum.vm.VMUtils.createProgramTraceSink;
+import static org.ethereum.vm.VMUtils.loadProgramTraceJson;
 import static org.ethereum.vm.VMUtils.saveProgramTraceFile;
 import static org.ethereum.vm.VMUtils.zipAndEncode;
 
@@ -78,6 +83,7 @@ public class TransactionExecutor {
 
     private VM vm;
     private Program program;
+    private ProgramTraceSink traceSink;
 
     PrecompiledContracts.PrecompiledContract precompiledContract;
 
@@ -294,6 +300,12 @@ public class TransactionExecutor {
                 // Charge basic cost of the transaction
                 program.spendGas(tx.transactionCost(config.getBlockchainConfig(), currentBlock), "TRANSACTION COST");
 
+                if (config.vmTrace() && config.vmTraceBinary()) {
+                    traceSink = createProgramTraceSink(config, toHexString(tx.getHash()),
+                            program.getTrace().getContractAddress());
+                    if (traceSink != null) program.setTraceSink(traceSink);
+                }
+
                 if (config.playVM())
                     vm.play(program);
 
@@ -423,19 +435,34 @@ public class TransactionExecutor {
         listener.onTransactionExecuted(summary);
 
         if (config.vmTrace() && program != null && result != null) {
-            String trace = program.getTrace()
-                    .result(result.getHReturn())
-                    .error(result.getException())
-                    .toString();
+            String txHash = toHexString(tx.getHash());
+            if (traceSink != null) {
+                // the trace is already on disk, the JSON is only created for the listeners
+                traceSink.onFinish(result.getHReturn(), result.getException());
+                closeQuietly(traceSink);
+                if (isSubscribed(listener, "onVMTraceCreated")) {
+                    String trace = loadProgramTraceJson(config, txHash);
+                    if (trace != null) {
+                        if (config.vmTraceCompressed()) {
+                            trace = zipAndEncode(trace);
+                        }
+                        listener.onVMTraceCreated(txHash, trace);
+                    }
+                }
+            } else {
+                String trace = program.getTrace()
+                        .result(result.getHReturn())
+                        .error(result.getException())
+                        .toString();
 
 
-            if (config.vmTraceCompressed()) {
-                trace = zipAndEncode(trace);
-            }
+                if (config.vmTraceCompressed()) {
+                    trace = zipAndEncode(trace);
+                }
 
-            String txHash = toHexString(tx.getHash());
-            saveProgramTraceFile(config, txHash, trace);
-            listener.onVMTraceCreated(txHash, trace);
+                saveProgramTraceFile(config, txHash, trace);
+                listener.onVMTraceCreated(txHash, trace);
+            }
         }
         return summary;
     }
@@ -57,29 +57,22 @@ public class TransactionReceipt {
 
     public TransactionReceipt(byte[] rlp) {
 
-        RLPList params = RLP.decode2(rlp);
-        RLPList receipt = (RLPList) params.get(0);
-
-        RLPItem postTxStateRLP = (RLPItem) receipt.get(0);
-        RLPItem cumulativeGasRLP = (RLPItem) receipt.get(1);
-        RLPItem bloomRLP = (RLPItem) receipt.get(2);
-        RLPList logs = (RLPList) receipt.get(3);
-        RLPItem gasUsedRLP = (RLPItem) receipt.get(4);
-        RLPItem result = (RLPItem) receipt.get(5);
-
-        postTxState = nullToEmpty(postTxStateRLP.getRLPData());
-        cumulativeGas = cumulativeGasRLP.getRLPData();
-        bloomFilter = new Bloom(bloomRLP.getRLPData());
-        gasUsed = gasUsedRLP.getRLPData();
-        executionResult = (executionResult = result.getRLPData()) == null ? EMPTY_BYTE_ARRAY : executionResult;
+        RLP.LList receipt = RLP.decodeLazyList(rlp);
+
+        postTxState = nullToEmpty(receipt.getBytesOrNull(0));
+        cumulativeGas = receipt.getBytesOrNull(1);
+        bloomFilter = new Bloom(receipt.getBytesOrNull(2));
+        RLP.LList logs = receipt.getList(3);
+        gasUsed = receipt.getBytesOrNull(4);
+        executionResult = nullToEmpty(receipt.getBytesOrNull(5));
 
         if (receipt.size() > 6) {
-            byte[] errBytes = receipt.get(6).getRLPData();
+            byte[] errBytes = receipt.getBytesOrNull(6);
             error = errBytes != null ? new String(errBytes, StandardCharsets.UTF_8) : "";
         }
 
-        for (RLPElement log : logs) {
-            LogInfo logInfo = new LogInfo(log.getRLPData());
+        for (int i = 0; i < logs.size(); i++) {
+            LogInfo logInfo = new LogInfo(logs.getEncoded(i));
             logInfoList.add(logInfo);
         }
 
@@ -96,16 +89,21 @@ public class TransactionReceipt {
     }
 
     public TransactionReceipt(final RLPList rlpList) {
+        this(rlpList == null ? null : RLP.decodeLazyList(rlpList.getRLPData()));
+    }
+
+    public TransactionReceipt(final RLP.LList rlpList) {
         if (rlpList == null || rlpList.size() != 4)
             throw new RuntimeException("Should provide RLPList with postTxState, cumulativeGas, bloomFilter, logInfoList");
 
-        this.postTxState = rlpList.get(0).getRLPData();
-        this.cumulativeGas = rlpList.get(1).getRLPData();
-        this.bloomFilter = new Bloom(rlpList.get(2).getRLPData());
+        this.postTxState = rlpList.getBytesOrNull(0);
+        this.cumulativeGas = rlpList.getBytesOrNull(1);
+        this.bloomFilter = new Bloom(rlpList.getBytesOrNull(2));
 
         List<LogInfo> logInfos = new ArrayList<>();
-        for (RLPElement logInfoEl: (RLPList) rlpList.get(3)) {
-            LogInfo logInfo = new LogInfo(logInfoEl.getRLPData());
+        RLP.LList logs = rlpList.getList(3);
+        for (int i = 0; i < logs.size(); i++) {
+            LogInfo logInfo = new LogInfo(logs.getEncoded(i));
             logInfos.add(logInfo);
         }
         this.logInfoList = logInfos;
@@ -128,6 +128,13 @@ public class ECKey implements Serializable {
     private static final SecureRandom secureRandom;
     private static final long serialVersionUID = -728224901792295832L;
 
+    /**
+     * Whether the optimized secp256k1 implementation ({@link Secp256k1}) is used.
+     * It can be switched off with -Dethereumj.crypto.secp256k1=generic and is switched off automatically
+     * if not supported by the spongycastle version on the classpath
+     */
+    private static final boolean fastSecp256k1;
+
     static {
         // All clients must agree on the curve to use by agreement. Ethereum uses secp256k1.
         X9ECParameters params = SECNamedCurves.getByName("secp256k1");
@@ -135,6 +142,17 @@ public class ECKey implements Serializable {
         CURVE_SPEC = new ECParameterSpec(params.getCurve(), params.getG(), params.getN(), params.getH());
         HALF_CURVE_ORDER = params.getN().shiftRight(1);
         secureRandom = new SecureRandom();
+
+        boolean fast = false;
+        if (!"generic".equals(System.getProperty("ethereumj.crypto.secp256k1"))) {
+            try {
+                fast = Secp256k1.selfTest(CURVE);
+                if (!fast) logger.warn("Optimized secp256k1 self test failed, using the generic implementation");
+            } catch (LinkageError | RuntimeException e) {
+                logger.warn("Optimized secp256k1 is not available, using the generic implementation: " + e);
+            }
+        }
+        fastSecp256k1 = fast;
     }
 
     // The two parts of the key. If "priv" is set, "pub" can always be calculated. If "pub" is set but not "priv", we
@@ -306,7 +324,7 @@ public class ECKey implements Serializable {
      * @return  -
      */
     public static ECKey fromPrivate(BigInteger privKey) {
-        return new ECKey(privKey, CURVE.getG().multiply(privKey));
+        return new ECKey(privKey, publicPointFromPrivate(privKey));
     }
 
     /**
@@ -424,10 +442,21 @@ public class ECKey implements Serializable {
      * @return -
      */
     public static byte[] publicKeyFromPrivate(BigInteger privKey, boolean compressed) {
-        ECPoint point = CURVE.getG().multiply(privKey);
+        ECPoint point = publicPointFromPrivate(privKey);
         return point.getEncoded(compressed);
     }
 
+    private static ECPoint publicPointFromPrivate(BigInteger privKey) {
+        if (fastSecp256k1) {
+            try {
+                return CURVE.getCurve().decodePoint(Secp256k1.publicKey(privKey));
+            } catch (RuntimeException e) {
+                // out of range keys are handled by the generic implementation
+            }
+        }
+        return CURVE.getG().multiply(privKey);
+    }
+
     /**
      * Compute an address from an encoded public key.
      *
@@ -738,7 +767,10 @@ public class ECKey implements Serializable {
         // No decryption of private key required.
         if (privKey == null)
             throw new MissingPrivateKeyException();
-        if (privKey instanceof BCECPrivateKey) {
+        if (privKey instanceof BCECPrivateKey && fastSecp256k1) {
+            BigInteger[] components = Secp256k1.sign(((BCECPrivateKey) privKey).getD(), input);
+            return new ECDSASignature(components[0], components[1]).toCanonicalised();
+        } else if (privKey instanceof BCECPrivateKey) {
             ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
             ECPrivateKeyParameters privKeyParams = new ECPrivateKeyParameters(((BCECPrivateKey) privKey).getD(), CURVE);
             signer.init(true, privKeyParams);
@@ -961,6 +993,13 @@ public class ECKey implements Serializable {
      * @return -
      */
     public static boolean verify(byte[] data, ECDSASignature signature, byte[] pub) {
+        if (fastSecp256k1) {
+            try {
+                return Secp256k1.verify(data, signature.r, signature.s, pub);
+            } catch (RuntimeException e) {
+                // malformed input, let the generic implementation handle it the usual way
+            }
+        }
         ECDSASigner signer = new ECDSASigner();
         ECPublicKeyParameters params = new ECPublicKeyParameters(CURVE.getCurve().decodePoint(pub), CURVE);
         signer.init(false, params);
@@ -1065,6 +1104,13 @@ public class ECKey implements Serializable {
         check(sig.r.signum() >= 0, "r must be positive");
         check(sig.s.signum() >= 0, "s must be positive");
         check(messageHash != null, "messageHash must not be null");
+        if (fastSecp256k1) {
+            try {
+                return Secp256k1.recoverPubBytes(recId, sig.r, sig.s, messageHash);
+            } catch (RuntimeException e) {
+                // malformed signature, let the generic implementation handle it the usual way
+            }
+        }
         // 1.0 For j from 0 to h   (h == recId here and the loop is outside this function)
         //   1.1 Let x = r + jn
         BigInteger n = CURVE.getN();  // Curve order.
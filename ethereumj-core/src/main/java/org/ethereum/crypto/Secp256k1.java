@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.crypto;
+
+import org.spongycastle.asn1.x9.X9ECParameters;
+import org.spongycastle.asn1.x9.X9IntegerConverter;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.ec.CustomNamedCurves;
+import org.spongycastle.crypto.params.ECDomainParameters;
+import org.spongycastle.crypto.params.ECPrivateKeyParameters;
+import org.spongycastle.crypto.params.ECPublicKeyParameters;
+import org.spongycastle.crypto.signers.ECDSASigner;
+import org.spongycastle.crypto.signers.HMacDSAKCalculator;
+import org.spongycastle.math.ec.ECAlgorithms;
+import org.spongycastle.math.ec.ECMultiplier;
+import org.spongycastle.math.ec.ECPoint;
+import org.spongycastle.math.ec.FixedPointCombMultiplier;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.util.Arrays;
+
+/**
+ * Optimized secp256k1 implementation behind {@link ECKey} signing, verification and public key recovery
+ *
+ * Uses the dedicated spongycastle secp256k1 curve instead of the generic one from {@link ECKey#CURVE}:
+ * fixed width 256-bit field arithmetic instead of BigInteger, GLV endomorphism splitting the scalars of
+ * arbitrary point multiplications in halves, windowed NAF multiplication and the comb table precomputed
+ * once for the generator G.
+ *
+ * Points of the two curve implementations can't be mixed, so the methods take and return encoded points
+ */
+class Secp256k1 {
+
+    static final ECDomainParameters CURVE;
+
+    private static final ECMultiplier G_MULTIPLIER = new FixedPointCombMultiplier();
+
+    static {
+        X9ECParameters params = CustomNamedCurves.getByName("secp256k1");
+        CURVE = new ECDomainParameters(params.getCurve(), params.getG(), params.getN(), params.getH());
+    }
+
+    /**
+     * Checks the implementation is consistent with the generic one
+     */
+    static boolean selfTest(ECDomainParameters generic) {
+        BigInteger k = new BigInteger("c85ef7d79691fe79573b1a7064c19c1a9819ebdbd1faaab1a8ec92344438aaf4", 16);
+        return Arrays.equals(publicKey(k), generic.getG().multiply(k).getEncoded(false));
+    }
+
+    /**
+     * @return uncompressed encoded public key of the private key
+     */
+    static byte[] publicKey(BigInteger priv) {
+        return G_MULTIPLIER.multiply(CURVE.getG(), priv).getEncoded(false);
+    }
+
+    static BigInteger[] sign(BigInteger priv, byte[] messageHash) {
+        ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+        signer.init(true, new ECPrivateKeyParameters(priv, CURVE));
+        return signer.generateSignature(messageHash);
+    }
+
+    static boolean verify(byte[] messageHash, BigInteger r, BigInteger s, byte[] pub) {
+        ECDSASigner signer = new ECDSASigner();
+        signer.init(false, new ECPublicKeyParameters(CURVE.getCurve().decodePoint(pub), CURVE));
+        return signer.verifySignature(messageHash, r, s);
+    }
+
+    /**
+     * The same as {@link ECKey#recoverPubBytesFromSignature(int, ECKey.ECDSASignature, byte[])}
+     */
+    @Nullable
+    static byte[] recoverPubBytes(int recId, BigInteger r, BigInteger s, byte[] messageHash) {
+        BigInteger n = CURVE.getN();
+        BigInteger x = r.add(BigInteger.valueOf((long) recId / 2).multiply(n));
+        if (x.compareTo(CURVE.getCurve().getField().getCharacteristic()) >= 0) {
+            return null;
+        }
+
+        X9IntegerConverter x9 = new X9IntegerConverter();
+        byte[] compEnc = x9.integerToBytes(x, 1 + x9.getByteLength(CURVE.getCurve()));
+        compEnc[0] = (byte) ((recId & 1) == 1 ? 0x03 : 0x02);
+        ECPoint R = CURVE.getCurve().decodePoint(compEnc);
+        // the cofactor is 1 so any curve point has order n and the nR == infinity check is skipped
+
+        BigInteger e = new BigInteger(1, messageHash);
+        BigInteger eInv = BigInteger.ZERO.subtract(e).mod(n);
+        BigInteger rInv = r.modInverse(n);
+        BigInteger srInv = rInv.multiply(s).mod(n);
+        BigInteger eInvrInv = rInv.multiply(eInv).mod(n);
+        return ECAlgorithms.sumOfTwoMultiplies(CURVE.getG(), eInvrInv, R, srInv).getEncoded(false);
+    }
+}
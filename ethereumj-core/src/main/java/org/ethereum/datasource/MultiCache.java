@@ -53,6 +53,15 @@ public abstract class MultiCache<V extends CachedSource> extends ReadWriteCache.
         return ownCache;
     }
 
+    /**
+     * @return the local child cache or null if it wasn't created yet or was deleted,
+     * unlike {@link #get(byte[])} never creates the child
+     */
+    public synchronized V getLocal(byte[] key) {
+        AbstractCachedSource.Entry<V> ownCacheEntry = getCached(key);
+        return ownCacheEntry == null ? null : ownCacheEntry.value();
+    }
+
     /**
      * each child is just flushed if it has backing Source or the whole
      * child cache is put to the MultiCache backing source
@@ -25,14 +25,15 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Caches entries get/updated and use LRU algo to purge them if the number
  * of entries exceeds threshold.
  *
- * This implementation could extended to estimate cached data size for
- * more accurate size restriction, but if entries are more or less
- * of the same size the entries count would be good enough
+ * The cache can also be bounded by the estimated size of entries (see {@link #withMaxSize(long)}),
+ * in that case the entries are kept in the lock striped {@link SegmentedCacheMap} which
+ * doesn't admit rarely accessed entries in place of frequently accessed ones
  *
  * Another implementation idea is heap sensitive read cache based on
  * SoftReferences, when the cache occupies all the available heap
@@ -47,6 +48,10 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
     private Map<Key, Value> cache;
     private boolean byteKeyMap;
 
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
     public ReadCache(Source<Key, Value> src) {
         super(src);
         withCache(new HashMap<Key, Value>());
@@ -56,8 +61,16 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
      * Installs the specific cache Map implementation
      */
     public ReadCache<Key, Value> withCache(Map<Key, Value> cache) {
-        byteKeyMap = cache instanceof ByteArrayMap;
-        this.cache = Collections.synchronizedMap(cache);
+        return withCache(Collections.synchronizedMap(cache), cache instanceof ByteArrayMap);
+    }
+
+    /**
+     * Installs the thread safe cache Map implementation
+     */
+    protected ReadCache<Key, Value> withCache(Map<Key, Value> threadSafeCache, boolean byteKeyMap) {
+        this.byteKeyMap = byteKeyMap;
+        this.cache = threadSafeCache;
+        cacheCleared();
         return this;
     }
 
@@ -68,12 +81,62 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         return withCache(new LRUMap<Key, Value>(maxCapacity) {
             @Override
             protected boolean removeLRU(LinkEntry<Key, Value> entry) {
-                cacheRemoved(entry.getKey(), entry.getValue());
+                evicted(entry.getKey(), entry.getValue());
                 return super.removeLRU(entry);
             }
         });
     }
 
+    /**
+     * Sets the max estimated size of cached entries in bytes.
+     * The size is estimated with the key/value estimators set
+     * by {@link #withSizeEstimators(MemSizeEstimator, MemSizeEstimator)}
+     */
+    public ReadCache<Key, Value> withMaxSize(long maxSize) {
+        return withCache(new SegmentedCacheMap<Key, Value>(maxSize, keySizeEstimator, nullAwareEstimator()) {
+            @Override
+            protected void onEvicted(Key key, Value value) {
+                evicted(key, value);
+            }
+        }, false);
+    }
+
+    protected MemSizeEstimator<Value> nullAwareEstimator() {
+        if (valueSizeEstimator == null) return null;
+        return new MemSizeEstimator<Value>() {
+            @Override
+            public long estimateSize(Value value) {
+                return value == NULL ? 0 : valueSizeEstimator.estimateSize(value);
+            }
+        };
+    }
+
+    protected void evicted(Key key, Value value) {
+        evictions.incrementAndGet();
+        cacheRemoved(key, value == NULL ? null : value);
+    }
+
+    /**
+     * @return number of get requests served from the cache, including cached nulls
+     */
+    public long getHitCount() {
+        return hits.get();
+    }
+
+    /**
+     * @return number of get requests passed to the underlying source
+     */
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    /**
+     * @return number of entries evicted from the cache or not admitted to it
+     */
+    public long getEvictionCount() {
+        return evictions.get();
+    }
+
     // the guard against incorrect Map implementation for byte[] keys
     private boolean checked = false;
     private void checkByteArrKey(Key key) {
@@ -93,7 +156,8 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         if (val == null) {
             delete(key);
         } else {
-            cache.put(key, val);
+            Value old = cache.put(key, val);
+            if (old != null) cacheRemoved(key, old == NULL ? null : old);
             cacheAdded(key, val);
             getSource().put(key, val);
         }
@@ -104,9 +168,13 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
         checkByteArrKey(key);
         Value ret = cache.get(key);
         if (ret == NULL) {
+            hits.incrementAndGet();
             return null;
         }
-        if (ret == null) {
+        if (ret != null) {
+            hits.incrementAndGet();
+        } else {
+            misses.incrementAndGet();
             ret = getSource().get(key);
             cache.put(key, ret == null ? NULL : ret);
             cacheAdded(key, ret);
@@ -118,7 +186,7 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
     public void delete(Key key) {
         checkByteArrKey(key);
         Value value = cache.remove(key);
-        cacheRemoved(key, value);
+        if (value != null) cacheRemoved(key, value == NULL ? null : value);
         getSource().delete(key);
     }
 
@@ -137,7 +205,7 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
     }
 
     @Override
-    public synchronized Entry<Value> getCached(Key key) {
+    public Entry<Value> getCached(Key key) {
         Value value = cache.get(key);
         return value == null ? null : new SimpleEntry<>(value == NULL ? null : value);
     }
@@ -157,11 +225,29 @@ public class ReadCache<Key, Value> extends AbstractCachedSource<Key, Value> {
             withCache(new ByteArrayMap<V>(new LRUMap<ByteArrayWrapper, V>(maxCapacity) {
                 @Override
                 protected boolean removeLRU(LinkEntry<ByteArrayWrapper, V> entry) {
-                    cacheRemoved(entry.getKey().getData(), entry.getValue());
+                    evicted(entry.getKey().getData(), entry.getValue());
                     return super.removeLRU(entry);
                 }
             }));
             return this;
         }
+
+        public ReadCache.BytesKey<V> withMaxSize(long maxSize) {
+            final MemSizeEstimator<byte[]> keyEstimator = keySizeEstimator;
+            MemSizeEstimator<ByteArrayWrapper> wrapperEstimator = keyEstimator == null ? null :
+                    new MemSizeEstimator<ByteArrayWrapper>() {
+                        @Override
+                        public long estimateSize(ByteArrayWrapper key) {
+                            return keyEstimator.estimateSize(key.getData());
+                        }
+                    };
+            withCache(new ByteArrayMap<V>(new SegmentedCacheMap<ByteArrayWrapper, V>(maxSize, wrapperEstimator, nullAwareEstimator()) {
+                @Override
+                protected void onEvicted(ByteArrayWrapper key, V value) {
+                    evicted(key.getData(), value);
+                }
+            }), true);
+            return this;
+        }
     }
 }
@@ -0,0 +1,294 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.datasource;
+
+import java.util.*;
+
+/**
+ * Thread safe cache Map bounded by the estimated memory size of its entries
+ *
+ * Entries are spread over independently locked segments, each segment keeps
+ * its entries in the LRU order and has its own share of the size limit.
+ * When the segment is full the new entry is admitted only if it was accessed
+ * more frequently than the LRU entry it would evict (TinyLFU), so a one-pass scan
+ * over many keys doesn't flush the frequently used entries.
+ * Access frequencies are approximated with a count-min sketch which is periodically
+ * halved to let the cache adapt to the changing workload
+ *
+ * Both evicted and not admitted entries are reported to {@link #onEvicted(Object, Object)}
+ */
+public class SegmentedCacheMap<K, V> extends AbstractMap<K, V> {
+
+    // approx overhead of a LinkedHashMap entry with references
+    static final int ENTRY_OVERHEAD = 64;
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final long MIN_SEGMENT_SIZE = 64 * 1024;
+
+    private final MemSizeEstimator<K> keySizeEstimator;
+    private final MemSizeEstimator<V> valueSizeEstimator;
+    private final List<Segment> segments;
+    private final int segmentShift;
+
+    /**
+     * @param maxSize max estimated size of entries in bytes
+     * @param keySizeEstimator key size estimator, null if keys size should be ignored
+     * @param valueSizeEstimator value size estimator, null if values size should be ignored
+     */
+    public SegmentedCacheMap(long maxSize, MemSizeEstimator<K> keySizeEstimator, MemSizeEstimator<V> valueSizeEstimator) {
+        this.keySizeEstimator = keySizeEstimator;
+        this.valueSizeEstimator = valueSizeEstimator;
+
+        int bits = 0;
+        while ((1 << bits) < MAX_SEGMENTS && maxSize >> (bits + 1) >= MIN_SEGMENT_SIZE) bits++;
+        segments = new ArrayList<>(1 << bits);
+        for (int i = 0; i < 1 << bits; i++) {
+            segments.add(new Segment(maxSize >> bits));
+        }
+        segmentShift = 32 - bits;
+    }
+
+    /**
+     * Called for the entry evicted by the LRU policy or rejected by the admission policy.
+     * The segment lock is held during the call
+     */
+    protected void onEvicted(K key, V value) {}
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments.get(segmentShift == 32 ? 0 : hash >>> segmentShift);
+    }
+
+    private long estimateSize(K key, V value) {
+        long ret = ENTRY_OVERHEAD;
+        if (keySizeEstimator != null) ret += keySizeEstimator.estimateSize(key);
+        if (valueSizeEstimator != null) ret += valueSizeEstimator.estimateSize(value);
+        return ret;
+    }
+
+    @Override
+    public V get(Object key) {
+        int hash = hash(key);
+        return segmentFor(hash).get(key, hash);
+    }
+
+    @Override
+    public V put(K key, V value) {
+        int hash = hash(key);
+        return segmentFor(hash).put(key, value, hash);
+    }
+
+    @Override
+    public V remove(Object key) {
+        int hash = hash(key);
+        return segmentFor(hash).remove(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        int hash = hash(key);
+        Segment segment = segmentFor(hash);
+        synchronized (segment) {
+            return segment.map.containsKey(key);
+        }
+    }
+
+    @Override
+    public int size() {
+        int ret = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                ret += segment.map.size();
+            }
+        }
+        return ret;
+    }
+
+    @Override
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.map.clear();
+                segment.size = 0;
+            }
+        }
+    }
+
+    /**
+     * @return the snapshot of entries
+     */
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        Set<Entry<K, V>> ret = new HashSet<>();
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                for (Entry<K, V> entry : segment.map.entrySet()) {
+                    ret.add(new SimpleImmutableEntry<>(entry));
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return the estimated size of cached entries in bytes
+     */
+    public long getEstimatedSize() {
+        long ret = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                ret += segment.size;
+            }
+        }
+        return ret;
+    }
+
+    private final class Segment {
+        final LinkedHashMap<K, V> map = new LinkedHashMap<>(16, 0.75f, true);
+        final FrequencySketch sketch;
+        final long maxSize;
+        long size;
+
+        Segment(long maxSize) {
+            this.maxSize = maxSize;
+            this.sketch = new FrequencySketch(maxSize / 128);
+        }
+
+        synchronized V get(Object key, int hash) {
+            sketch.increment(hash);
+            return map.get(key);
+        }
+
+        synchronized V put(K key, V value, int hash) {
+            long entrySize = estimateSize(key, value);
+            V old = map.get(key);
+            if (old != null) {
+                // updates are always accepted
+                map.put(key, value);
+                size += entrySize - estimateSize(key, old);
+                evictOverflow();
+                return old;
+            }
+
+            if (entrySize > maxSize) {
+                onEvicted(key, value);
+                return null;
+            }
+            int frequency = sketch.frequency(hash);
+            while (size + entrySize > maxSize) {
+                Entry<K, V> victim = map.entrySet().iterator().next();
+                if (frequency <= sketch.frequency(hash(victim.getKey()))) {
+                    onEvicted(key, value);
+                    return null;
+                }
+                evict(victim);
+            }
+            map.put(key, value);
+            size += entrySize;
+            return null;
+        }
+
+        synchronized V remove(Object key) {
+            V ret = map.remove(key);
+            if (ret != null) {
+                // the key was found in the map so it is K
+                @SuppressWarnings("unchecked")
+                K k = (K) key;
+                size -= estimateSize(k, ret);
+            }
+            return ret;
+        }
+
+        private void evictOverflow() {
+            while (size > maxSize && map.size() > 1) {
+                evict(map.entrySet().iterator().next());
+            }
+        }
+
+        private void evict(Entry<K, V> victim) {
+            K key = victim.getKey();
+            V value = victim.getValue();
+            map.remove(key);
+            size -= estimateSize(key, value);
+            onEvicted(key, value);
+        }
+    }
+
+    /**
+     * Count-min sketch with 4 rows of 4-bit counters kept in bytes.
+     * Counters are halved once the number of increments reaches 10 times the width
+     */
+    static final class FrequencySketch {
+        private static final int[] SEEDS = {0x97CB3127, 0xB1A83721, 0x85EBCA6B, 0xC2B2AE35};
+        private static final int MAX_WIDTH = 1 << 22;
+
+        private final byte[] table;
+        private final int mask;
+        private final int width;
+        private final int sampleSize;
+        private int additions;
+
+        FrequencySketch(long expectedEntries) {
+            int w = 16;
+            while (w < expectedEntries && w < MAX_WIDTH) w <<= 1;
+            width = w;
+            mask = w - 1;
+            table = new byte[w * SEEDS.length];
+            sampleSize = 10 * w;
+        }
+
+        private int index(int hash, int row) {
+            int h = hash * SEEDS[row];
+            h ^= h >>> 15;
+            return row * width + (h & mask);
+        }
+
+        void increment(int hash) {
+            boolean added = false;
+            for (int i = 0; i < SEEDS.length; i++) {
+                int idx = index(hash, i);
+                if (table[idx] < 15) {
+                    table[idx]++;
+                    added = true;
+                }
+            }
+            if (added && ++additions >= sampleSize) {
+                reset();
+            }
+        }
+
+        int frequency(int hash) {
+            int ret = 15;
+            for (int i = 0; i < SEEDS.length; i++) {
+                ret = Math.min(ret, table[index(hash, i)]);
+            }
+            return ret;
+        }
+
+        private void reset() {
+            for (int i = 0; i < table.length; i++) {
+                table[i] >>= 1;
+            }
+            additions /= 2;
+        }
+    }
+}
@@ -80,15 +80,10 @@ public class LevelDbDataSource implements DbSource<byte[]> {
 
             if (name == null) throw new NullPointerException("no name set to the db");
 
-            Options options = new Options();
-            options.createIfMissing(true);
-            options.compressionType(CompressionType.NONE);
-            options.blockSize(10 * 1024 * 1024);
-            options.writeBufferSize(10 * 1024 * 1024);
-            options.cacheSize(0);
-            options.paranoidChecks(true);
-            options.verifyChecksums(true);
-            options.maxOpenFiles(32);
+            Options options = config.levelDbOptions(name);
+            logger.debug("LevelDB options for '{}': cacheSize={}, blockSize={}, writeBufferSize={}, maxOpenFiles={}, compression={}",
+                    name, options.cacheSize(), options.blockSize(), options.writeBufferSize(),
+                    options.maxOpenFiles(), options.compressionType());
 
             try {
                 logger.debug("Opening database");
@@ -269,6 +264,19 @@ public class LevelDbDataSource implements DbSource<byte[]> {
         }
     }
 
+    /**
+     * Returns the LevelDB internal statistics (the 'leveldb.stats' property):
+     * number of files, size and compaction stats per level
+     */
+    public String getStats() {
+        resetDbLock.readLock().lock();
+        try {
+            return isAlive() ? db.getProperty("leveldb.stats") : null;
+        } finally {
+            resetDbLock.readLock().unlock();
+        }
+    }
+
     @Override
     public boolean flush() {
         return false;
@@ -0,0 +1,204 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Bloom;
+import org.ethereum.datasource.Source;
+import org.ethereum.util.ByteUtil;
+import org.spongycastle.util.encoders.Hex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Rotated index of block log blooms: (section, bloom bit) => bit vector over section blocks
+ *
+ * The chain is split into sections of {@link #SECTION_SIZE} blocks. For every section and
+ * every one of the 2048 bloom bits the index keeps a {@link #SECTION_SIZE} bit vector where
+ * the bit N is set if the bloom of the block (section * SECTION_SIZE + N) has that bloom bit set.
+ * Vectors with no bits set are not stored at all, so a block with empty bloom costs nothing.
+ *
+ * Answering a log query for a section thus takes at most a few vector reads
+ * (three per each filter bloom) instead of reading every block header of the section.
+ *
+ * Blocks are indexed by number regardless of whether they are on the main chain or not, so the
+ * index may return false positives for blocks which were rebranched out. Callers are expected
+ * to check the actual block bloom of the returned candidates.
+ *
+ * Blocks imported before the index was created are not covered, see {@link #getFirstIndexedBlock()}
+ */
+public class BloomIndex {
+
+    public static final int SECTION_SIZE = 4096;
+    static final int BLOOM_BITS = 2048;
+    private static final int VECTOR_BYTES = SECTION_SIZE / 8;
+
+    static final byte[] FIRST_INDEXED_KEY = Hex.decode("FFFFFFFFFFFFFFFFFFFF");
+
+    private final Source<byte[], byte[]> src;
+    private long firstIndexed = -1;
+
+    public BloomIndex(Source<byte[], byte[]> src) {
+        this.src = src;
+    }
+
+    /**
+     * Adds the block bloom to the index
+     */
+    public synchronized void addBlock(long blockNumber, byte[] logBloom) {
+        long first = getFirstIndexedBlock();
+        if (first == Long.MAX_VALUE || blockNumber == first - 1) {
+            // the very first indexed block or the covered range is extended backward
+            // (the index stays valid only while the covered range is contiguous)
+            firstIndexed = blockNumber;
+            src.put(FIRST_INDEXED_KEY, ByteUtil.longToBytes(blockNumber));
+        }
+
+        long section = blockNumber / SECTION_SIZE;
+        int sectionIdx = (int) (blockNumber % SECTION_SIZE);
+        for (int i = 0; i < logBloom.length; i++) {
+            if (logBloom[i] == 0) continue;
+            for (int j = 0; j < 8; j++) {
+                if ((logBloom[i] & (1 << j)) != 0) {
+                    setVectorBit(section, i * 8 + j, sectionIdx);
+                }
+            }
+        }
+    }
+
+    private void setVectorBit(long section, int bloomBit, int sectionIdx) {
+        byte[] key = vectorKey(section, bloomBit);
+        byte[] vector = src.get(key);
+        // never modify the array returned from the source since it may be cached
+        vector = vector == null ? new byte[VECTOR_BYTES] : Arrays.copyOf(vector, VECTOR_BYTES);
+        vector[sectionIdx >> 3] |= 1 << (sectionIdx & 7);
+        src.put(key, vector);
+    }
+
+    /**
+     * @return the number of the first block covered by the index or
+     * Long.MAX_VALUE if no blocks were indexed yet
+     */
+    public synchronized long getFirstIndexedBlock() {
+        if (firstIndexed < 0) {
+            byte[] bytes = src.get(FIRST_INDEXED_KEY);
+            firstIndexed = bytes == null ? Long.MAX_VALUE : ByteUtil.byteArrayToLong(bytes);
+        }
+        return firstIndexed;
+    }
+
+    /**
+     * Returns numbers of blocks within [fromBlock, toBlock] range which blooms may match the filter.
+     * Only the indexed part of the range (see {@link #getFirstIndexedBlock()}) is considered
+     *
+     * @param filterBlooms AND list of OR lists of blooms (see LogFilter). Empty bloom matches any block
+     * @return ascending list of candidate block numbers
+     */
+    public List<Long> getMatchingBlocks(Bloom[][] filterBlooms, long fromBlock, long toBlock) {
+        List<Long> ret = new ArrayList<>();
+        fromBlock = Math.max(fromBlock, getFirstIndexedBlock());
+        if (fromBlock > toBlock) return ret;
+
+        for (long section = fromBlock / SECTION_SIZE; section <= toBlock / SECTION_SIZE; section++) {
+            byte[] matches = matchSection(section, filterBlooms);
+            if (matches == null) continue;
+
+            long sectionStart = section * SECTION_SIZE;
+            int from = (int) (Math.max(fromBlock, sectionStart) - sectionStart);
+            int to = (int) (Math.min(toBlock, sectionStart + SECTION_SIZE - 1) - sectionStart);
+            for (int i = from; i <= to; i++) {
+                if ((matches[i >> 3] & (1 << (i & 7))) != 0) {
+                    ret.add(sectionStart + i);
+                }
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @return bit vector of section blocks matching the filter or null if none matches
+     */
+    private byte[] matchSection(long section, Bloom[][] filterBlooms) {
+        byte[] andVector = null;
+        for (Bloom[] orBlooms : filterBlooms) {
+            byte[] orVector = null;
+            for (Bloom orBloom : orBlooms) {
+                byte[] bloomVector = matchBloom(section, orBloom);
+                if (bloomVector == null) continue;
+                if (orVector == null) {
+                    orVector = bloomVector;
+                } else {
+                    for (int i = 0; i < VECTOR_BYTES; i++) orVector[i] |= bloomVector[i];
+                }
+            }
+            if (orVector == null) return null;
+            if (andVector == null) {
+                andVector = orVector;
+            } else {
+                boolean empty = true;
+                for (int i = 0; i < VECTOR_BYTES; i++) {
+                    andVector[i] &= orVector[i];
+                    empty &= andVector[i] == 0;
+                }
+                if (empty) return null;
+            }
+        }
+        return andVector;
+    }
+
+    /**
+     * @return vector of section blocks containing all the bloom bits or null if none
+     */
+    private byte[] matchBloom(long section, Bloom bloom) {
+        byte[] data = bloom.getData();
+        byte[] ret = null;
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == 0) continue;
+            for (int j = 0; j < 8; j++) {
+                if ((data[i] & (1 << j)) == 0) continue;
+                byte[] vector = src.get(vectorKey(section, i * 8 + j));
+                if (vector == null) return null;
+                if (ret == null) {
+                    ret = Arrays.copyOf(vector, VECTOR_BYTES);
+                } else {
+                    for (int k = 0; k < VECTOR_BYTES; k++) ret[k] &= vector[k];
+                }
+            }
+        }
+        if (ret == null) {
+            // empty bloom matches everything
+            ret = new byte[VECTOR_BYTES];
+            Arrays.fill(ret, (byte) 0xFF);
+        }
+        return ret;
+    }
+
+    static byte[] vectorKey(long section, int bloomBit) {
+        if (bloomBit >= BLOOM_BITS) throw new IllegalArgumentException("Invalid bloom bit: " + bloomBit);
+        byte[] key = new byte[10];
+        System.arraycopy(ByteUtil.longToBytes(section), 0, key, 0, 8);
+        key[8] = (byte) (bloomBit >> 8);
+        key[9] = (byte) bloomBit;
+        return key;
+    }
+
+    public boolean flush() {
+        return src.flush();
+    }
+}
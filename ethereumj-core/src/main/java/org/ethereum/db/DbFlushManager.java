@@ -27,6 +27,7 @@ import org.ethereum.datasource.AbstractCachedSource;
 import org.ethereum.datasource.AsyncFlushable;
 import org.ethereum.datasource.DbSource;
 import org.ethereum.datasource.WriteCache;
+import org.ethereum.datasource.leveldb.LevelDbDataSource;
 import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListenerAdapter;
 import org.slf4j.Logger;
@@ -47,7 +48,9 @@ public class DbFlushManager {
 
     List<AbstractCachedSource<byte[], byte[]>> writeCaches = new ArrayList<>();
     Set<DbSource> dbSources = new HashSet<>();
-    AbstractCachedSource<byte[], byte[]> stateDbCache;
+    // the caches in front of the physical DBs, flushed after all the writeCaches in the flush order
+    List<AbstractCachedSource<byte[], byte[]>> dbCaches = new CopyOnWriteArrayList<>();
+    private final List<Integer> dbCachesOrder = new ArrayList<>();
 
     long sizeThreshold;
     int commitsCountThreshold;
@@ -63,13 +66,19 @@ public class DbFlushManager {
             executorQueue, new ThreadFactoryBuilder().setNameFormat("DbFlushManagerThread-%d").build());
     Future<Boolean> lastFlush = Futures.immediateFuture(false);
 
-    public DbFlushManager(SystemProperties config, Set<DbSource> dbSources, AbstractCachedSource<byte[], byte[]> stateDbCache) {
+    public DbFlushManager(SystemProperties config, Set<DbSource> dbSources) {
         this.config = config;
         this.dbSources = dbSources;
         sizeThreshold = config.getConfig().getInt("cache.flush.writeCacheSize") * 1024 * 1024;
         commitsCountThreshold = config.getConfig().getInt("cache.flush.blocks");
         flushAfterSyncDone = config.getConfig().getBoolean("cache.flush.shortSyncFlush");
-        this.stateDbCache = stateDbCache;
+    }
+
+    public DbFlushManager(SystemProperties config, Set<DbSource> dbSources, AbstractCachedSource<byte[], byte[]> stateDbCache) {
+        this(config, dbSources);
+        if (stateDbCache != null) {
+            addDbCache(stateDbCache);
+        }
     }
 
     @Autowired
@@ -94,6 +103,29 @@ public class DbFlushManager {
         writeCaches.add(cache);
     }
 
+    /**
+     * Adds the cache in front of a physical DB flushed after the DB caches added before
+     */
+    public void addDbCache(AbstractCachedSource<byte[], byte[]> dbCache) {
+        addDbCache(dbCache, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Adds the cache in front of a physical DB. The DB caches are flushed after all the other
+     * caches have been flushed to them, in the ascending flushOrder (in the order they were
+     * added when the flushOrder is the same).
+     * Each DB cache is written to its DB atomically but a crash can interrupt the flush between
+     * the DBs, so the data referred by other DBs should be flushed before them
+     */
+    public void addDbCache(AbstractCachedSource<byte[], byte[]> dbCache, int flushOrder) {
+        synchronized (dbCachesOrder) {
+            int i = 0;
+            while (i < dbCachesOrder.size() && dbCachesOrder.get(i) <= flushOrder) i++;
+            dbCachesOrder.add(i, flushOrder);
+            dbCaches.add(i, dbCache);
+        }
+    }
+
     public long getCacheSize() {
         long ret = 0;
         for (AbstractCachedSource<byte[], byte[]> writeCache : writeCaches) {
@@ -170,12 +202,21 @@ public class DbFlushManager {
                         ret |= writeCache.flush();
                     }
                 }
-                if (stateDbCache != null) {
-                    logger.debug("Flushing to DB");
-                    stateDbCache.flush();
+                logger.debug("Flushing to DB");
+                for (AbstractCachedSource<byte[], byte[]> dbCache : dbCaches) {
+                    dbCache.flush();
                 }
                 logger.info("Flush completed in " + (System.nanoTime() - s) / 1000000 + " ms");
 
+                if (logger.isDebugEnabled()) {
+                    for (DbSource dbSource : dbSources) {
+                        if (dbSource instanceof LevelDbDataSource) {
+                            logger.debug("LevelDB '{}' stats:\n{}", dbSource.getName(),
+                                    ((LevelDbDataSource) dbSource).getStats());
+                        }
+                    }
+                }
+
                 return ret;
             }
         });
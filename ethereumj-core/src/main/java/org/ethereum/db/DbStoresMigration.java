@@ -0,0 +1,343 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Block;
+import org.ethereum.core.Transaction;
+import org.ethereum.datasource.*;
+import org.ethereum.datasource.leveldb.LevelDbDataSource;
+import org.ethereum.listener.EthereumListener;
+import org.ethereum.sync.FastSyncManager;
+import org.ethereum.util.RLP;
+import org.ethereum.util.RLPElement;
+import org.ethereum.util.RLPList;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.*;
+import java.util.*;
+
+import static org.ethereum.crypto.HashUtil.*;
+
+/**
+ * Offline migration of the database version 5 where all the logical stores were kept in the
+ * single 'blockchain' DB with the keys XOR-ed by sha3(storeName) to the separate DB per store
+ *
+ * The legacy keys can't be attributed to the stores by themselves, so the stores are copied
+ * by walking their contents starting from the blocks index:
+ *  - index, blocks, transactions and prune journal of all the indexed blocks
+ *  - bloom index sections covering the indexed blocks
+ *  - state and contract storage trie nodes and contracts code reachable from the state roots
+ *    of the indexed blocks (the nodes pruned already are skipped)
+ * The flat state and the precompiled contracts are not copied, they are rebuilt when needed.
+ * A database with the fast sync state download in progress can't be migrated.
+ *
+ * The legacy DB is renamed to 'blockchain-legacy' and left for manual removal
+ */
+public class DbStoresMigration {
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    public static final int LEGACY_VERSION = 5;
+    public static final String LEGACY_DB_NAME = "blockchain-legacy";
+
+    private static final int BATCH_SIZE = 50_000;
+
+    // see CountingBytesSource
+    private static final byte[] COUNTING_FILTER_KEY = sha3("countingStateFilter".getBytes());
+
+    private static final byte[][] FASTSYNC_KEYS = {
+            FastSyncManager.FASTSYNC_DB_KEY_SYNC_STAGE,
+            FastSyncManager.FASTSYNC_DB_KEY_PIVOT,
+            FastSyncManager.FASTSYNC_DB_KEY_STATE_PIVOT
+    };
+
+    /**
+     * Copies the logical store from the legacy DB to the new one in batches
+     */
+    private class Store {
+        final String name;
+        final Source<byte[], byte[]> legacy;
+        final DbSource<byte[]> db;
+        final WriteCache<byte[], byte[]> dst;
+        long count;
+
+        Store(String name) {
+            this.name = name;
+            this.legacy = new XorDataSource<>(legacyDb, sha3(name.getBytes()));
+            this.db = openDB(name);
+            this.dst = new WriteCache.BytesKey<>(new BatchSourceWriter<>(db), WriteCache.CacheType.SIMPLE);
+            this.dst.setFlushSource(true);
+        }
+
+        /**
+         * @return the copied value or null if the key is absent
+         */
+        byte[] copy(byte[] key) {
+            byte[] val = legacy.get(key);
+            if (val != null) put(key, val);
+            return val;
+        }
+
+        void put(byte[] key, byte[] val) {
+            dst.put(key, val);
+            if (++count % BATCH_SIZE == 0) {
+                dst.flush();
+            }
+        }
+
+        boolean contains(byte[] key) {
+            return dst.get(key) != null;
+        }
+
+        void close() {
+            dst.flush();
+            db.close();
+            logger.info("Store '{}' migrated: {} entries", name, count);
+        }
+    }
+
+    private final SystemProperties config;
+    private DbSource<byte[]> legacyDb;
+    private long missingNodes;
+
+    public DbStoresMigration(SystemProperties config) {
+        this.config = config;
+    }
+
+    /**
+     * Migrates the database if it has the legacy layout
+     * @return true if the database was migrated
+     */
+    public boolean migrate() {
+        File versionFile = new File(config.databaseDir(), "version.properties");
+        Integer version = readVersion(versionFile);
+        if (version == null || version != LEGACY_VERSION) {
+            logger.info("Database version {} can't be migrated to {}", version, config.databaseVersion());
+            return false;
+        }
+
+        File legacyDir = new File(config.databaseDir(), LEGACY_DB_NAME);
+        if (!legacyDir.exists()) {
+            DbSource<byte[]> blockchainDb = new LevelDbDataSource("blockchain");
+            blockchainDb.init();
+            try {
+                byte[] stage = blockchainDb.get(FastSyncManager.FASTSYNC_DB_KEY_SYNC_STAGE);
+                if (stage != null && EthereumListener.SyncState.values()[stage[0]] == EthereumListener.SyncState.UNSECURE) {
+                    logger.error("Database with uncompleted fast sync state download can't be migrated, reset it instead");
+                    return false;
+                }
+            } finally {
+                blockchainDb.close();
+            }
+
+            File blockchainDir = new File(config.databaseDir(), "blockchain");
+            if (!blockchainDir.renameTo(legacyDir)) {
+                throw new RuntimeException("Couldn't rename " + blockchainDir + " to " + legacyDir);
+            }
+        }
+        // else the previous migration attempt was interrupted, it starts over
+
+        logger.info("Migrating database '{}' to version {}...", config.databaseDir(), config.databaseVersion());
+        legacyDb = openDB(LEGACY_DB_NAME);
+        try {
+            DbSource<byte[]> blockchainDb = openDB("blockchain");
+            for (byte[] key : FASTSYNC_KEYS) {
+                byte[] val = legacyDb.get(key);
+                if (val != null) blockchainDb.put(key, val);
+            }
+            blockchainDb.close();
+
+            List<byte[]> stateRoots = migrateBlocks();
+            migrateState(stateRoots);
+        } finally {
+            legacyDb.close();
+        }
+
+        writeVersion(versionFile, config.databaseVersion());
+        logger.info("Database migrated, the legacy DB '{}' can be removed", legacyDir);
+        return true;
+    }
+
+    /**
+     * Copies index, block, transactions, journal and bloomIndex stores
+     * @return state roots of the indexed blocks, the best ones first
+     */
+    private List<byte[]> migrateBlocks() {
+        Store index = new Store("index");
+        Store blocks = new Store("block");
+        Store txs = new Store("transactions");
+        Store journal = new Store("journal");
+        Store bloomIndex = new Store("bloomIndex");
+
+        DataSourceArray<List<IndexedBlockStore.BlockInfo>> legacyIndex = new DataSourceArray<>(
+                new ObjectDataSource<>(index.legacy, IndexedBlockStore.BLOCK_INFO_SERIALIZER, 0));
+        DataSourceArray<List<IndexedBlockStore.BlockInfo>> dstIndex = new DataSourceArray<>(
+                new ObjectDataSource<>(index.dst, IndexedBlockStore.BLOCK_INFO_SERIALIZER, 0));
+
+        List<byte[]> stateRoots = new ArrayList<>();
+        int size = legacyIndex.size();
+        for (int i = 0; i < size; i++) {
+            List<IndexedBlockStore.BlockInfo> infos = legacyIndex.get(i);
+            if (infos == null) continue;
+            dstIndex.set(i, infos);
+            index.count++;
+
+            for (IndexedBlockStore.BlockInfo info : infos) {
+                byte[] blockRlp = blocks.copy(info.getHash());
+                if (blockRlp == null) {
+                    logger.warn("Block #{} {} is missing", i, Hex.toHexString(info.getHash()));
+                    continue;
+                }
+                journal.copy(info.getHash());
+
+                Block block = new Block(blockRlp);
+                stateRoots.add(block.getStateRoot());
+                for (Transaction tx : block.getTransactionsList()) {
+                    txs.copy(tx.getHash());
+                }
+            }
+
+            if (i % 10_000 == 0) {
+                index.dst.flush();
+                logger.info("Migrated blocks: {} of {}", i, size);
+            }
+        }
+        Collections.reverse(stateRoots);
+
+        byte[] firstIndexed = bloomIndex.copy(BloomIndex.FIRST_INDEXED_KEY);
+        if (firstIndexed != null) {
+            for (long section = 0; section <= size / BloomIndex.SECTION_SIZE; section++) {
+                for (int bit = 0; bit < BloomIndex.BLOOM_BITS; bit++) {
+                    bloomIndex.copy(BloomIndex.vectorKey(section, bit));
+                }
+            }
+        }
+
+        index.close();
+        blocks.close();
+        txs.close();
+        journal.close();
+        bloomIndex.close();
+        return stateRoots;
+    }
+
+    /**
+     * Copies the state trie nodes and the code reachable from the state roots
+     * The nodes are stored with the reference counter prefix (see {@link CountingBytesSource})
+     * and are copied as is
+     */
+    private void migrateState(List<byte[]> stateRoots) {
+        Store state = new Store("state");
+        state.copy(COUNTING_FILTER_KEY);
+
+        // true for the accounts trie nodes
+        Deque<Object[]> stack = new ArrayDeque<>();
+        int roots = 0;
+        for (byte[] root : stateRoots) {
+            stack.push(new Object[] {root, true});
+            while (!stack.isEmpty()) {
+                Object[] item = stack.pop();
+                byte[] hash = (byte[]) item[0];
+                if (state.contains(hash)) continue;
+                byte[] val = state.copy(hash);
+                if (val == null) {
+                    // the node was pruned or the state wasn't downloaded by the fast sync
+                    missingNodes++;
+                    continue;
+                }
+                byte[] nodeRlp = Arrays.copyOfRange(val, RLP.decode(val, 0).getPos(), val.length);
+                scanNode(RLP.decode2(nodeRlp).get(0), (Boolean) item[1], state, stack);
+            }
+            if (++roots % 10_000 == 0) {
+                logger.info("Migrated states: {} of {}, nodes: {}", roots, stateRoots.size(), state.count);
+            }
+        }
+
+        if (missingNodes > 0) {
+            logger.info("State nodes not found (pruned): {}", missingNodes);
+        }
+        state.close();
+    }
+
+    private void scanNode(RLPElement node, boolean accountsTrie, Store state, Deque<Object[]> stack) {
+        RLPList items = (RLPList) node;
+        if (items.size() == 17) {
+            for (int i = 0; i < 16; i++) {
+                scanChild(items.get(i), accountsTrie, state, stack);
+            }
+        } else {
+            byte[] key = items.get(0).getRLPData();
+            boolean leaf = key != null && (key[0] & 0x20) != 0;
+            if (!leaf) {
+                scanChild(items.get(1), accountsTrie, state, stack);
+            } else if (accountsTrie) {
+                AccountState account = new AccountState(items.get(1).getRLPData());
+                if (!Arrays.equals(account.getStateRoot(), EMPTY_TRIE_HASH)) {
+                    stack.push(new Object[] {account.getStateRoot(), false});
+                }
+                if (!Arrays.equals(account.getCodeHash(), EMPTY_DATA_HASH) && !state.contains(account.getCodeHash())) {
+                    state.copy(account.getCodeHash());
+                }
+            }
+        }
+    }
+
+    private void scanChild(RLPElement child, boolean accountsTrie, Store state, Deque<Object[]> stack) {
+        if (child instanceof RLPList) {
+            // the node shorter than 32 bytes is embedded into the parent
+            scanNode(child, accountsTrie, state, stack);
+        } else if (child.getRLPData() != null) {
+            stack.push(new Object[] {child.getRLPData(), accountsTrie});
+        }
+    }
+
+    private DbSource<byte[]> openDB(String name) {
+        LevelDbDataSource db = new LevelDbDataSource(name);
+        db.init();
+        if (!LEGACY_DB_NAME.equals(name)) {
+            // clean up the leftovers of the interrupted migration
+            db.reset();
+        }
+        return db;
+    }
+
+    private Integer readVersion(File file) {
+        if (!file.exists()) return null;
+        try (Reader reader = new FileReader(file)) {
+            Properties prop = new Properties();
+            prop.load(reader);
+            return Integer.valueOf(prop.getProperty("databaseVersion"));
+        } catch (Exception e) {
+            logger.error("Problem reading current database version.", e);
+            return null;
+        }
+    }
+
+    private void writeVersion(File file, Integer version) {
+        try (Writer writer = new FileWriter(file)) {
+            Properties prop = new Properties();
+            prop.setProperty("databaseVersion", version.toString());
+            prop.store(writer, "Generated database version");
+        } catch (Exception e) {
+            throw new Error("Problem writing current database version ", e);
+        }
+    }
+}
@@ -0,0 +1,397 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.AccountState;
+import org.ethereum.datasource.Source;
+import org.ethereum.trie.TrieImpl;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.FastByteComparisons;
+import org.ethereum.util.RLP;
+import org.ethereum.vm.DataWord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
+import static org.ethereum.crypto.HashUtil.sha3;
+
+/**
+ * Flat key -> value snapshot of the accounts and contract storage in front of the state trie
+ *
+ * The persistent part (the base) holds the state for a single state root. The states of the recent
+ * blocks are kept in memory as a tree of diff layers on top of the base, each layer holding the values
+ * changed by a block relative to its parent. Reading at a state root looks the key up through the layers
+ * down to the base which is a single DB lookup instead of the trie walk.
+ * When the layers stack becomes deeper than the limit the bottom layer is merged to the base and all
+ * the layers not descending from it (i.e. the forks which are too old) are discarded.
+ *
+ * Keys are the hashed ones like in the secure tries so the base can be generated from the state trie:
+ *  - account: [sha3(address)] -> [incarnation(8 bytes)][account RLP], the account RLP is absent for deleted accounts
+ *  - storage: [sha3(address)][incarnation(8 bytes)][sha3(key)] -> [value without leading zeroes]
+ *
+ * Deleted contracts storage is never iterated: the incarnation is just increased when the contract
+ * storage starts over from the empty trie so the slots of the previous incarnation become unreachable.
+ *
+ * The flat state is available for the states descending from the base only, for others
+ * the Repository should fall back to the trie.
+ *
+ * The base is persisted on a clean shutdown (see {@link #persist(byte[])}). After an unclean shutdown,
+ * a fast sync or when enabled on an existing database it doesn't match the blockchain state and is
+ * regenerated from the state trie (see {@link #generate(byte[], Source)}). The stored values are
+ * prefixed with the epoch of the base which is increased by the generation, so the values left
+ * from the previous base are ignored and don't have to be deleted.
+ */
+public class FlatState {
+
+    private static final Logger logger = LoggerFactory.getLogger("db");
+
+    // [epoch(4 bytes)][root], the root is absent while the base is inconsistent: a layer is being merged
+    // to it or it is being generated. The DB writes go through the store cache which is flushed as a single
+    // batch, in order, so the marker without the root reaches the disk only when a flush happens in the
+    // middle of a merge; otherwise it is overwritten by the merged root
+    private static final byte[] ROOT_KEY = "flatStateRoot".getBytes();
+    // the base root while it is inconsistent, never matches a state root
+    private static final byte[] UNKNOWN_ROOT = new byte[] {0};
+    // the DB cache is flushed each time that many entries are generated
+    private static final int GENERATE_FLUSH_ENTRIES = 100_000;
+
+    /**
+     * Returned by lookups when the view can't be served anymore
+     * (its layer was discarded), compared by reference
+     */
+    public static final byte[] UNKNOWN = new byte[0];
+
+    private static class Layer {
+        final byte[] root;
+        Layer parent;
+        // changed keys with new values (null for deleted ones), null for the base
+        Map<ByteArrayWrapper, byte[]> entries;
+        final List<Layer> children = new ArrayList<>();
+        int depth;
+        boolean stale;
+
+        Layer(byte[] root, Layer parent, Map<ByteArrayWrapper, byte[]> entries) {
+            this.root = root;
+            this.parent = parent;
+            this.entries = entries;
+        }
+    }
+
+    /**
+     * The state at a specific root
+     */
+    public static class View {
+        private final Layer layer;
+
+        private View(Layer layer) {
+            this.layer = layer;
+        }
+
+        public byte[] getRoot() {
+            return layer.root;
+        }
+    }
+
+    private final Source<byte[], byte[]> db;
+    private final int maxLayers;
+    private DbFlushManager flushManager;
+    private int epoch;
+
+    private final Map<ByteArrayWrapper, Layer> layers = new HashMap<>();
+    private Layer base;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    /**
+     * @param db flat state storage
+     * @param maxLayers the number of recent states kept as in-memory diff layers
+     */
+    public FlatState(Source<byte[], byte[]> db, int maxLayers) {
+        this.db = db;
+        this.maxLayers = maxLayers;
+
+        byte[] marker = db.get(ROOT_KEY);
+        byte[] root;
+        if (marker == null) {
+            // empty DB, the state starts from scratch
+            root = EMPTY_TRIE_HASH;
+        } else {
+            epoch = ByteBuffer.wrap(marker).getInt();
+            if (marker.length > 4) {
+                root = Arrays.copyOfRange(marker, 4, marker.length);
+            } else {
+                logger.warn("Flat state wasn't completely saved, it is to be regenerated");
+                root = UNKNOWN_ROOT;
+            }
+        }
+        base = new Layer(root, null, null);
+        layers.put(new ByteArrayWrapper(root), base);
+        logger.info("Flat state is at root " + Hex.toHexString(root));
+    }
+
+    /**
+     * The DB cache is flushed periodically while the base is generated
+     */
+    public FlatState withFlushManager(DbFlushManager flushManager) {
+        this.flushManager = flushManager;
+        return this;
+    }
+
+    /**
+     * @return the view of the state at the root or null if the flat state
+     * has no data for this root
+     */
+    public View getView(byte[] root) {
+        lock.readLock().lock();
+        try {
+            Layer layer = layers.get(new ByteArrayWrapper(root));
+            return layer == null ? null : new View(layer);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the value, null if the key is absent or {@link #UNKNOWN} if the view was discarded
+     */
+    public byte[] get(View view, byte[] key) {
+        lock.readLock().lock();
+        try {
+            Layer layer = view.layer;
+            if (layer.stale) return UNKNOWN;
+
+            ByteArrayWrapper k = new ByteArrayWrapper(key);
+            for (; layer != base; layer = layer.parent) {
+                if (layer.entries.containsKey(k)) {
+                    return layer.entries.get(k);
+                }
+            }
+            byte[] value = db.get(key);
+            // the value left from the previous base
+            if (value == null || ByteBuffer.wrap(value).getInt() != epoch) return null;
+            return Arrays.copyOfRange(value, 4, value.length);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the state derived from the parent view
+     * @param root the new state root
+     * @param entries the changed keys with their new values (null for deleted)
+     * @return the view of the new state or null if the state can't be added
+     */
+    public View addLayer(View parent, byte[] root, Map<ByteArrayWrapper, byte[]> entries) {
+        lock.writeLock().lock();
+        try {
+            if (parent.layer.stale) return null;
+            if (FastByteComparisons.equal(parent.layer.root, root)) return parent;
+
+            Layer existing = layers.get(new ByteArrayWrapper(root));
+            if (existing != null) {
+                // the same block imported again or the state returned to a known root (e.g. all
+                // accounts deleted), the same root is the same state so the existing layer is reused
+                // along with its storage incarnations
+                return new View(existing);
+            }
+
+            Layer layer = new Layer(root, parent.layer, new HashMap<>(entries));
+            layer.depth = parent.layer.depth + 1;
+            parent.layer.children.add(layer);
+            layers.put(new ByteArrayWrapper(root), layer);
+
+            while (layer.depth > maxLayers) {
+                mergeToBase(bottomOf(layer));
+            }
+            return new View(layer);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Merges all the layers up to the root into the base so the state could be
+     * read after restart. Forks not containing the root are discarded
+     */
+    public void persist(byte[] root) {
+        lock.writeLock().lock();
+        try {
+            Layer layer = layers.get(new ByteArrayWrapper(root));
+            if (layer == null) {
+                logger.info("Flat state doesn't have the root " + Hex.toHexString(root) + ", nothing to persist");
+                return;
+            }
+            while (layer != base) {
+                mergeToBase(bottomOf(layer));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Rebuilds the base from the state trie at the root, the layers are discarded.
+     * Takes a full trie traversal so is intended for the head state when the
+     * flat state doesn't have it
+     * @param trieDS the state trie nodes source
+     * @return the view of the state at the root
+     */
+    public View generate(byte[] root, final Source<byte[], byte[]> trieDS) {
+        lock.writeLock().lock();
+        try {
+            logger.info("Generating flat state at root " + Hex.toHexString(root) + " from the state trie...");
+            long s = System.currentTimeMillis();
+
+            for (Layer layer : layers.values()) {
+                layer.stale = true;
+            }
+            layers.clear();
+            epoch++;
+            db.put(ROOT_KEY, ByteUtil.intToBytes(epoch));
+
+            final long[] counts = new long[2];
+            new TrieImpl(trieDS, root).scanTree(new TrieImpl.ScanAction() {
+                @Override
+                public void doOnNode(byte[] hash, TrieImpl.Node node) {}
+
+                @Override
+                public void doOnValue(byte[] nodeHash, TrieImpl.Node node, final byte[] accountKey, byte[] value) {
+                    // the account is generated with the first storage incarnation
+                    put(accountKey, ByteUtil.merge(ByteUtil.longToBytes(0), value));
+                    counts[0]++;
+
+                    byte[] storageRoot = new AccountState(value).getStateRoot();
+                    if (FastByteComparisons.equal(storageRoot, EMPTY_TRIE_HASH)) return;
+                    new TrieImpl(trieDS, storageRoot).scanTree(new TrieImpl.ScanAction() {
+                        @Override
+                        public void doOnNode(byte[] hash, TrieImpl.Node node) {}
+
+                        @Override
+                        public void doOnValue(byte[] nodeHash, TrieImpl.Node node, byte[] key, byte[] value) {
+                            put(ByteUtil.merge(accountKey, ByteUtil.longToBytes(0), key),
+                                    RLP.decode2(value).get(0).getRLPData());
+                            counts[1]++;
+                        }
+                    });
+                }
+
+                private void put(byte[] key, byte[] value) {
+                    db.put(key, ByteUtil.merge(ByteUtil.intToBytes(epoch), value));
+                    if ((counts[0] + counts[1]) % GENERATE_FLUSH_ENTRIES == 0) {
+                        logger.info("Flat state generation: " + counts[0] + " accounts, " + counts[1] + " storage slots");
+                        if (flushManager != null) flushManager.commit();
+                    }
+                }
+            });
+            db.put(ROOT_KEY, ByteUtil.merge(ByteUtil.intToBytes(epoch), root));
+
+            base = new Layer(root, null, null);
+            layers.put(new ByteArrayWrapper(root), base);
+            logger.info("Flat state generated: " + counts[0] + " accounts, " + counts[1] + " storage slots in " +
+                    (System.currentTimeMillis() - s) / 1000 + " sec");
+            return new View(base);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    private Layer bottomOf(Layer layer) {
+        while (layer.parent != base) layer = layer.parent;
+        return layer;
+    }
+
+    private void mergeToBase(Layer layer) {
+        byte[] epochBytes = ByteUtil.intToBytes(epoch);
+        db.put(ROOT_KEY, epochBytes);
+        for (Map.Entry<ByteArrayWrapper, byte[]> entry : layer.entries.entrySet()) {
+            if (entry.getValue() == null) {
+                db.delete(entry.getKey().getData());
+            } else {
+                db.put(entry.getKey().getData(), ByteUtil.merge(epochBytes, entry.getValue()));
+            }
+        }
+        db.put(ROOT_KEY, ByteUtil.merge(epochBytes, layer.root));
+
+        for (Layer sibling : base.children) {
+            if (sibling != layer) discard(sibling);
+        }
+        base.stale = true;
+        layers.remove(new ByteArrayWrapper(base.root));
+
+        layer.parent = null;
+        layer.entries = null;
+        base = layer;
+        updateDepth(base, 0);
+    }
+
+    private void discard(Layer layer) {
+        layer.stale = true;
+        layers.remove(new ByteArrayWrapper(layer.root));
+        for (Layer child : layer.children) {
+            discard(child);
+        }
+    }
+
+    private void updateDepth(Layer layer, int depth) {
+        layer.depth = depth;
+        for (Layer child : layer.children) {
+            updateDepth(child, depth + 1);
+        }
+    }
+
+    public static byte[] accountKey(byte[] addr) {
+        return sha3(addr);
+    }
+
+    /**
+     * @param accountKey the key returned by {@link #accountKey(byte[])}
+     */
+    public static byte[] storageKey(byte[] accountKey, long incarnation, DataWord key) {
+        return ByteUtil.merge(accountKey, ByteUtil.longToBytes(incarnation), sha3(key.getData()));
+    }
+
+    public static byte[] encodeAccount(long incarnation, AccountState state) {
+        byte[] inc = ByteUtil.longToBytes(incarnation);
+        return state == null ? inc : ByteUtil.merge(inc, state.getEncoded());
+    }
+
+    /**
+     * @param value the account value or null if the account never existed
+     */
+    public static long decodeIncarnation(byte[] value) {
+        return value == null ? 0 : ByteBuffer.wrap(value).getLong();
+    }
+
+    public static AccountState decodeAccount(byte[] value) {
+        return value == null || value.length == 8 ? null : new AccountState(Arrays.copyOfRange(value, 8, value.length));
+    }
+
+    public static byte[] encodeStorageValue(DataWord value) {
+        return value == null || value.isZero() ? null : value.getNoLeadZeroesData();
+    }
+
+    public static DataWord decodeStorageValue(byte[] value) {
+        return value == null ? null : new DataWord(value);
+    }
+}
@@ -0,0 +1,411 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.AccountState;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.vm.DataWord;
+
+import javax.annotation.Nullable;
+import java.math.BigInteger;
+import java.util.*;
+
+/**
+ * Repository wrapper which records the state read and written through it
+ * and keeps the journal of committed modifications
+ *
+ * Reads are tracked per account and per storage cell. Reads made by nested tracking
+ * repositories are recorded even if they are rolled back (since they could still affect
+ * the execution flow) while modifications get to the journal only when committed up to the
+ * top level repository.
+ *
+ * Modifications are journaled as operations (e.g. 'add 5 to the balance') rather than
+ * resulting values, so replaying the journal with {@link #replay(Repository)} over a different
+ * state yields the same result as running the original code over that state provided that
+ * none of the accounts and storage cells the code has read differ between the states.
+ *
+ * The addresses from the ignored set are neither recorded nor journaled.
+ */
+public class RecordingRepository implements Repository {
+
+    private interface Op {
+        void apply(Repository repo);
+    }
+
+    /**
+     * The state shared by the top level repository and all its tracking children
+     */
+    private static class Records {
+        final Set<ByteArrayWrapper> ignored;
+        final Set<ByteArrayWrapper> accountsRead = new HashSet<>();
+        final Set<ByteArrayWrapper> storageRead = new HashSet<>();
+
+        Records(Set<ByteArrayWrapper> ignored) {
+            this.ignored = ignored;
+        }
+    }
+
+    private final Repository delegate;
+    private final RecordingRepository parent;
+    private final Records records;
+    private List<Op> journal = new ArrayList<>();
+
+    public RecordingRepository(Repository delegate) {
+        this(delegate, Collections.<ByteArrayWrapper>emptySet());
+    }
+
+    public RecordingRepository(Repository delegate, Set<ByteArrayWrapper> ignoredAddresses) {
+        this(delegate, null, new Records(ignoredAddresses));
+    }
+
+    private RecordingRepository(Repository delegate, RecordingRepository parent, Records records) {
+        this.delegate = delegate;
+        this.parent = parent;
+        this.records = records;
+    }
+
+    /**
+     * Accounts which state (existence, balance, nonce or code) was read
+     */
+    public Set<ByteArrayWrapper> getAccountsRead() {
+        return records.accountsRead;
+    }
+
+    /**
+     * Storage cells read, see {@link #storageKey(byte[], DataWord)}
+     */
+    public Set<ByteArrayWrapper> getStorageRead() {
+        return records.storageRead;
+    }
+
+    /**
+     * Accounts which state was modified by the journaled operations
+     */
+    public Set<ByteArrayWrapper> getAccountsWritten() {
+        Set<ByteArrayWrapper> ret = new HashSet<>();
+        for (Op op : journal) {
+            if (op instanceof AccountOp && ((AccountOp) op).modifies) ret.add(((AccountOp) op).addr);
+            if (op instanceof StorageOp && ((StorageOp) op).createsAccount) ret.add(((StorageOp) op).addr);
+        }
+        return ret;
+    }
+
+    /**
+     * Storage cells modified by the journaled operations
+     */
+    public Set<ByteArrayWrapper> getStorageWritten() {
+        Set<ByteArrayWrapper> ret = new HashSet<>();
+        for (Op op : journal) {
+            if (op instanceof StorageOp) {
+                StorageOp sop = (StorageOp) op;
+                ret.add(storageKey(sop.addr.getData(), sop.key));
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * Applies the journaled modifications to another repository
+     */
+    public void replay(Repository repo) {
+        for (Op op : journal) {
+            op.apply(repo);
+        }
+    }
+
+    public static ByteArrayWrapper storageKey(byte[] addr, DataWord key) {
+        return new ByteArrayWrapper(ByteUtil.merge(addr, key.getData()));
+    }
+
+    private boolean ignored(byte[] addr) {
+        return !records.ignored.isEmpty() && records.ignored.contains(new ByteArrayWrapper(addr));
+    }
+
+    private void read(byte[] addr) {
+        if (!ignored(addr)) records.accountsRead.add(new ByteArrayWrapper(addr));
+    }
+
+    private void readStorage(byte[] addr, DataWord key) {
+        if (!ignored(addr)) records.storageRead.add(storageKey(addr, key));
+    }
+
+    private void write(Op op, byte[] addr) {
+        if (!ignored(addr)) journal.add(op);
+    }
+
+    private abstract static class AccountOp implements Op {
+        final ByteArrayWrapper addr;
+        boolean modifies = true;
+
+        AccountOp(byte[] addr) {
+            this.addr = new ByteArrayWrapper(addr);
+        }
+    }
+
+    private static class StorageOp implements Op {
+        final ByteArrayWrapper addr;
+        final DataWord key;
+        final DataWord value;
+        final boolean createsAccount;
+
+        StorageOp(byte[] addr, DataWord key, DataWord value, boolean createsAccount) {
+            this.addr = new ByteArrayWrapper(addr);
+            this.key = key.clone();
+            this.value = value.clone();
+            this.createsAccount = createsAccount;
+        }
+
+        @Override
+        public void apply(Repository repo) {
+            repo.addStorageRow(addr.getData(), key, value);
+        }
+    }
+
+    @Override
+    public AccountState createAccount(byte[] addr) {
+        write(new AccountOp(addr) {
+            @Override
+            public void apply(Repository repo) {
+                repo.createAccount(addr.getData());
+            }
+        }, addr);
+        return delegate.createAccount(addr);
+    }
+
+    @Override
+    public boolean isExist(byte[] addr) {
+        read(addr);
+        return delegate.isExist(addr);
+    }
+
+    @Override
+    public AccountState getAccountState(byte[] addr) {
+        read(addr);
+        return delegate.getAccountState(addr);
+    }
+
+    @Override
+    public void delete(byte[] addr) {
+        write(new AccountOp(addr) {
+            @Override
+            public void apply(Repository repo) {
+                repo.delete(addr.getData());
+            }
+        }, addr);
+        delegate.delete(addr);
+    }
+
+    @Override
+    public BigInteger increaseNonce(byte[] addr) {
+        write(new AccountOp(addr) {
+            @Override
+            public void apply(Repository repo) {
+                repo.increaseNonce(addr.getData());
+            }
+        }, addr);
+        return delegate.increaseNonce(addr);
+    }
+
+    @Override
+    public BigInteger setNonce(byte[] addr, final BigInteger nonce) {
+        write(new AccountOp(addr) {
+            @Override
+            public void apply(Repository repo) {
+                repo.setNonce(addr.getData(), nonce);
+            }
+        }, addr);
+        return delegate.setNonce(addr, nonce);
+    }
+
+    @Override
+    public BigInteger getNonce(byte[] addr) {
+        read(addr);
+        return delegate.getNonce(addr);
+    }
+
+    @Override
+    public ContractDetails getContractDetails(byte[] addr) {
+        // the details are only inspected during execution (not modified)
+        read(addr);
+        return delegate.getContractDetails(addr);
+    }
+
+    @Override
+    public boolean hasContractDetails(byte[] addr) {
+        read(addr);
+        return delegate.hasContractDetails(addr);
+    }
+
+    @Override
+    public void saveCode(byte[] addr, final byte[] code) {
+        write(new AccountOp(addr) {
+            @Override
+            public void apply(Repository repo) {
+                repo.saveCode(addr.getData(), code);
+            }
+        }, addr);
+        delegate.saveCode(addr, code);
+    }
+
+    @Override
+    public byte[] getCode(byte[] addr) {
+        read(addr);
+        return delegate.getCode(addr);
+    }
+
+    @Override
+    public byte[] getCodeHash(byte[] addr) {
+        read(addr);
+        return delegate.getCodeHash(addr);
+    }
+
+    @Override
+    public void addStorageRow(byte[] addr, DataWord key, DataWord value) {
+        // the account is created if doesn't exist yet
+        read(addr);
+        write(new StorageOp(addr, key, value, !delegate.isExist(addr)), addr);
+        delegate.addStorageRow(addr, key, value);
+    }
+
+    @Override
+    public DataWord getStorageValue(byte[] addr, DataWord key) {
+        // the value depends on the account existence as well
+        read(addr);
+        readStorage(addr, key);
+        return delegate.getStorageValue(addr, key);
+    }
+
+    @Override
+    public BigInteger getBalance(byte[] addr) {
+        read(addr);
+        return delegate.getBalance(addr);
+    }
+
+    @Override
+    public BigInteger addBalance(byte[] addr, final BigInteger value) {
+        AccountOp op = new AccountOp(addr) {
+            @Override
+            public void apply(Repository repo) {
+                repo.addBalance(addr.getData(), value);
+            }
+        };
+        if (value.signum() == 0) {
+            // adding zero only creates the account if it doesn't exist
+            read(addr);
+            op.modifies = !delegate.isExist(addr);
+        }
+        write(op, addr);
+        return delegate.addBalance(addr, value);
+    }
+
+    @Override
+    public RecordingRepository startTracking() {
+        return new RecordingRepository(delegate.startTracking(), this, records);
+    }
+
+    @Override
+    public void commit() {
+        delegate.commit();
+        if (parent != null) {
+            parent.journal.addAll(journal);
+            journal = new ArrayList<>();
+        }
+    }
+
+    @Override
+    public void rollback() {
+        delegate.rollback();
+        journal = new ArrayList<>();
+    }
+
+    @Override
+    public int getStorageSize(byte[] addr) {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public Set<DataWord> getStorageKeys(byte[] addr) {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public Map<DataWord, DataWord> getStorage(byte[] addr, @Nullable Collection<DataWord> keys) {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public Set<byte[]> getAccountsKeys() {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public void dumpState(Block block, long gasUsed, int txNumber, byte[] txHash) {
+        delegate.dumpState(block, gasUsed, txNumber, txHash);
+    }
+
+    @Override
+    public void flush() {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public void flushNoReconnect() {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public void syncToRoot(byte[] root) {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public boolean isClosed() {
+        return delegate.isClosed();
+    }
+
+    @Override
+    public void close() {
+    }
+
+    @Override
+    public void reset() {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public void updateBatch(HashMap<ByteArrayWrapper, AccountState> accountStates, HashMap<ByteArrayWrapper, ContractDetails> contractDetailes) {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public byte[] getRoot() {
+        return delegate.getRoot();
+    }
+
+    @Override
+    public void loadAccount(byte[] addr, HashMap<ByteArrayWrapper, AccountState> cacheAccounts, HashMap<ByteArrayWrapper, ContractDetails> cacheDetails) {
+        throw new RuntimeException("Not supported");
+    }
+
+    @Override
+    public Repository getSnapshotTo(byte[] root) {
+        return delegate.getSnapshotTo(root);
+    }
+}
@@ -189,6 +189,29 @@ public class RepositoryImpl implements Repository, org.ethereum.facade.Repositor
         return ret;
     }
 
+    /**
+     * @return addresses of the accounts modified (including deleted) and not committed yet,
+     * supported by tracking repositories only
+     */
+    public synchronized Collection<byte[]> getModifiedAccounts() {
+        return new ArrayList<>(((CachedSource<byte[], AccountState>) accountStateCache).getModified());
+    }
+
+    /**
+     * @return storage keys modified and not committed yet by the account address,
+     * the storage of deleted accounts is not included
+     */
+    public synchronized Map<byte[], Collection<DataWord>> getModifiedStorage() {
+        Map<byte[], Collection<DataWord>> ret = new HashMap<>();
+        for (byte[] addr : storageCache.getModified()) {
+            CachedSource<DataWord, DataWord> storage = storageCache.getLocal(addr);
+            if (storage != null && storage.hasModified()) {
+                ret.put(addr, new ArrayList<>(storage.getModified()));
+            }
+        }
+        return ret;
+    }
+
     @Override
     public synchronized Repository getSnapshotTo(byte[] root) {
         return parent.getSnapshotTo(root);
@@ -21,8 +21,17 @@ import org.ethereum.core.AccountState;
 import org.ethereum.core.Repository;
 import org.ethereum.datasource.*;
 import org.ethereum.trie.*;
+import org.ethereum.util.FastByteComparisons;
 import org.ethereum.vm.DataWord;
 
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.RecursiveAction;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
+
 /**
  * Created by Anton Nashatyrev on 07.10.2016.
  */
@@ -30,11 +39,130 @@ public class RepositoryRoot extends RepositoryImpl {
 
     private static class StorageCache extends ReadWriteCache<DataWord, DataWord> {
         Trie<byte[]> trie;
+        // the changes were flushed to the trie ahead of the account update
+        boolean committed;
 
         public StorageCache(Trie<byte[]> trie) {
-            super(new SourceCodec<>(trie, Serializers.StorageKeySerializer, Serializers.StorageValueSerializer), WriteCache.CacheType.SIMPLE);
+            this(trie, new SourceCodec<>(trie, Serializers.StorageKeySerializer, Serializers.StorageValueSerializer));
+        }
+
+        public StorageCache(Trie<byte[]> trie, Source<DataWord, DataWord> src) {
+            super(src, WriteCache.CacheType.SIMPLE);
             this.trie = trie;
         }
+
+        /**
+         * Flushes the storage changes and the storage trie nodes
+         */
+        void commit() {
+            committed |= flush();
+            trie.flush();
+        }
+    }
+
+    /**
+     * Reads accounts from the flat state when available and records the changes
+     * flushed to the state trie
+     */
+    private class FlatAccountSource extends AbstractChainedSource<byte[], AccountState, byte[], AccountState> {
+
+        public FlatAccountSource(Source<byte[], AccountState> trieSource) {
+            super(trieSource);
+            setFlushSource(true);
+        }
+
+        @Override
+        public AccountState get(byte[] key) {
+            byte[] flat = flatGet(FlatState.accountKey(key), flatGeneration);
+            return flat == FlatState.UNKNOWN ? getSource().get(key) : FlatState.decodeAccount(flat);
+        }
+
+        @Override
+        public void put(byte[] key, AccountState val) {
+            getSource().put(key, val);
+            flatPut(key, val);
+        }
+
+        @Override
+        public void delete(byte[] key) {
+            getSource().delete(key);
+            flatPut(key, null);
+        }
+
+        @Override
+        protected boolean flushImpl() {
+            return false;
+        }
+    }
+
+    /**
+     * Reads contract storage from the flat state when available and records the changes
+     * flushed to the storage trie
+     *
+     * The storage is bound to the contract storage incarnation on the first access,
+     * storage created from the empty trie starts a new incarnation on the first write
+     */
+    private class FlatStorageSource extends AbstractChainedSource<DataWord, DataWord, DataWord, DataWord> {
+        final byte[] addr;
+        final byte[] accountKey;
+        final boolean fromEmpty;
+        final int generation;
+        long incarnation = -1;
+
+        public FlatStorageSource(byte[] addr, byte[] storageRoot, Source<DataWord, DataWord> trieSource) {
+            super(trieSource);
+            setFlushSource(true);
+            this.addr = addr;
+            this.accountKey = FlatState.accountKey(addr);
+            this.fromEmpty = storageRoot == null || FastByteComparisons.equal(storageRoot, EMPTY_TRIE_HASH);
+            this.generation = flatGeneration;
+        }
+
+        @Override
+        public DataWord get(DataWord key) {
+            byte[] flat = FlatState.UNKNOWN;
+            synchronized (flatPending) {
+                if (incarnation < 0 && !fromEmpty) {
+                    incarnation = flatIncarnation(addr, generation);
+                }
+                if (incarnation >= 0) {
+                    flat = flatGet(FlatState.storageKey(accountKey, incarnation, key), generation);
+                }
+            }
+            return flat == FlatState.UNKNOWN ? getSource().get(key) : FlatState.decodeStorageValue(flat);
+        }
+
+        @Override
+        public void put(DataWord key, DataWord val) {
+            getSource().put(key, val);
+            record(key, val);
+        }
+
+        @Override
+        public void delete(DataWord key) {
+            getSource().delete(key);
+            record(key, null);
+        }
+
+        private void record(DataWord key, DataWord val) {
+            synchronized (flatPending) {
+                if (incarnation < 0) {
+                    long current = flatIncarnation(addr, generation);
+                    if (current < 0) return;
+                    incarnation = fromEmpty ? current + 1 : current;
+                    flatIncarnations.put(new ByteArrayWrapper(addr), incarnation);
+                }
+                if (generation == flatGeneration) {
+                    flatPending.put(new ByteArrayWrapper(FlatState.storageKey(accountKey, incarnation, key)),
+                            FlatState.encodeStorageValue(val));
+                }
+            }
+        }
+
+        @Override
+        protected boolean flushImpl() {
+            return false;
+        }
     }
 
     private class MultiStorageCache extends MultiCache<StorageCache> {
@@ -44,17 +172,58 @@ public class RepositoryRoot extends RepositoryImpl {
         @Override
         protected synchronized StorageCache create(byte[] key, StorageCache srcCache) {
             AccountState accountState = accountStateCache.get(key);
-            TrieImpl storageTrie = createTrie(trieCache, accountState == null ? null : accountState.getStateRoot());
-            return new StorageCache(storageTrie);
+            byte[] storageRoot = accountState == null ? null : accountState.getStateRoot();
+            TrieImpl storageTrie = createTrie(trieCache, storageRoot);
+            if (flatState == null) {
+                return new StorageCache(storageTrie);
+            }
+            Source<DataWord, DataWord> trieSource = new SourceCodec<>(storageTrie,
+                    Serializers.StorageKeySerializer, Serializers.StorageValueSerializer);
+            return new StorageCache(storageTrie, new FlatStorageSource(key, storageRoot, trieSource));
+        }
+
+        /**
+         * Commits the modified contract storage tries concurrently,
+         * the account storage roots are updated after that
+         */
+        @Override
+        public synchronized boolean flushImpl() {
+            final List<StorageCache> modified = new ArrayList<>();
+            for (byte[] key : writeCache.getModified()) {
+                AbstractCachedSource.Entry<StorageCache> entry = getCached(key);
+                StorageCache childCache = entry == null ? null : entry.value();
+                if (childCache != null && childCache.hasModified()) {
+                    modified.add(childCache);
+                }
+            }
+            if (modified.size() > 1) {
+                TrieImpl.invoke(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        List<RecursiveAction> tasks = new ArrayList<>();
+                        for (final StorageCache childCache : modified) {
+                            tasks.add(new RecursiveAction() {
+                                @Override
+                                protected void compute() {
+                                    childCache.commit();
+                                }
+                            });
+                        }
+                        invokeAll(tasks);
+                    }
+                });
+            }
+            return super.flushImpl();
         }
 
         @Override
         protected synchronized boolean flushChild(byte[] key, StorageCache childCache) {
-            if (super.flushChild(key, childCache)) {
+            if (super.flushChild(key, childCache) || (childCache != null && childCache.committed)) {
                 if (childCache != null) {
                     AccountState storageOwnerAcct = accountStateCache.get(key);
                     // need to update account storage root
-                    childCache.trie.flush();
+                    childCache.commit();
+                    childCache.committed = false;
                     byte[] rootHash = childCache.trie.getRootHash();
                     accountStateCache.put(key, storageOwnerAcct.withStateRoot(rootHash));
                     return true;
@@ -73,10 +242,22 @@ public class RepositoryRoot extends RepositoryImpl {
     private CachedSource.BytesKey<byte[]> trieCache;
     private Trie<byte[]> stateTrie;
 
+    private final FlatState flatState;
+    private FlatState.View flatView;
+    // incremented when the view is reset so storage caches bound to the old one stop using it
+    private int flatGeneration;
+    // changes flushed to the trie since the last commit in the FlatState format
+    private final Map<ByteArrayWrapper, byte[]> flatPending = new HashMap<>();
+    private final Map<ByteArrayWrapper, Long> flatIncarnations = new HashMap<>();
+
     public RepositoryRoot(Source<byte[], byte[]> stateDS) {
         this(stateDS, null);
     }
 
+    public RepositoryRoot(final Source<byte[], byte[]> stateDS, byte[] root) {
+        this(stateDS, root, null);
+    }
+
     /**
      * Building the following structure for snapshot Repository:
      *
@@ -86,16 +267,25 @@ public class RepositoryRoot extends RepositoryImpl {
      *    \--> codeCache
      *
      *
+     * When the flat state is supplied the accounts and storage are read from it rather than
+     * from the tries (if it has the state for the root) and the changes are passed to it on commit
+     *
      * @param stateDS
      * @param root
+     * @param flatState the flat state or null
      */
-    public RepositoryRoot(final Source<byte[], byte[]> stateDS, byte[] root) {
+    public RepositoryRoot(final Source<byte[], byte[]> stateDS, byte[] root, FlatState flatState) {
         this.stateDS = stateDS;
+        this.flatState = flatState;
 
         trieCache = new WriteCache.BytesKey<>(stateDS, WriteCache.CacheType.COUNTING);
         stateTrie = new SecureTrie(trieCache, root);
+        resetFlatView(stateTrie.getRootHash());
 
-        SourceCodec.BytesKey<AccountState, byte[]> accountStateCodec = new SourceCodec.BytesKey<>(stateTrie, Serializers.AccountStateSerializer);
+        Source<byte[], AccountState> accountStateCodec = new SourceCodec.BytesKey<>(stateTrie, Serializers.AccountStateSerializer);
+        if (flatState != null) {
+            accountStateCodec = new FlatAccountSource(accountStateCodec);
+        }
         final ReadWriteCache.BytesKey<AccountState> accountStateCache = new ReadWriteCache.BytesKey<>(accountStateCodec, WriteCache.CacheType.SIMPLE);
 
         final MultiCache<StorageCache> storageCache = new MultiStorageCache();
@@ -112,6 +302,21 @@ public class RepositoryRoot extends RepositoryImpl {
 
         stateTrie.flush();
         trieCache.flush();
+
+        if (flatState != null) {
+            synchronized (flatPending) {
+                if (flatView != null) {
+                    FlatState.View view = flatState.addLayer(flatView, stateTrie.getRootHash(), flatPending);
+                    if (view == null) {
+                        resetFlatView(null);
+                    } else {
+                        flatView = view;
+                    }
+                }
+                flatPending.clear();
+                flatIncarnations.clear();
+            }
+        }
     }
 
     @Override
@@ -129,7 +334,17 @@ public class RepositoryRoot extends RepositoryImpl {
 
     @Override
     public Repository getSnapshotTo(byte[] root) {
-        return new RepositoryRoot(stateDS, root);
+        return new RepositoryRoot(stateDS, root, flatState);
+    }
+
+    /**
+     * Saves the flat state for the current root
+     */
+    @Override
+    public synchronized void close() {
+        if (flatState != null) {
+            flatState.persist(getRoot());
+        }
     }
 
     @Override
@@ -137,9 +352,74 @@ public class RepositoryRoot extends RepositoryImpl {
         return ((TrieImpl) stateTrie).dumpTrie();
     }
 
+    /**
+     * The repository is moved to the best block state, so the flat state is
+     * regenerated from the trie if it doesn't have this state
+     */
     @Override
     public synchronized void syncToRoot(byte[] root) {
         stateTrie.setRoot(root);
+        resetFlatView(root);
+        if (flatState != null && flatView == null) {
+            FlatState.View view = flatState.generate(root, stateDS);
+            synchronized (flatPending) {
+                flatView = view;
+            }
+        }
+    }
+
+    /**
+     * @param root the new root or null to stop using the flat state
+     */
+    private void resetFlatView(byte[] root) {
+        if (flatState == null) return;
+        synchronized (flatPending) {
+            flatView = root == null ? null : flatState.getView(root);
+            flatGeneration++;
+            flatPending.clear();
+            flatIncarnations.clear();
+        }
+    }
+
+    /**
+     * @return the value from the pending changes or from the flat state view
+     * or {@link FlatState#UNKNOWN} if there is no flat state for the current root
+     */
+    private byte[] flatGet(byte[] key, int generation) {
+        synchronized (flatPending) {
+            if (flatView == null || generation != flatGeneration) return FlatState.UNKNOWN;
+
+            ByteArrayWrapper k = new ByteArrayWrapper(key);
+            if (flatPending.containsKey(k)) return flatPending.get(k);
+
+            byte[] ret = flatState.get(flatView, key);
+            if (ret == FlatState.UNKNOWN) {
+                // the view was discarded by the flat state, using the trie from now on
+                resetFlatView(null);
+            }
+            return ret;
+        }
+    }
+
+    private void flatPut(byte[] addr, AccountState state) {
+        synchronized (flatPending) {
+            long incarnation = flatIncarnation(addr, flatGeneration);
+            if (incarnation >= 0) {
+                flatPending.put(new ByteArrayWrapper(FlatState.accountKey(addr)), FlatState.encodeAccount(incarnation, state));
+            }
+        }
+    }
+
+    /**
+     * @return the current contract storage incarnation or -1 if there is no flat state
+     */
+    private long flatIncarnation(byte[] addr, int generation) {
+        synchronized (flatPending) {
+            Long ret = flatIncarnations.get(new ByteArrayWrapper(addr));
+            if (ret != null) return ret;
+            byte[] account = flatGet(FlatState.accountKey(addr), generation);
+            return account == FlatState.UNKNOWN ? -1 : FlatState.decodeIncarnation(account);
+        }
     }
 
     protected TrieImpl createTrie(CachedSource.BytesKey<byte[]> trieCache, byte[] root) {
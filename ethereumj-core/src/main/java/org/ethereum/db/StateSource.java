@@ -51,7 +51,9 @@ public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
         INST = this;
         add(bloomedSource = new BloomedSource(src, maxBloomSize));
         bloomedSource.setFlushSource(false);
-        add(readCache = new ReadCache.BytesKey<>(bloomedSource).withMaxCapacity(16 * 1024 * 1024 / 512)); // 512 - approx size of a node
+        readCache = new ReadCache.BytesKey<>(bloomedSource);
+        readCache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+        add(readCache.withMaxSize(16 * 1024 * 1024));
         readCache.setFlushSource(true);
         add(countingSource = new CountingBytesSource(readCache, true));
         countingSource.setFlushSource(true);
@@ -77,7 +79,7 @@ public class StateSource extends SourceChainBox<byte[], byte[], byte[], byte[]>
     @Autowired
     public void setConfig(SystemProperties config) {
         int size = config.getConfig().getInt("cache.stateCacheSize");
-        readCache.withMaxCapacity(size * 1024 * 1024 / 512); // 512 - approx size of a node
+        readCache.withMaxSize(size * 1024L * 1024);
     }
 
     @Autowired
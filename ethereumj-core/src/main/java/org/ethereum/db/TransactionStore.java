@@ -17,26 +17,35 @@
  */
 package org.ethereum.db;
 
-import org.apache.commons.collections4.map.LRUMap;
 import org.ethereum.datasource.*;
 import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
 import org.ethereum.util.FastByteComparisons;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
+import org.ethereum.vm.LogInfo;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.spongycastle.util.encoders.Hex;
 import org.springframework.stereotype.Component;
 
 import javax.annotation.PreDestroy;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 
 /**
- * Storage (tx hash) => List of (block idx, tx idx, TransactionReceipt)
+ * Stores the receipts of the block transactions and the index of transaction locations:
+ *
+ * Receipts: (block hash) => List of TransactionReceipt of the block transactions
+ * Index: (tx hash) => List of (block hash, tx idx)
  *
  * Since a transaction could be included into blocks from different forks and
- * have different receipts the class stores all of them (the same manner fork blocks are stored)
+ * have different receipts the index keeps all its locations (the same manner fork blocks are stored)
+ *
+ * The receipts are kept in a compact form without the bloom filter, which is restored from the logs.
+ * The index entries written by the previous versions (List of (TransactionReceipt, block hash, tx idx))
+ * are still readable
  *
  * NOTE: the TransactionInfo instances returned contains TransactionReceipt which
  * has no initialized Transaction object. If needed use BlockStore to retrieve and setup
@@ -45,86 +54,188 @@ import java.util.List;
  * Created by Anton Nashatyrev on 07.04.2016.
  */
 @Component
-public class TransactionStore extends ObjectDataSource<List<TransactionInfo>> {
+public class TransactionStore {
     private static final Logger logger = LoggerFactory.getLogger("db");
 
-    private final LRUMap<ByteArrayWrapper, Object> lastSavedTxHash = new LRUMap<>(5000);
-    private final Object object = new Object();
+    private final Source<byte[], byte[]> indexSource;
+    private final Source<byte[], byte[]> receiptsSource;
 
-    private final static Serializer<List<TransactionInfo>, byte[]> serializer =
-            new Serializer<List<TransactionInfo>, byte[]>() {
-        @Override
-        public byte[] serialize(List<TransactionInfo> object) {
-            byte[][] txsRlp = new byte[object.size()][];
-            for (int i = 0; i < txsRlp.length; i++) {
-                txsRlp[i] = object.get(i).getEncoded();
-            }
-            return RLP.encodeList(txsRlp);
+    /**
+     * Transaction location in the block, or the whole info if the entry
+     * was written by the previous version
+     */
+    private static class Location {
+        final byte[] blockHash;
+        final int index;
+        final TransactionInfo legacyInfo;
+
+        Location(byte[] blockHash, int index) {
+            this.blockHash = blockHash;
+            this.index = index;
+            this.legacyInfo = null;
         }
 
-        @Override
-        public List<TransactionInfo> deserialize(byte[] stream) {
-            try {
-                if (stream == null) return null;
-                RLPList params = RLP.decode2(stream);
-                RLPList infoList = (RLPList) params.get(0);
-                List<TransactionInfo> ret = new ArrayList<>();
-                for (int i = 0; i < infoList.size(); i++) {
-                    ret.add(new TransactionInfo(infoList.get(i).getRLPData()));
-                }
-                return ret;
-            } catch (Exception e) {
-                // fallback to previous DB version
-                return Collections.singletonList(new TransactionInfo(stream));
-            }
+        Location(TransactionInfo legacyInfo) {
+            this.blockHash = legacyInfo.getBlockHash();
+            this.index = legacyInfo.getIndex();
+            this.legacyInfo = legacyInfo;
         }
-    };
+
+        byte[] getEncoded() {
+            return legacyInfo != null ? legacyInfo.getEncoded() :
+                    RLP.encodeList(RLP.encodeElement(blockHash), RLP.encodeInt(index));
+        }
+    }
 
     /**
-     * Adds TransactionInfo to the store.
-     * If entries for this transaction already exist the method adds new entry to the list
-     * if no entry for the same block exists
-     * @return true if TransactionInfo was added, false if already exist
+     * Keeps both the index and the receipts in the same source,
+     * the tx hash and the block hash keys don't intersect
      */
-    public boolean put(TransactionInfo tx) {
-        byte[] txHash = tx.getReceipt().getTransaction().getHash();
+    public TransactionStore(Source<byte[], byte[]> src) {
+        this(src, src);
+    }
 
-        List<TransactionInfo> existingInfos = null;
-        synchronized (lastSavedTxHash) {
-            if (lastSavedTxHash.put(new ByteArrayWrapper(txHash), object) != null || !lastSavedTxHash.isFull()) {
-                existingInfos = get(txHash);
-            }
+    public TransactionStore(Source<byte[], byte[]> indexSource, Source<byte[], byte[]> receiptsSource) {
+        this.indexSource = indexSource;
+        this.receiptsSource = new ReadCache.BytesKey<>(receiptsSource).withMaxCapacity(256);
+    }
+
+    /**
+     * Saves receipts of the block transactions as a single record and adds
+     * the block to the transactions index.
+     * If the block was already saved (e.g. on the receipts download after the import) its
+     * transactions are not indexed twice
+     */
+    public void put(byte[] blockHash, List<TransactionReceipt> receipts) {
+        if (receipts.isEmpty()) return;
+
+        byte[][] encoded = new byte[receipts.size()][];
+        for (int i = 0; i < encoded.length; i++) {
+            encoded[i] = encodeReceipt(receipts.get(i));
         }
-        // else it is highly unlikely that the transaction was included into another block
-        // earlier than 5000 transactions before with regard to regular block import process
-
-        if (existingInfos == null) {
-            existingInfos = new ArrayList<>();
-        } else {
-            for (TransactionInfo info : existingInfos) {
-                if (FastByteComparisons.equal(info.getBlockHash(), tx.getBlockHash())) {
-                    return false;
-                }
+        receiptsSource.put(blockHash, RLP.encodeList(encoded));
+
+        for (int i = 0; i < receipts.size(); i++) {
+            byte[] txHash = receipts.get(i).getTransaction().getHash();
+            List<Location> locations = getLocations(txHash);
+            if (find(locations, blockHash) != null) continue;
+
+            locations.add(new Location(blockHash, i));
+            byte[][] encodedLocations = new byte[locations.size()][];
+            for (int j = 0; j < encodedLocations.length; j++) {
+                encodedLocations[j] = locations.get(j).getEncoded();
             }
+            indexSource.put(txHash, RLP.encodeList(encodedLocations));
         }
-        existingInfos.add(tx);
-        put(txHash, existingInfos);
+    }
 
-        return true;
+    /**
+     * @return all the known infos of the transaction, empty list if the transaction is unknown
+     */
+    public List<TransactionInfo> get(byte[] txHash) {
+        List<TransactionInfo> ret = new ArrayList<>();
+        for (Location location : getLocations(txHash)) {
+            TransactionInfo info = getInfo(location);
+            if (info != null) ret.add(info);
+        }
+        return ret;
     }
 
+    /**
+     * @return info of the transaction included into the block or null if there is no such
+     */
     public TransactionInfo get(byte[] txHash, byte[] blockHash) {
-        List<TransactionInfo> existingInfos = get(txHash);
-        for (TransactionInfo info : existingInfos) {
-            if (FastByteComparisons.equal(info.getBlockHash(), blockHash)) {
-                return info;
+        Location location = find(getLocations(txHash), blockHash);
+        return location == null ? null : getInfo(location);
+    }
+
+    /**
+     * @return hashes of the blocks which include the transaction, the infos are not loaded
+     */
+    public List<byte[]> getBlockHashes(byte[] txHash) {
+        List<byte[]> ret = new ArrayList<>();
+        for (Location location : getLocations(txHash)) {
+            ret.add(location.blockHash);
+        }
+        return ret;
+    }
+
+    private static Location find(List<Location> locations, byte[] blockHash) {
+        for (Location location : locations) {
+            if (FastByteComparisons.equal(location.blockHash, blockHash)) {
+                return location;
             }
         }
         return null;
     }
 
-    public TransactionStore(Source<byte[], byte[]> src) {
-        super(src, serializer, 256);
+    private List<Location> getLocations(byte[] txHash) {
+        byte[] data = indexSource.get(txHash);
+        if (data == null) return new ArrayList<>();
+
+        RLP.LList entries = RLP.decodeLazyList(data);
+        if (entries.size() == 3 && !entries.isList(1)) {
+            // the single (receipt, block hash, tx idx) entry of the earliest version
+            return new ArrayList<>(Collections.singletonList(new Location(new TransactionInfo(data))));
+        }
+
+        List<Location> ret = new ArrayList<>();
+        for (int i = 0; i < entries.size(); i++) {
+            RLP.LList entry = entries.getList(i);
+            if (entry.size() == 2) {
+                ret.add(new Location(entry.getBytes(0), entry.getInt(1)));
+            } else {
+                ret.add(new Location(new TransactionInfo(entries.getEncoded(i))));
+            }
+        }
+        return ret;
+    }
+
+    private TransactionInfo getInfo(Location location) {
+        if (location.legacyInfo != null) return location.legacyInfo;
+
+        byte[] blockReceipts = receiptsSource.get(location.blockHash);
+        if (blockReceipts == null) {
+            logger.warn("Receipts of the block {} are missing", Hex.toHexString(location.blockHash));
+            return null;
+        }
+        TransactionReceipt receipt = decodeReceipt(RLP.decodeLazyList(blockReceipts).getList(location.index));
+        return new TransactionInfo(receipt, location.blockHash, location.index);
+    }
+
+    /* [postTxState, cumulativeGas, logs, gasUsed, executionResult, error] */
+    private static byte[] encodeReceipt(TransactionReceipt receipt) {
+        List<LogInfo> logs = receipt.getLogInfoList();
+        byte[][] logsRlp = new byte[logs.size()][];
+        for (int i = 0; i < logsRlp.length; i++) {
+            logsRlp[i] = logs.get(i).getEncoded();
+        }
+        return RLP.encodeList(
+                RLP.encodeElement(receipt.getPostTxState()),
+                RLP.encodeElement(receipt.getCumulativeGas()),
+                RLP.encodeList(logsRlp),
+                RLP.encodeElement(receipt.getGasUsed()),
+                RLP.encodeElement(receipt.getExecutionResult()),
+                RLP.encodeElement(receipt.getError().getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static TransactionReceipt decodeReceipt(RLP.LList rlp) {
+        TransactionReceipt receipt = new TransactionReceipt();
+        receipt.setPostTxState(rlp.getBytes(0));
+        receipt.setCumulativeGas(rlp.getBytes(1));
+
+        RLP.LList logsRlp = rlp.getList(2);
+        List<LogInfo> logs = new ArrayList<>();
+        for (int i = 0; i < logsRlp.size(); i++) {
+            logs.add(new LogInfo(logsRlp.getEncoded(i)));
+        }
+        // the bloom is restored from the logs
+        receipt.setLogInfoList(logs);
+
+        receipt.setGasUsed(rlp.getBytes(3));
+        receipt.setExecutionResult(rlp.getBytes(4));
+        receipt.setError(new String(rlp.getBytes(5), StandardCharsets.UTF_8));
+        return receipt;
     }
 
     @PreDestroy
@@ -27,7 +27,6 @@ import org.ethereum.core.Repository;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.listener.CompositeEthereumListener;
 import org.ethereum.listener.EthereumListener;
-import org.ethereum.listener.EthereumListenerAdapter;
 import org.ethereum.listener.GasPriceTracker;
 import org.ethereum.manager.AdminInfo;
 import org.ethereum.manager.BlockLoader;
@@ -90,6 +89,9 @@ public class EthereumImpl implements Ethereum, SmartLifecycle {
     @Autowired
     Whisper whisper;
 
+    @Autowired
+    CallExecutor callExecutor;
+
     @Autowired
     PendingState pendingState;
 
@@ -223,9 +225,9 @@ public class EthereumImpl implements Ethereum, SmartLifecycle {
     @Override
     public TransactionReceipt callConstant(Transaction tx, Block block) {
         if (tx.getSignature() == null) {
-            tx.sign(ECKey.fromPrivate(new byte[32]));
+            tx.setSender(new byte[20]);
         }
-        return callConstantImpl(tx, block).getReceipt();
+        return callExecutor.call(tx, block).getReceipt();
     }
 
     public BlockSummary replayBlock(Block block) {
@@ -262,45 +264,26 @@ public class EthereumImpl implements Ethereum, SmartLifecycle {
         return new BlockSummary(block, new HashMap<byte[], BigInteger>(), receipts, summaries);
     }
 
-    private org.ethereum.core.TransactionExecutor callConstantImpl(Transaction tx, Block block) {
-
-        Repository repository = ((Repository) worldManager.getRepository())
-                .getSnapshotTo(block.getStateRoot())
-                .startTracking();
-
-        try {
-            org.ethereum.core.TransactionExecutor executor = new org.ethereum.core.TransactionExecutor
-                    (tx, block.getCoinbase(), repository, worldManager.getBlockStore(),
-                            programInvokeFactory, block, new EthereumListenerAdapter(), 0)
-                    .withCommonConfig(commonConfig)
-                    .setLocalCall(true);
-
-            executor.init();
-            executor.execute();
-            executor.go();
-            executor.finalization();
-
-            return executor;
-        } finally {
-            repository.rollback();
-        }
-    }
-
     @Override
     public ProgramResult callConstantFunction(String receiveAddress,
                                               CallTransaction.Function function, Object... funcArgs) {
-        return callConstantFunction(receiveAddress, ECKey.fromPrivate(new byte[32]), function, funcArgs);
+        return callConstantFunction(receiveAddress, new byte[20], function, funcArgs);
     }
 
     @Override
     public ProgramResult callConstantFunction(String receiveAddress, ECKey senderPrivateKey,
                                               CallTransaction.Function function, Object... funcArgs) {
+        return callConstantFunction(receiveAddress, senderPrivateKey.getAddress(), function, funcArgs);
+    }
+
+    private ProgramResult callConstantFunction(String receiveAddress, byte[] sender,
+                                               CallTransaction.Function function, Object... funcArgs) {
         Transaction tx = CallTransaction.createCallTransaction(0, 0, 100000000000000L,
                 receiveAddress, 0, function, funcArgs);
-        tx.sign(senderPrivateKey);
+        tx.setSender(sender);
         Block bestBlock = worldManager.getBlockchain().getBestBlock();
 
-        return callConstantImpl(tx, bestBlock).getResult();
+        return callExecutor.call(tx, bestBlock).getResult();
     }
 
     @Override
@@ -23,7 +23,7 @@ import org.ethereum.config.SystemProperties;
 import org.ethereum.core.*;
 import org.ethereum.crypto.ECKey;
 import org.ethereum.crypto.HashUtil;
-import org.ethereum.db.BlockStore;
+import org.ethereum.db.BloomIndex;
 import org.ethereum.db.ByteArrayWrapper;
 import org.ethereum.core.TransactionInfo;
 import org.ethereum.db.TransactionStore;
@@ -44,7 +44,6 @@ import org.ethereum.util.ByteUtil;
 import org.ethereum.util.RLP;
 import org.ethereum.vm.DataWord;
 import org.ethereum.vm.LogInfo;
-import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -70,6 +69,9 @@ import static org.ethereum.util.ByteUtil.bigIntegerToBytes;
 public class JsonRpcImpl implements JsonRpc {
     private static final Logger logger = LoggerFactory.getLogger("jsonrpc");
 
+    // the gas limit of calls when not specified
+    private static final long CALL_GAS_LIMIT = 4_000_000;
+
 
 
     public class BinaryCallArguments {
@@ -88,7 +90,7 @@ public class JsonRpcImpl implements JsonRpc {
             if (args.gasPrice != null && args.gasPrice.length()!=0)
                 gasPrice = JSonHexToLong(args.gasPrice);
 
-            gasLimit = 4_000_000;
+            gasLimit = CALL_GAS_LIMIT;
             if (args.gas != null && args.gas.length()!=0)
                 gasLimit = JSonHexToLong(args.gas);
 
@@ -147,7 +149,7 @@ public class JsonRpcImpl implements JsonRpc {
     SolidityCompiler solidityCompiler;
 
     @Autowired
-    ProgramInvokeFactory programInvokeFactory;
+    CallExecutor callExecutor;
 
     @Autowired
     CommonConfig commonConfig = CommonConfig.getDefault();
@@ -603,45 +605,31 @@ public class JsonRpcImpl implements JsonRpc {
         }
     }
 
-    public TransactionReceipt createCallTxAndExecute(CallArguments args, Block block) throws Exception {
-        Repository repository = ((Repository) worldManager.getRepository())
-                .getSnapshotTo(block.getStateRoot())
-                .startTracking();
-
-        return createCallTxAndExecute(args, block, repository, worldManager.getBlockStore());
-    }
-
-    public TransactionReceipt createCallTxAndExecute(CallArguments args, Block block, Repository repository, BlockStore blockStore) throws Exception {
+    /**
+     * Creates the unsigned call transaction with the sender from the arguments (zero address by default)
+     * @param defaultGasLimit the gas limit when not specified in the arguments
+     */
+    private Transaction createCallTx(CallArguments args, long defaultGasLimit) throws Exception {
         BinaryCallArguments bca = new BinaryCallArguments();
         bca.setArguments(args);
         Transaction tx = CallTransaction.createRawTransaction(0,
                 bca.gasPrice,
-                bca.gasLimit,
+                args.gas == null || args.gas.isEmpty() ? defaultGasLimit : bca.gasLimit,
                 bca.toAddress,
                 bca.value,
                 bca.data);
+        tx.setSender(args.from == null || args.from.isEmpty() ? new byte[20] : StringHexToByteArray(args.from));
+        return tx;
+    }
 
-        // put mock signature if not present
-        if (tx.getSignature() == null) {
-            tx.sign(ECKey.fromPrivate(new byte[32]));
-        }
+    public TransactionReceipt createCallTxAndExecute(CallArguments args, Block block) throws Exception {
+        Transaction tx = createCallTx(args, CALL_GAS_LIMIT);
+        return callExecutor.call(tx, block).getReceipt();
+    }
 
-        try {
-            TransactionExecutor executor = new TransactionExecutor
-                    (tx, block.getCoinbase(), repository, blockStore,
-                            programInvokeFactory, block, new EthereumListenerAdapter(), 0)
-                    .withCommonConfig(commonConfig)
-                    .setLocalCall(true);
-
-            executor.init();
-            executor.execute();
-            executor.go();
-            executor.finalization();
-
-            return executor.getReceipt();
-        } finally {
-            repository.rollback();
-        }
+    public TransactionReceipt createCallTxAndExecute(CallArguments args, Block block, Repository repository) throws Exception {
+        Transaction tx = createCallTx(args, CALL_GAS_LIMIT);
+        return callExecutor.call(tx, block, repository).getReceipt();
     }
 
     public String eth_call(CallArguments args, String bnOrId) throws Exception {
@@ -651,7 +639,7 @@ public class JsonRpcImpl implements JsonRpc {
             TransactionReceipt res;
             if ("pending".equals(bnOrId)) {
                 Block pendingBlock = blockchain.createNewBlock(blockchain.getBestBlock(), pendingState.getPendingTransactions(), Collections.<BlockHeader>emptyList());
-                res = createCallTxAndExecute(args, pendingBlock, pendingState.getRepository(), worldManager.getBlockStore());
+                res = createCallTxAndExecute(args, pendingBlock, pendingState.getRepository());
             } else {
                 res = createCallTxAndExecute(args, getByJsonBlockId(bnOrId));
             }
@@ -664,8 +652,9 @@ public class JsonRpcImpl implements JsonRpc {
     public String eth_estimateGas(CallArguments args) throws Exception {
         String s = null;
         try {
-            TransactionReceipt res = createCallTxAndExecute(args, blockchain.getBestBlock());
-            return s = TypeConverter.toJsonHex(res.getGasUsed());
+            // searching up to the call gas cap unless the limit is specified
+            Transaction tx = createCallTx(args, Long.MAX_VALUE);
+            return s = TypeConverter.toJsonHex(callExecutor.estimateGas(tx, blockchain.getBestBlock()));
         } finally {
             if (logger.isDebugEnabled()) logger.debug("eth_estimateGas(" + args + "): " + s);
         }
@@ -1126,9 +1115,20 @@ public class JsonRpcImpl implements JsonRpc {
             if (blockFrom != null) {
                 // need to add historical data
                 blockTo = blockTo == null ? blockchain.getBestBlock() : blockTo;
-                for (long blockNum = blockFrom.getNumber(); blockNum <= blockTo.getNumber(); blockNum++) {
+                BloomIndex bloomIndex = blockchain.getBloomIndex();
+                long indexedFrom = bloomIndex == null ? Long.MAX_VALUE : bloomIndex.getFirstIndexedBlock();
+
+                // blocks not covered by the bloom index are checked one by one
+                long linearTo = Math.min(blockTo.getNumber(), indexedFrom - 1);
+                for (long blockNum = blockFrom.getNumber(); blockNum <= linearTo; blockNum++) {
                     filter.onBlock(blockchain.getBlockByNumber(blockNum));
                 }
+                if (bloomIndex != null) {
+                    for (Long blockNum : bloomIndex.getMatchingBlocks(logFilter.getFilterBlooms(),
+                            blockFrom.getNumber(), blockTo.getNumber())) {
+                        filter.onBlock(blockchain.getBlockByNumber(blockNum));
+                    }
+                }
             }
 
             // the following is not precisely documented
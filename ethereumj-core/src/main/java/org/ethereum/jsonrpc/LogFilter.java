@@ -66,6 +66,14 @@ public class LogFilter {
         }
     }
 
+    /**
+     * @return AND list of OR lists of blooms the block bloom should match
+     */
+    public Bloom[][] getFilterBlooms() {
+        initBlooms();
+        return filterBlooms;
+    }
+
     public boolean matchBloom(Bloom blockBloom) {
         initBlooms();
         for (Bloom[] andBloom : filterBlooms) {
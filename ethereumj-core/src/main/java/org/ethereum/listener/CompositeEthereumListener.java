@@ -17,6 +17,7 @@
  */
 package org.ethereum.listener;
 
+import org.apache.commons.lang3.tuple.Pair;
 import org.ethereum.core.*;
 import org.ethereum.net.eth.message.StatusMessage;
 import org.ethereum.net.message.Message;
@@ -26,23 +27,49 @@ import org.ethereum.net.server.Channel;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
+ * Dispatches the events to the registered listeners
+ *
+ * The listeners are spread over a few shared {@link EventDispatchThread.Lane}s (or have a lane
+ * each, see {@link EventDispatchThread#getListenerLanes()}) so a slow listener delays only the
+ * listeners of its lane. The event is dispatched only to the listeners which override the
+ * corresponding {@link EthereumListenerAdapter} method, the event producers may check
+ * {@link #isSubscribed(String)} to skip creating the event at all.
+ * Events which only carry the latest state (pending state change, peer status update)
+ * are coalesced by the lanes with {@link EventDispatchThread.OverflowPolicy#COALESCE} policy
+ *
  * @author Roman Mandeleil
  * @since 12.11.2014
  */
 @Component(value = "EthereumListener")
 public class CompositeEthereumListener implements EthereumListener {
 
-    private static abstract class RunnableInfo implements Runnable {
+    private static abstract class EventTask {
+        abstract void run(EthereumListener listener);
+    }
+
+    private static class RunnableInfo implements Runnable {
         private EthereumListener listener;
         private String info;
+        private EventTask task;
 
-        public RunnableInfo(EthereumListener listener, String info) {
+        public RunnableInfo(EthereumListener listener, String info, EventTask task) {
             this.listener = listener;
             this.info = info;
+            this.task = task;
+        }
+
+        @Override
+        public void run() {
+            task.run(listener);
         }
 
         @Override
@@ -51,208 +78,280 @@ public class CompositeEthereumListener implements EthereumListener {
         }
     }
 
+    private static class Subscriber {
+        final EthereumListener listener;
+        final EventDispatchThread.Lane lane;
+        // names of the EthereumListener methods implemented by the listener
+        final Set<String> events = new HashSet<>();
+
+        Subscriber(EthereumListener listener, EventDispatchThread.Lane lane) {
+            this.listener = listener;
+            this.lane = lane;
+            for (Method method : EthereumListener.class.getMethods()) {
+                if (isImplemented(listener, method)) events.add(method.getName());
+            }
+            // the adapter overloads (like onBlock(Block, List)) are called by the adapter
+            // implementation of the interface method with the same name
+            for (Method method : EthereumListenerAdapter.class.getDeclaredMethods()) {
+                if (Modifier.isPublic(method.getModifiers()) && isImplemented(listener, method)) {
+                    events.add(method.getName());
+                }
+            }
+        }
+
+        private static boolean isImplemented(EthereumListener listener, Method method) {
+            try {
+                Method impl = listener.getClass().getMethod(method.getName(), method.getParameterTypes());
+                return impl.getDeclaringClass() != EthereumListenerAdapter.class;
+            } catch (NoSuchMethodException e) {
+                // can't be for the interface implementation, count as subscribed
+                return method.getDeclaringClass() == EthereumListener.class;
+            }
+        }
+    }
+
     @Autowired
     EventDispatchThread eventDispatchThread = EventDispatchThread.getDefault();
     
-    List<EthereumListener> listeners = new CopyOnWriteArrayList<>();
+    List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+
+    List<EventDispatchThread.Lane> sharedLanes = new ArrayList<>();
 
     public void addListener(EthereumListener listener) {
-        listeners.add(listener);
+        subscribers.add(new Subscriber(listener, laneFor(listener)));
     }
     public void removeListener(EthereumListener listener) {
-        listeners.remove(listener);
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.listener == listener) {
+                subscribers.remove(subscriber);
+                if (eventDispatchThread.getListenerLanes() == 0) subscriber.lane.close();
+            }
+        }
+    }
+
+    // the listener gets the shared lane with the fewest listeners
+    private synchronized EventDispatchThread.Lane laneFor(EthereumListener listener) {
+        int maxLanes = eventDispatchThread.getListenerLanes();
+        if (maxLanes == 0) return eventDispatchThread.newLane(listener.getClass().getSimpleName());
+        if (sharedLanes.size() < maxLanes) {
+            EventDispatchThread.Lane lane = eventDispatchThread.newLane("listeners-" + sharedLanes.size());
+            sharedLanes.add(lane);
+            return lane;
+        }
+
+        EventDispatchThread.Lane ret = null;
+        int minCount = Integer.MAX_VALUE;
+        for (EventDispatchThread.Lane lane : sharedLanes) {
+            int count = 0;
+            for (Subscriber subscriber : subscribers) {
+                if (subscriber.lane == lane) count++;
+            }
+            if (count < minCount) {
+                minCount = count;
+                ret = lane;
+            }
+        }
+        return ret;
+    }
+
+    /**
+     * @param event the name of {@link EthereumListener} method, e.g. "trace"
+     * @return true if any of the listeners handles the event
+     */
+    public boolean isSubscribed(String event) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.events.contains(event)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * The shortcut for the event producers holding the {@link EthereumListener} reference
+     */
+    public static boolean isSubscribed(EthereumListener listener, String event) {
+        return !(listener instanceof CompositeEthereumListener) ||
+                ((CompositeEthereumListener) listener).isSubscribed(event);
+    }
+
+    /**
+     * @return the lane the listener events are dispatched through (e.g. to check its queue
+     * size and latency), the lane may be shared with other listeners.
+     * Null if the listener is not registered
+     */
+    public EventDispatchThread.Lane getLane(EthereumListener listener) {
+        for (Subscriber subscriber : subscribers) {
+            if (subscriber.listener == listener) return subscriber.lane;
+        }
+        return null;
+    }
+
+    private void dispatch(String event, Object coalesceKey, EventTask task) {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.events.contains(event)) continue;
+            // the lane may be shared so the events are coalesced per listener
+            subscriber.lane.invokeLater(new RunnableInfo(subscriber.listener, event, task),
+                    coalesceKey == null ? null : Pair.of(subscriber, coalesceKey));
+        }
     }
 
     @Override
     public void trace(final String output) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "trace") {
-                @Override
-                public void run() {
-                    listener.trace(output);
-                }
-            });
-        }
+        dispatch("trace", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.trace(output);
+            }
+        });
     }
 
     @Override
     public void onBlock(final BlockSummary blockSummary) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onBlock") {
-                @Override
-                public void run() {
-                    listener.onBlock(blockSummary);
-                }
-            });
-        }
+        dispatch("onBlock", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onBlock(blockSummary);
+            }
+        });
     }
 
     @Override
     public void onRecvMessage(final Channel channel, final Message message) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onRecvMessage") {
-                @Override
-                public void run() {
-                    listener.onRecvMessage(channel, message);
-                }
-            });
-        }
+        dispatch("onRecvMessage", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onRecvMessage(channel, message);
+            }
+        });
     }
 
     @Override
     public void onSendMessage(final Channel channel, final Message message) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onSendMessage") {
-                @Override
-                public void run() {
-                    listener.onSendMessage(channel, message);
-                }
-            });
-        }
+        dispatch("onSendMessage", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onSendMessage(channel, message);
+            }
+        });
     }
 
     @Override
     public void onPeerDisconnect(final String host, final long port) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onPeerDisconnect") {
-                @Override
-                public void run() {
-                    listener.onPeerDisconnect(host, port);
-                }
-            });
-        }
+        dispatch("onPeerDisconnect", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onPeerDisconnect(host, port);
+            }
+        });
     }
 
     @Override
     public void onPendingTransactionsReceived(final List<Transaction> transactions) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onPendingTransactionsReceived") {
-                @Override
-                public void run() {
-                    listener.onPendingTransactionsReceived(transactions);
-                }
-            });
-        }
+        dispatch("onPendingTransactionsReceived", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onPendingTransactionsReceived(transactions);
+            }
+        });
     }
 
     @Override
     public void onPendingStateChanged(final PendingState pendingState) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onPendingStateChanged") {
-                @Override
-                public void run() {
-                    listener.onPendingStateChanged(pendingState);
-                }
-            });
-        }
+        dispatch("onPendingStateChanged", "onPendingStateChanged", new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onPendingStateChanged(pendingState);
+            }
+        });
     }
 
     @Override
     public void onSyncDone(final SyncState state) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onSyncDone") {
-                @Override
-                public void run() {
-                    listener.onSyncDone(state);
-                }
-            });
-        }
+        dispatch("onSyncDone", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onSyncDone(state);
+            }
+        });
     }
 
     @Override
     public void onNoConnections() {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onNoConnections") {
-                @Override
-                public void run() {
-                    listener.onNoConnections();
-                }
-            });
-        }
+        dispatch("onNoConnections", "onNoConnections", new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onNoConnections();
+            }
+        });
     }
 
     @Override
     public void onHandShakePeer(final Channel channel, final HelloMessage helloMessage) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onHandShakePeer") {
-                @Override
-                public void run() {
-                    listener.onHandShakePeer(channel, helloMessage);
-                }
-            });
-        }
+        dispatch("onHandShakePeer", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onHandShakePeer(channel, helloMessage);
+            }
+        });
     }
 
     @Override
     public void onVMTraceCreated(final String transactionHash, final String trace) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onVMTraceCreated") {
-                @Override
-                public void run() {
-                    listener.onVMTraceCreated(transactionHash, trace);
-                }
-            });
-        }
+        dispatch("onVMTraceCreated", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onVMTraceCreated(transactionHash, trace);
+            }
+        });
     }
 
     @Override
     public void onNodeDiscovered(final Node node) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onNodeDiscovered") {
-                @Override
-                public void run() {
-                    listener.onNodeDiscovered(node);
-                }
-            });
-        }
+        dispatch("onNodeDiscovered", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onNodeDiscovered(node);
+            }
+        });
     }
 
     @Override
     public void onEthStatusUpdated(final Channel channel, final StatusMessage status) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onEthStatusUpdated") {
-                @Override
-                public void run() {
-                    listener.onEthStatusUpdated(channel, status);
-                }
-            });
-        }
+        dispatch("onEthStatusUpdated", channel, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onEthStatusUpdated(channel, status);
+            }
+        });
     }
 
     @Override
     public void onTransactionExecuted(final TransactionExecutionSummary summary) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onTransactionExecuted") {
-                @Override
-                public void run() {
-                    listener.onTransactionExecuted(summary);
-                }
-            });
-        }
+        dispatch("onTransactionExecuted", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onTransactionExecuted(summary);
+            }
+        });
     }
 
     @Override
     public void onPeerAddedToSyncPool(final Channel peer) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onPeerAddedToSyncPool") {
-                @Override
-                public void run() {
-                    listener.onPeerAddedToSyncPool(peer);
-                }
-            });
-        }
+        dispatch("onPeerAddedToSyncPool", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onPeerAddedToSyncPool(peer);
+            }
+        });
     }
 
     @Override
     public void onPendingTransactionUpdate(final TransactionReceipt txReceipt, final PendingTransactionState state,
                                            final Block block) {
-        for (final EthereumListener listener : listeners) {
-            eventDispatchThread.invokeLater(new RunnableInfo(listener, "onPendingTransactionUpdate") {
-                @Override
-                public void run() {
-                    listener.onPendingTransactionUpdate(txReceipt, state, block);
-                }
-            });
-        }
+        dispatch("onPendingTransactionUpdate", null, new EventTask() {
+            @Override
+            public void run(EthereumListener listener) {
+                listener.onPendingTransactionUpdate(txReceipt, state, block);
+            }
+        });
     }
 }
@@ -0,0 +1,189 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.manager;
+
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reads encoded blocks one by one from the blocks dump file without loading
+ * the whole dump into memory
+ *
+ * The dump is either the {@link Format#HEX} text with the hex encoded block RLP per line or
+ * the {@link Format#RLP} binary with the block RLPs either concatenated (like 'geth export' writes them)
+ * or wrapped into the RLP list(s)
+ */
+public class BlockDumpReader implements Closeable {
+
+    public enum Format {
+        HEX,
+        RLP
+    }
+
+    private static final int BUFFER_SIZE = 1024 * 1024;
+
+    private final Format format;
+    private final long size;
+    private final BufferedInputStream in;
+    private final BufferedReader lines;
+    // written by the reading thread only, read by the progress reports
+    private volatile long position;
+
+    // remaining bytes of the RLP list the blocks are wrapped into, -1 if not inside the list
+    private long wrapperRemaining = -1;
+
+    public BlockDumpReader(File file, Format format) throws IOException {
+        this.format = format;
+        this.size = file.length();
+        this.in = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+        this.lines = format == Format.HEX ?
+                new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8), BUFFER_SIZE) : null;
+    }
+
+    /**
+     * @return the encoded RLP of the next block, null if there are no more blocks
+     */
+    public byte[] next() throws IOException {
+        return format == Format.HEX ? nextHex() : nextRlp();
+    }
+
+    private byte[] nextHex() throws IOException {
+        String line;
+        do {
+            line = lines.readLine();
+            if (line == null) return null;
+            position += line.length() + 1;
+            line = line.trim();
+        } while (line.isEmpty());
+        return Hex.decode(line);
+    }
+
+    private byte[] nextRlp() throws IOException {
+        byte[] prefix = new byte[9];
+        while (true) {
+            if (wrapperRemaining == 0) wrapperRemaining = -1;
+            if (wrapperRemaining < 0 && isWrapperNext()) {
+                readPrefix(prefix);
+                wrapperRemaining = payloadLength(prefix);
+                continue;
+            }
+
+            int prefixLength = readPrefix(prefix);
+            if (prefixLength < 0) {
+                if (wrapperRemaining > 0) throw new EOFException("Unexpected end of the blocks list at " + position);
+                return null;
+            }
+            long payloadLength = payloadLength(prefix);
+            if (prefixLength + payloadLength > Integer.MAX_VALUE) {
+                throw new IOException("Too large block RLP at " + (position - prefixLength));
+            }
+
+            byte[] ret = new byte[(int) (prefixLength + payloadLength)];
+            System.arraycopy(prefix, 0, ret, 0, prefixLength);
+            readFully(ret, prefixLength, ret.length - prefixLength);
+            if (wrapperRemaining > 0) {
+                wrapperRemaining -= ret.length;
+                if (wrapperRemaining < 0) throw new IOException("Block RLP exceeds the blocks list at " + position);
+            }
+            return ret;
+        }
+    }
+
+    /**
+     * The block is the list which first element is the header list starting with the parent hash string,
+     * while the list of blocks has the header list at the third level
+     */
+    private boolean isWrapperNext() throws IOException {
+        byte[] prefix = new byte[9];
+        long savedPosition = position;
+        in.mark(32);
+        try {
+            if (readPrefix(prefix) < 0) return false;
+            // the empty list is skipped as the empty blocks list
+            if (payloadLength(prefix) == 0) return true;
+            if (readPrefix(prefix) < 0) return false;
+            int b = in.read();
+            return b >= 0xC0;
+        } catch (IOException e) {
+            // not the list of lists, let the block read report the problem
+            return false;
+        } finally {
+            in.reset();
+            position = savedPosition;
+        }
+    }
+
+    /**
+     * Reads the RLP list prefix
+     * @return the prefix length or -1 at the end of file
+     */
+    private int readPrefix(byte[] prefix) throws IOException {
+        int b = in.read();
+        if (b < 0) return -1;
+        position++;
+        if (b < 0xC0) {
+            throw new IOException("RLP list expected at " + (position - 1) + ", found 0x" + Integer.toHexString(b));
+        }
+        prefix[0] = (byte) b;
+        int lengthOfLength = b > 0xF7 ? b - 0xF7 : 0;
+        readFully(prefix, 1, lengthOfLength);
+        return 1 + lengthOfLength;
+    }
+
+    private static long payloadLength(byte[] prefix) {
+        int b = prefix[0] & 0xFF;
+        if (b <= 0xF7) return b - 0xC0;
+        long ret = 0;
+        for (int i = 1; i <= b - 0xF7; i++) {
+            ret = (ret << 8) | (prefix[i] & 0xFF);
+        }
+        return ret;
+    }
+
+    private void readFully(byte[] buf, int off, int len) throws IOException {
+        while (len > 0) {
+            int n = in.read(buf, off, len);
+            if (n < 0) throw new EOFException("Unexpected end of file at " + position);
+            off += n;
+            len -= n;
+            position += n;
+        }
+    }
+
+    /**
+     * @return number of bytes read from the dump so far
+     */
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * @return the dump file size in bytes
+     */
+    public long getSize() {
+        return size;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (lines != null) lines.close();
+        in.close();
+    }
+}
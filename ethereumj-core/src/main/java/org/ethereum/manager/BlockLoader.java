@@ -25,24 +25,27 @@ import org.ethereum.util.*;
 import org.ethereum.validator.BlockHeaderValidator;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.spongycastle.util.encoders.Hex;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
 
-import java.io.FileInputStream;
-import java.io.IOException;
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.text.DateFormat;
-import java.text.SimpleDateFormat;
-import java.util.*;
-import java.util.concurrent.*;
+import java.io.File;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Imports blocks from the dump file (see {@link BlockDumpReader})
+ *
+ * The dump is read and decoded block by block, the senders recovery and the header validation
+ * are performed on a pool of threads and then the blocks are imported in the dump order.
+ * The blocks already present in the DB are skipped, so the interrupted import resumes
+ * from the last block flushed to the DB
+ */
 @Component
 public class BlockLoader {
     private static final Logger logger = LoggerFactory.getLogger("blockqueue");
 
+    private static final int QUEUE_SIZE = 1000;
+    private static final long REPORT_INTERVAL = 10_000;
+
     @Autowired
     private BlockHeaderValidator headerValidator;
 
@@ -55,107 +58,162 @@ public class BlockLoader {
     @Autowired
     DbFlushManager dbFlushManager;
 
-    Scanner scanner = null;
+    private static class PreparedBlock {
+        final Block block;
+        final boolean valid;
 
-    DateFormat df = new SimpleDateFormat("HH:mm:ss.SSSS");
+        PreparedBlock(Block block, boolean valid) {
+            this.block = block;
+            this.valid = valid;
+        }
+    }
 
-    private void blockWork(Block block) {
-        if (block.getNumber() >= blockchain.getBlockStore().getBestBlock().getNumber() || blockchain.getBlockStore().getBlockByHash(block.getHash()) == null) {
+    private BlockDumpReader reader;
+    private ExecutorPipeline<Block, PreparedBlock> exec1;
+    private ExecutorPipeline<PreparedBlock, ?> exec2;
+    private volatile boolean failed;
 
-            if (block.getNumber() > 0 && !isValid(block.getHeader())) {
-                throw new RuntimeException();
+    private final AtomicLong importedBlocks = new AtomicLong();
+    private final AtomicLong importedTxs = new AtomicLong();
+    private final AtomicLong importedGas = new AtomicLong();
+    private long skippedBlocks;
+    private long startTime;
+    private long lastReportTime;
+    private long lastReportBlocks;
+
+    private PreparedBlock prepare(Block block) {
+        try {
+            for (Transaction tx : block.getTransactionsList()) {
+                tx.getSender();
             }
+            return new PreparedBlock(block, block.getNumber() == 0 || isValid(block.getHeader()));
+        } catch (Exception e) {
+            logger.error("Failed to decode block #" + block.getNumber(), e);
+            return new PreparedBlock(block, false);
+        }
+    }
 
-            long s = System.currentTimeMillis();
-            ImportResult result = blockchain.tryToConnect(block);
+    private void blockWork(PreparedBlock prepared) {
+        if (failed) return;
+        Block block = prepared.block;
 
-            if (block.getNumber() % 10 == 0) {
-                System.out.println(df.format(new Date()) + " Imported block " + block.getShortDescr() + ": " + result + " (prework: "
-                        + exec1.getQueue().size() + ", work: " + exec2.getQueue().size() + ", blocks: " + exec1.getOrderMap().size() + ") in " +
-                        (System.currentTimeMillis() - s) + " ms");
-            }
+        if (!prepared.valid) {
+            fail("Invalid block " + block.getShortDescr());
+            return;
+        }
+
+        ImportResult result = blockchain.tryToConnect(block);
+        if (!result.isSuccessful() && result != ImportResult.EXIST) {
+            fail("Failed to import block " + block.getShortDescr() + ": " + result);
+            return;
+        }
 
-        } else {
+        importedBlocks.incrementAndGet();
+        importedTxs.addAndGet(block.getTransactionsList().size());
+        importedGas.addAndGet(block.getGasUsed());
 
-            if (block.getNumber() % 10000 == 0)
-                System.out.println("Skipping block #" + block.getNumber());
+        long now = System.currentTimeMillis();
+        if (now - lastReportTime >= REPORT_INTERVAL) {
+            report(block, now);
         }
     }
 
-    ExecutorPipeline<Block, Block> exec1;
-    ExecutorPipeline<Block, ?> exec2;
+    private void report(Block block, long now) {
+        long blocks = importedBlocks.get();
+        long sec = Math.max(1, (now - startTime) / 1000);
+        logger.info(String.format("Imported block #%d: %d blocks/s (%d blocks/s avg, %d tx/s, %.2f Mgas/s), " +
+                        "read %d of %d MB (%d%%), queues: prepare %d, import %d",
+                block.getNumber(), (blocks - lastReportBlocks) * 1000 / Math.max(1, now - lastReportTime),
+                blocks / sec, importedTxs.get() / sec, importedGas.get() / sec / 1_000_000d,
+                reader.getPosition() >> 20, reader.getSize() >> 20,
+                reader.getSize() == 0 ? 100 : reader.getPosition() * 100 / reader.getSize(),
+                exec1.getQueue().size(), exec2.getQueue().size()));
+        lastReportTime = now;
+        lastReportBlocks = blocks;
+    }
+
+    private void fail(String reason) {
+        logger.error(reason + ", stopping the import");
+        failed = true;
+    }
 
     public void loadBlocks() {
-        exec1 = new ExecutorPipeline(8, 1000, true, new Functional.Function<Block, Block>() {
+        String fileSrc = config.blocksLoader();
+        BlockDumpReader.Format format = "rlp".equalsIgnoreCase(config.blocksFormat()) ?
+                BlockDumpReader.Format.RLP : BlockDumpReader.Format.HEX;
+
+        boolean success = loadBlocks(new File(fileSrc), format);
+        System.exit(success ? 0 : 1);
+    }
+
+    /**
+     * Imports the blocks from the dump file
+     * @return true if all the blocks were imported
+     */
+    public boolean loadBlocks(File file, BlockDumpReader.Format format) {
+        int threads = config.blocksLoaderThreads() > 0 ? config.blocksLoaderThreads() :
+                Runtime.getRuntime().availableProcessors();
+        exec1 = new ExecutorPipeline<>(threads, QUEUE_SIZE, true, new Functional.Function<Block, PreparedBlock>() {
             @Override
-            public Block apply(Block b) {
-                if (b.getNumber() >= blockchain.getBlockStore().getBestBlock().getNumber()) {
-                    for (Transaction tx : b.getTransactionsList()) {
-                        tx.getSender();
-                    }
-                }
-                return b;
+            public PreparedBlock apply(Block block) {
+                return prepare(block);
             }
         }, new Functional.Consumer<Throwable>() {
             @Override
             public void accept(Throwable throwable) {
                 logger.error("Unhandled exception: ", throwable);
             }
-        });
+        }).setThreadPoolName("BlockLoaderPrepare");
 
-        exec2 = exec1.add(1, 1000, new Functional.Consumer<Block>() {
+        exec2 = exec1.add(1, QUEUE_SIZE, new Functional.Consumer<PreparedBlock>() {
             @Override
-            public void accept(Block block) {
+            public void accept(PreparedBlock block) {
                 try {
                     blockWork(block);
                 } catch (Exception e) {
-                    e.printStackTrace();
+                    logger.error("Failed to import block " + block.block.getShortDescr(), e);
+                    failed = true;
                 }
             }
-        });
-
-        String fileSrc = config.blocksLoader();
-        try {
-            final String blocksFormat = config.getConfig().hasPath("blocks.format") ? config.getConfig().getString("blocks.format") : null;
-            System.out.println("Loading blocks: " + fileSrc + ", format: " + blocksFormat);
-
-            if ("rlp".equalsIgnoreCase(blocksFormat)) {     // rlp encoded bytes
-                Path path = Paths.get(fileSrc);
-                // NOT OPTIMAL, but fine for tests
-                byte[] data = Files.readAllBytes(path);
-                RLPList list = RLP.decode2(data);
-                for (RLPElement item : list) {
-                    Block block = new Block(item.getRLPData());
-                    exec1.push(block);
-                }
-            } else {                                        // hex string
-                FileInputStream inputStream = new FileInputStream(fileSrc);
-                scanner = new Scanner(inputStream, "UTF-8");
+        }).setThreadPoolName("BlockLoaderImport");
 
-                while (scanner.hasNextLine()) {
-
-                    byte[] blockRLPBytes = Hex.decode(scanner.nextLine());
-                    Block block = new Block(blockRLPBytes);
+        // the larger write cache the less often the state is flushed
+        if (config.blocksLoaderWriteCacheSize() > 0) {
+            dbFlushManager.setSizeThreshold(config.blocksLoaderWriteCacheSize() * 1024L * 1024L);
+        }
 
-                    exec1.push(block);
+        long bestNumber = blockchain.getBestBlock().getNumber();
+        logger.info("Loading blocks: " + file + ", format: " + format + ", best block #" + bestNumber);
+
+        startTime = lastReportTime = System.currentTimeMillis();
+        try (BlockDumpReader reader = new BlockDumpReader(file, format)) {
+            this.reader = reader;
+            byte[] rlp;
+            while (!failed && (rlp = reader.next()) != null) {
+                // the header is decoded alone to skip the imported blocks fast
+                BlockHeader header = new BlockHeader(RLP.decodeLazyList(rlp).getList(0));
+                if (header.getNumber() <= bestNumber && blockchain.getBlockStore().isBlockExist(header.getHash())) {
+                    if (++skippedBlocks % 100_000 == 0) {
+                        logger.info("Skipped imported blocks up to #" + header.getNumber());
+                    }
+                    continue;
                 }
+                exec1.push(new Block(rlp));
             }
-        } catch (Exception e) {
-            e.printStackTrace();
-            System.exit(1);
-        }
-
 
-        try {
             exec1.join();
-        } catch (InterruptedException e) {
-            throw new RuntimeException(e);
+        } catch (Exception e) {
+            logger.error("Error reading blocks from " + file, e);
+            failed = true;
         }
 
         dbFlushManager.flushSync();
 
-        System.out.println(" * Done * ");
-        System.exit(0);
+        long sec = Math.max(1, (System.currentTimeMillis() - startTime) / 1000);
+        logger.info((failed ? "Import stopped" : "Import done") + ": " + importedBlocks.get() + " blocks imported (" +
+                importedBlocks.get() / sec + " blocks/s), " + skippedBlocks + " skipped, best block " +
+                blockchain.getBestBlock().getShortDescr());
+        return !failed;
     }
 
     private boolean isValid(BlockHeader header) {
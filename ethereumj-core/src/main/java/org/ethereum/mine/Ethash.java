@@ -30,7 +30,14 @@ import org.ethereum.util.FastByteComparisons;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.io.*;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -46,7 +53,7 @@ import static org.ethereum.mine.MinerIfc.MiningResult;
  */
 public class Ethash {
     private static final Logger logger = LoggerFactory.getLogger("mine");
-    private static EthashParams ethashParams = new EthashParams();
+    static EthashParams ethashParams = new EthashParams();
 
     private static Ethash cachedInstance = null;
     private static long cachedBlockEpoch = 0;
@@ -55,6 +62,12 @@ public class Ethash {
             new ThreadPoolExecutor(8, 8, 0L, TimeUnit.SECONDS, new LinkedBlockingQueue<Runnable>(),
             new ThreadFactoryBuilder().setNameFormat("ethash-pool-%d").build()));
 
+    // generates the dataset for the next epoch in background
+    private static ExecutorService prepareExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ethash-prepare-%d").setDaemon(true).build());
+    private static long preparingEpoch = -1;
+    private static Future<?> preparing;
+
     public static boolean fileCacheEnabled = true;
 
     /**
@@ -73,9 +86,10 @@ public class Ethash {
 
     private long blockNumber;
     private int[] cacheLight = null;
-    private int[] fullData = null;
+    private EthashDataset fullData = null;
     private SystemProperties config;
     private long startNonce = -1;
+    private boolean fileCache = true;
 
     public Ethash(SystemProperties config, long blockNumber) {
         this.config = config;
@@ -85,82 +99,235 @@ public class Ethash {
         }
     }
 
+    /**
+     * @param fileCache false to keep the light cache in memory only, i.e. neither load it from
+     *                  nor save it to the file cache (see {@link #fileCacheEnabled})
+     */
+    public Ethash withFileCache(boolean fileCache) {
+        this.fileCache = fileCache;
+        return this;
+    }
+
     public synchronized int[] getCacheLight() {
         if (cacheLight == null) {
-            File file = new File(config.ethashDir(), "mine-dag-light.dat");
-            if (fileCacheEnabled && file.canRead()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
+            boolean useFile = fileCacheEnabled && fileCache;
+            File file = new File(config.ethashDir(), "mine-dag-light-" + getEpoch() + ".dat");
+            long size = getEthashAlgo().getParams().getCacheSize(blockNumber);
+            if (useFile && file.canRead() && file.length() == size) {
+                try (FileChannel channel = new RandomAccessFile(file, "r").getChannel()) {
                     logger.info("Loading light dataset from " + file.getAbsolutePath());
-                    long bNum = ois.readLong();
-                    if (bNum == blockNumber) {
-                        cacheLight = (int[]) ois.readObject();
-                        logger.info("Dataset loaded.");
-                    } else {
-                        logger.info("Dataset block number miss: " + bNum + " != " + blockNumber);
-                    }
-                } catch (IOException | ClassNotFoundException e) {
+                    ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+                    cacheLight = new int[(int) (size / 4)];
+                    buffer.order(ByteOrder.LITTLE_ENDIAN).asIntBuffer().get(cacheLight);
+                    logger.info("Dataset loaded.");
+                } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
             }
 
             if (cacheLight == null) {
                 logger.info("Calculating light dataset...");
-                cacheLight = getEthashAlgo().makeCache(getEthashAlgo().getParams().getCacheSize(blockNumber),
-                        getEthashAlgo().getSeedHash(blockNumber));
+                cacheLight = getEthashAlgo().makeCache(size, getEthashAlgo().getSeedHash(blockNumber));
                 logger.info("Light dataset calculated.");
 
-                if (fileCacheEnabled) {
+                if (useFile) {
                     file.getParentFile().mkdirs();
-                    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))){
+                    File tmpFile = new File(file.getPath() + ".tmp");
+                    try (FileChannel channel = new RandomAccessFile(tmpFile, "rw").getChannel()) {
                         logger.info("Writing light dataset to " + file.getAbsolutePath());
-                        oos.writeLong(blockNumber);
-                        oos.writeObject(cacheLight);
+                        ByteBuffer buffer = ByteBuffer.allocate(cacheLight.length * 4).order(ByteOrder.LITTLE_ENDIAN);
+                        buffer.asIntBuffer().put(cacheLight);
+                        channel.truncate(0);
+                        while (buffer.hasRemaining()) channel.write(buffer);
                     } catch (IOException e) {
                         throw new RuntimeException(e);
                     }
+                    replace(tmpFile, file);
                 }
             }
         }
         return cacheLight;
     }
 
-    public synchronized int[] getFullDataset() {
+    /**
+     * Returns the full dataset memory-mapped from the file cache, when there is no
+     * cached dataset it is generated in parallel on all CPU cores.
+     * The dataset for the next epoch is then generated in background
+     */
+    public EthashDataset getFullDataset() {
+        EthashDataset ret = getFullDatasetImpl();
+        if (fileCacheEnabled) {
+            prepareNextEpoch(config, blockNumber + ethashParams.getEPOCH_LENGTH());
+        }
+        return ret;
+    }
+
+    private synchronized EthashDataset getFullDatasetImpl() {
+        if (fullData != null) return fullData;
+
+        if (fileCacheEnabled) awaitPreparation(getEpoch());
+        EthashDataset ret = generateFullDataset();
+        // the files of the previous epochs are deleted only when the epoch
+        // is mined, the background generation is for the next epoch
+        if (fileCacheEnabled) deleteOutdatedDatasets(config, getEpoch());
+        return ret;
+    }
+
+    /**
+     * Maps the dataset file or generates it, doesn't wait for the background generation
+     * so is called directly by the background task
+     */
+    private synchronized EthashDataset generateFullDataset() {
         if (fullData == null) {
-            File file = new File(config.ethashDir(), "mine-dag.dat");
-            if (fileCacheEnabled && file.canRead()) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                    logger.info("Loading dataset from " + file.getAbsolutePath());
-                    long bNum = ois.readLong();
-                    if (bNum == blockNumber) {
-                        fullData = (int[]) ois.readObject();
-                        logger.info("Dataset loaded.");
+            long size = getFullSize();
+            int itemBytes = getEthashAlgo().getParams().getHASH_BYTES();
+            if (fileCacheEnabled) {
+                File file = getFullDatasetFile(config, getEpoch());
+                try {
+                    if (file.canRead() && file.length() == size) {
+                        logger.info("Mapping dataset from " + file.getAbsolutePath());
+                        fullData = EthashDataset.map(file, size, itemBytes);
                     } else {
-                        logger.info("Dataset block number miss: " + bNum + " != " + blockNumber);
+                        file.getParentFile().mkdirs();
+                        File tmpFile = new File(file.getPath() + ".tmp");
+                        EthashDataset dataset = EthashDataset.map(tmpFile, size, itemBytes);
+                        calcFullDataset(dataset);
+                        dataset.flush();
+                        replace(tmpFile, file);
+                        fullData = dataset;
                     }
-                } catch (IOException | ClassNotFoundException e) {
+                } catch (IOException e) {
                     throw new RuntimeException(e);
                 }
+            } else {
+                fullData = EthashDataset.allocate(size, itemBytes);
+                calcFullDataset(fullData);
+            }
+        }
+        return fullData;
+    }
+
+    /**
+     * Calculates the dataset items in parallel, the progress is logged each 10%
+     */
+    private void calcFullDataset(final EthashDataset dataset) {
+        final int[] cache = getCacheLight();
+        final int itemsCount = dataset.getItemsCount();
+        int threads = Runtime.getRuntime().availableProcessors();
+        final int step = (itemsCount + threads - 1) / threads;
+        final AtomicLong calculated = new AtomicLong();
+        final long reportStep = Math.max(1, itemsCount / 10);
+
+        logger.info("Calculating full dataset for block #" + blockNumber + " (" + itemsCount + " items) in " +
+                threads + " threads...");
+        long start = System.currentTimeMillis();
+        ExecutorService dagExecutor = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("ethash-dag-%d").setDaemon(true).build());
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                final int from = t * step;
+                final int to = Math.min(itemsCount, from + step);
+                futures.add(dagExecutor.submit(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (int i = from; i < to; i++) {
+                            dataset.putItem(i, getEthashAlgo().calcDatasetItem(cache, i));
+                            long n = calculated.incrementAndGet();
+                            if (n % reportStep == 0) {
+                                logger.info("Full dataset calculation: " + (n * 100 / itemsCount) + "%");
+                            }
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
             }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Dataset calculation interrupted", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } finally {
+            dagExecutor.shutdownNow();
+        }
+        logger.info("Full dataset calculated in " + (System.currentTimeMillis() - start) / 1000 + " sec.");
+    }
 
-            if (fullData == null){
+    private long getEpoch() {
+        return blockNumber / ethashParams.getEPOCH_LENGTH();
+    }
 
-                logger.info("Calculating full dataset...");
-                fullData = getEthashAlgo().calcDataset(getFullSize(), getCacheLight());
-                logger.info("Full dataset calculated.");
+    private static File getFullDatasetFile(SystemProperties config, long epoch) {
+        return new File(config.ethashDir(), "mine-dag-" + epoch + ".dat");
+    }
 
-                if (fileCacheEnabled) {
-                    file.getParentFile().mkdirs();
-                    try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(file))) {
-                        logger.info("Writing dataset to " + file.getAbsolutePath());
-                        oos.writeLong(blockNumber);
-                        oos.writeObject(fullData);
-                    } catch (IOException e) {
-                        throw new RuntimeException(e);
-                    }
+    /**
+     * Starts the generation of the dataset file for the next epoch in background
+     * unless it is already generated
+     */
+    private static synchronized void prepareNextEpoch(final SystemProperties config, final long nextBlockNumber) {
+        long epoch = nextBlockNumber / ethashParams.getEPOCH_LENGTH();
+        if (preparingEpoch == epoch) return;
+        preparingEpoch = epoch;
+        preparing = null;
+
+        final File file = getFullDatasetFile(config, epoch);
+        if (file.canRead() && file.length() == ethashParams.getFullSize(nextBlockNumber)) return;
+
+        final Ethash next = new Ethash(config, nextBlockNumber);
+        preparing = prepareExecutor.submit(new Runnable() {
+            @Override
+            public void run() {
+                logger.info("Preparing dataset for the next epoch, block #" + nextBlockNumber);
+                // the dataset is released after generation, the miner maps the file
+                next.generateFullDataset();
+            }
+        });
+    }
+
+    /**
+     * Waits for the background dataset generation if it is for the specified epoch
+     */
+    private static void awaitPreparation(long epoch) {
+        Future<?> future;
+        synchronized (Ethash.class) {
+            future = preparingEpoch == epoch ? preparing : null;
+        }
+        if (future == null) return;
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            logger.warn("Background dataset generation failed", e.getCause());
+        }
+    }
+
+    private static void deleteOutdatedDatasets(SystemProperties config, long epoch) {
+        // files of the former serialized format
+        new File(config.ethashDir(), "mine-dag.dat").delete();
+        new File(config.ethashDir(), "mine-dag-light.dat").delete();
+
+        for (long e = epoch - 1; e >= 0; e--) {
+            File file = getFullDatasetFile(config, e);
+            File lightFile = new File(config.ethashDir(), "mine-dag-light-" + e + ".dat");
+            if (!file.exists() && !lightFile.exists()) break;
+            for (File f : new File[] {file, lightFile}) {
+                if (f.exists() && !f.delete()) {
+                    logger.warn("Couldn't delete outdated dataset file " + f.getAbsolutePath());
                 }
             }
         }
-        return fullData;
+    }
+
+    private static void replace(File src, File dst) {
+        dst.delete();
+        if (!src.renameTo(dst)) {
+            logger.warn("Couldn't rename " + src.getAbsolutePath() + " to " + dst.getAbsolutePath());
+        }
     }
 
     private long getFullSize() {
@@ -178,7 +345,7 @@ public class Ethash {
         return hashimotoLight(header, longToBytes(nonce));
     }
 
-    private  Pair<byte[], byte[]> hashimotoLight(BlockHeader header, byte[] nonce) {
+    public Pair<byte[], byte[]> hashimotoLight(BlockHeader header, byte[] nonce) {
         return getEthashAlgo().hashimotoLight(getFullSize(), getCacheLight(),
                 sha3(header.getEncodedWithoutNonce()), nonce);
     }
@@ -38,6 +38,17 @@ import static org.spongycastle.util.Arrays.reverse;
  * Created by Anton Nashatyrev on 27.11.2015.
  */
 public class EthashAlgo {
+
+    /**
+     * The source of the full dataset items
+     */
+    public interface DatasetLookup {
+        /**
+         * Copies the dataset item to the array starting from the offset
+         */
+        void getItem(int idx, int[] dst, int dstOff);
+    }
+
     EthashParams params;
 
     public EthashAlgo() {
@@ -153,7 +164,27 @@ public class EthashAlgo {
     }
 
     public Pair<byte[], byte[]> hashimoto(byte[] blockHeaderTruncHash, byte[] nonce, long fullSize,
-                                          int[] cacheOrDataset, boolean full) {
+                                          final int[] cacheOrDataset, boolean full) {
+        final int hashWords = params.getHASH_BYTES() / 4;
+        DatasetLookup lookup = full ?
+                new DatasetLookup() {
+                    @Override
+                    public void getItem(int idx, int[] dst, int dstOff) {
+                        arraycopy(cacheOrDataset, idx * hashWords, dst, dstOff, hashWords);
+                    }
+                } :
+                new DatasetLookup() {
+                    @Override
+                    public void getItem(int idx, int[] dst, int dstOff) {
+                        int[] item = calcDatasetItem(cacheOrDataset, idx);
+                        arraycopy(item, 0, dst, dstOff, item.length);
+                    }
+                };
+        return hashimoto(blockHeaderTruncHash, nonce, fullSize, lookup);
+    }
+
+    public Pair<byte[], byte[]> hashimoto(byte[] blockHeaderTruncHash, byte[] nonce, long fullSize,
+                                          DatasetLookup dataset) {
         if (nonce.length != 8) throw new RuntimeException("nonce.length != 8");
 
         int hashWords = params.getHASH_BYTES() / 4;
@@ -171,13 +202,7 @@ public class EthashAlgo {
             int[] newData = new int[mix.length];
             int off = p * mixhashes;
             for (int j = 0; j < mixhashes; j++) {
-                int itemIdx = off + j;
-                if (!full) {
-                    int[] lookup1 = calcDatasetItem(cacheOrDataset, itemIdx);
-                    arraycopy(lookup1, 0, newData, j * lookup1.length, lookup1.length);
-                } else {
-                    arraycopy(cacheOrDataset, itemIdx * hashWords, newData, j * hashWords, hashWords);
-                }
+                dataset.getItem(off + j, newData, j * hashWords);
             }
             for (int i1 = 0; i1 < mix.length; i1++) {
                 mix[i1] = fnv(mix[i1], newData[i1]);
@@ -205,6 +230,11 @@ public class EthashAlgo {
         return hashimoto(blockHeaderTruncHash, nonce, fullSize, dataset, true);
     }
 
+    public Pair<byte[], byte[]> hashimotoFull(long fullSize, final DatasetLookup dataset, byte[] blockHeaderTruncHash,
+                                              byte[]  nonce) {
+        return hashimoto(blockHeaderTruncHash, nonce, fullSize, dataset);
+    }
+
     public long mine(long fullSize, int[] dataset, byte[] blockHeaderTruncHash, long difficulty) {
         return mine(fullSize, dataset, blockHeaderTruncHash, difficulty, new Random().nextLong());
     }
@@ -221,6 +251,22 @@ public class EthashAlgo {
         return nonce;
     }
 
+    /**
+     * The miner version reading the dataset through the {@link DatasetLookup}
+     * e.g. the memory-mapped {@link EthashDataset}
+     */
+    public long mine(long fullSize, DatasetLookup dataset, byte[] blockHeaderTruncHash, long difficulty, long startNonce) {
+        long nonce = startNonce;
+        BigInteger target = valueOf(2).pow(256).divide(valueOf(difficulty));
+        while (!Thread.currentThread().isInterrupted()) {
+            nonce++;
+            Pair<byte[], byte[]> pair = hashimotoFull(fullSize, dataset, blockHeaderTruncHash, longToBytes(nonce));
+            BigInteger h = new BigInteger(1, pair.getRight() /* ?? */);
+            if (h.compareTo(target) < 0) break;
+        }
+        return nonce;
+    }
+
     /**
      * This the slower miner version which uses only cache thus taking much less memory than
      * regular {@link #mine} method
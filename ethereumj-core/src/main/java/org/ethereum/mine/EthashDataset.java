@@ -0,0 +1,130 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.mine;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * The Ethash full dataset kept off-heap
+ *
+ * The dataset is either memory-mapped from a file of raw little-endian words
+ * or allocated as direct buffers when the file cache is disabled.
+ * As a single buffer can't exceed 2Gb the dataset is split into chunks
+ *
+ * Distinct items can be written concurrently
+ */
+public class EthashDataset implements EthashAlgo.DatasetLookup {
+
+    // multiple of the item size
+    private static final int CHUNK_BYTES = 1 << 30;
+    private static final int CHUNK_WORDS = CHUNK_BYTES / 4;
+
+    private final long size;
+    private final int itemWords;
+    private final ByteBuffer[] buffers;
+    private final IntBuffer[] chunks;
+
+    private EthashDataset(long size, int itemBytes, ByteBuffer[] buffers) {
+        this.size = size;
+        this.itemWords = itemBytes / 4;
+        this.buffers = buffers;
+        this.chunks = new IntBuffer[buffers.length];
+        for (int i = 0; i < buffers.length; i++) {
+            chunks[i] = buffers[i].order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+        }
+    }
+
+    /**
+     * Maps the dataset file, the file is created or extended if its size doesn't match
+     * @param itemBytes dataset item size, {@link EthashParams#getHASH_BYTES()}
+     */
+    public static EthashDataset map(File file, long size, int itemBytes) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "rw")) {
+            raf.setLength(size);
+            FileChannel channel = raf.getChannel();
+            ByteBuffer[] buffers = new ByteBuffer[chunksCount(size)];
+            for (int i = 0; i < buffers.length; i++) {
+                long off = (long) i * CHUNK_BYTES;
+                buffers[i] = channel.map(FileChannel.MapMode.READ_WRITE, off, Math.min(CHUNK_BYTES, size - off));
+            }
+            // the mapping stays valid after the channel is closed
+            return new EthashDataset(size, itemBytes, buffers);
+        }
+    }
+
+    /**
+     * Allocates the dataset in the direct memory
+     */
+    public static EthashDataset allocate(long size, int itemBytes) {
+        ByteBuffer[] buffers = new ByteBuffer[chunksCount(size)];
+        for (int i = 0; i < buffers.length; i++) {
+            long off = (long) i * CHUNK_BYTES;
+            buffers[i] = ByteBuffer.allocateDirect((int) Math.min(CHUNK_BYTES, size - off));
+        }
+        return new EthashDataset(size, itemBytes, buffers);
+    }
+
+    private static int chunksCount(long size) {
+        return (int) ((size + CHUNK_BYTES - 1) / CHUNK_BYTES);
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public int getItemsCount() {
+        return (int) (size / (itemWords * 4));
+    }
+
+    /**
+     * Writes the mapped dataset to the file
+     */
+    public void flush() {
+        for (ByteBuffer buffer : buffers) {
+            if (buffer instanceof MappedByteBuffer) {
+                ((MappedByteBuffer) buffer).force();
+            }
+        }
+    }
+
+    @Override
+    public void getItem(int idx, int[] dst, int dstOff) {
+        long word = (long) idx * itemWords;
+        IntBuffer chunk = chunks[(int) (word / CHUNK_WORDS)];
+        int off = (int) (word % CHUNK_WORDS);
+        for (int i = 0; i < itemWords; i++) {
+            dst[dstOff + i] = chunk.get(off + i);
+        }
+    }
+
+    public void putItem(int idx, int[] item) {
+        long word = (long) idx * itemWords;
+        IntBuffer chunk = chunks[(int) (word / CHUNK_WORDS)];
+        int off = (int) (word % CHUNK_WORDS);
+        for (int i = 0; i < itemWords; i++) {
+            chunk.put(off + i, item[i]);
+        }
+    }
+}
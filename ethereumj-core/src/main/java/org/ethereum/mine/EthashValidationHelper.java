@@ -0,0 +1,134 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.mine;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.apache.commons.collections4.map.LRUMap;
+import org.apache.commons.lang3.tuple.Pair;
+import org.ethereum.config.SystemProperties;
+import org.ethereum.core.BlockHeader;
+
+import java.util.Map;
+import java.util.concurrent.*;
+
+/**
+ * Provides the Ethash light caches for the headers verification
+ *
+ * The caches of the few recently used epochs are kept in memory so the headers
+ * from the different epochs (e.g. batches from several peers around the epoch boundary)
+ * don't cause the cache regeneration. When the epoch cache is requested the cache of the
+ * adjacent epoch in the sync direction is generated in background.
+ * The cache is generated once, the concurrent requests for it wait for the generation.
+ * The caches are kept in memory only, the Ethash file cache is used by the miner
+ */
+public class EthashValidationHelper {
+
+    /**
+     * The order the headers are verified in, defines the epoch to prepare the cache for
+     */
+    public enum CacheOrder {
+        /**
+         * From the genesis to the best block
+         */
+        direct,
+        /**
+         * Backward from the best block, e.g. the fast sync headers download
+         */
+        reverse
+    }
+
+    // ~16-30Mb each
+    private static final int MAX_CACHED_EPOCHS = 3;
+
+    private static final EthashParams ethashParams = new EthashParams();
+
+    private final SystemProperties config;
+    private final CacheOrder cacheOrder;
+    private final Map<Long, FutureTask<Ethash>> caches = new LRUMap<>(MAX_CACHED_EPOCHS);
+    private final ExecutorService prepareExecutor = Executors.newSingleThreadExecutor(
+            new ThreadFactoryBuilder().setNameFormat("ethash-validation-%d").setDaemon(true).build());
+
+    public EthashValidationHelper(SystemProperties config, CacheOrder cacheOrder) {
+        this.config = config;
+        this.cacheOrder = cacheOrder;
+    }
+
+    /**
+     * Calculates the Ethash work for the header and the nonce with the light cache of the header epoch
+     * @return mixHash and the proof value, see {@link EthashAlgo#hashimotoLight}
+     */
+    public Pair<byte[], byte[]> ethashWorkFor(BlockHeader header, byte[] nonce) {
+        long epoch = header.getNumber() / ethashParams.getEPOCH_LENGTH();
+        Ethash ethash = getEthash(epoch);
+
+        long adjacentEpoch = cacheOrder == CacheOrder.direct ? epoch + 1 : epoch - 1;
+        if (adjacentEpoch >= 0) prepare(adjacentEpoch);
+
+        return ethash.hashimotoLight(header, nonce);
+    }
+
+    private Ethash getEthash(long epoch) {
+        FutureTask<Ethash> task;
+        synchronized (caches) {
+            task = caches.get(epoch);
+            if (task == null) {
+                task = newTask(epoch);
+                caches.put(epoch, task);
+            }
+        }
+
+        // generates the cache in the calling thread unless
+        // it is already generated or being generated by another one
+        task.run();
+        try {
+            return task.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException(e);
+        } catch (ExecutionException e) {
+            synchronized (caches) {
+                if (caches.get(epoch) == task) caches.remove(epoch);
+            }
+            throw new RuntimeException("Ethash cache generation failed for epoch " + epoch, e.getCause());
+        }
+    }
+
+    private void prepare(long epoch) {
+        synchronized (caches) {
+            if (caches.containsKey(epoch)) return;
+            FutureTask<Ethash> task = newTask(epoch);
+            caches.put(epoch, task);
+            prepareExecutor.execute(task);
+        }
+    }
+
+    private FutureTask<Ethash> newTask(final long epoch) {
+        return new FutureTask<>(new Callable<Ethash>() {
+            @Override
+            public Ethash call() {
+                Ethash ethash = new Ethash(config, epoch * ethashParams.getEPOCH_LENGTH()).withFileCache(false);
+                ethash.getCacheLight();
+                return ethash;
+            }
+        });
+    }
+
+    public void close() {
+        prepareExecutor.shutdownNow();
+    }
+}
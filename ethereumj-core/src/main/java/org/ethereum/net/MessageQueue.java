@@ -34,10 +34,11 @@ import org.springframework.context.annotation.Scope;
 import org.springframework.stereotype.Component;
 
 import java.util.Queue;
-import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import static org.ethereum.net.message.StaticMessages.DISCONNECT_MESSAGE;
+import static org.ethereum.listener.CompositeEthereumListener.isSubscribed;
 
 /**
  * This class contains the logic for sending messages in a queue
@@ -52,6 +53,10 @@ import static org.ethereum.net.message.StaticMessages.DISCONNECT_MESSAGE;
  * The following messages will not be answered:
  *      PONG, PEERS, HELLO, STATUS, TRANSACTIONS, BLOCKS
  *
+ * Messages are sent on the channel event loop as soon as they are queued: all the queued
+ * responses and the next request (when the previous one is answered) are written with a single flush.
+ * Writing is suspended while the channel is not writable and is resumed by {@link #onWritable()}
+ *
  * @author Roman Mandeleil
  */
 @Component
@@ -60,38 +65,35 @@ public class MessageQueue {
 
     private static final Logger logger = LoggerFactory.getLogger("net");
 
-    private static final ScheduledExecutorService timer = Executors.newScheduledThreadPool(4, new ThreadFactory() {
-        private AtomicInteger cnt = new AtomicInteger(0);
-
-        public Thread newThread(Runnable r) {
-            return new Thread(r, "MessageQueueTimer-" + cnt.getAndIncrement());
-        }
-    });
-
     private Queue<MessageRoundtrip> requestQueue = new ConcurrentLinkedQueue<>();
     private Queue<MessageRoundtrip> respondQueue = new ConcurrentLinkedQueue<>();
-    private ChannelHandlerContext ctx = null;
+    private volatile ChannelHandlerContext ctx = null;
 
     @Autowired
     EthereumListener ethereumListener;
     boolean hasPing = false;
-    private ScheduledFuture<?> timerTask;
     private Channel channel;
 
+    private final AtomicBoolean sendScheduled = new AtomicBoolean(false);
+    private volatile boolean closed = false;
+
+    private final Runnable sendTask = new Runnable() {
+        public void run() {
+            sendScheduled.set(false);
+            try {
+                sendQueued();
+            } catch (Throwable t) {
+                logger.error("Unhandled exception", t);
+            }
+        }
+    };
+
     public MessageQueue() {
     }
 
     public void activate(ChannelHandlerContext ctx) {
         this.ctx = ctx;
-        timerTask = timer.scheduleAtFixedRate(new Runnable() {
-            public void run() {
-                try {
-                    nudgeQueue();
-                } catch (Throwable t) {
-                    logger.error("Unhandled exception", t);
-                }
-            }
-        }, 10, 10, TimeUnit.MILLISECONDS);
+        nudgeQueue();
     }
 
     public void setChannel(Channel channel) {
@@ -108,6 +110,15 @@ public class MessageQueue {
             requestQueue.add(new MessageRoundtrip(msg));
         else
             respondQueue.add(new MessageRoundtrip(msg));
+
+        nudgeQueue();
+    }
+
+    /**
+     * Should be called when the channel becomes writable again
+     */
+    public void onWritable() {
+        nudgeQueue();
     }
 
     public void disconnect() {
@@ -125,7 +136,9 @@ public class MessageQueue {
 
     public void receivedMessage(Message msg) throws InterruptedException {
 
-        ethereumListener.trace("[Recv: " + msg + "]");
+        if (isSubscribed(ethereumListener, "trace")) {
+            ethereumListener.trace("[Recv: " + msg + "]");
+        }
 
         if (requestQueue.peek() != null) {
             MessageRoundtrip messageRoundtrip = requestQueue.peek();
@@ -140,6 +153,8 @@ public class MessageQueue {
                     channel.getPeerStats().pong(messageRoundtrip.lastTimestamp);
                 logger.trace("Message round trip covered: [{}] ",
                         messageRoundtrip.getMsg().getClass());
+                // the next request can be sent now
+                nudgeQueue();
             }
         }
     }
@@ -149,15 +164,38 @@ public class MessageQueue {
             requestQueue.remove();
     }
 
+    /**
+     * Schedules sending of the queued messages on the channel event loop
+     * unless it is already scheduled
+     */
     private void nudgeQueue() {
+        ChannelHandlerContext ctx = this.ctx;
+        if (ctx == null || closed) return;
+        if (sendScheduled.compareAndSet(false, true)) {
+            ctx.executor().execute(sendTask);
+        }
+    }
+
+    private void sendQueued() {
+        if (closed) return;
+
+        boolean written = false;
         // remove last answered message on the queue
         removeAnsweredMessage(requestQueue.peek());
-        // Now send the next message
-        sendToWire(respondQueue.poll());
-        sendToWire(requestQueue.peek());
+        // Now send the queued messages
+        while (ctx.channel().isWritable() && !respondQueue.isEmpty()) {
+            written |= sendToWire(respondQueue.poll());
+        }
+        if (ctx.channel().isWritable()) {
+            written |= sendToWire(requestQueue.peek());
+        }
+
+        if (written) {
+            ctx.flush();
+        }
     }
 
-    private void sendToWire(MessageRoundtrip messageRoundtrip) {
+    private boolean sendToWire(MessageRoundtrip messageRoundtrip) {
 
         if (messageRoundtrip != null && messageRoundtrip.getRetryTimes() == 0) {
             // TODO: retry logic || messageRoundtrip.hasToRetry()){
@@ -166,18 +204,18 @@ public class MessageQueue {
 
             ethereumListener.onSendMessage(channel, msg);
 
-            ctx.writeAndFlush(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
+            ctx.write(msg).addListener(ChannelFutureListener.FIRE_EXCEPTION_ON_FAILURE);
 
             if (msg.getAnswerMessage() != null) {
                 messageRoundtrip.incRetryTimes();
                 messageRoundtrip.saveTime();
             }
+            return true;
         }
+        return false;
     }
 
     public void close() {
-        if (timerTask != null) {
-            timerTask.cancel(false);
-        }
+        closed = true;
     }
 }
@@ -92,7 +92,9 @@ public abstract class EthHandler extends SimpleChannelInboundHandler<EthMessage>
         if (EthMessageCodes.inRange(msg.getCommand().asByte(), version))
             logger.trace("EthHandler invoke: [{}]", msg.getCommand());
 
-        ethereumListener.trace(String.format("EthHandler invoke: [%s]", msg.getCommand()));
+        if (ethereumListener.isSubscribed("trace")) {
+            ethereumListener.trace(String.format("EthHandler invoke: [%s]", msg.getCommand()));
+        }
 
         channel.getNodeStatistics().ethInbound.add();
 
@@ -19,7 +19,6 @@ package org.ethereum.net.eth.message;
 
 import org.ethereum.core.Block;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.ArrayList;
@@ -48,12 +47,11 @@ public class BlockBodiesMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        RLP.LList paramsList = RLP.decodeLazyList(encoded);
 
         blockBodies = new ArrayList<>();
         for (int i = 0; i < paramsList.size(); ++i) {
-            RLPList rlpData = ((RLPList) paramsList.get(i));
-            blockBodies.add(rlpData.getRLPData());
+            blockBodies.add(paramsList.getEncoded(i));
         }
         parsed = true;
     }
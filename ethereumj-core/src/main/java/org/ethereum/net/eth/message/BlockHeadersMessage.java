@@ -19,7 +19,6 @@ package org.ethereum.net.eth.message;
 
 import org.ethereum.core.BlockHeader;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 import org.spongycastle.util.encoders.Hex;
 
 import java.util.ArrayList;
@@ -51,12 +50,11 @@ public class BlockHeadersMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        RLP.LList paramsList = RLP.decodeLazyList(encoded);
 
         blockHeaders = new ArrayList<>();
         for (int i = 0; i < paramsList.size(); ++i) {
-            RLPList rlpData = ((RLPList) paramsList.get(i));
-            blockHeaders.add(new BlockHeader(rlpData));
+            blockHeaders.add(new BlockHeader(paramsList.getList(i)));
         }
         parsed = true;
     }
@@ -18,7 +18,6 @@
 package org.ethereum.net.eth.message;
 
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 import org.ethereum.util.Utils;
 import org.spongycastle.util.encoders.Hex;
 
@@ -51,11 +50,11 @@ public class GetBlockBodiesMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        RLP.LList paramsList = RLP.decodeLazyList(encoded);
 
         blockHashes = new ArrayList<>();
         for (int i = 0; i < paramsList.size(); ++i) {
-            blockHashes.add(paramsList.get(i).getRLPData());
+            blockHashes.add(paramsList.getBytesOrNull(i));
         }
         parsed = true;
     }
@@ -18,7 +18,6 @@
 package org.ethereum.net.eth.message;
 
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 import org.ethereum.util.Utils;
 import org.spongycastle.util.encoders.Hex;
 
@@ -52,11 +51,11 @@ public class GetNodeDataMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        RLP.LList paramsList = RLP.decodeLazyList(encoded);
 
         this.nodeKeys = new ArrayList<>();
         for (int i = 0; i < paramsList.size(); ++i) {
-            nodeKeys.add(paramsList.get(i).getRLPData());
+            nodeKeys.add(paramsList.getBytesOrNull(i));
         }
 
         this.parsed = true;
@@ -18,7 +18,6 @@
 package org.ethereum.net.eth.message;
 
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 import org.ethereum.util.Utils;
 import org.spongycastle.util.encoders.Hex;
 
@@ -48,11 +47,11 @@ public class GetReceiptsMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        RLP.LList paramsList = RLP.decodeLazyList(encoded);
 
         this.blockHashes = new ArrayList<>();
         for (int i = 0; i < paramsList.size(); ++i) {
-            this.blockHashes.add(paramsList.get(i).getRLPData());
+            this.blockHashes.add(paramsList.getBytesOrNull(i));
         }
 
         this.parsed = true;
@@ -19,7 +19,6 @@ package org.ethereum.net.eth.message;
 
 import org.ethereum.core.Block;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 
 import org.spongycastle.util.encoders.Hex;
 
@@ -55,11 +54,10 @@ public class NewBlockMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        RLP.LList paramsList = RLP.decodeLazyList(encoded);
 
-        RLPList blockRLP = ((RLPList) paramsList.get(0));
-        block = new Block(blockRLP.getRLPData());
-        difficulty = paramsList.get(1).getRLPData();
+        block = new Block(paramsList.getEncoded(0));
+        difficulty = paramsList.getBytesOrNull(1);
 
         parsed = true;
     }
@@ -18,7 +18,6 @@
 package org.ethereum.net.eth.message;
 
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 import org.ethereum.util.Value;
 import org.spongycastle.util.encoders.Hex;
 
@@ -45,12 +44,12 @@ public class NodeDataMessage extends EthMessage {
     }
 
     private void parse() {
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        RLP.LList paramsList = RLP.decodeLazyList(encoded);
 
         dataList = new ArrayList<>();
         for (int i = 0; i < paramsList.size(); ++i) {
             // Need it AS IS
-            dataList.add(Value.fromRlpEncoded(paramsList.get(i).getRLPData()));
+            dataList.add(Value.fromRlpEncoded(paramsList.getBytesOrNull(i)));
         }
         parsed = true;
     }
@@ -21,9 +21,6 @@ import org.ethereum.core.Bloom;
 import org.ethereum.core.Transaction;
 import org.ethereum.core.TransactionReceipt;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPItem;
-import org.ethereum.util.RLPList;
 import org.ethereum.vm.LogInfo;
 
 import java.util.ArrayList;
@@ -50,15 +47,15 @@ public class ReceiptsMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        RLP.LList paramsList = RLP.decodeLazyList(encoded);
 
         this.receipts = new ArrayList<>();
         for (int i = 0; i < paramsList.size(); ++i) {
-            RLPList blockRLP = (RLPList) paramsList.get(i);
+            RLP.LList blockRLP = paramsList.getList(i);
 
             List<TransactionReceipt> blockReceipts = new ArrayList<>();
-            for (RLPElement txReceipt : blockRLP) {
-                RLPList receiptRLP = (RLPList) txReceipt;
+            for (int j = 0; j < blockRLP.size(); j++) {
+                RLP.LList receiptRLP = blockRLP.getList(j);
                 if (receiptRLP.size() != 4) {
                     continue;
                 }
@@ -19,7 +19,6 @@ package org.ethereum.net.eth.message;
 
 import org.ethereum.core.Transaction;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPList;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -51,12 +50,11 @@ public class TransactionsMessage extends EthMessage {
 
     private synchronized void parse() {
         if (parsed) return;
-        RLPList paramsList = (RLPList) RLP.decode2(encoded).get(0);
+        RLP.LList paramsList = RLP.decodeLazyList(encoded);
 
         transactions = new ArrayList<>();
         for (int i = 0; i < paramsList.size(); ++i) {
-            RLPList rlpTxData = (RLPList) paramsList.get(i);
-            Transaction tx = new Transaction(rlpTxData.getRLPData());
+            Transaction tx = new Transaction(paramsList.getEncoded(i));
             transactions.add(tx);
         }
         parsed = true;
@@ -53,6 +53,7 @@ import java.util.List;
 import java.util.Set;
 import java.util.concurrent.*;
 
+import static org.ethereum.listener.CompositeEthereumListener.isSubscribed;
 import static org.ethereum.net.eth.EthVersion.*;
 import static org.ethereum.net.message.StaticMessages.*;
 
@@ -139,7 +140,9 @@ public class P2pHandler extends SimpleChannelInboundHandler<P2pMessage> {
         if (P2pMessageCodes.inRange(msg.getCommand().asByte()))
             logger.trace("P2PHandler invoke: [{}]", msg.getCommand());
 
-        ethereumListener.trace(String.format("P2PHandler invoke: [%s]", msg.getCommand()));
+        if (isSubscribed(ethereumListener, "trace")) {
+            ethereumListener.trace(String.format("P2PHandler invoke: [%s]", msg.getCommand()));
+        }
 
         switch (msg.getCommand()) {
             case HELLO:
@@ -188,6 +191,14 @@ public class P2pHandler extends SimpleChannelInboundHandler<P2pMessage> {
         this.killTimers();
     }
 
+    @Override
+    public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+        if (ctx.channel().isWritable()) {
+            msgQueue.onWritable();
+        }
+        super.channelWritabilityChanged(ctx);
+    }
+
     @Override
     public void exceptionCaught(ChannelHandlerContext ctx, Throwable cause) throws Exception {
         logger.warn("P2p handling failed", cause);
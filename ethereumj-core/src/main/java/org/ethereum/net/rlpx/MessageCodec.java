@@ -47,6 +47,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 
 import static java.lang.Math.min;
 import static org.ethereum.net.rlpx.FrameCodec.Frame;
+import static org.ethereum.listener.CompositeEthereumListener.isSubscribed;
 
 /**
  * The Netty codec which encodes/decodes RPLx frames to subprotocol Messages
@@ -174,8 +175,10 @@ public class MessageCodec extends MessageToMessageCodec<Frame, Message> {
 
     @Override
     protected void encode(ChannelHandlerContext ctx, Message msg, List<Object> out) throws Exception {
-        String output = String.format("To: \t%s \tSend: \t%s", ctx.channel().remoteAddress(), msg);
-        ethereumListener.trace(output);
+        if (isSubscribed(ethereumListener, "trace")) {
+            String output = String.format("To: \t%s \tSend: \t%s", ctx.channel().remoteAddress(), msg);
+            ethereumListener.trace(output);
+        }
 
         if (loggerNet.isDebugEnabled())
             loggerNet.debug("To:   {}    Send:  {}", channel, msg);
@@ -357,19 +357,11 @@ public abstract class BlockDownloader {
 
         if (headers.isEmpty()) return true;
 
+        if (!validateHeaders(headers)) return false;
+
         List<BlockHeaderWrapper> wrappers = new ArrayList<>(headers.size());
 
         for (BlockHeader header : headers) {
-
-            if (!isValid(header)) {
-
-                if (logger.isDebugEnabled()) {
-                    logger.debug("Invalid header RLP: {}", Hex.toHexString(header.getEncoded()));
-                }
-
-                return false;
-            }
-
             wrappers.add(new BlockHeaderWrapper(header, nodeId));
         }
 
@@ -387,6 +379,27 @@ public abstract class BlockDownloader {
         return true;
     }
 
+    /**
+     * Runs {@link #isValid(BlockHeader)} against each header of the batch
+     *
+     * @param headers list of headers got from remote host
+     * @return true if all the headers are valid, otherwise it returns false
+     */
+    protected boolean validateHeaders(List<BlockHeader> headers) {
+        for (BlockHeader header : headers) {
+
+            if (!isValid(header)) {
+
+                if (logger.isDebugEnabled()) {
+                    logger.debug("Invalid header RLP: {}", Hex.toHexString(header.getEncoded()));
+                }
+
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Runs checks against block's header. <br>
      * All these checks make sense before block is added to queue
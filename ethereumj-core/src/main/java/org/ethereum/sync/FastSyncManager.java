@@ -20,12 +20,15 @@ package org.ethereum.sync;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.tuple.Pair;
+import org.ethereum.config.CommonConfig;
 import org.ethereum.config.SystemProperties;
 import org.ethereum.core.*;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.BloomFilter;
 import org.ethereum.datasource.DbSource;
+import org.ethereum.datasource.Serializer;
 import org.ethereum.db.DbFlushManager;
 import org.ethereum.db.IndexedBlockStore;
 import org.ethereum.db.StateSource;
@@ -70,11 +73,17 @@ public class FastSyncManager {
     private final static int FORCE_SYNC_TIMEOUT = 60 * 1000;
     private final static int PIVOT_DISTANCE_FROM_HEAD = 1024;
     private final static int MSX_DB_QUEUE_SIZE = 20000;
+    private final static int NODE_QUEUE_CHUNK_SIZE = 10_000;
+    private final static int DB_WRITE_BATCH = 256;
+    private final static int DB_WRITER_THREADS = Math.min(4, Runtime.getRuntime().availableProcessors());
+    private final static long CHECKPOINT_INTERVAL = 60 * 1000;
 
     private static final Capability ETH63_CAPABILITY = new Capability(Capability.ETH, (byte) 63);
 
     public static final byte[] FASTSYNC_DB_KEY_SYNC_STAGE = HashUtil.sha3("Key in state DB indicating fastsync stage in progress".getBytes());
     public static final byte[] FASTSYNC_DB_KEY_PIVOT = HashUtil.sha3("Key in state DB with encoded selected pivot block".getBytes());
+    // present while the state trie is being downloaded, the download is resumed after restart
+    public static final byte[] FASTSYNC_DB_KEY_STATE_PIVOT = HashUtil.sha3("Key in state DB with encoded pivot block of the state download".getBytes());
 
     @Autowired
     private SystemProperties config;
@@ -110,14 +119,16 @@ public class FastSyncManager {
     @Autowired
     ApplicationContext applicationContext;
 
+    @Autowired
+    CommonConfig commonConfig;
+
     int nodesInserted = 0;
 
     private boolean fastSyncInProgress = false;
 
     private BlockingQueue<TrieNodeRequest> dbWriteQueue = new LinkedBlockingQueue<>();
-    private Thread dbWriterThread;
+    private ExecutorService dbWriters;
     private Thread fastSyncThread;
-    private int dbQueueSizeMonitor = -1;
 
     private BlockHeader pivot;
     private HeadersDownloader headersDownloader;
@@ -128,43 +139,39 @@ public class FastSyncManager {
     private void waitDbQueueSizeBelow(int size) {
         synchronized (this) {
             try {
-                dbQueueSizeMonitor = size;
                 while (dbWriteQueue.size() > size) wait();
             } catch (InterruptedException e) {
                 Thread.currentThread().interrupt();
-            } finally {
-                dbQueueSizeMonitor = -1;
             }
         }
     }
 
 
     void init() {
-        dbWriterThread = new Thread("FastSyncDBWriter") {
-            @Override
-            public void run() {
-                try {
-                    while (!Thread.currentThread().isInterrupted()) {
-                        synchronized (FastSyncManager.this) {
-                            if (dbQueueSizeMonitor >= 0 && dbWriteQueue.size() <= dbQueueSizeMonitor) {
-                                FastSyncManager.this.notifyAll();
-                            }
-                        }
-                        TrieNodeRequest request = dbWriteQueue.take();
-                        nodesInserted++;
-                        stateSource.getNoJournalSource().put(request.nodeHash, request.response);
-                        if (nodesInserted % 1000 == 0) {
-                            dbFlushManager.commit();
-                            logger.debug("FastSyncDBWriter: commit: dbWriteQueue.size = " + dbWriteQueue.size());
+        nodesQueue = new FastSyncNodeQueue<>(commonConfig.cachedDbSource("fastsyncNodes"),
+                new TrieNodeRequestSerializer(), NODE_QUEUE_BEST_SIZE, NODE_QUEUE_CHUNK_SIZE);
+
+        dbWriters = Executors.newFixedThreadPool(DB_WRITER_THREADS,
+                new ThreadFactoryBuilder().setNameFormat("FastSyncDBWriter-%d").build());
+        for (int i = 0; i < DB_WRITER_THREADS; i++) {
+            dbWriters.submit(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        List<TrieNodeRequest> batch = new ArrayList<>();
+                        while (!Thread.currentThread().isInterrupted()) {
+                            batch.clear();
+                            batch.add(dbWriteQueue.take());
+                            dbWriteQueue.drainTo(batch, DB_WRITE_BATCH - 1);
+                            writeNodes(batch);
                         }
+                    } catch (InterruptedException e) {
+                    } catch (Exception e) {
+                        logger.error("Fatal FastSync error while writing data", e);
                     }
-                } catch (InterruptedException e) {
-                } catch (Exception e) {
-                    logger.error("Fatal FastSync error while writing data", e);
                 }
-            }
-        };
-        dbWriterThread.start();
+            });
+        }
 
         fastSyncThread = new Thread("FastSyncLoop") {
             @Override
@@ -191,7 +198,7 @@ public class FastSyncManager {
         switch (syncStage) {
             case UNSECURE:
                 return new SyncStatus(SyncStatus.SyncStage.StateNodes, nodesInserted,
-                        nodesQueue.size() + pendingNodes.size() + nodesInserted);
+                        nodesQueue.size() + pendingNodes.size() + processingNodes.size() + nodesInserted);
             case SECURE:
                 return new SyncStatus(SyncStatus.SyncStage.Headers, headersDownloader.getHeadersLoaded(),
                         pivot.getNumber());
@@ -228,12 +235,6 @@ public class FastSyncManager {
         TrieNodeRequest(TrieNodeType type, byte[] nodeHash) {
             this.type = type;
             this.nodeHash = nodeHash;
-
-            switch (type) {
-                case STATE: stateNodesCnt++; break;
-                case CODE: codeNodesCnt++; break;
-                case STORAGE: storageNodesCnt++; break;
-            }
         }
 
         List<TrieNodeRequest> createChildRequests() {
@@ -287,6 +288,21 @@ public class FastSyncManager {
         }
     }
 
+    /**
+     * Serializes the request type and node hash for the {@link FastSyncNodeQueue}
+     */
+    private class TrieNodeRequestSerializer implements Serializer<TrieNodeRequest, byte[]> {
+        @Override
+        public byte[] serialize(TrieNodeRequest request) {
+            return ByteUtil.merge(new byte[] {(byte) request.type.ordinal()}, request.nodeHash);
+        }
+
+        @Override
+        public TrieNodeRequest deserialize(byte[] bytes) {
+            return new TrieNodeRequest(TrieNodeType.values()[bytes[0]], Arrays.copyOfRange(bytes, 1, bytes.length));
+        }
+    }
+
     private static List<byte[]> getChildHashes(List<Object> siblings) {
         List<byte[]> ret = new ArrayList<>();
         if (siblings.size() == 2) {
@@ -303,9 +319,12 @@ public class FastSyncManager {
         return ret;
     }
 
-    Deque<TrieNodeRequest> nodesQueue = new LinkedBlockingDeque<>();
+    FastSyncNodeQueue<TrieNodeRequest> nodesQueue;
     ByteArrayMap<TrieNodeRequest> pendingNodes = new ByteArrayMap<>();
+    // received nodes which are not yet written or their children are not yet queued
+    Set<TrieNodeRequest> processingNodes = new HashSet<>();
     Long requestId = 0L;
+    long lastCheckpoint = 0;
 
     private synchronized void purgePending(byte[] hash) {
         TrieNodeRequest request = pendingNodes.get(hash);
@@ -328,18 +347,81 @@ public class FastSyncManager {
     }
 
     synchronized void processResponse(TrieNodeRequest req) {
+        processingNodes.add(req);
         dbWriteQueue.add(req);
-        for (TrieNodeRequest childRequest : req.createChildRequests()) {
-            if (nodesQueue.size() > NODE_QUEUE_BEST_SIZE) {
-                // reducing queue by traversing tree depth-first
-                nodesQueue.addFirst(childRequest);
-            } else {
-                // enlarging queue by traversing tree breadth-first
-                nodesQueue.add(childRequest);
+    }
+
+    /**
+     * Decodes the received nodes (which also verifies their structure), writes them to the
+     * state DB and queues their children. Malformed nodes are requested again
+     */
+    private void writeNodes(List<TrieNodeRequest> batch) {
+        List<List<TrieNodeRequest>> children = new ArrayList<>(batch.size());
+        for (TrieNodeRequest request : batch) {
+            try {
+                children.add(request.createChildRequests());
+                stateSource.getNoJournalSource().put(request.nodeHash, request.response);
+            } catch (RuntimeException e) {
+                logger.debug("Invalid trie node received " + request + ": " + e);
+                children.add(null);
+            }
+        }
+
+        boolean commit;
+        synchronized (this) {
+            int prevInserted = nodesInserted;
+            for (int i = 0; i < batch.size(); i++) {
+                TrieNodeRequest request = batch.get(i);
+                processingNodes.remove(request);
+                if (children.get(i) == null) {
+                    request.response = null;
+                    nodesQueue.addFirst(request);
+                    continue;
+                }
+
+                nodesInserted++;
+                switch (request.type) {
+                    case STATE: stateNodesCnt++; break;
+                    case CODE: codeNodesCnt++; break;
+                    case STORAGE: storageNodesCnt++; break;
+                }
+                for (TrieNodeRequest childRequest : children.get(i)) {
+                    if (nodesQueue.size() > NODE_QUEUE_BEST_SIZE) {
+                        // reducing queue by traversing tree depth-first
+                        nodesQueue.addFirst(childRequest);
+                    } else {
+                        // enlarging queue by traversing tree breadth-first
+                        nodesQueue.addLast(childRequest);
+                    }
+                }
             }
+            commit = nodesInserted / 1000 != prevInserted / 1000;
+            notifyAll();
+        }
+
+        if (commit) {
+            dbFlushManager.commit();
+            logger.debug("FastSyncDBWriter: commit: dbWriteQueue.size = " + dbWriteQueue.size());
         }
     }
 
+    /**
+     * Saves the nodes queue along with the nodes being requested and processed so the
+     * state download is resumed from this point after restart
+     */
+    private synchronized void checkpoint() {
+        List<TrieNodeRequest> inProgress = new ArrayList<>(pendingNodes.values());
+        inProgress.addAll(processingNodes);
+        nodesQueue.checkpoint(inProgress);
+        lastCheckpoint = System.currentTimeMillis();
+        logger.debug("FastSync: nodes queue checkpoint saved: " + nodesQueue.size() + " queued, " +
+                inProgress.size() + " in progress");
+    }
+
+    private synchronized boolean hasNodesToRetrieve() {
+        return !nodesQueue.isEmpty() || !pendingNodes.isEmpty() || !processingNodes.isEmpty();
+    }
+
     boolean requestNextNodes(int cnt) {
         final Channel idle = pool.getAnyIdle();
 
@@ -433,7 +515,7 @@ public class FastSyncManager {
 
     void retrieveLoop() {
         try {
-            while (!nodesQueue.isEmpty() || !pendingNodes.isEmpty()) {
+            while (hasNodesToRetrieve()) {
                 try {
                     processTimeouts();
 
@@ -445,6 +527,10 @@ public class FastSyncManager {
 
                     waitDbQueueSizeBelow(MSX_DB_QUEUE_SIZE);
 
+                    if (System.currentTimeMillis() - lastCheckpoint > CHECKPOINT_INTERVAL) {
+                        checkpoint();
+                    }
+
                     logStat();
                 } catch (InterruptedException e) {
                     throw e;
@@ -452,9 +538,8 @@ public class FastSyncManager {
                     logger.error("Error", t);
                 }
             }
-            waitDbQueueSizeBelow(0);
 
-            dbWriterThread.interrupt();
+            dbWriters.shutdownNow();
         } catch (InterruptedException e) {
             logger.warn("Main fast sync loop was interrupted", e);
         }
@@ -467,6 +552,7 @@ public class FastSyncManager {
         long cur = System.currentTimeMillis();
         if (cur - last > 5000) {
             logger.info("FastSync: received: " + nodesInserted + ", known: " + nodesQueue.size() + ", pending: " + pendingNodes.size()
+                    + ", processing: " + processingNodes.size()
                     + String.format(", nodes/sec: %1$.2f", 1000d * (nodesInserted - lastNodeCount) / (cur - last)));
             last = cur;
             lastNodeCount = nodesInserted;
@@ -488,16 +574,27 @@ public class FastSyncManager {
     }
 
 
-    private void syncUnsecure(BlockHeader pivot) {
-        byte[] pivotStateRoot = pivot.getStateRoot();
-        TrieNodeRequest request = new TrieNodeRequest(TrieNodeType.STATE, pivotStateRoot);
-        nodesQueue.add(request);
-        logger.info("FastSync: downloading state trie at pivot block: " + pivot.getShortDescr());
+    private void syncUnsecure(BlockHeader pivot, boolean resume) {
+        if (resume && nodesQueue.restore()) {
+            logger.info("FastSync: resuming state trie download at pivot block: " + pivot.getShortDescr() +
+                    " (" + nodesQueue.size() + " nodes queued)");
+        } else {
+            byte[] pivotStateRoot = pivot.getStateRoot();
+            TrieNodeRequest request = new TrieNodeRequest(TrieNodeType.STATE, pivotStateRoot);
+            nodesQueue.addLast(request);
+            logger.info("FastSync: downloading state trie at pivot block: " + pivot.getShortDescr());
+        }
 
         setSyncStage(UNSECURE);
+        blockchainDB.put(FASTSYNC_DB_KEY_STATE_PIVOT, pivot.getEncoded());
+        lastCheckpoint = System.currentTimeMillis();
 
         retrieveLoop();
 
+        // the download can't be resumed from now on, leaving UNSECURE stage DB to be reset on restart
+        blockchainDB.delete(FASTSYNC_DB_KEY_STATE_PIVOT);
+        nodesQueue.clear();
+
         logger.info("FastSync: state trie download complete! (Nodes count: state: " + stateNodesCnt + ", storage: " +storageNodesCnt + ", code: " +codeNodesCnt + ")");
         last = 0;
         logStat();
@@ -509,6 +606,8 @@ public class FastSyncManager {
         logger.info("FastSync: complete downloading 256 blocks prior to pivot block (" + pivot.getShortDescr() + ")");
 
         blockchain.setBestBlock(blockStore.getBlockByHash(pivot.getHash()));
+        // the flat state (if enabled) is generated for the downloaded state
+        blockchain.getRepository().syncToRoot(pivot.getStateRoot());
 
         logger.info("FastSync: proceeding to regular sync...");
 
@@ -609,14 +708,19 @@ public class FastSyncManager {
 
                 switch (origSyncStage) {
                     case UNSECURE:
-                        pivot = getPivotBlock();
-                        if (pivot.getNumber() == 0) {
-                            logger.info("FastSync: too short blockchain, proceeding with regular sync...");
-                            syncManager.initRegularSync(EthereumListener.SyncState.COMPLETE);
-                            return;
+                        byte[] statePivot = blockchainDB.get(FASTSYNC_DB_KEY_STATE_PIVOT);
+                        if (statePivot != null) {
+                            pivot = new BlockHeader(statePivot);
+                        } else {
+                            pivot = getPivotBlock();
+                            if (pivot.getNumber() == 0) {
+                                logger.info("FastSync: too short blockchain, proceeding with regular sync...");
+                                syncManager.initRegularSync(EthereumListener.SyncState.COMPLETE);
+                                return;
+                            }
                         }
 
-                        syncUnsecure(pivot);  // regularSync should be inited here
+                        syncUnsecure(pivot, statePivot != null);  // regularSync should be inited here
                     case SECURE:
                         if (origSyncStage == SECURE) {
                             logger.info("FastSync: UNSECURE sync was completed prior to this run, proceeding with next stage...");
@@ -830,11 +934,16 @@ public class FastSyncManager {
         try {
             fastSyncThread.interrupt();
             fastSyncInProgress = false;
-            dbWriterThread.interrupt();
+            if (dbWriters != null) {
+                dbWriters.shutdownNow();
+                dbWriters.awaitTermination(10, TimeUnit.SECONDS);
+            }
+            if (nodesQueue != null && blockchainDB.get(FASTSYNC_DB_KEY_STATE_PIVOT) != null) {
+                checkpoint();
+            }
             dbFlushManager.commit();
             dbFlushManager.flushSync();
             fastSyncThread.join(10 * 1000);
-            dbWriterThread.join(10 * 1000);
         } catch (Exception e) {
             logger.warn("Problems closing FastSyncManager", e);
         }
@@ -0,0 +1,210 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.sync;
+
+import org.ethereum.datasource.Serializer;
+import org.ethereum.datasource.Source;
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.RLP;
+import org.ethereum.util.RLPElement;
+import org.ethereum.util.RLPList;
+
+import java.util.*;
+
+/**
+ * The queue of the trie nodes to be downloaded by the fast sync which spills to the DB
+ *
+ * The head of the queue is kept in memory. When the memory part grows above the limit
+ * its tail is moved to the DB as a chunk. When the memory part becomes empty the most recently
+ * saved chunk is loaded back, so along with adding the children of the downloaded node to the
+ * head this yields a depth-first traversal which keeps the number of queued nodes bounded.
+ *
+ * The queue is checkpointed with {@link #checkpoint(Collection)} which saves the memory part
+ * together with the items which were taken from the queue but not completely processed yet.
+ * The chunks loaded after the last checkpoint are deleted on the next one only, so the state
+ * saved by the checkpoint can be always restored with {@link #restore()}.
+ */
+public class FastSyncNodeQueue<T> {
+
+    private static final byte[] CHECKPOINT_KEY = "checkpoint".getBytes();
+
+    private final Source<byte[], byte[]> store;
+    private final Serializer<T, byte[]> serializer;
+    private final int memoryLimit;
+    private final int chunkSize;
+
+    private final Deque<T> memory = new ArrayDeque<>();
+    // saved chunks ids with the number of items
+    private final TreeMap<Long, Integer> chunks = new TreeMap<>();
+    // chunks loaded since the last checkpoint
+    private final List<Long> loadedChunks = new ArrayList<>();
+    private long nextChunkId = 0;
+    private long chunksItems = 0;
+
+    /**
+     * @param store the storage for the spilled chunks and checkpoints
+     * @param memoryLimit max number of items kept in memory
+     * @param chunkSize number of items moved to the DB at once
+     */
+    public FastSyncNodeQueue(Source<byte[], byte[]> store, Serializer<T, byte[]> serializer,
+                             int memoryLimit, int chunkSize) {
+        this.store = store;
+        this.serializer = serializer;
+        this.memoryLimit = memoryLimit;
+        this.chunkSize = chunkSize;
+    }
+
+    /**
+     * Adds the item to be taken first
+     */
+    public synchronized void addFirst(T item) {
+        memory.addFirst(item);
+        spillIfNeeded();
+    }
+
+    /**
+     * Adds the item to be taken after all items currently in memory
+     */
+    public synchronized void addLast(T item) {
+        memory.addLast(item);
+        spillIfNeeded();
+    }
+
+    /**
+     * @return the next item or null if the queue is empty
+     */
+    public synchronized T poll() {
+        if (memory.isEmpty() && !chunks.isEmpty()) {
+            loadChunk();
+        }
+        return memory.poll();
+    }
+
+    public synchronized boolean isEmpty() {
+        return memory.isEmpty() && chunks.isEmpty();
+    }
+
+    public synchronized long size() {
+        return memory.size() + chunksItems;
+    }
+
+    /**
+     * Saves the queue state to be restored after restart
+     * @param inProgress items taken from the queue but not completely processed yet,
+     *                   these are put to the queue head on restore
+     */
+    public synchronized void checkpoint(Collection<T> inProgress) {
+        List<byte[]> items = new ArrayList<>(inProgress.size() + memory.size());
+        for (T item : inProgress) {
+            items.add(RLP.encodeElement(serializer.serialize(item)));
+        }
+        for (T item : memory) {
+            items.add(RLP.encodeElement(serializer.serialize(item)));
+        }
+        List<byte[]> chunkIds = new ArrayList<>(chunks.size());
+        for (Map.Entry<Long, Integer> chunk : chunks.entrySet()) {
+            chunkIds.add(RLP.encodeList(RLP.encodeElement(ByteUtil.longToBytesNoLeadZeroes(chunk.getKey())),
+                    RLP.encodeElement(ByteUtil.longToBytesNoLeadZeroes(chunk.getValue()))));
+        }
+
+        store.put(CHECKPOINT_KEY, RLP.encodeList(
+                RLP.encodeElement(ByteUtil.longToBytesNoLeadZeroes(nextChunkId)),
+                RLP.encodeList(chunkIds.toArray(new byte[chunkIds.size()][])),
+                RLP.encodeList(items.toArray(new byte[items.size()][]))));
+
+        for (Long id : loadedChunks) {
+            store.delete(chunkKey(id));
+        }
+        loadedChunks.clear();
+    }
+
+    /**
+     * Restores the queue state saved by the last checkpoint
+     * @return false if there is no saved state
+     */
+    public synchronized boolean restore() {
+        byte[] encoded = store.get(CHECKPOINT_KEY);
+        if (encoded == null) return false;
+
+        memory.clear();
+        chunks.clear();
+        loadedChunks.clear();
+        chunksItems = 0;
+
+        RLPList checkpoint = (RLPList) RLP.decode2(encoded).get(0);
+        nextChunkId = ByteUtil.byteArrayToLong(checkpoint.get(0).getRLPData());
+        for (RLPElement chunk : (RLPList) checkpoint.get(1)) {
+            long id = ByteUtil.byteArrayToLong(((RLPList) chunk).get(0).getRLPData());
+            int count = (int) ByteUtil.byteArrayToLong(((RLPList) chunk).get(1).getRLPData());
+            chunks.put(id, count);
+            chunksItems += count;
+        }
+        for (RLPElement item : (RLPList) checkpoint.get(2)) {
+            memory.addLast(serializer.deserialize(item.getRLPData()));
+        }
+        return true;
+    }
+
+    /**
+     * Removes all the items and the saved state
+     */
+    public synchronized void clear() {
+        for (Long id : chunks.keySet()) {
+            store.delete(chunkKey(id));
+        }
+        for (Long id : loadedChunks) {
+            store.delete(chunkKey(id));
+        }
+        store.delete(CHECKPOINT_KEY);
+        memory.clear();
+        chunks.clear();
+        loadedChunks.clear();
+        chunksItems = 0;
+    }
+
+    private void spillIfNeeded() {
+        if (memory.size() <= memoryLimit) return;
+
+        byte[][] items = new byte[Math.min(chunkSize, memory.size())][];
+        for (int i = items.length - 1; i >= 0; i--) {
+            items[i] = RLP.encodeElement(serializer.serialize(memory.pollLast()));
+        }
+        long id = nextChunkId++;
+        store.put(chunkKey(id), RLP.encodeList(items));
+        chunks.put(id, items.length);
+        chunksItems += items.length;
+    }
+
+    private void loadChunk() {
+        Map.Entry<Long, Integer> chunk = chunks.pollLastEntry();
+        chunksItems -= chunk.getValue();
+        loadedChunks.add(chunk.getKey());
+
+        byte[] encoded = store.get(chunkKey(chunk.getKey()));
+        if (encoded == null) {
+            throw new RuntimeException("Fast sync queue chunk #" + chunk.getKey() + " not found");
+        }
+        for (RLPElement item : (RLPList) RLP.decode2(encoded).get(0)) {
+            memory.addLast(serializer.deserialize(item.getRLPData()));
+        }
+    }
+
+    private static byte[] chunkKey(long id) {
+        return ByteUtil.longToBytes(id);
+    }
+}
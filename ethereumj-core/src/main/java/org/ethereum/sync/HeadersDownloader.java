@@ -17,15 +17,19 @@
  */
 package org.ethereum.sync;
 
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import org.ethereum.config.SystemProperties;
 import org.ethereum.core.BlockHeader;
 import org.ethereum.core.BlockHeaderWrapper;
 import org.ethereum.core.BlockWrapper;
 import org.ethereum.datasource.DataSourceArray;
 import org.ethereum.db.DbFlushManager;
 import org.ethereum.db.IndexedBlockStore;
+import org.ethereum.mine.EthashValidationHelper;
 import org.ethereum.net.server.Channel;
 import org.ethereum.net.server.ChannelManager;
 import org.ethereum.validator.BlockHeaderValidator;
+import org.ethereum.validator.EthashRule;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
@@ -34,7 +38,9 @@ import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.*;
 
 /**
  * Created by Anton Nashatyrev on 27.10.2016.
@@ -44,6 +50,9 @@ import java.util.List;
 public class HeadersDownloader extends BlockDownloader {
     private final static Logger logger = LoggerFactory.getLogger("sync");
 
+    // the Ethash verification takes a few ms per header
+    private static final int MIN_VALIDATION_BATCH = 8;
+
     @Autowired
     SyncPool syncPool;
 
@@ -63,11 +72,25 @@ public class HeadersDownloader extends BlockDownloader {
 
     int headersLoaded  = 0;
 
+    private EthashRule ethashRule;
+    private EthashValidationHelper ethashHelper;
+    private final int validationThreads;
+    private final ExecutorService validationExecutor;
+
     @Autowired
-    public HeadersDownloader(BlockHeaderValidator headerValidator) {
+    public HeadersDownloader(BlockHeaderValidator headerValidator, SystemProperties config) {
         super(headerValidator);
         setHeaderQueueLimit(200000);
         setBlockBodiesDownload(false);
+        if (config.fastSyncEthashValidation()) {
+            // the headers are downloaded from the pivot block down to the genesis
+            ethashHelper = new EthashValidationHelper(config, EthashValidationHelper.CacheOrder.reverse);
+            ethashRule = new EthashRule(ethashHelper);
+        }
+        validationThreads = config.headerValidationThreads() > 0 ?
+                config.headerValidationThreads() : Runtime.getRuntime().availableProcessors();
+        validationExecutor = Executors.newFixedThreadPool(validationThreads,
+                new ThreadFactoryBuilder().setDaemon(true).setNameFormat("HeadersValidator-%d").build());
         logger.info("HeaderDownloader created.");
     }
 
@@ -78,6 +101,47 @@ public class HeadersDownloader extends BlockDownloader {
         syncPool.init(channelManager);
     }
 
+    @Override
+    protected boolean isValid(BlockHeader header) {
+        return super.isValid(header) && (ethashRule == null || ethashRule.validateAndLog(header, logger));
+    }
+
+    /**
+     * Validates the batch splitting it between the pool threads and the calling thread,
+     * so the Ethash verification keeps up with the download
+     */
+    @Override
+    protected boolean validateHeaders(List<BlockHeader> headers) {
+        int batches = Math.min(validationThreads, headers.size() / MIN_VALIDATION_BATCH);
+        if (batches < 2) return super.validateHeaders(headers);
+
+        int batchSize = (headers.size() + batches - 1) / batches;
+        List<Future<Boolean>> futures = new ArrayList<>();
+        for (int from = batchSize; from < headers.size(); from += batchSize) {
+            final List<BlockHeader> batch = headers.subList(from, Math.min(headers.size(), from + batchSize));
+            futures.add(validationExecutor.submit(new Callable<Boolean>() {
+                @Override
+                public Boolean call() {
+                    return HeadersDownloader.super.validateHeaders(batch);
+                }
+            }));
+        }
+        boolean ret = super.validateHeaders(headers.subList(0, batchSize));
+
+        for (Future<Boolean> future : futures) {
+            try {
+                ret &= future.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            } catch (ExecutionException e) {
+                logger.error("Unexpected error validating headers", e.getCause());
+                return false;
+            }
+        }
+        return ret;
+    }
+
     @Override
     protected synchronized void pushBlocks(List<BlockWrapper> blockWrappers) {}
 
@@ -121,6 +185,13 @@ public class HeadersDownloader extends BlockDownloader {
         stop();
     }
 
+    @Override
+    public void close() {
+        super.close();
+        validationExecutor.shutdownNow();
+        if (ethashHelper != null) ethashHelper.close();
+    }
+
     public byte[] getGenesisHash() {
         return genesisHash;
     }
@@ -118,11 +118,9 @@ public class ReceiptsDownloader {
         Block block = blockStore.getBlockByHash(blockHash);
         if (block.getNumber() >= fromBlock && validate(block, receipts) && !completedBlocks.contains(block.getNumber())) {
             for (int i = 0; i < receipts.size(); i++) {
-                TransactionReceipt receipt = receipts.get(i);
-                TransactionInfo txInfo = new TransactionInfo(receipt, block.getHash(), i);
-                txInfo.setTransaction(block.getTransactionsList().get(i));
-                txStore.put(txInfo);
+                receipts.get(i).setTransaction(block.getTransactionsList().get(i));
             }
+            txStore.put(block.getHash(), receipts);
 
             finalizeBlock(block.getNumber());
         }
@@ -61,13 +61,12 @@ public class SyncManager extends BlockDownloader {
     private final static int BLOCK_BYTES_ADDON = 4;
 
     // Transaction.getSender() is quite heavy operation so we are prefetching this value on several threads
-    // to unload the main block importing cycle
+    // to unload the main block importing cycle. Transactions of large blocks are additionally
+    // split between the SenderRecovery threads
     private ExecutorPipeline<BlockWrapper,BlockWrapper> exec1 = new ExecutorPipeline<>
             (4, 1000, true, new Functional.Function<BlockWrapper,BlockWrapper>() {
                 public BlockWrapper apply(BlockWrapper blockWrapper) {
-                    for (Transaction tx : blockWrapper.getBlock().getTransactionsList()) {
-                        tx.getSender();
-                    }
+                    senderRecovery.recover(blockWrapper.getBlock().getTransactionsList());
                     return blockWrapper;
                 }
             }, new Functional.Consumer<Throwable>() {
@@ -98,6 +97,9 @@ public class SyncManager extends BlockDownloader {
     @Autowired
     private FastSyncManager fastSyncManager;
 
+    @Autowired
+    private SenderRecovery senderRecovery;
+
     ChannelManager channelManager;
 
     private SystemProperties config;
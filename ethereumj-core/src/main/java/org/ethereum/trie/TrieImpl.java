@@ -17,7 +17,6 @@
  */
 package org.ethereum.trie;
 
-import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import org.apache.commons.lang3.text.StrBuilder;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.datasource.Source;
@@ -33,7 +32,6 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.concurrent.*;
 
-import static org.apache.commons.lang3.concurrent.ConcurrentUtils.constantFuture;
 import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.RLP.EMPTY_ELEMENT_RLP;
@@ -45,17 +43,50 @@ import static org.ethereum.util.RLP.encodeList;
  */
 public class TrieImpl implements Trie<byte[]> {
     private final static Object NULL_NODE = new Object();
-    private final static int MIN_BRANCHES_CONCURRENTLY = 3;
-    private static ExecutorService executor;
+    // the min number of dirty nodes in the subtree worth encoding in a separate task
+    private final static int MIN_NODES_CONCURRENTLY = 64;
+    private static ForkJoinPool executor;
 
-    public static ExecutorService getExecutor() {
+    public static synchronized ForkJoinPool getExecutor() {
         if (executor == null) {
-            executor = Executors.newFixedThreadPool(4,
-                    new ThreadFactoryBuilder().setNameFormat("trie-calc-thread-%d").build());
+            executor = new ForkJoinPool(Runtime.getRuntime().availableProcessors(),
+                    new ForkJoinPool.ForkJoinWorkerThreadFactory() {
+                        @Override
+                        public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+                            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+                            thread.setName("trie-calc-thread-" + thread.getPoolIndex());
+                            return thread;
+                        }
+                    }, null, false);
         }
         return executor;
     }
 
+    /**
+     * Runs the task in the trie executor, a task invoked from the executor
+     * thread is run in the current thread forking its subtasks into the executor
+     */
+    public static <T> T invoke(ForkJoinTask<T> task) {
+        return ForkJoinTask.getPool() == getExecutor() ? task.invoke() : getExecutor().invoke(task);
+    }
+
+    private static class EncodeTask extends RecursiveTask<byte[]> {
+        private final Node node;
+        private final int depth;
+        private final boolean forceHash;
+
+        EncodeTask(Node node, int depth, boolean forceHash) {
+            this.node = node;
+            this.depth = depth;
+            this.forceHash = forceHash;
+        }
+
+        @Override
+        protected byte[] compute() {
+            return node.encode(depth, forceHash);
+        }
+    }
+
     public enum NodeType {
         BranchNode,
         KVNodeValue,
@@ -67,6 +98,8 @@ public class TrieImpl implements Trie<byte[]> {
         private byte[] rlp = null;
         private RLP.LList parsedRlp = null;
         private boolean dirty = false;
+        // the number of dirty nodes in the subtree, valid during the encode() only
+        private int dirtyCount = 0;
 
         private Object[] children = null;
 
@@ -112,8 +145,30 @@ public class TrieImpl implements Trie<byte[]> {
         }
 
         public byte[] encode() {
+            if (async && dirty && countDirty() >= MIN_NODES_CONCURRENTLY) {
+                return invoke(new EncodeTask(this, 1, true));
+            }
             return encode(1, true);
         }
+
+        /**
+         * Counts dirty nodes in the subtree to split the encoding work
+         */
+        private int countDirty() {
+            if (!dirty) return 0;
+            int ret = 1;
+            NodeType type = getType();
+            if (type == NodeType.BranchNode) {
+                for (int i = 0; i < 16; i++) {
+                    Node child = branchNodeGetChild(i);
+                    if (child != null) ret += child.countDirty();
+                }
+            } else if (type == NodeType.KVNodeNode) {
+                ret += kvNodeGetChildNode().countDirty();
+            }
+            return dirtyCount = ret;
+        }
+
         private byte[] encode(final int depth, boolean forceHash) {
             if (!dirty) {
                 return hash != null ? encodeElement(hash) : rlp;
@@ -121,53 +176,35 @@ public class TrieImpl implements Trie<byte[]> {
                 NodeType type = getType();
                 byte[] ret;
                 if (type == NodeType.BranchNode) {
-                    if (depth == 1 && async) {
-                        // parallelize encode() on the first trie level only and if there are at least
-                        // MIN_BRANCHES_CONCURRENTLY branches are modified
-                        final Object[] encoded = new Object[17];
-                        int encodeCnt = 0;
-                        for (int i = 0; i < 16; i++) {
-                            final Node child = branchNodeGetChild(i);
-                            if (child == null) {
-                                encoded[i] = EMPTY_ELEMENT_RLP;
-                            } else if (!child.dirty) {
-                                encoded[i] = child.encode(depth + 1, false);
-                            } else {
-                                encodeCnt++;
-                            }
-                        }
-                        for (int i = 0; i < 16; i++) {
-                            if (encoded[i] == null) {
-                                final Node child = branchNodeGetChild(i);
-                                if (encodeCnt >= MIN_BRANCHES_CONCURRENTLY) {
-                                    encoded[i] = getExecutor().submit(new Callable<byte[]>() {
-                                        @Override
-                                        public byte[] call() throws Exception {
-                                            return child.encode(depth + 1, false);
-                                        }
-                                    });
-                                } else {
-                                    encoded[i] = child.encode(depth + 1, false);
-                                }
+                    byte[][] encoded = new byte[17][];
+                    // the large dirty subtrees (counted by encode()) are encoded concurrently
+                    // except the last one which is encoded in the current thread
+                    EncodeTask[] tasks = null;
+                    int last = -1;
+                    for (int i = 0; i < 16; i++) {
+                        Node child = branchNodeGetChild(i);
+                        if (child != null && child.dirty && child.dirtyCount >= MIN_NODES_CONCURRENTLY) {
+                            if (last >= 0) {
+                                if (tasks == null) tasks = new EncodeTask[16];
+                                tasks[last] = new EncodeTask(branchNodeGetChild(last), depth + 1, false);
+                                tasks[last].fork();
                             }
+                            last = i;
                         }
-                        byte[] value = branchNodeGetValue();
-                        encoded[16] = constantFuture(encodeElement(value));
-                        try {
-                            ret = encodeRlpListFutures(encoded);
-                        } catch (Exception e) {
-                            throw new RuntimeException(e);
-                        }
-                    } else {
-                        byte[][] encoded = new byte[17][];
+                    }
+                    for (int i = 0; i < 16; i++) {
+                        if (tasks != null && tasks[i] != null) continue;
+                        Node child = branchNodeGetChild(i);
+                        encoded[i] = child == null ? EMPTY_ELEMENT_RLP : child.encode(depth + 1, false);
+                    }
+                    if (tasks != null) {
                         for (int i = 0; i < 16; i++) {
-                            Node child = branchNodeGetChild(i);
-                            encoded[i] = child == null ? EMPTY_ELEMENT_RLP : child.encode(depth + 1, false);
+                            if (tasks[i] != null) encoded[i] = tasks[i].join();
                         }
-                        byte[] value = branchNodeGetValue();
-                        encoded[16] = encodeElement(value);
-                        ret = encodeList(encoded);
                     }
+                    byte[] value = branchNodeGetValue();
+                    encoded[16] = encodeElement(value);
+                    ret = encodeList(encoded);
                 } else if (type == NodeType.KVNodeNode) {
                     ret = encodeList(encodeElement(kvNodeGetKey().toPacked()), kvNodeGetChildNode().encode(depth + 1, false));
                 } else {
@@ -179,6 +216,7 @@ public class TrieImpl implements Trie<byte[]> {
                     deleteHash(hash);
                 }
                 dirty = false;
+                dirtyCount = 0;
                 if (ret.length < 32 && !forceHash) {
                     rlp = ret;
                     return ret;
@@ -190,19 +228,6 @@ public class TrieImpl implements Trie<byte[]> {
             }
         }
 
-        @SafeVarargs
-        private final byte[] encodeRlpListFutures(Object... list) throws ExecutionException, InterruptedException {
-            byte[][] vals = new byte[list.length][];
-            for (int i = 0; i < list.length; i++) {
-                if (list[i] instanceof Future) {
-                    vals[i] = ((Future<byte[]>) list[i]).get();
-                } else {
-                    vals[i] = (byte[]) list[i];
-                }
-            }
-            return encodeList(vals);
-        }
-
         private void parse() {
             if (children != null) return;
             resolve();
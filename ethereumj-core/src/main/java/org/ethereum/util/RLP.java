@@ -662,85 +662,209 @@ public class RLP {
         }
     }
 
+    /**
+     * Lazy view of the RLP encoded list
+     *
+     * Elements are indexed over the original buffer on demand, up to the requested one,
+     * nested lists are indexed only when accessed, byte arrays are copied only
+     * when explicitly requested. Malformed encoding is reported when the broken element
+     * is reached.
+     *
+     * Not thread safe
+     */
     public static final class LList {
         private final byte[] rlp;
-        private final int[] offsets = new int[32];
-        private final int[] lens = new int[32];
+        // position of the list prefix, -1 if unknown
+        private final int encodedOff;
+        private final int end;
+        // position of the next element to be indexed
+        private int pos;
+
+        // element prefix positions
+        private int[] starts = new int[16];
+        // element payload positions
+        private int[] offsets = new int[16];
+        // element payload lengths, negative for lists
+        private int[] lens = new int[16];
         private int cnt;
 
-        public LList(byte[] rlp) {
+        private LList(byte[] rlp, int encodedOff, int pos, int length) {
+            if (pos + length > rlp.length) throw new RuntimeException("RLP wrong encoding: list exceeds the data");
             this.rlp = rlp;
+            this.encodedOff = encodedOff;
+            this.pos = pos;
+            this.end = pos + length;
         }
 
-        public void add(int off, int len, boolean isList) {
+        private void add(int start, int off, int len, boolean isList) {
+            if (cnt == offsets.length) {
+                int newLen = cnt * 2;
+                starts = Arrays.copyOf(starts, newLen);
+                offsets = Arrays.copyOf(offsets, newLen);
+                lens = Arrays.copyOf(lens, newLen);
+            }
+            starts[cnt] = start;
             offsets[cnt] = off;
             lens[cnt] = isList ? (-1 - len) : len;
             cnt++;
         }
 
-        public byte[] getBytes(int idx) {
+        private boolean indexNext() {
+            if (pos >= end) return false;
+
+            int start = pos;
+            int prefix = rlp[pos] & 0xFF;
+            int off, len;
+            boolean isList = false;
+            if (prefix < OFFSET_SHORT_ITEM) {  // [0x00, 0x7f], byte is its own RLP encoding
+                off = pos;
+                len = 1;
+            } else if (prefix <= OFFSET_LONG_ITEM) {  // [0x80, 0xb7]
+                off = pos + 1;
+                len = prefix - OFFSET_SHORT_ITEM;
+            } else if (prefix < OFFSET_SHORT_LIST) {  // [0xb8, 0xbf]
+                int lenlen = prefix - OFFSET_LONG_ITEM;
+                off = pos + 1 + lenlen;
+                len = calcLongLength(lenlen, start);
+            } else if (prefix <= OFFSET_LONG_LIST) {  // [0xc0, 0xf7]
+                off = pos + 1;
+                len = prefix - OFFSET_SHORT_LIST;
+                isList = true;
+            } else {  // [0xf8, 0xff]
+                int lenlen = prefix - OFFSET_LONG_LIST;
+                off = pos + 1 + lenlen;
+                len = calcLongLength(lenlen, start);
+                isList = true;
+            }
+            if (len < 0 || off + len > end) {
+                throw new RuntimeException("RLP wrong encoding: element at " + start + " exceeds the list");
+            }
+
+            add(start, off, len, isList);
+            pos = off + len;
+            return true;
+        }
+
+        private int calcLongLength(int lenlen, int start) {
+            if (lenlen > 4 || start + lenlen >= end) {
+                throw new RuntimeException("RLP wrong encoding: invalid length of length at " + start);
+            }
+            return calcLength(lenlen, rlp, start);
+        }
+
+        private void index(int idx) {
+            while (cnt <= idx) {
+                if (!indexNext()) throw new IndexOutOfBoundsException("Index: " + idx + ", Size: " + cnt);
+            }
+        }
+
+        private int getLength(int idx) {
+            index(idx);
             int len = lens[idx];
-            len = len < 0 ? (-len - 1) : len;
+            return len < 0 ? (-len - 1) : len;
+        }
+
+        /**
+         * @return copy of the element payload, that is the item bytes or
+         * encoded elements of the nested list
+         */
+        public byte[] getBytes(int idx) {
+            int len = getLength(idx);
             byte[] ret = new byte[len];
             System.arraycopy(rlp, offsets[idx], ret, 0, len);
             return ret;
         }
 
+        /**
+         * Same as {@link RLPItem#getRLPData()}
+         * @return copy of the item bytes or null if the item is empty
+         */
+        public byte[] getBytesOrNull(int idx) {
+            return getLength(idx) == 0 ? null : getBytes(idx);
+        }
+
+        /**
+         * @return copy of the element encoding, including its prefix
+         */
+        public byte[] getEncoded(int idx) {
+            int len = getLength(idx);
+            return copyOfRange(rlp, starts[idx], offsets[idx] + len);
+        }
+
+        /**
+         * @return copy of this list encoding, including its prefix
+         */
+        public byte[] getEncoded() {
+            if (encodedOff < 0) throw new IllegalStateException("List prefix position is unknown");
+            return copyOfRange(rlp, encodedOff, end);
+        }
+
         public LList getList(int idx) {
-            return decodeLazyList(rlp, offsets[idx], -lens[idx] - 1);
+            if (!isList(idx)) throw new RuntimeException("RLP list expected at index " + idx);
+            return new LList(rlp, starts[idx], offsets[idx], -lens[idx] - 1);
         }
 
         public boolean isList(int idx) {
+            index(idx);
             return lens[idx] < 0;
         }
 
+        /**
+         * @return true if the element is an empty item or an empty list
+         */
+        public boolean isEmpty(int idx) {
+            return getLength(idx) == 0;
+        }
+
+        /**
+         * Reads the item as an unsigned big endian number without copying it
+         */
+        public long getLong(int idx) {
+            int len = getLength(idx);
+            if (len > 8) throw new RuntimeException("RLP item is too long for long: " + len);
+            long ret = 0;
+            for (int i = offsets[idx]; i < offsets[idx] + len; i++) {
+                ret = (ret << 8) | (rlp[i] & 0xFF);
+            }
+            return ret;
+        }
+
+        public int getInt(int idx) {
+            int len = getLength(idx);
+            if (len > 4) throw new RuntimeException("RLP item is too long for int: " + len);
+            return (int) getLong(idx);
+        }
+
+        public BigInteger getBigInteger(int idx) {
+            int len = getLength(idx);
+            return len == 0 ? BigInteger.ZERO : new BigInteger(1, getBytes(idx));
+        }
+
+        /**
+         * Indexes all the remaining elements
+         */
         public int size() {
+            while (indexNext());
             return cnt;
         }
     }
 
+    /**
+     * Creates the lazy view of the RLP encoded list starting at the beginning of data
+     * @throws RuntimeException if data doesn't start with a list
+     */
     public static LList decodeLazyList(byte[] data) {
         return decodeLazyList(data, 0, data.length).getList(0);
     }
 
+    /**
+     * Creates the lazy view over elements encoded in the data range
+     */
     public static LList decodeLazyList(byte[] data, int pos, int length) {
         if (data == null || data.length < 1) {
             return null;
         }
-        LList ret = new LList(data);
-        int end = pos + length;
-
-        while(pos < end) {
-            int prefix = data[pos] & 0xFF;
-            if (prefix == OFFSET_SHORT_ITEM) {  // 0x80
-                ret.add(pos, 0, false); // means no length or 0
-                pos++;
-            } else if (prefix < OFFSET_SHORT_ITEM) {  // [0x00, 0x7f]
-                ret.add(pos, 1, false); // means no length or 0
-                pos++;
-            } else if (prefix <= OFFSET_LONG_ITEM) {  // [0x81, 0xb7]
-                int len = prefix - OFFSET_SHORT_ITEM; // length of the encoded bytes
-                ret.add(pos + 1, len, false);
-                pos += len + 1;
-            } else if (prefix < OFFSET_SHORT_LIST) {  // [0xb8, 0xbf]
-                int lenlen = prefix - OFFSET_LONG_ITEM; // length of length the encoded bytes
-                int lenbytes = byteArrayToInt(copyOfRange(data, pos + 1, pos + 1 + lenlen)); // length of encoded bytes
-                ret.add(pos + 1 + lenlen, lenbytes, false);
-                pos += 1 + lenlen + lenbytes;
-            } else if (prefix <= OFFSET_LONG_LIST) {  // [0xc0, 0xf7]
-                int len = prefix - OFFSET_SHORT_LIST; // length of the encoded list
-                ret.add(pos + 1, len, true);
-                pos += 1 + len;
-            } else if (prefix <= 0xFF) {  // [0xf8, 0xff]
-                int lenlen = prefix - OFFSET_LONG_LIST; // length of length the encoded list
-                int lenlist = byteArrayToInt(copyOfRange(data, pos + 1, pos + 1 + lenlen)); // length of encoded bytes
-                ret.add(pos + 1 + lenlen, lenlist, true);
-                pos += 1 + lenlen + lenlist; // start at position of first element in list
-            } else {
-                throw new RuntimeException("Only byte values between 0x00 and 0xFF are supported, but got: " + prefix);
-            }
-        }
-        return ret;
+        return new LList(data, -1, pos, length);
     }
 
 
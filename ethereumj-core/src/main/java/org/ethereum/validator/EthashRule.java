@@ -0,0 +1,59 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.validator;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.mine.EthashValidationHelper;
+import org.ethereum.util.FastByteComparisons;
+
+/**
+ * Verifies the header proof of work the way light clients do: recalculates the mixHash
+ * and the proof value with the Ethash light cache of the header epoch.
+ * Unlike {@link ProofOfWorkRule} which trusts the mixHash from the header this rule
+ * catches the forged mixHash, but takes a few milliseconds per header
+ */
+public class EthashRule extends BlockHeaderRule {
+
+    private final EthashValidationHelper ethashHelper;
+
+    public EthashRule(EthashValidationHelper ethashHelper) {
+        this.ethashHelper = ethashHelper;
+    }
+
+    @Override
+    public ValidationResult validate(BlockHeader header) {
+        if (header.isGenesis()) return Success;
+
+        if (header.getNonce() == null || header.getNonce().length != 8) {
+            return fault(String.format("#%d: invalid nonce length", header.getNumber()));
+        }
+
+        Pair<byte[], byte[]> work = ethashHelper.ethashWorkFor(header, header.getNonce());
+
+        if (!FastByteComparisons.equal(work.getLeft(), header.getMixHash())) {
+            return fault(String.format("#%d: mixHash doesn't match", header.getNumber()));
+        }
+
+        if (FastByteComparisons.compareTo(work.getRight(), 0, 32, header.getPowBoundary(), 0, 32) > 0) {
+            return fault(String.format("#%d: proofValue > header.getPowBoundary()", header.getNumber()));
+        }
+
+        return Success;
+    }
+}
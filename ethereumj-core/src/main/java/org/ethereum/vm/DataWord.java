@@ -210,33 +210,18 @@ public class DataWord implements Comparable<DataWord> {
 
         if (this.isZero()) return;
 
-        for (int i = 0; i < this.data.length; ++i) {
-            this.data[i] = (byte) ~this.data[i];
-        }
-
-        for (int i = this.data.length - 1; i >= 0; --i) {
-            this.data[i] = (byte) (1 + this.data[i] & 0xFF);
-            if (this.data[i] != 0) break;
-        }
+        UInt256.negate(word32(), this.data = new byte[32]);
     }
 
     public void bnot() {
-        if (this.isZero()) {
-            this.data = ByteUtil.copyToArray(MAX_VALUE);
-            return;
-        }
-        this.data = ByteUtil.copyToArray(MAX_VALUE.subtract(this.value()));
+        UInt256.not(word32(), this.data = new byte[32]);
     }
 
     // By   : Holger
     // From : http://stackoverflow.com/a/24023466/459349
     public void add(DataWord word) {
         byte[] result = new byte[32];
-        for (int i = 31, overflow = 0; i >= 0; i--) {
-            int v = (this.data[i] & 0xff) + (word.data[i] & 0xff) + overflow;
-            result[i] = (byte) v;
-            overflow = v >>> 8;
-        }
+        UInt256.add(word32(), word.word32(), result);
         this.data = result;
     }
 
@@ -246,15 +231,12 @@ public class DataWord implements Comparable<DataWord> {
         this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
     }
 
-    // TODO: mul can be done in more efficient way
-    // TODO:     with shift left shift right trick
-    // TODO      without BigInteger quick hack
     public void mul(DataWord word) {
-        BigInteger result = value().multiply(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        int[] result = new int[UInt256.LIMBS];
+        UInt256.mul(limbs(), word.limbs(), result);
+        setLimbs(result);
     }
 
-    // TODO: improve with no BigInteger
     public void div(DataWord word) {
 
         if (word.isZero()) {
@@ -262,11 +244,11 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().divide(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        int[] result = new int[UInt256.LIMBS];
+        UInt256.divmod(limbs(), word.limbs(), result, null);
+        setLimbs(result);
     }
 
-    // TODO: improve with no BigInteger
     public void sDiv(DataWord word) {
 
         if (word.isZero()) {
@@ -274,23 +256,25 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = sValue().divide(word.sValue());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        boolean negative = (word32()[0] < 0) != (word.word32()[0] < 0);
+        int[] result = new int[UInt256.LIMBS];
+        UInt256.divmod(absLimbs(), word.absLimbs(), result, null);
+        setLimbs(result);
+        if (negative) negate();
     }
 
-    // TODO: improve with no BigInteger
     public void sub(DataWord word) {
-        BigInteger result = value().subtract(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        byte[] result = new byte[32];
+        UInt256.sub(word32(), word.word32(), result);
+        this.data = result;
     }
 
-    // TODO: improve with no BigInteger
     public void exp(DataWord word) {
-        BigInteger result = value().modPow(word.value(), _2_256);
-        this.data = ByteUtil.copyToArray(result);
+        int[] result = new int[UInt256.LIMBS];
+        UInt256.exp(limbs(), word.limbs(), result);
+        setLimbs(result);
     }
 
-    // TODO: improve with no BigInteger
     public void mod(DataWord word) {
 
         if (word.isZero()) {
@@ -298,8 +282,9 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().mod(word.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        int[] result = new int[UInt256.LIMBS];
+        UInt256.divmod(limbs(), word.limbs(), null, result);
+        setLimbs(result);
     }
 
     public void sMod(DataWord word) {
@@ -309,10 +294,11 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = sValue().abs().mod(word.sValue().abs());
-        result = (sValue().signum() == -1) ? result.negate() : result;
-
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        boolean negative = word32()[0] < 0;
+        int[] result = new int[UInt256.LIMBS];
+        UInt256.divmod(absLimbs(), word.absLimbs(), null, result);
+        setLimbs(result);
+        if (negative) negate();
     }
 
     public void addmod(DataWord word1, DataWord word2) {
@@ -321,8 +307,20 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().add(word1.value()).mod(word2.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        // the sum may take 257 bits
+        int[] a = limbs(), b = word1.limbs();
+        int[] sum = new int[UInt256.LIMBS + 1];
+        long carry = 0;
+        for (int i = 0; i < UInt256.LIMBS; i++) {
+            long t = (a[i] & 0xFFFFFFFFL) + (b[i] & 0xFFFFFFFFL) + carry;
+            sum[i] = (int) t;
+            carry = t >>> 32;
+        }
+        sum[UInt256.LIMBS] = (int) carry;
+
+        int[] result = new int[UInt256.LIMBS];
+        UInt256.divmod(sum, word2.limbs(), null, result);
+        setLimbs(result);
     }
 
     public void mulmod(DataWord word1, DataWord word2) {
@@ -332,8 +330,61 @@ public class DataWord implements Comparable<DataWord> {
             return;
         }
 
-        BigInteger result = value().multiply(word1.value()).mod(word2.value());
-        this.data = ByteUtil.copyToArray(result.and(MAX_VALUE));
+        int[] product = new int[2 * UInt256.LIMBS];
+        UInt256.mulFull(limbs(), word1.limbs(), product);
+        int[] result = new int[UInt256.LIMBS];
+        UInt256.divmod(product, word2.limbs(), null, result);
+        setLimbs(result);
+    }
+
+    /**
+     * Unsigned comparison of the words values
+     */
+    public int compareValue(DataWord word) {
+        return UInt256.compare(word32(), word.word32());
+    }
+
+    /**
+     * Signed (two's complement) comparison of the words values
+     */
+    public int sCompareValue(DataWord word) {
+        return UInt256.compareSigned(word32(), word.word32());
+    }
+
+    /**
+     * @return 32 bytes array representing this word value (the data itself if it has the 32 bytes size)
+     */
+    private byte[] word32() {
+        if (data.length == 32) return data;
+        byte[] ret = new byte[32];
+        System.arraycopy(data, 0, ret, 32 - data.length, data.length);
+        return ret;
+    }
+
+    private int[] limbs() {
+        int[] ret = new int[UInt256.LIMBS];
+        UInt256.toLimbs(word32(), ret);
+        return ret;
+    }
+
+    private int[] absLimbs() {
+        byte[] word = word32();
+        if (word[0] < 0) {
+            byte[] abs = new byte[32];
+            UInt256.negate(word, abs);
+            word = abs;
+        }
+        int[] ret = new int[UInt256.LIMBS];
+        UInt256.toLimbs(word, ret);
+        return ret;
+    }
+
+    private void setLimbs(int[] limbs) {
+        // the result is always written to the new array since the
+        // current one may be shared with the word creator
+        byte[] result = new byte[32];
+        UInt256.fromLimbs(limbs, result);
+        this.data = result;
     }
 
     @JsonValue
@@ -391,7 +442,7 @@ public class DataWord implements Comparable<DataWord> {
     public void signExtend(byte k) {
         if (0 > k || k > 31)
             throw new IndexOutOfBoundsException();
-        byte mask = this.sValue().testBit((k * 8) + 7) ? (byte) 0xff : 0;
+        byte mask = word32()[31 - k] < 0 ? (byte) 0xff : 0;
         for (int i = 31; i > k; i--) {
             this.data[31 - i] = mask;
         }
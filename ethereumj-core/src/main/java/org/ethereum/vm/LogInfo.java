@@ -20,9 +20,6 @@ package org.ethereum.vm;
 import org.ethereum.core.Bloom;
 import org.ethereum.crypto.HashUtil;
 import org.ethereum.util.RLP;
-import org.ethereum.util.RLPElement;
-import org.ethereum.util.RLPItem;
-import org.ethereum.util.RLPList;
 
 import org.spongycastle.util.encoders.Hex;
 
@@ -44,18 +41,17 @@ public class LogInfo {
 
     public LogInfo(byte[] rlp) {
 
-        RLPList params = RLP.decode2(rlp);
-        RLPList logInfo = (RLPList) params.get(0);
+        RLP.LList logInfo = RLP.decodeLazyList(rlp);
 
-        RLPItem address = (RLPItem) logInfo.get(0);
-        RLPList topics = (RLPList) logInfo.get(1);
-        RLPItem data = (RLPItem) logInfo.get(2);
+        byte[] address = logInfo.getBytesOrNull(0);
+        RLP.LList topics = logInfo.getList(1);
+        byte[] data = logInfo.getBytesOrNull(2);
 
-        this.address = address.getRLPData() != null ? address.getRLPData() : new byte[]{};
-        this.data = data.getRLPData() != null ? data.getRLPData() : new byte[]{};
+        this.address = address != null ? address : new byte[]{};
+        this.data = data != null ? data : new byte[]{};
 
-        for (RLPElement topic1 : topics) {
-            byte[] topic = topic1.getRLPData();
+        for (int i = 0; i < topics.size(); i++) {
+            byte[] topic = topics.getBytesOrNull(i);
             this.topics.add(new DataWord(topic));
         }
 
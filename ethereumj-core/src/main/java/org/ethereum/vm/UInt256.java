@@ -0,0 +1,287 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm;
+
+/**
+ * Fixed width 256-bit unsigned arithmetic used by {@link DataWord} instead of BigInteger
+ *
+ * Values are either 32-byte big-endian arrays (the DataWord format) or arrays of 32-bit
+ * limbs with the least significant limb first. Limbs are 32-bit since Java 7 has
+ * no unsigned 64x64 multiplication and division, so a limb product always fits
+ * into an (unsigned) long.
+ *
+ * All the methods write results to the arrays supplied by the caller and
+ * all results are taken modulo 2^256 unless stated otherwise.
+ */
+final class UInt256 {
+
+    static final int LIMBS = 8;
+    private static final long MASK = 0xFFFFFFFFL;
+
+    private UInt256() {
+    }
+
+    static void toLimbs(byte[] src, int[] dst) {
+        for (int i = 0; i < LIMBS; i++) {
+            int off = 28 - (i << 2);
+            dst[i] = (src[off] << 24) | ((src[off + 1] & 0xFF) << 16) |
+                    ((src[off + 2] & 0xFF) << 8) | (src[off + 3] & 0xFF);
+        }
+    }
+
+    static void fromLimbs(int[] src, byte[] dst) {
+        for (int i = 0; i < LIMBS; i++) {
+            int off = 28 - (i << 2);
+            int v = src[i];
+            dst[off] = (byte) (v >>> 24);
+            dst[off + 1] = (byte) (v >>> 16);
+            dst[off + 2] = (byte) (v >>> 8);
+            dst[off + 3] = (byte) v;
+        }
+    }
+
+    static boolean isZero(int[] a) {
+        for (int i = 0; i < a.length; i++) {
+            if (a[i] != 0) return false;
+        }
+        return true;
+    }
+
+    static int compare(byte[] a, byte[] b) {
+        for (int i = 0; i < 32; i++) {
+            int x = a[i] & 0xFF, y = b[i] & 0xFF;
+            if (x != y) return x < y ? -1 : 1;
+        }
+        return 0;
+    }
+
+    static int compareSigned(byte[] a, byte[] b) {
+        if ((a[0] ^ b[0]) < 0) {
+            // different signs
+            return a[0] < 0 ? -1 : 1;
+        }
+        return compare(a, b);
+    }
+
+    static void add(byte[] a, byte[] b, byte[] out) {
+        for (int i = 31, carry = 0; i >= 0; i--) {
+            int v = (a[i] & 0xFF) + (b[i] & 0xFF) + carry;
+            out[i] = (byte) v;
+            carry = v >>> 8;
+        }
+    }
+
+    static void sub(byte[] a, byte[] b, byte[] out) {
+        for (int i = 31, borrow = 0; i >= 0; i--) {
+            int v = (a[i] & 0xFF) - (b[i] & 0xFF) - borrow;
+            out[i] = (byte) v;
+            borrow = v < 0 ? 1 : 0;
+        }
+    }
+
+    /**
+     * Two's complement negation, can be done in place
+     */
+    static void negate(byte[] a, byte[] out) {
+        for (int i = 31, carry = 1; i >= 0; i--) {
+            int v = (~a[i] & 0xFF) + carry;
+            out[i] = (byte) v;
+            carry = v >>> 8;
+        }
+    }
+
+    static void not(byte[] a, byte[] out) {
+        for (int i = 0; i < 32; i++) {
+            out[i] = (byte) ~a[i];
+        }
+    }
+
+    /**
+     * out = a * b mod 2^256, out should not be the same array as a or b
+     */
+    static void mul(int[] a, int[] b, int[] out) {
+        for (int i = 0; i < LIMBS; i++) out[i] = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            long ai = a[i] & MASK;
+            if (ai == 0) continue;
+            long carry = 0;
+            for (int j = 0; i + j < LIMBS; j++) {
+                long t = ai * (b[j] & MASK) + (out[i + j] & MASK) + carry;
+                out[i + j] = (int) t;
+                carry = t >>> 32;
+            }
+        }
+    }
+
+    /**
+     * Full 512-bit product: out (2 * LIMBS long) = a * b
+     */
+    static void mulFull(int[] a, int[] b, int[] out) {
+        for (int i = 0; i < 2 * LIMBS; i++) out[i] = 0;
+        for (int i = 0; i < LIMBS; i++) {
+            long ai = a[i] & MASK;
+            if (ai == 0) continue;
+            long carry = 0;
+            for (int j = 0; j < LIMBS; j++) {
+                long t = ai * (b[j] & MASK) + (out[i + j] & MASK) + carry;
+                out[i + j] = (int) t;
+                carry = t >>> 32;
+            }
+            out[i + LIMBS] = (int) carry;
+        }
+    }
+
+    /**
+     * out = base ^ exponent mod 2^256
+     */
+    static void exp(int[] base, int[] exponent, int[] out) {
+        int[] res = new int[LIMBS];
+        int[] tmp = new int[LIMBS];
+        res[0] = 1;
+        boolean started = false;
+        for (int i = LIMBS - 1; i >= 0; i--) {
+            for (int bit = 31; bit >= 0; bit--) {
+                if (started) {
+                    mul(res, res, tmp);
+                    int[] t = res; res = tmp; tmp = t;
+                }
+                if ((exponent[i] & (1 << bit)) != 0) {
+                    mul(res, base, tmp);
+                    int[] t = res; res = tmp; tmp = t;
+                    started = true;
+                }
+            }
+        }
+        System.arraycopy(res, 0, out, 0, LIMBS);
+    }
+
+    /**
+     * Unsigned division of the arbitrary length (little-endian limbs) number u by v
+     * (Knuth, TAOCP vol. 2, Algorithm D)
+     *
+     * @param q the quotient (u.length limbs) or null if not needed
+     * @param r the remainder (v.length limbs) or null if not needed
+     * @throws ArithmeticException if v is zero
+     */
+    static void divmod(int[] u, int[] v, int[] q, int[] r) {
+        int m = significantLimbs(u);
+        int n = significantLimbs(v);
+        if (n == 0) throw new ArithmeticException("Division by zero");
+
+        if (q != null) for (int i = 0; i < q.length; i++) q[i] = 0;
+        if (r != null) for (int i = 0; i < r.length; i++) r[i] = 0;
+
+        if (m < n) {
+            if (r != null) System.arraycopy(u, 0, r, 0, m);
+            return;
+        }
+
+        if (n == 1) {
+            long d = v[0] & MASK;
+            long rem = 0;
+            for (int j = m - 1; j >= 0; j--) {
+                long cur = (rem << 32) | (u[j] & MASK);
+                long qj = divideUnsigned(cur, d);
+                if (q != null) q[j] = (int) qj;
+                rem = cur - qj * d;
+            }
+            if (r != null) r[0] = (int) rem;
+            return;
+        }
+
+        // normalize so the highest bit of the divisor is set
+        int s = Integer.numberOfLeadingZeros(v[n - 1]);
+        int[] vn = new int[n];
+        int[] un = new int[m + 1];
+        shiftLeft(v, n, s, vn);
+        un[m] = s == 0 ? 0 : u[m - 1] >>> (32 - s);
+        shiftLeft(u, m, s, un);
+
+        long vTop = vn[n - 1] & MASK;
+        long vNext = vn[n - 2] & MASK;
+        for (int j = m - n; j >= 0; j--) {
+            long num = ((un[j + n] & MASK) << 32) | (un[j + n - 1] & MASK);
+            long qhat = divideUnsigned(num, vTop);
+            long rhat = num - qhat * vTop;
+            while (qhat > MASK || unsignedLess(((rhat << 32) | (un[j + n - 2] & MASK)), qhat * vNext)) {
+                qhat--;
+                rhat += vTop;
+                if (rhat > MASK) break;
+            }
+
+            // multiply and subtract
+            long k = 0;
+            long t;
+            for (int i = 0; i < n; i++) {
+                long p = qhat * (vn[i] & MASK);
+                t = (un[i + j] & MASK) - k - (p & MASK);
+                un[i + j] = (int) t;
+                k = (p >>> 32) - (t >> 32);
+            }
+            t = (un[j + n] & MASK) - k;
+            un[j + n] = (int) t;
+
+            if (t < 0) {
+                // subtracted too much, add back
+                qhat--;
+                k = 0;
+                for (int i = 0; i < n; i++) {
+                    t = (un[i + j] & MASK) + (vn[i] & MASK) + k;
+                    un[i + j] = (int) t;
+                    k = t >>> 32;
+                }
+                un[j + n] += (int) k;
+            }
+            if (q != null) q[j] = (int) qhat;
+        }
+
+        if (r != null) {
+            // denormalize the remainder
+            for (int i = 0; i < n; i++) {
+                r[i] = s == 0 ? un[i] : (un[i] >>> s) | (un[i + 1] << (32 - s));
+            }
+        }
+    }
+
+    private static void shiftLeft(int[] src, int len, int s, int[] dst) {
+        for (int i = len - 1; i > 0; i--) {
+            dst[i] = s == 0 ? src[i] : (src[i] << s) | (src[i - 1] >>> (32 - s));
+        }
+        dst[0] = src[0] << s;
+    }
+
+    private static int significantLimbs(int[] a) {
+        int n = a.length;
+        while (n > 0 && a[n - 1] == 0) n--;
+        return n;
+    }
+
+    private static boolean unsignedLess(long a, long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+
+    /**
+     * Unsigned division of n by positive d
+     */
+    private static long divideUnsigned(long n, long d) {
+        if (n >= 0) return n / d;
+        long q = ((n >>> 1) / d) << 1;
+        long r = n - q * d;
+        return q + (unsignedLess(r, d) ? 0 : 1);
+    }
+}
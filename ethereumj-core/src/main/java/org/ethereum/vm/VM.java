@@ -92,8 +92,13 @@ public class VM {
     private int vmCounter = 0;
 
     private static VMHook vmHook;
+
+    /* The deadline of programs played by the current thread, see {@link #setDeadline(long)} */
+    private static final ThreadLocal<Long> deadline = new ThreadLocal<>();
+    private static final int DEADLINE_CHECK_STEPS = 4096;
     private boolean vmTrace;
     private long dumpBlock;
+    private boolean blockGasMetering;
 
     private final SystemProperties config;
 
@@ -106,6 +111,7 @@ public class VM {
         this.config = config;
         vmTrace = config.vmTrace();
         dumpBlock = config.dumpBlock();
+        blockGasMetering = config.vmBlockGasMetering() && !vmTrace && dumpBlock < 0;
     }
 
     private long calcMemGas(GasCost gasCosts, long oldMemSize, BigInteger newMemSize, long copySize) {
@@ -185,6 +191,10 @@ public class VM {
               gasCost = 0;
             }*/
 
+            // static cost instructions may be already paid on entering their run,
+            // those fall into the default branch below
+            boolean prepaid = blockGasMetering && vmHook == null && program.spendRunGas();
+
             // Calculate fees and spend gas
             switch (op) {
                 case STOP:
@@ -339,7 +349,9 @@ public class VM {
             }
 
             //DEBUG System.out.println(" OP IS " + op.name() + " GASCOST IS " + gasCost + " NUM IS " + op.asInt());
-            program.spendGas(gasCost, op.name());
+            if (!prepaid) {
+                program.spendGas(gasCost, op.name());
+            }
 
             // Log debugging line for VM
             if (program.getNumber().intValue() == dumpBlock)
@@ -482,14 +494,13 @@ public class VM {
                 }
                 break;
                 case LT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.value() + " < " + word2.value();
 
-                    if (word1.value().compareTo(word2.value()) == -1) {
+                    if (word1.compareValue(word2) < 0) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -500,14 +511,13 @@ public class VM {
                 }
                 break;
                 case SLT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.sValue() + " < " + word2.sValue();
 
-                    if (word1.sValue().compareTo(word2.sValue()) == -1) {
+                    if (word1.sCompareValue(word2) < 0) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -518,14 +528,13 @@ public class VM {
                 }
                 break;
                 case SGT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.sValue() + " > " + word2.sValue();
 
-                    if (word1.sValue().compareTo(word2.sValue()) == 1) {
+                    if (word1.sCompareValue(word2) > 0) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -536,14 +545,13 @@ public class VM {
                 }
                 break;
                 case GT: {
-                    // TODO: can be improved by not using BigInteger
                     DataWord word1 = program.stackPop();
                     DataWord word2 = program.stackPop();
 
                     if (logger.isInfoEnabled())
                         hint = word1.value() + " > " + word2.value();
 
-                    if (word1.value().compareTo(word2.value()) == 1) {
+                    if (word1.compareValue(word2) > 0) {
                         word1.and(DataWord.ZERO);
                         word1.getData()[31] = 1;
                     } else {
@@ -761,16 +769,19 @@ public class VM {
                 }
                 break;
                 case CALLDATACOPY: {
-                    DataWord memOffsetData = program.stackPop();
-                    DataWord dataOffsetData = program.stackPop();
-                    DataWord lengthData = program.stackPop();
+                    int memOffset = program.stackPop().intValueSafe();
+                    int dataOffset = program.stackPop().intValueSafe();
+                    int lengthData = program.stackPop().intValueSafe();
 
-                    byte[] msgData = program.getDataCopy(dataOffsetData, lengthData);
+                    byte[] msgData = program.getData();
 
-                    if (logger.isInfoEnabled())
-                        hint = "data: " + Hex.toHexString(msgData);
+                    if (logger.isInfoEnabled()) {
+                        int from = Math.min(dataOffset, msgData.length);
+                        hint = "data: " + Hex.toHexString(msgData, from,
+                                (int) Math.min((long) from + lengthData, msgData.length) - from);
+                    }
 
-                    program.memorySave(memOffsetData.intValueSafe(), msgData);
+                    program.memoryCopy(memOffset, msgData, dataOffset, lengthData);
                     program.step();
                 }
                 break;
@@ -809,20 +820,13 @@ public class VM {
                     int codeOffset = program.stackPop().intValueSafe();
                     int lengthData = program.stackPop().intValueSafe();
 
-                    int sizeToBeCopied =
-                            (long) codeOffset + lengthData > fullCode.length ?
-                                    (fullCode.length < codeOffset ? 0 : fullCode.length - codeOffset)
-                                    : lengthData;
-
-                    byte[] codeCopy = new byte[lengthData];
-
-                    if (codeOffset < fullCode.length)
-                        System.arraycopy(fullCode, codeOffset, codeCopy, 0, sizeToBeCopied);
-
-                    if (logger.isInfoEnabled())
-                        hint = "code: " + Hex.toHexString(codeCopy);
+                    if (logger.isInfoEnabled()) {
+                        int from = Math.min(codeOffset, fullCode.length);
+                        hint = "code: " + Hex.toHexString(fullCode, from,
+                                (int) Math.min((long) from + lengthData, fullCode.length) - from);
+                    }
 
-                    program.memorySave(memOffset, codeCopy);
+                    program.memoryCopy(memOffset, fullCode, codeOffset, lengthData);
                     program.step();
                 }
                 break;
@@ -1107,15 +1111,11 @@ public class VM {
                 case PUSH30:
                 case PUSH31:
                 case PUSH32: {
-                    program.step();
                     int nPush = op.val() - PUSH1.val() + 1;
-
-                    byte[] data = program.sweep(nPush);
+                    program.pushImmediate(nPush);
 
                     if (logger.isInfoEnabled())
-                        hint = "" + Hex.toHexString(data);
-
-                    program.stackPush(data);
+                        hint = "" + Hex.toHexString(program.getStack().peek().getData(), 32 - nPush, nPush);
                 }
                 break;
                 case JUMPDEST: {
@@ -1251,8 +1251,13 @@ public class VM {
 
             if (program.byTestingSuite()) return;
 
+            Long deadline = VM.deadline.get();
+            int steps = 0;
             while (!program.isStopped()) {
                 this.step(program);
+                if (deadline != null && ++steps % DEADLINE_CHECK_STEPS == 0 && System.currentTimeMillis() > deadline) {
+                    throw Program.Exception.executionTimeout(steps);
+                }
             }
 
         } catch (RuntimeException e) {
@@ -1271,6 +1276,20 @@ public class VM {
         VM.vmHook = vmHook;
     }
 
+    /**
+     * Limits the time of programs played by the current thread, when the deadline
+     * passes the program fails with {@link Program.ExecutionTimeoutException}
+     * @param deadlineMillis the deadline in terms of {@link System#currentTimeMillis()},
+     *                       0 to remove the limit
+     */
+    public static void setDeadline(long deadlineMillis) {
+        if (deadlineMillis > 0) {
+            deadline.set(deadlineMillis);
+        } else {
+            deadline.remove();
+        }
+    }
+
     /**
      * Utility to calculate new total memory size needed for an operation.
      * <br/> Basically just offset + size, unless size is 0, in which case the result is also 0.
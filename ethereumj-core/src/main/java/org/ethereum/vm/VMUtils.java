@@ -18,6 +18,9 @@
 package org.ethereum.vm;
 
 import org.ethereum.config.SystemProperties;
+import org.ethereum.vm.trace.BinaryTraceReader;
+import org.ethereum.vm.trace.BinaryTraceWriter;
+import org.ethereum.vm.trace.ProgramTraceSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -36,6 +39,8 @@ public final class VMUtils {
 
     private static final Logger LOGGER = LoggerFactory.getLogger("VM");
 
+    private static final String BINARY_TRACE_EXT = ".trace";
+
     private VMUtils() {
     }
 
@@ -49,12 +54,16 @@ public final class VMUtils {
         }
     }
 
-    private static File createProgramTraceFile(SystemProperties config, String txHash) {
+    private static File getProgramTraceFile(SystemProperties config, String fileName) {
+        return new File(new File(config.databaseDir(), config.vmTraceDir()), fileName);
+    }
+
+    private static File createProgramTraceFile(SystemProperties config, String fileName) {
         File result = null;
 
         if (config.vmTrace() && !isEmpty(config.vmTraceDir())) {
 
-            File file = new File(new File(config.databaseDir(), config.vmTraceDir()), txHash + ".json");
+            File file = getProgramTraceFile(config, fileName);
 
             if (file.exists()) {
                 if (file.isFile() && file.canWrite()) {
@@ -89,12 +98,43 @@ public final class VMUtils {
     }
 
     public static void saveProgramTraceFile(SystemProperties config, String txHash, String content) {
-        File file = createProgramTraceFile(config, txHash);
+        File file = createProgramTraceFile(config, txHash + ".json");
         if (file != null) {
             writeStringToFile(file, content);
         }
     }
 
+    /**
+     * Creates the sink streaming the trace to the binary file in the trace dir
+     * @return null if the trace file can't be created
+     */
+    public static ProgramTraceSink createProgramTraceSink(SystemProperties config, String txHash, String contractAddress) {
+        File file = createProgramTraceFile(config, txHash + BINARY_TRACE_EXT);
+        if (file == null) return null;
+        try {
+            return new BinaryTraceWriter(new FileOutputStream(file), contractAddress, config.vmTraceCompressed());
+        } catch (IOException e) {
+            LOGGER.error(format("Cannot write to file '%s': ", file.getAbsolutePath()), e);
+            return null;
+        }
+    }
+
+    /**
+     * Converts the binary trace file written by {@link #createProgramTraceSink} to JSON
+     * @return null if the trace can't be read
+     */
+    public static String loadProgramTraceJson(SystemProperties config, String txHash) {
+        File file = getProgramTraceFile(config, txHash + BINARY_TRACE_EXT);
+        try (BinaryTraceReader reader = new BinaryTraceReader(new FileInputStream(file))) {
+            StringWriter writer = new StringWriter();
+            reader.writeJson(writer, true);
+            return writer.toString();
+        } catch (IOException e) {
+            LOGGER.error(format("Cannot read file '%s': ", file.getAbsolutePath()), e);
+            return null;
+        }
+    }
+
     private static final int BUF_SIZE = 4096;
 
     private static void write(InputStream in, OutputStream out, int bufSize) throws IOException {
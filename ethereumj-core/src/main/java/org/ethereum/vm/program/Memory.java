@@ -21,21 +21,30 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 
-import static java.lang.Math.ceil;
+import static java.lang.Math.max;
 import static java.lang.Math.min;
 import static java.lang.String.format;
 import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
 import static org.ethereum.util.ByteUtil.oneByteToHexString;
 
+/**
+ * EVM memory: the list of fixed size chunks addressed directly by
+ * the chunk index (address >> CHUNK_BITS) and offset (address & CHUNK_MASK)
+ * so growing never copies the data written before
+ */
 public class Memory implements ProgramListenerAware {
 
-    private static final int CHUNK_SIZE = 1024;
+    private static final int CHUNK_BITS = 10;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
     private static final int WORD_SIZE = 32;
 
-    private List<byte[]> chunks = new LinkedList<>();
+    private List<byte[]> chunks = new ArrayList<>();
     private int softSize;
     private ProgramListener programListener;
 
@@ -50,8 +59,8 @@ public class Memory implements ProgramListenerAware {
         extend(address, size);
         byte[] data = new byte[size];
 
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
+        int chunkIndex = address >>> CHUNK_BITS;
+        int chunkOffset = address & CHUNK_MASK;
 
         int toGrab = data.length;
         int start = 0;
@@ -79,8 +88,8 @@ public class Memory implements ProgramListenerAware {
         if (!limited)
             extend(address, dataSize);
 
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
+        int chunkIndex = address >>> CHUNK_BITS;
+        int chunkOffset = address & CHUNK_MASK;
 
         int toCapture = 0;
         if (limited)
@@ -105,6 +114,48 @@ public class Memory implements ProgramListenerAware {
     }
 
 
+    /**
+     * Copies the data slice into the memory extending it if needed.
+     * The part of the slice which is beyond the data array is filled with zeroes
+     * (the CODECOPY/EXTCODECOPY semantics)
+     *
+     * @param address memory address to copy to
+     * @param data source array
+     * @param dataOffset offset of the slice in the source array
+     * @param size size of the slice
+     */
+    public void copy(int address, byte[] data, int dataOffset, int size) {
+        extend(address, size);
+
+        int available = dataOffset >= data.length ? 0 : min(size, data.length - dataOffset);
+
+        int chunkIndex = address >>> CHUNK_BITS;
+        int chunkOffset = address & CHUNK_MASK;
+        int copied = 0;
+        while (copied < size) {
+            byte[] chunk = chunks.get(chunkIndex);
+            int toCopy = min(size - copied, CHUNK_SIZE - chunkOffset);
+            int fromData = max(0, min(toCopy, available - copied));
+            if (fromData > 0) {
+                System.arraycopy(data, dataOffset + copied, chunk, chunkOffset, fromData);
+            }
+            if (fromData < toCopy) {
+                Arrays.fill(chunk, chunkOffset + fromData, chunkOffset + toCopy, (byte) 0);
+            }
+
+            ++chunkIndex;
+            chunkOffset = 0;
+            copied += toCopy;
+        }
+
+        if (programListener != null) {
+            // build the written data only when someone listens
+            byte[] written = new byte[size];
+            if (available > 0) System.arraycopy(data, dataOffset, written, 0, available);
+            programListener.onMemoryWrite(address, written, size);
+        }
+    }
+
     public void extendAndWrite(int address, int allocSize, byte[] data) {
         extend(address, allocSize);
         write(address, data, data.length, false);
@@ -117,12 +168,12 @@ public class Memory implements ProgramListenerAware {
 
         int toAllocate = newSize - internalSize();
         if (toAllocate > 0) {
-            addChunks((int) ceil((double) toAllocate / CHUNK_SIZE));
+            addChunks((toAllocate + CHUNK_SIZE - 1) >>> CHUNK_BITS);
         }
 
         toAllocate = newSize - softSize;
         if (toAllocate > 0) {
-            toAllocate = (int) ceil((double) toAllocate / WORD_SIZE) * WORD_SIZE;
+            toAllocate = (toAllocate + WORD_SIZE - 1) / WORD_SIZE * WORD_SIZE;
             softSize += toAllocate;
 
             if (programListener != null) programListener.onMemoryExtend(toAllocate);
@@ -130,18 +181,21 @@ public class Memory implements ProgramListenerAware {
     }
 
     public DataWord readWord(int address) {
-        return new DataWord(read(address, 32));
+        int chunkOffset = address & CHUNK_MASK;
+        if (chunkOffset + WORD_SIZE > CHUNK_SIZE) {
+            // the word spans two chunks
+            return new DataWord(read(address, WORD_SIZE));
+        }
+
+        extend(address, WORD_SIZE);
+        byte[] word = new byte[WORD_SIZE];
+        System.arraycopy(chunks.get(address >>> CHUNK_BITS), chunkOffset, word, 0, WORD_SIZE);
+        return new DataWord(word);
     }
 
     // just access expecting all data valid
     public byte readByte(int address) {
-
-        int chunkIndex = address / CHUNK_SIZE;
-        int chunkOffset = address % CHUNK_SIZE;
-
-        byte[] chunk = chunks.get(chunkIndex);
-
-        return chunk[chunkOffset];
+        return chunks.get(address >>> CHUNK_BITS)[address & CHUNK_MASK];
     }
 
     @Override
@@ -39,6 +39,7 @@ import org.ethereum.vm.program.listener.ProgramListenerAware;
 import org.ethereum.vm.program.listener.ProgramStorageChangeListener;
 import org.ethereum.vm.trace.ProgramTraceListener;
 import org.ethereum.vm.trace.ProgramTrace;
+import org.ethereum.vm.trace.ProgramTraceSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.spongycastle.util.encoders.Hex;
@@ -72,7 +73,7 @@ public class Program {
     private static final int MAX_DEPTH = 1024;
 
     //Max size for stack checks
-    private static final int MAX_STACKSIZE = 1024;
+    private static final int MAX_STACKSIZE = Stack.MAX_SIZE;
 
     private Transaction transaction;
 
@@ -90,16 +91,18 @@ public class Program {
 
     private ProgramResult result = new ProgramResult();
     private ProgramTrace trace = new ProgramTrace();
+    private ProgramTraceSink traceSink;
 
     private byte[] codeHash;
     private byte[] ops;
     private int pc;
+    private int prepaidSteps;
     private byte lastOp;
     private byte previouslyExecutedOp;
     private boolean stopped;
     private ByteArraySet touchedAccounts = new ByteArraySet();
 
-    private ProgramPrecompile programPrecompile;
+    private ProgramCode programCode;
 
     CommonConfig commonConfig = CommonConfig.getDefault();
 
@@ -135,20 +138,11 @@ public class Program {
         this.blockchainConfig = config.getBlockchainConfig().getConfigForBlock(programInvoke.getNumber().longValue());
     }
 
-    public ProgramPrecompile getProgramPrecompile() {
-        if (programPrecompile == null) {
-            if (codeHash != null && commonConfig.precompileSource() != null) {
-                programPrecompile = commonConfig.precompileSource().get(codeHash);
-            }
-            if (programPrecompile == null) {
-                programPrecompile = ProgramPrecompile.compile(ops);
-
-                if (codeHash != null && commonConfig.precompileSource() != null) {
-                    commonConfig.precompileSource().put(codeHash, programPrecompile);
-                }
-            }
+    public ProgramCode getProgramCode() {
+        if (programCode == null) {
+            programCode = ProgramCode.get(codeHash, ops);
         }
-        return programPrecompile;
+        return programCode;
     }
 
     public Program withCommonConfig(CommonConfig commonConfig) {
@@ -284,6 +278,16 @@ public class Program {
         return data;
     }
 
+    /**
+     * Pushes the argument of the current PUSHn instruction to the stack
+     * and moves to the next instruction
+     */
+    public void pushImmediate(int n) {
+        byte[] word = getProgramCode().getImmediate(pc);
+        stackPush(new DataWord(word.clone()));
+        setPC(pc + 1 + n);
+    }
+
     public DataWord stackPop() {
         return stack.pop();
     }
@@ -323,6 +327,14 @@ public class Program {
         memory.write(addr, value, value.length, false);
     }
 
+    /**
+     * Copies the slice of the source array to memory padding it with zeroes
+     * if the slice goes beyond the source array end
+     */
+    public void memoryCopy(int addr, byte[] src, int srcOffset, int size) {
+        memory.copy(addr, src, srcOffset, size);
+    }
+
     public void memoryExpand(DataWord outDataOffs, DataWord outDataSize) {
         if (!outDataSize.isZero()) {
             memory.extend(outDataOffs.intValue(), outDataSize.intValue());
@@ -588,6 +600,7 @@ public class Program {
 
             VM vm = new VM(config);
             Program program = new Program(getStorage().getCodeHash(codeAddress), programCode, programInvoke, internalTx, config).withCommonConfig(commonConfig);
+            if (traceSink != null) program.setTraceSink(traceSink);
             vm.play(program);
             result = program.getResult();
 
@@ -618,7 +631,8 @@ public class Program {
             int offset = msg.getOutDataOffs().intValue();
             int size = msg.getOutDataSize().intValue();
 
-            memorySaveLimited(offset, buffer, size);
+            // the out memory is allocated before the call, the returned data beyond it is dropped
+            memoryCopy(offset, buffer, 0, Math.min(size, buffer.length));
         }
 
         // 4. THE FLAG OF SUCCESS IS ONE PUSHED INTO THE STACK
@@ -651,6 +665,29 @@ public class Program {
         getResult().spendGas(gasValue);
     }
 
+    /**
+     * Charges the static gas of the whole instruction run (see {@link ProgramCode#getRunGas(int)})
+     * when entering it. If there is not enough gas for the whole run the instructions are charged
+     * one by one so an out of gas occurs exactly at the same instruction
+     *
+     * @return true if the gas of the current instruction is already paid
+     */
+    public boolean spendRunGas() {
+        if (prepaidSteps > 0) {
+            prepaidSteps--;
+            return true;
+        }
+        if (pc >= ops.length) return false;
+
+        ProgramCode code = getProgramCode();
+        int runLength = code.getRunLength(pc);
+        if (runLength == 0 || code.getRunGas(pc) > getGasLong()) return false;
+
+        spendGas(code.getRunGas(pc), "instruction run");
+        prepaidSteps = runLength - 1;
+        return true;
+    }
+
     public void spendAllGas() {
         spendGas(getGas().longValue(), "Spending all remaining");
     }
@@ -739,6 +776,13 @@ public class Program {
         return invoke.getDataCopy(offset, length);
     }
 
+    /**
+     * @return the call data, must not be modified
+     */
+    public byte[] getData() {
+        return invoke.getData();
+    }
+
     public DataWord storageLoad(DataWord key) {
         DataWord ret = getStorage().getStorageValue(getOwnerAddress().getLast20Bytes(), key.clone());
         return ret == null ? null : ret.clone();
@@ -886,10 +930,23 @@ public class Program {
 
     public void saveOpTrace() {
         if (this.pc < ops.length) {
-            trace.addOp(ops[pc], pc, getCallDeep(), getGas(), traceListener.resetActions());
+            if (traceSink != null) {
+                traceSink.onOp(getCallDeep(), pc, ops[pc], getGas());
+            } else {
+                trace.addOp(ops[pc], pc, getCallDeep(), getGas(), traceListener.resetActions());
+            }
         }
     }
 
+    /**
+     * Streams the trace of the program and its sub calls to the sink
+     * instead of collecting it in {@link #getTrace()}
+     */
+    public void setTraceSink(ProgramTraceSink traceSink) {
+        this.traceSink = traceSink;
+        traceListener.setSink(traceSink, getCallDeep());
+    }
+
     public ProgramTrace getTrace() {
         return trace;
     }
@@ -1078,7 +1135,7 @@ public class Program {
             throw Program.Exception.badJumpDestination(-1);
         }
         int ret = nextPC.intValue();
-        if (!getProgramPrecompile().hasJumpDest(ret)) {
+        if (!getProgramCode().hasJumpDest(ret)) {
             throw Program.Exception.badJumpDestination(ret);
         }
         return ret;
@@ -1194,6 +1251,14 @@ public class Program {
         }
     }
 
+    @SuppressWarnings("serial")
+    public static class ExecutionTimeoutException extends BytecodeExecutionException {
+
+        public ExecutionTimeoutException(String message) {
+            super(message);
+        }
+    }
+
     public static class Exception {
 
         public static OutOfGasException notEnoughOpGas(OpCode op, long opGas, long programGas) {
@@ -1228,6 +1293,10 @@ public class Program {
         public static StackTooSmallException tooSmallStack(int expectedSize, int actualSize) {
             return new StackTooSmallException("Expected stack size %d but actual %d;", expectedSize, actualSize);
         }
+
+        public static ExecutionTimeoutException executionTimeout(int steps) {
+            return new ExecutionTimeoutException(format("Execution time limit exceeded: steps[%d];", steps));
+        }
     }
 
     @SuppressWarnings("serial")
@@ -0,0 +1,203 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import org.ethereum.datasource.MemSizeEstimator;
+import org.ethereum.datasource.SegmentedCacheMap;
+import org.ethereum.db.ByteArrayWrapper;
+import org.ethereum.vm.OpCode;
+
+import java.util.BitSet;
+import java.util.Map;
+
+/**
+ * Contract code decoded once for execution: PUSH immediates are converted to
+ * ready 32-byte words, valid JUMPDEST positions are collected into a bit set and
+ * the static gas of straight-line instruction runs is precomputed (see {@link #getRunGas(int)})
+ *
+ * Decoded code is cached by the code hash and shared between all the {@link Program}
+ * instances running the same contract so hot contracts are decoded only once.
+ * The decoded code takes over ten times more memory than the code itself so the cache
+ * is bounded by the estimated size of the decoded code rather than the number of contracts
+ */
+public class ProgramCode {
+
+    private static final long CACHE_SIZE = 32 * 1024 * 1024;
+
+    private static final MemSizeEstimator<ProgramCode> sizeEstimator = new MemSizeEstimator<ProgramCode>() {
+        @Override
+        public long estimateSize(ProgramCode programCode) {
+            return programCode.estimateSize();
+        }
+    };
+
+    // the keys are code hashes, their size is negligible
+    private static final Map<ByteArrayWrapper, ProgramCode> cache =
+            new SegmentedCacheMap<>(CACHE_SIZE, null, sizeEstimator);
+
+    private final byte[] code;
+    // immediates[pc] is the 32-byte PUSH argument of the instruction at pc or null
+    private final byte[][] immediates;
+    private final BitSet jumpdests;
+    // gas and number of instructions of the static cost run starting at pc
+    private final int[] runGas;
+    private final int[] runLength;
+    private int immediatesCount;
+
+    private ProgramCode(byte[] code) {
+        this.code = code;
+        this.immediates = new byte[code.length][];
+        this.jumpdests = new BitSet(code.length);
+        this.runGas = new int[code.length];
+        this.runLength = new int[code.length];
+
+        BitSet instructions = new BitSet(code.length);
+        for (int i = 0; i < code.length; ++i) {
+            instructions.set(i);
+            OpCode op = OpCode.code(code[i]);
+            if (op == null) continue;
+
+            if (op == OpCode.JUMPDEST) jumpdests.set(i);
+
+            if (op.asInt() >= OpCode.PUSH1.asInt() && op.asInt() <= OpCode.PUSH32.asInt()) {
+                int nPush = op.asInt() - OpCode.PUSH1.asInt() + 1;
+                // an argument truncated by the code end is padded with zeros on the right
+                byte[] word = new byte[32];
+                int avail = Math.max(0, Math.min(nPush, code.length - i - 1));
+                System.arraycopy(code, i + 1, word, 32 - nPush, avail);
+                immediates[i] = word;
+                immediatesCount++;
+                i += nPush;
+            }
+        }
+
+        // walking backward each run is its first instruction plus the run of the next one
+        for (int i = instructions.previousSetBit(code.length - 1); i >= 0; i = instructions.previousSetBit(i - 1)) {
+            OpCode op = OpCode.code(code[i]);
+            if (op == null || !isStaticCost(op)) continue;
+
+            runGas[i] = op.getTier().asInt();
+            runLength[i] = 1;
+            int next = immediates[i] == null ? i + 1 : i + op.asInt() - OpCode.PUSH1.asInt() + 2;
+            if (!endsRun(op) && next < code.length) {
+                runGas[i] += runGas[next];
+                runLength[i] += runLength[next];
+            }
+        }
+    }
+
+    /**
+     * Opcodes which are charged just by their tier, i.e. ones which fall into
+     * the default branch of the VM gas calculation. Should be kept in sync with {@link org.ethereum.vm.VM}
+     */
+    private static boolean isStaticCost(OpCode op) {
+        switch (op) {
+            case STOP:
+            case SUICIDE:
+            case SSTORE:
+            case SLOAD:
+            case BALANCE:
+            case MSTORE:
+            case MSTORE8:
+            case MLOAD:
+            case RETURN:
+            case SHA3:
+            case CALLDATACOPY:
+            case CODECOPY:
+            case EXTCODESIZE:
+            case EXTCODECOPY:
+            case CALL:
+            case CALLCODE:
+            case DELEGATECALL:
+            case CREATE:
+            case LOG0:
+            case LOG1:
+            case LOG2:
+            case LOG3:
+            case LOG4:
+            case EXP:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    /**
+     * Jumps leave the run and GAS must observe the gas left exactly as if it was charged per op
+     */
+    private static boolean endsRun(OpCode op) {
+        return op == OpCode.JUMP || op == OpCode.JUMPI || op == OpCode.GAS;
+    }
+
+    /**
+     * Returns decoded code from the cache or decodes it
+     * @param codeHash the code hash or null if the code shouldn't be cached
+     */
+    public static ProgramCode get(byte[] codeHash, byte[] code) {
+        if (codeHash == null) return new ProgramCode(code);
+
+        ByteArrayWrapper key = new ByteArrayWrapper(codeHash);
+        ProgramCode ret = cache.get(key);
+        if (ret == null) {
+            ret = new ProgramCode(code);
+            cache.put(key, ret);
+        }
+        return ret;
+    }
+
+    private long estimateSize() {
+        // arrays headers are 16 bytes, references are 4 bytes
+        return 16 + code.length +
+                16 + code.length * 4L + immediatesCount * (16 + 32L) +
+                32 + code.length / 8 +
+                2 * (16 + code.length * 4L);
+    }
+
+    public byte[] getCode() {
+        return code;
+    }
+
+    /**
+     * @return the PUSH argument of the instruction at pc as a 32-byte word.
+     * The array is shared and must not be modified
+     */
+    public byte[] getImmediate(int pc) {
+        return immediates[pc];
+    }
+
+    /**
+     * Returns the total gas of the run of static cost instructions starting at pc.
+     * A run is a sequence of instructions executed one after another unconditionally,
+     * it ends with a jump, the GAS instruction, before a dynamic cost or invalid
+     * instruction or at the code end. Returns 0 if the instruction at pc is not of static cost
+     */
+    public int getRunGas(int pc) {
+        return runGas[pc];
+    }
+
+    /**
+     * @return the number of instructions in the run starting at pc
+     */
+    public int getRunLength(int pc) {
+        return runLength[pc];
+    }
+
+    public boolean hasJumpDest(int pc) {
+        return pc >= 0 && jumpdests.get(pc);
+    }
+}
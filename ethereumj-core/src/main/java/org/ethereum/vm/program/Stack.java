@@ -21,7 +21,24 @@ import org.ethereum.vm.DataWord;
 import org.ethereum.vm.program.listener.ProgramListener;
 import org.ethereum.vm.program.listener.ProgramListenerAware;
 
-public class Stack extends java.util.Stack<DataWord> implements ProgramListenerAware {
+import java.util.Arrays;
+import java.util.EmptyStackException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * EVM operand stack backed by a plain array of {@link #MAX_SIZE} slots.
+ * The program is executed by a single thread so unlike java.util.Stack
+ * the class is not synchronized.
+ *
+ * Element 0 is the bottom of the stack, element (size() - 1) is the top
+ */
+public class Stack implements ProgramListenerAware, Iterable<DataWord> {
+
+    public static final int MAX_SIZE = 1024;
+
+    private final DataWord[] items = new DataWord[MAX_SIZE];
+    private int size;
 
     private ProgramListener programListener;
 
@@ -30,27 +47,92 @@ public class Stack extends java.util.Stack<DataWord> implements ProgramListenerA
         this.programListener = listener;
     }
 
-    @Override
-    public synchronized DataWord pop() {
+    public DataWord pop() {
+        if (size == 0) throw new EmptyStackException();
         if (programListener != null) programListener.onStackPop();
-        return super.pop();
+        DataWord ret = items[--size];
+        items[size] = null;
+        return ret;
     }
 
-    @Override
     public DataWord push(DataWord item) {
+        if (size == MAX_SIZE) throw new IllegalStateException("Stack overflow: " + MAX_SIZE + " elements");
         if (programListener != null) programListener.onStackPush(item);
-        return super.push(item);
+        items[size++] = item;
+        return item;
+    }
+
+    public DataWord peek() {
+        if (size == 0) throw new EmptyStackException();
+        return items[size - 1];
+    }
+
+    public DataWord get(int index) {
+        checkIndex(index);
+        return items[index];
+    }
+
+    public DataWord set(int index, DataWord item) {
+        checkIndex(index);
+        DataWord old = items[index];
+        items[index] = item;
+        return old;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
     }
 
     public void swap(int from, int to) {
         if (isAccessible(from) && isAccessible(to) && (from != to)) {
             if (programListener != null) programListener.onStackSwap(from, to);
-            DataWord tmp = get(from);
-            set(from, set(to, tmp));
+            DataWord tmp = items[from];
+            items[from] = items[to];
+            items[to] = tmp;
         }
     }
 
+    public DataWord[] toArray() {
+        return Arrays.copyOf(items, size);
+    }
+
+    @Override
+    public Iterator<DataWord> iterator() {
+        return new Iterator<DataWord>() {
+            int idx = 0;
+
+            @Override
+            public boolean hasNext() {
+                return idx < size;
+            }
+
+            @Override
+            public DataWord next() {
+                if (idx >= size) throw new NoSuchElementException();
+                return items[idx++];
+            }
+
+            @Override
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(toArray());
+    }
+
+    private void checkIndex(int index) {
+        if (!isAccessible(index)) throw new ArrayIndexOutOfBoundsException(index + " >= " + size);
+    }
+
     private boolean isAccessible(int from) {
-        return from >= 0 && from < size();
+        return from >= 0 && from < size;
     }
 }
@@ -49,6 +49,11 @@ public interface ProgramInvoke {
 
     byte[] getDataCopy(DataWord offsetData, DataWord lengthData);
 
+    /**
+     * @return the call data, the array is shared and must not be modified
+     */
+    byte[] getData();
+
     DataWord getPrevHash();
 
     DataWord getCoinbase();
@@ -25,6 +25,8 @@ import java.math.BigInteger;
 import java.util.Arrays;
 import java.util.Map;
 
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
 /**
  * @author Roman Mandeleil
  * @since 03.06.2014
@@ -218,6 +220,11 @@ public class ProgramInvokeImpl implements ProgramInvoke {
         return data;
     }
 
+    @Override
+    public byte[] getData() {
+        return msgData == null ? EMPTY_BYTE_ARRAY : msgData;
+    }
+
 
     /*     PREVHASH op    */
     public DataWord getPrevHash() {
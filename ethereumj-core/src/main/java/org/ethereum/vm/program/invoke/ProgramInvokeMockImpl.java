@@ -28,6 +28,8 @@ import org.ethereum.vm.DataWord;
 
 import org.spongycastle.util.encoders.Hex;
 
+import static org.ethereum.util.ByteUtil.EMPTY_BYTE_ARRAY;
+
 /**
  * @author Roman Mandeleil
  * @since 03.06.2014
@@ -173,6 +175,11 @@ public class ProgramInvokeMockImpl implements ProgramInvoke {
         return data;
     }
 
+    @Override
+    public byte[] getData() {
+        return msgData == null ? EMPTY_BYTE_ARRAY : msgData;
+    }
+
     @Override
     public DataWord getPrevHash() {
         byte[] prevHash = Hex.decode("961CB117ABA86D1E596854015A1483323F18883C2D745B0BC03E87F146D2BB1C");
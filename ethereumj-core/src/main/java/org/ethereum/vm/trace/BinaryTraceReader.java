@@ -0,0 +1,218 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.trace;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.OpCode;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.TreeMap;
+import java.util.zip.InflaterInputStream;
+
+import static org.ethereum.util.ByteUtil.toHexString;
+import static org.ethereum.vm.trace.BinaryTraceWriter.*;
+
+/**
+ * Reads the trace written by {@link BinaryTraceWriter} op by op
+ * and converts it to the {@link ProgramTrace} JSON format
+ *
+ * Like in the {@link ProgramTrace} each op carries the actions of the
+ * previous op of the same program
+ */
+public class BinaryTraceReader implements Closeable {
+
+    private final DataInputStream in;
+    private final String contractAddress;
+
+    // the actions collected for the next op by call depth
+    private final TreeMap<Integer, OpActions> pending = new TreeMap<>();
+    private String result;
+    private String error;
+
+    public BinaryTraceReader(InputStream in) throws IOException {
+        byte[] magic = new byte[MAGIC.length];
+        new DataInputStream(in).readFully(magic);
+        if (!Arrays.equals(magic, MAGIC)) {
+            throw new IOException("Not a binary program trace");
+        }
+        int version = in.read();
+        if (version != VERSION) {
+            throw new IOException("Unsupported binary program trace version: " + version);
+        }
+        int flags = in.read();
+        if ((flags & FLAG_COMPRESSED) != 0) {
+            in = new InflaterInputStream(in);
+        }
+        this.in = new DataInputStream(new BufferedInputStream(in));
+        this.contractAddress = this.in.readBoolean() ? this.in.readUTF() : null;
+    }
+
+    public String getContractAddress() {
+        return contractAddress;
+    }
+
+    /**
+     * @return the program result in hex, available after the last op is read
+     */
+    public String getResult() {
+        return result;
+    }
+
+    /**
+     * @return the program error, empty if there is no, available after the last op is read
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return the next op or null if there are no more
+     * @throws EOFException if the trace was not finished (e.g. the node was stopped while tracing)
+     */
+    public Op next() throws IOException {
+        while (true) {
+            int type = in.readUnsignedByte();
+            if (type == END) {
+                result = toHexString(readBytes());
+                error = in.readUTF();
+                return null;
+            }
+
+            int deep = (int) readVarLong();
+            if (type == OP) {
+                Op op = new Op();
+                op.setDeep(deep);
+                op.setPc((int) readVarLong());
+                op.setCode(OpCode.code(in.readByte()));
+                op.setGas(new DataWord(readBytes()).value());
+                OpActions actions = pending.remove(deep);
+                op.setActions(actions == null ? new OpActions() : actions);
+                // the sub calls of the previous op are over
+                pending.tailMap(deep, false).clear();
+                return op;
+            }
+
+            OpActions actions = pending.get(deep);
+            if (actions == null) {
+                actions = new OpActions();
+                pending.put(deep, actions);
+            }
+            switch (type) {
+                case STACK_POP:
+                    actions.addStackPop();
+                    break;
+                case STACK_PUSH:
+                    actions.addStackPush(new DataWord(readBytes()));
+                    break;
+                case STACK_SWAP:
+                    actions.addStackSwap((int) readVarLong(), (int) readVarLong());
+                    break;
+                case MEMORY_EXTEND:
+                    actions.addMemoryExtend(readVarLong());
+                    break;
+                case MEMORY_WRITE:
+                    int address = (int) readVarLong();
+                    int size = (int) readVarLong();
+                    byte[] data = readBytes();
+                    actions.addMemoryWrite(address, data, Math.min(size, data.length * 2));
+                    break;
+                case STORAGE_PUT:
+                    actions.addStoragePut(new DataWord(readBytes()), new DataWord(readBytes()));
+                    break;
+                case STORAGE_REMOVE:
+                    actions.addStorageRemove(new DataWord(readBytes()));
+                    break;
+                case STORAGE_CLEAR:
+                    actions.addStorageClear();
+                    break;
+                default:
+                    throw new IOException("Unknown program trace record: " + type);
+            }
+        }
+    }
+
+    /**
+     * Reads the whole trace into memory, should be used for small traces only
+     */
+    public ProgramTrace readAll() throws IOException {
+        ProgramTrace ret = new ProgramTrace();
+        for (Op op = next(); op != null; op = next()) {
+            ret.getOps().add(op);
+        }
+        ret.setResult(result);
+        ret.setError(error);
+        ret.setContractAddress(contractAddress);
+        return ret;
+    }
+
+    /**
+     * Writes the rest of the trace in the {@link ProgramTrace#asJsonString(boolean)} format
+     * without loading it into memory
+     */
+    public void writeJson(Writer writer, boolean formatted) throws IOException {
+        ObjectMapper mapper = Serializers.createMapper(formatted);
+        mapper.setVisibilityChecker(Serializers.fieldsOnlyVisibilityChecker(mapper));
+
+        JsonGenerator gen = mapper.getFactory().createGenerator(writer);
+        if (formatted) gen.useDefaultPrettyPrinter();
+        gen.writeStartObject();
+        gen.writeArrayFieldStart("ops");
+        for (Op op = next(); op != null; op = next()) {
+            mapper.writeValue(gen, op);
+        }
+        gen.writeEndArray();
+        gen.writeStringField("result", result);
+        gen.writeStringField("error", error);
+        gen.writeStringField("contractAddress", contractAddress);
+        gen.writeEndObject();
+        gen.flush();
+    }
+
+    /**
+     * Converts the binary trace file to the JSON one
+     */
+    public static void toJson(File binaryFile, File jsonFile, boolean formatted) throws IOException {
+        try (BinaryTraceReader reader = new BinaryTraceReader(new FileInputStream(binaryFile));
+             Writer writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(jsonFile), "UTF-8"))) {
+            reader.writeJson(writer, formatted);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private byte[] readBytes() throws IOException {
+        byte[] ret = new byte[(int) readVarLong()];
+        in.readFully(ret);
+        return ret;
+    }
+
+    private long readVarLong() throws IOException {
+        long ret = 0;
+        for (int shift = 0; ; shift += 7) {
+            int b = in.readUnsignedByte();
+            ret |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) return ret;
+        }
+    }
+}
@@ -0,0 +1,225 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.trace;
+
+import org.ethereum.vm.DataWord;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+import static java.lang.Math.min;
+
+/**
+ * Writes the program trace as a stream of compact binary records, the memory used
+ * doesn't depend on the trace length
+ *
+ * The format is the header: 'EVMT' magic, version, flags and the contract address
+ * followed by the (optionally deflated) records. Each record is the type byte and
+ * the fields, numbers are written as unsigned varints and data as (varint length, bytes).
+ * See {@link BinaryTraceReader} for reading the trace back and converting it to JSON
+ *
+ * The I/O errors don't fail the program execution, the trace is abandoned instead
+ */
+public class BinaryTraceWriter implements ProgramTraceSink {
+
+    private static final Logger logger = LoggerFactory.getLogger("vmtrace");
+
+    static final byte[] MAGIC = {'E', 'V', 'M', 'T'};
+    static final int VERSION = 1;
+    static final int FLAG_COMPRESSED = 1;
+
+    // record types
+    static final int END = 0;
+    static final int OP = 1;
+    static final int STACK_POP = 2;
+    static final int STACK_PUSH = 3;
+    static final int STACK_SWAP = 4;
+    static final int MEMORY_EXTEND = 5;
+    static final int MEMORY_WRITE = 6;
+    static final int STORAGE_PUT = 7;
+    static final int STORAGE_REMOVE = 8;
+    static final int STORAGE_CLEAR = 9;
+
+    private static final int BUF_SIZE = 64 * 1024;
+
+    private final DataOutputStream out;
+    private boolean failed;
+
+    public BinaryTraceWriter(OutputStream out, String contractAddress, boolean compressed) throws IOException {
+        out.write(MAGIC);
+        out.write(VERSION);
+        out.write(compressed ? FLAG_COMPRESSED : 0);
+        if (compressed) {
+            out = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED), BUF_SIZE);
+        }
+        this.out = new DataOutputStream(new BufferedOutputStream(out, BUF_SIZE));
+        this.out.writeBoolean(contractAddress != null);
+        if (contractAddress != null) this.out.writeUTF(contractAddress);
+    }
+
+    @Override
+    public void onOp(int deep, int pc, byte code, DataWord gas) {
+        try {
+            if (!start(OP, deep)) return;
+            writeVarLong(pc);
+            out.writeByte(code);
+            writeBytes(gas.getNoLeadZeroesData());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onStackPop(int deep) {
+        try {
+            start(STACK_POP, deep);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onStackPush(int deep, DataWord value) {
+        try {
+            if (!start(STACK_PUSH, deep)) return;
+            writeBytes(value.getNoLeadZeroesData());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onStackSwap(int deep, int from, int to) {
+        try {
+            if (!start(STACK_SWAP, deep)) return;
+            writeVarLong(from);
+            writeVarLong(to);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onMemoryExtend(int deep, long delta) {
+        try {
+            if (!start(MEMORY_EXTEND, deep)) return;
+            writeVarLong(delta);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onMemoryWrite(int deep, int address, byte[] data, int size) {
+        try {
+            if (!start(MEMORY_WRITE, deep)) return;
+            writeVarLong(address);
+            writeVarLong(size);
+            // the trace keeps only 'size' hex digits of the data
+            int len = min(data.length, (size + 1) / 2);
+            writeVarLong(len);
+            out.write(data, 0, len);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onStoragePut(int deep, DataWord key, DataWord value) {
+        try {
+            if (!start(STORAGE_PUT, deep)) return;
+            writeBytes(key.getNoLeadZeroesData());
+            writeBytes(value.getNoLeadZeroesData());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onStorageRemove(int deep, DataWord key) {
+        try {
+            if (!start(STORAGE_REMOVE, deep)) return;
+            writeBytes(key.getNoLeadZeroesData());
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onStorageClear(int deep) {
+        try {
+            start(STORAGE_CLEAR, deep);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    @Override
+    public void onFinish(byte[] result, Exception error) {
+        try {
+            if (failed) return;
+            out.writeByte(END);
+            writeBytes(result == null ? new byte[0] : result);
+            out.writeUTF(ProgramTrace.formatError(error));
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * @return false if the trace is abandoned due to the previous error
+     */
+    public boolean isFailed() {
+        return failed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        out.close();
+    }
+
+    private boolean start(int type, int deep) throws IOException {
+        if (failed) return false;
+        out.writeByte(type);
+        writeVarLong(deep);
+        return true;
+    }
+
+    private void writeBytes(byte[] data) throws IOException {
+        writeVarLong(data.length);
+        out.write(data);
+    }
+
+    private void writeVarLong(long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) (value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    private void fail(IOException e) {
+        if (!failed) {
+            logger.error("Program trace write error, the trace is abandoned", e);
+            failed = true;
+        }
+    }
+}
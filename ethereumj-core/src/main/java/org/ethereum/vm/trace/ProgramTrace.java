@@ -85,10 +85,14 @@ public class ProgramTrace {
     }
 
     public ProgramTrace error(Exception error) {
-        setError(error == null ? "" : format("%s: %s", error.getClass(), error.getMessage()));
+        setError(formatError(error));
         return this;
     }
 
+    static String formatError(Exception error) {
+        return error == null ? "" : format("%s: %s", error.getClass(), error.getMessage());
+    }
+
     public Op addOp(byte code, int pc, int deep, DataWord gas, OpActions actions) {
         Op op = new Op();
         op.setActions(actions);
@@ -24,41 +24,84 @@ public class ProgramTraceListener extends ProgramListenerAdaptor {
 
     private final boolean enabled;
     private OpActions actions = new OpActions();
+    private ProgramTraceSink sink;
+    private int deep;
 
     public ProgramTraceListener(boolean enabled) {
         this.enabled = enabled;
     }
 
+    /**
+     * Passes the actions to the sink instead of collecting them
+     * @param deep the call depth of the program
+     */
+    public void setSink(ProgramTraceSink sink, int deep) {
+        this.sink = sink;
+        this.deep = deep;
+    }
+
     @Override
     public void onMemoryExtend(int delta) {
-        if (enabled) actions.addMemoryExtend(delta);
+        if (!enabled) return;
+        if (sink != null) {
+            sink.onMemoryExtend(deep, delta);
+        } else {
+            actions.addMemoryExtend(delta);
+        }
     }
 
     @Override
     public void onMemoryWrite(int address, byte[] data, int size) {
-        if (enabled) actions.addMemoryWrite(address, data, size);
+        if (!enabled) return;
+        if (sink != null) {
+            sink.onMemoryWrite(deep, address, data, size);
+        } else {
+            actions.addMemoryWrite(address, data, size);
+        }
     }
 
     @Override
     public void onStackPop() {
-        if (enabled) actions.addStackPop();
+        if (!enabled) return;
+        if (sink != null) {
+            sink.onStackPop(deep);
+        } else {
+            actions.addStackPop();
+        }
     }
 
     @Override
     public void onStackPush(DataWord value) {
-        if (enabled) actions.addStackPush(value);
+        if (!enabled) return;
+        if (sink != null) {
+            sink.onStackPush(deep, value);
+        } else {
+            actions.addStackPush(value);
+        }
     }
 
     @Override
     public void onStackSwap(int from, int to) {
-        if (enabled) actions.addStackSwap(from, to);
+        if (!enabled) return;
+        if (sink != null) {
+            sink.onStackSwap(deep, from, to);
+        } else {
+            actions.addStackSwap(from, to);
+        }
     }
 
     @Override
     public void onStoragePut(DataWord key, DataWord value) {
-        if (enabled) {
-            if (value.equals(DataWord.ZERO)) {
+        if (!enabled) return;
+        if (value.equals(DataWord.ZERO)) {
+            if (sink != null) {
+                sink.onStorageRemove(deep, key);
+            } else {
                 actions.addStorageRemove(key);
+            }
+        } else {
+            if (sink != null) {
+                sink.onStoragePut(deep, key, value);
             } else {
                 actions.addStoragePut(key, value);
             }
@@ -67,7 +110,12 @@ public class ProgramTraceListener extends ProgramListenerAdaptor {
 
     @Override
     public void onStorageClear() {
-        if (enabled) actions.addStorageClear();
+        if (!enabled) return;
+        if (sink != null) {
+            sink.onStorageClear(deep);
+        } else {
+            actions.addStorageClear();
+        }
     }
 
     public OpActions resetActions() {
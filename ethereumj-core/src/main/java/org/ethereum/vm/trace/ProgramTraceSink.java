@@ -0,0 +1,55 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.trace;
+
+import org.ethereum.vm.DataWord;
+
+import java.io.Closeable;
+
+/**
+ * Receives the program trace as it is executed, an alternative to
+ * collecting the whole {@link ProgramTrace} in memory
+ *
+ * The actions reported between two ops at the same call depth are the effects of the former op.
+ * The sink is shared by the program and its sub calls, the call depth tells them apart
+ */
+public interface ProgramTraceSink extends Closeable {
+
+    void onOp(int deep, int pc, byte code, DataWord gas);
+
+    void onStackPop(int deep);
+
+    void onStackPush(int deep, DataWord value);
+
+    void onStackSwap(int deep, int from, int to);
+
+    void onMemoryExtend(int deep, long delta);
+
+    void onMemoryWrite(int deep, int address, byte[] data, int size);
+
+    void onStoragePut(int deep, DataWord key, DataWord value);
+
+    void onStorageRemove(int deep, DataWord key);
+
+    void onStorageClear(int deep);
+
+    /**
+     * Called once after the top level program is executed
+     */
+    void onFinish(byte[] result, Exception error);
+}
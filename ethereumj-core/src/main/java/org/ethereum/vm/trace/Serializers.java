@@ -73,7 +73,7 @@ public final class Serializers {
         }
     }
 
-    private static VisibilityChecker<?> fieldsOnlyVisibilityChecker(ObjectMapper mapper) {
+    static VisibilityChecker<?> fieldsOnlyVisibilityChecker(ObjectMapper mapper) {
         return mapper.getSerializationConfig().getDefaultVisibilityChecker()
                 .withFieldVisibility(JsonAutoDetect.Visibility.ANY)
                 .withGetterVisibility(JsonAutoDetect.Visibility.NONE)
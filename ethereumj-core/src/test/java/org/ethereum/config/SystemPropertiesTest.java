@@ -17,6 +17,8 @@
  */
 package org.ethereum.config;
 
+import org.iq80.leveldb.CompressionType;
+import org.iq80.leveldb.Options;
 import org.junit.Assert;
 import org.junit.Test;
 
@@ -56,4 +58,22 @@ public class SystemPropertiesTest {
         BlockchainNetConfig blockchainConfig2= systemProperties2.getBlockchainConfig();
         Assert.assertNotEquals(blockchainConfig1.getClass(), blockchainConfig2.getClass());
     }
+
+    @Test
+    public void levelDbProfilesTest() {
+        SystemProperties props = new SystemProperties();
+        props.overrideParams("database.leveldb.default.cacheSize", "1M",
+                "database.leveldb.blockchain.cacheSize", "256M",
+                "database.leveldb.blockchain.compression", "true");
+
+        Options defaults = props.levelDbOptions("headers");
+        Assert.assertEquals(1024 * 1024, defaults.cacheSize());
+        Assert.assertEquals(CompressionType.NONE, defaults.compressionType());
+
+        Options blockchain = props.levelDbOptions("blockchain");
+        Assert.assertEquals(256 * 1024 * 1024, blockchain.cacheSize());
+        Assert.assertEquals(CompressionType.SNAPPY, blockchain.compressionType());
+        // not overridden by the profile
+        Assert.assertEquals(defaults.blockSize(), blockchain.blockSize());
+    }
 }
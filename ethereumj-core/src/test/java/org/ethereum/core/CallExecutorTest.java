@@ -0,0 +1,192 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.manager.WorldManager;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactoryImpl;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.longToBytesNoLeadZeroes;
+import static org.junit.Assert.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class CallExecutorTest {
+
+    // stores 'storage[0] + 1' to the storage[0]
+    private static final String COUNTER = "600054600101600055";
+    // returns the CALLER
+    private static final String CALLER = "3360005260206000f3";
+    // loops forever
+    private static final String LOOP = "5b600056";
+
+    private static final long GAS_PRICE = 1_000_000_000L;
+
+    private StandaloneBlockchain blockchain;
+    private byte[] counter;
+    private byte[] caller;
+    private byte[] loop;
+    private CallExecutor executor;
+    private long nonce = 0;
+
+    @Before
+    public void setup() {
+        blockchain = new StandaloneBlockchain().withAutoblock(false);
+        counter = deploy(COUNTER);
+        caller = deploy(CALLER);
+        loop = deploy(LOOP);
+        blockchain.createBlock();
+    }
+
+    @After
+    public void cleanup() {
+        if (executor != null) executor.close();
+    }
+
+    private byte[] deploy(String runtimeCode) {
+        int len = runtimeCode.length() / 2;
+        // copies the runtime code following the 11 bytes of init code and returns it
+        String init = String.format("60%02x80600b6000396000f3", len);
+        Transaction tx = blockchain.createTransaction(blockchain.getSender(), nonce++, null, BigInteger.ZERO,
+                Hex.decode(init + runtimeCode));
+        blockchain.submitTransaction(tx);
+        return tx.getContractAddress();
+    }
+
+    private CallExecutor createExecutor(String... config) {
+        SystemProperties props = new SystemProperties();
+        props.overrideParams(config);
+        props.setBlockchainConfig(StandaloneBlockchain.getEasyMiningConfig());
+
+        WorldManager worldManager = mock(WorldManager.class);
+        when(worldManager.getRepository()).thenReturn((org.ethereum.facade.Repository) blockchain.getBlockchain().getRepository());
+        when(worldManager.getBlockStore()).thenReturn(blockchain.getBlockchain().getBlockStore());
+
+        executor = new CallExecutor(props);
+        executor.worldManager = worldManager;
+        executor.programInvokeFactory = new ProgramInvokeFactoryImpl();
+        return executor;
+    }
+
+    private static Transaction call(byte[] sender, byte[] to, long gasLimit) {
+        Transaction tx = new Transaction(longToBytesNoLeadZeroes(0), longToBytesNoLeadZeroes(GAS_PRICE),
+                longToBytesNoLeadZeroes(gasLimit), to, longToBytesNoLeadZeroes(0), new byte[0]);
+        tx.setSender(sender);
+        return tx;
+    }
+
+    private Block best() {
+        return blockchain.getBlockchain().getBestBlock();
+    }
+
+    private static boolean isSuccessful(TransactionExecutor executor) {
+        return executor.getReceipt().isSuccessful() && executor.getResult().getException() == null;
+    }
+
+    @Test
+    public void testEstimateGas() {
+        createExecutor();
+        byte[] sender = blockchain.getSender().getAddress();
+        long gas = executor.estimateGas(call(sender, counter, 1_000_000), best());
+
+        assertTrue(isSuccessful(executor.call(call(sender, counter, gas), best())));
+        assertFalse(isSuccessful(executor.call(call(sender, counter, gas - 1), best())));
+        // the state is not changed by calls
+        assertEquals(gas, executor.estimateGas(call(sender, counter, 1_000_000), best()));
+        assertNull(blockchain.getBlockchain().getRepository().getStorageValue(counter, new DataWord(0)));
+
+        // plain transfer
+        assertEquals(21000, executor.estimateGas(call(sender, new byte[20], 1_000_000), best()));
+    }
+
+    @Test
+    public void testGasCap() {
+        createExecutor("transaction.call.gasCap", "100000");
+        byte[] sender = blockchain.getSender().getAddress();
+
+        TransactionExecutor ret = executor.call(call(sender, loop, 10_000_000), best());
+        assertFalse(isSuccessful(ret));
+        assertEquals(100000, ret.getGasUsed());
+
+        try {
+            executor.estimateGas(call(sender, loop, 10_000_000), best());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("100000"));
+        }
+    }
+
+    @Test
+    public void testTimeout() {
+        createExecutor("transaction.call.gasCap", "1000000000000", "transaction.call.timeoutMsec", "200");
+        byte[] sender = blockchain.getSender().getAddress();
+
+        long start = System.currentTimeMillis();
+        try {
+            executor.call(call(sender, loop, 1_000_000_000_000L), best());
+            fail();
+        } catch (RuntimeException e) {
+            assertTrue(e.getMessage().contains("time limit"));
+        }
+        assertTrue(System.currentTimeMillis() - start < 200 + 1000);
+
+        // the thread is still usable
+        assertTrue(isSuccessful(executor.call(call(sender, counter, 100_000), best())));
+    }
+
+    @Test
+    public void testSenderOverride() {
+        createExecutor();
+        // no signature and no account required
+        byte[] sender = new ECKey().getAddress();
+
+        TransactionExecutor ret = executor.call(call(sender, caller, 100_000), best());
+        assertTrue(isSuccessful(ret));
+        assertArrayEquals(new DataWord(sender).getData(), ret.getResult().getHReturn());
+    }
+
+    @Test
+    public void testGasCappedByBalance() {
+        ECKey poor = ECKey.fromPrivate(sha3("poor".getBytes()));
+        // can pay for 30000 gas only
+        blockchain.sendEther(poor.getAddress(), BigInteger.valueOf(30000 * GAS_PRICE));
+        blockchain.createBlock();
+        createExecutor();
+
+        // the gas cap can't be paid but the transfer can
+        assertEquals(21000, executor.estimateGas(call(poor.getAddress(), new byte[20], 50_000_000), best()));
+
+        // the storage write costs more than the sender has
+        try {
+            executor.estimateGas(call(poor.getAddress(), counter, 50_000_000), best());
+            fail();
+        } catch (IllegalArgumentException e) {
+            assertTrue(e.getMessage().contains("30000"));
+        }
+    }
+}
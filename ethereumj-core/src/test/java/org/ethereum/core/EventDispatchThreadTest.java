@@ -0,0 +1,202 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.core.EventDispatchThread.Lane;
+import org.ethereum.core.EventDispatchThread.OverflowPolicy;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class EventDispatchThreadTest {
+
+    private EventDispatchThread edt = new EventDispatchThread(4, OverflowPolicy.BLOCK);
+
+    @After
+    public void tearDown() {
+        edt.shutdown();
+    }
+
+    private static Runnable await(final CountDownLatch latch) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    latch.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }
+        };
+    }
+
+    private static Runnable add(final List<Integer> list, final int i) {
+        return new Runnable() {
+            @Override
+            public void run() {
+                list.add(i);
+            }
+        };
+    }
+
+    private static void awaitEmpty(Lane lane, long processed) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (lane.getProcessedCount() < processed && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+    }
+
+    @Test
+    public void testOrder() throws InterruptedException {
+        Lane lane = edt.newLane("test");
+        List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 100; i++) {
+            lane.invokeLater(add(events, i));
+        }
+        awaitEmpty(lane, 100);
+        assertEquals(100, events.size());
+        for (int i = 0; i < 100; i++) {
+            assertEquals(i, (int) events.get(i));
+        }
+        assertEquals(0, lane.getDroppedCount());
+    }
+
+    @Test
+    public void testDrop() throws InterruptedException {
+        Lane lane = edt.newLane("drop", 4, OverflowPolicy.DROP);
+        CountDownLatch latch = new CountDownLatch(1);
+        lane.invokeLater(await(latch));
+        Thread.sleep(100);
+
+        List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 10; i++) {
+            lane.invokeLater(add(events, i));
+        }
+        latch.countDown();
+        awaitEmpty(lane, 5);
+
+        assertEquals(6, lane.getDroppedCount());
+        assertEquals(4, events.size());
+        assertEquals(0, (int) events.get(0));
+    }
+
+    @Test
+    public void testCoalesce() throws InterruptedException {
+        Lane lane = edt.newLane("coalesce", 4, OverflowPolicy.COALESCE);
+        CountDownLatch latch = new CountDownLatch(1);
+        lane.invokeLater(await(latch));
+        Thread.sleep(100);
+
+        List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+        for (int i = 0; i < 100; i++) {
+            lane.invokeLater(add(events, i), "state");
+        }
+        latch.countDown();
+        awaitEmpty(lane, 2);
+
+        assertEquals(99, lane.getCoalescedCount());
+        assertEquals(Collections.singletonList(99), events);
+    }
+
+    @Test
+    public void testBlock() throws InterruptedException {
+        final Lane lane = edt.newLane("block", 2, OverflowPolicy.BLOCK);
+        CountDownLatch latch = new CountDownLatch(1);
+        lane.invokeLater(await(latch));
+        Thread.sleep(100);
+
+        final AtomicInteger dispatched = new AtomicInteger();
+        final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+        Thread producer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    lane.invokeLater(add(events, i));
+                    dispatched.incrementAndGet();
+                }
+            }
+        });
+        producer.start();
+        Thread.sleep(200);
+        // the producer waits for the lane to have room
+        assertEquals(2, dispatched.get());
+
+        latch.countDown();
+        producer.join(10_000);
+        awaitEmpty(lane, 11);
+        assertEquals(10, events.size());
+        assertEquals(0, lane.getDroppedCount());
+    }
+
+    @Test
+    public void testLaneThreadNeverWaits() throws InterruptedException {
+        final Lane lane = edt.newLane("full", 2, OverflowPolicy.BLOCK);
+        Lane producerLane = edt.newLane("producer");
+        CountDownLatch latch = new CountDownLatch(1);
+        lane.invokeLater(await(latch));
+        Thread.sleep(100);
+
+        final CountDownLatch produced = new CountDownLatch(1);
+        final List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+        producerLane.invokeLater(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < 10; i++) {
+                    lane.invokeLater(add(events, i));
+                }
+                produced.countDown();
+            }
+        });
+        // the lane is overfilled instead of blocking the other lane thread
+        assertTrue(produced.await(5, TimeUnit.SECONDS));
+
+        latch.countDown();
+        awaitEmpty(lane, 11);
+        assertEquals(10, events.size());
+        assertEquals(0, lane.getDroppedCount());
+    }
+
+    @Test
+    public void testDeferEvents() throws InterruptedException {
+        Lane lane = edt.newLane("deferred");
+        List<Integer> events = Collections.synchronizedList(new ArrayList<Integer>());
+
+        EventDispatchThread.deferEvents();
+        lane.invokeLater(add(events, 0));
+        EventDispatchThread.deferEvents();
+        lane.invokeLater(add(events, 1));
+        EventDispatchThread.fireDeferredEvents();
+        Thread.sleep(100);
+        // the nested call doesn't fire the events
+        assertTrue(events.isEmpty());
+
+        EventDispatchThread.fireDeferredEvents();
+        awaitEmpty(lane, 2);
+        assertEquals(2, events.size());
+        assertEquals(0, (int) events.get(0));
+        assertEquals(1, (int) events.get(1));
+    }
+}
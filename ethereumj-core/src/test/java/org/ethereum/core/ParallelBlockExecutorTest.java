@@ -0,0 +1,166 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.config.CommonConfig;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.db.BlockStore;
+import org.ethereum.listener.EthereumListener;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.program.invoke.ProgramInvokeFactory;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.ethereum.util.ByteUtil.longToBytesNoLeadZeroes;
+import static org.junit.Assert.*;
+
+/**
+ * Checks the blocks executed in parallel result in the same state and receipts
+ * as executed sequentially
+ */
+public class ParallelBlockExecutorTest {
+
+    // stores 'storage[0] + 1' to the storage[0] on every call
+    private static final byte[] COUNTER_CODE = Hex.decode("600980600b6000396000f3" + "600054600101600055");
+
+    private static final ECKey[] senders = new ECKey[8];
+    static {
+        for (int i = 0; i < senders.length; i++) {
+            senders[i] = ECKey.fromPrivate(sha3(("sender" + i).getBytes()));
+        }
+    }
+
+    private StandaloneBlockchain sequential;
+    private StandaloneBlockchain parallel;
+    private ParallelBlockExecutor executor;
+    private int parallelBlocks;
+    private Map<ECKey, Long> nonces = new HashMap<>();
+    private List<Transaction> txs = new ArrayList<>();
+
+    @Before
+    public void setup() {
+        sequential = createBlockchain();
+        parallel = createBlockchain();
+        executor = new ParallelBlockExecutor(4) {
+            @Override
+            public Execution start(Repository track, Block block, BlockStore blockStore,
+                                   ProgramInvokeFactory programInvokeFactory, CommonConfig commonConfig,
+                                   EthereumListener listener) {
+                Execution ret = super.start(track, block, blockStore, programInvokeFactory, commonConfig, listener);
+                if (ret != null) parallelBlocks++;
+                return ret;
+            }
+        };
+        parallel.getBlockchain().setParallelExecutor(executor);
+    }
+
+    @After
+    public void cleanup() {
+        executor.shutdown();
+    }
+
+    private static StandaloneBlockchain createBlockchain() {
+        StandaloneBlockchain ret = new StandaloneBlockchain();
+        for (ECKey sender : senders) {
+            ret.withAccountBalance(sender.getAddress(), new BigInteger("1000000000000000000000"));
+        }
+        return ret;
+    }
+
+    private Transaction submit(ECKey sender, byte[] to, long value, byte[] data) {
+        Long nonce = nonces.get(sender);
+        nonce = nonce == null ? 0 : nonce;
+        nonces.put(sender, nonce + 1);
+        Transaction tx = new Transaction(longToBytesNoLeadZeroes(nonce), longToBytesNoLeadZeroes(50_000_000_000L),
+                longToBytesNoLeadZeroes(100_000), to, longToBytesNoLeadZeroes(value), data);
+        tx.sign(sender);
+        sequential.submitTransaction(tx);
+        txs.add(tx);
+        return tx;
+    }
+
+    private void importAndCompare() {
+        Block block = sequential.createBlock();
+        ImportResult result = parallel.getBlockchain().tryToConnect(new Block(block.getEncoded()));
+        // the state and receipts roots are validated on import
+        assertEquals(ImportResult.IMPORTED_BEST, result);
+        assertArrayEquals(block.getStateRoot(), parallel.getBlockchain().getBestBlock().getStateRoot());
+
+        for (Transaction tx : txs) {
+            TransactionReceipt expected = sequential.getBlockchain().getTransactionInfo(tx.getHash()).getReceipt();
+            TransactionReceipt actual = parallel.getBlockchain().getTransactionInfo(tx.getHash()).getReceipt();
+            assertArrayEquals(expected.getEncoded(), actual.getEncoded());
+        }
+        txs.clear();
+    }
+
+    @Test
+    public void testNonConflicting() {
+        for (int i = 0; i < senders.length; i++) {
+            submit(senders[i], Arrays.copyOf(sha3(("receiver" + i).getBytes()), 20), 1000 + i, new byte[0]);
+        }
+        importAndCompare();
+
+        for (int i = 0; i < senders.length; i++) {
+            submit(senders[i], Arrays.copyOf(sha3(("receiver" + i).getBytes()), 20), 1, new byte[0]);
+        }
+        importAndCompare();
+
+        assertEquals(2, parallelBlocks);
+    }
+
+    @Test
+    public void testConflicting() {
+        Transaction create = submit(senders[0], null, 0, COUNTER_CODE);
+        submit(senders[1], senders[2].getAddress(), 1000, new byte[0]);
+        importAndCompare();
+        byte[] counter = create.getContractAddress();
+
+        // the same contract storage
+        for (int i = 0; i < senders.length; i++) {
+            submit(senders[i], counter, 0, new byte[0]);
+        }
+        importAndCompare();
+
+        // the same sender
+        for (int i = 0; i < 4; i++) {
+            submit(senders[0], counter, 0, new byte[0]);
+        }
+        // transfer to the next sender of the block
+        submit(senders[1], senders[2].getAddress(), 1000, new byte[0]);
+        submit(senders[2], senders[3].getAddress(), 1000, new byte[0]);
+        // transfer to the coinbase
+        submit(senders[4], Hex.decode("ffffffffffffffffffffffffffffffffffffffff"), 1000, new byte[0]);
+        submit(senders[5], senders[6].getAddress(), 1, new byte[0]);
+        importAndCompare();
+
+        assertEquals(3, parallelBlocks);
+        assertEquals(new DataWord(8 + 4), parallel.getBlockchain().getRepository().getStorageValue(counter, new DataWord(0)));
+    }
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.core;
+
+import org.ethereum.crypto.ECKey;
+import org.junit.Test;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.ethereum.util.ByteUtil.longToBytesNoLeadZeroes;
+import static org.junit.Assert.*;
+
+public class PendingTransactionPoolTest {
+
+    private static final ECKey alice = new ECKey();
+    private static final ECKey bob = new ECKey();
+
+    private static final BigInteger BALANCE = BigInteger.valueOf(Long.MAX_VALUE);
+
+    private static PendingTransaction tx(ECKey sender, long nonce, long gasPrice) {
+        Transaction tx = new Transaction(longToBytesNoLeadZeroes(nonce), longToBytesNoLeadZeroes(gasPrice),
+                longToBytesNoLeadZeroes(21000), new byte[20], longToBytesNoLeadZeroes(1), new byte[0]);
+        tx.sign(sender);
+        return new PendingTransaction(tx, 0);
+    }
+
+    @Test
+    public void testQueued() {
+        PendingTransactionPool pool = new PendingTransactionPool(100, 16);
+        PendingTransaction a5 = tx(alice, 5, 1);
+        PendingTransaction a6 = tx(alice, 6, 1);
+        PendingTransaction a7 = tx(alice, 7, 1);
+
+        PendingTransactionPool.AddResult res = pool.add(a6, 5, BALANCE);
+        assertNull(res.getError());
+        assertTrue(res.getExecutable().isEmpty());
+        assertTrue(pool.add(a7, 5, BALANCE).getExecutable().isEmpty());
+        assertEquals(Arrays.asList(a6, a7), pool.getQueued());
+        assertTrue(pool.getExecutable().isEmpty());
+
+        // filling the gap unlocks the queued ones
+        res = pool.add(a5, 5, BALANCE);
+        assertEquals(Arrays.asList(a5, a6, a7), res.getExecutable());
+        assertEquals(Arrays.asList(a5, a6, a7), pool.getExecutable());
+        assertTrue(pool.getQueued().isEmpty());
+
+        assertNotNull(pool.add(tx(alice, 4, 1), 5, BALANCE).getError());
+        assertNotNull(pool.add(tx(alice, 30, 1), 5, BALANCE).getError());
+
+        // removing the executable one queues the following
+        assertSame(a6, pool.remove(a6.getTransaction()));
+        assertEquals(Arrays.asList(a5), pool.getExecutable());
+        assertEquals(Arrays.asList(a7), pool.getQueued());
+    }
+
+    @Test
+    public void testReplace() {
+        PendingTransactionPool pool = new PendingTransactionPool(100, 16);
+        PendingTransaction a0 = tx(alice, 0, 10);
+        pool.add(a0, 0, BALANCE);
+
+        assertNotNull(pool.add(tx(alice, 0, 10), 0, BALANCE).getError());
+
+        PendingTransaction a0_ = tx(alice, 0, 11);
+        PendingTransactionPool.AddResult res = pool.add(a0_, 0, BALANCE);
+        assertNull(res.getError());
+        assertSame(a0, res.getReplaced());
+        assertTrue(res.isRebuildRequired());
+        assertEquals(Arrays.asList(a0_), pool.getExecutable());
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testEviction() {
+        PendingTransactionPool pool = new PendingTransactionPool(3, 16);
+        PendingTransaction a0 = tx(alice, 0, 10);
+        PendingTransaction a1 = tx(alice, 1, 5);
+        PendingTransaction b0 = tx(bob, 0, 20);
+        pool.add(a0, 0, BALANCE);
+        pool.add(a1, 0, BALANCE);
+        pool.add(b0, 0, BALANCE);
+
+        assertNotNull(pool.add(tx(bob, 1, 5), 0, BALANCE).getError());
+
+        PendingTransaction b1 = tx(bob, 1, 6);
+        PendingTransactionPool.AddResult res = pool.add(b1, 0, BALANCE);
+        assertNull(res.getError());
+        assertSame(a1, res.getEvicted());
+        assertTrue(res.isRebuildRequired());
+        assertEquals(3, pool.size());
+
+        // the highest priced sender first
+        assertEquals(Arrays.asList(b0, a0, b1), pool.getExecutable());
+    }
+
+    @Test
+    public void testRevalidate() {
+        PendingTransactionPool pool = new PendingTransactionPool(100, 16);
+        PendingTransaction a0 = tx(alice, 0, 1);
+        PendingTransaction a1 = tx(alice, 1, 1);
+        PendingTransaction a3 = tx(alice, 3, 1);
+        pool.add(a0, 0, BALANCE);
+        pool.add(a1, 0, BALANCE);
+        pool.add(a3, 0, BALANCE);
+        PendingTransaction b0 = tx(bob, 0, 2);
+        pool.add(b0, 0, BALANCE);
+
+        // the nonces up to 2 were included into the block
+        List<PendingTransaction> removed = pool.revalidate(alice.getAddress(), 3, BigInteger.valueOf(1000000));
+        assertEquals(Arrays.asList(a0, a1), removed);
+        assertEquals(Arrays.asList(b0, a3), pool.getExecutable());
+
+        // bob can't pay anymore
+        removed = pool.revalidate(bob.getAddress(), 0, BigInteger.ONE);
+        assertEquals(Arrays.asList(b0), removed);
+        assertFalse(pool.hasSender(bob.getAddress()));
+        assertEquals(1, pool.size());
+    }
+
+    @Test
+    public void testCumulativeCost() {
+        PendingTransactionPool pool = new PendingTransactionPool(100, 16);
+        PendingTransaction a0 = tx(alice, 0, 1);
+        PendingTransaction a1 = tx(alice, 1, 1);
+        BigInteger cost = PendingTransactionPool.getCost(a0.getTransaction());
+
+        assertNull(pool.add(a0, 0, cost.multiply(BigInteger.valueOf(2))).getError());
+        assertNull(pool.add(a1, 0, cost.multiply(BigInteger.valueOf(2))).getError());
+        assertNotNull(pool.add(tx(alice, 2, 1), 0, cost.multiply(BigInteger.valueOf(2))).getError());
+
+        // the balance pays for the first one only
+        assertEquals(Arrays.asList(a1), pool.revalidate(alice.getAddress(), 0, cost));
+        assertEquals(Arrays.asList(a0), pool.getExecutable());
+    }
+
+    @Test
+    public void testReorg() {
+        PendingTransactionPool pool = new PendingTransactionPool(100, 16);
+        PendingTransaction a5 = tx(alice, 5, 1);
+        PendingTransaction a6 = tx(alice, 6, 1);
+        PendingTransaction a7 = tx(alice, 7, 1);
+
+        // a5 and a6 are included into the best block
+        pool.add(a7, 7, BALANCE);
+        assertEquals(Arrays.asList(a7), pool.getExecutable());
+
+        // while the sender is not revalidated its pending transactions define the nonce
+        assertNotNull(pool.add(a5, 5, BALANCE).getError());
+
+        // the new best block is from the fork without a5 and a6 which are returned back
+        assertTrue(pool.revalidate(alice.getAddress(), 5, BALANCE).isEmpty());
+        assertEquals(Arrays.asList(a7), pool.getQueued());
+
+        assertNull(pool.add(a5, 5, BALANCE).getError());
+        PendingTransactionPool.AddResult res = pool.add(a6, 5, BALANCE);
+        assertNull(res.getError());
+        assertEquals(Arrays.asList(a6, a7), res.getExecutable());
+        assertEquals(Arrays.asList(a5, a6, a7), pool.getExecutable());
+        assertTrue(pool.getQueued().isEmpty());
+    }
+
+    @Test
+    public void testOutdated() {
+        PendingTransactionPool pool = new PendingTransactionPool(100, 16);
+        PendingTransaction a0 = new PendingTransaction(tx(alice, 0, 1).getTransaction(), 10);
+        PendingTransaction a1 = new PendingTransaction(tx(alice, 1, 1).getTransaction(), 20);
+        pool.add(a0, 0, BALANCE);
+        pool.add(a1, 0, BALANCE);
+
+        assertEquals(Arrays.asList(a0), pool.removeOutdated(15));
+        assertEquals(Arrays.asList(a1), pool.getQueued());
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.crypto;
+
+import org.ethereum.crypto.ECKey.ECDSASignature;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.spongycastle.crypto.digests.SHA256Digest;
+import org.spongycastle.crypto.params.ECPrivateKeyParameters;
+import org.spongycastle.crypto.params.ECPublicKeyParameters;
+import org.spongycastle.crypto.signers.ECDSASigner;
+import org.spongycastle.crypto.signers.HMacDSAKCalculator;
+import org.spongycastle.math.ec.ECAlgorithms;
+import org.spongycastle.math.ec.ECPoint;
+
+import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.ethereum.util.ByteUtil.bigIntegerToBytes;
+import static org.ethereum.util.ByteUtil.merge;
+import static org.junit.Assert.*;
+
+public class Secp256k1Test {
+
+    private static class Sample {
+        BigInteger priv;
+        byte[] pub;
+        byte[] hash;
+        ECDSASignature sig;
+    }
+
+    /**
+     * Signs with the generic implementation
+     */
+    private static Sample[] samples(int count) {
+        Random rnd = new Random(1);
+        Sample[] ret = new Sample[count];
+        for (int i = 0; i < count; i++) {
+            Sample s = new Sample();
+            s.priv = new BigInteger(255, rnd).add(BigInteger.ONE);
+            s.pub = ECKey.CURVE.getG().multiply(s.priv).getEncoded(false);
+            s.hash = new byte[32];
+            rnd.nextBytes(s.hash);
+
+            ECDSASigner signer = new ECDSASigner(new HMacDSAKCalculator(new SHA256Digest()));
+            signer.init(true, new ECPrivateKeyParameters(s.priv, ECKey.CURVE));
+            BigInteger[] rs = signer.generateSignature(s.hash);
+            s.sig = new ECDSASignature(rs[0], rs[1]);
+            ret[i] = s;
+        }
+        return ret;
+    }
+
+    @Test
+    public void testSelfTest() {
+        assertTrue(Secp256k1.selfTest(ECKey.CURVE));
+    }
+
+    @Test
+    public void testSameAsGeneric() {
+        for (Sample s : samples(50)) {
+            assertArrayEquals(s.pub, Secp256k1.publicKey(s.priv));
+
+            BigInteger[] rs = Secp256k1.sign(s.priv, s.hash);
+            assertEquals(s.sig.r, rs[0]);
+            assertEquals(s.sig.s, rs[1]);
+
+            assertTrue(Secp256k1.verify(s.hash, s.sig.r, s.sig.s, s.pub));
+            assertFalse(Secp256k1.verify(s.hash, s.sig.r, s.sig.s.add(BigInteger.ONE), s.pub));
+
+            boolean recovered = false;
+            for (int recId = 0; recId < 4; recId++) {
+                byte[] key = Secp256k1.recoverPubBytes(recId, s.sig.r, s.sig.s, s.hash);
+                recovered |= key != null && Arrays.equals(key, s.pub);
+            }
+            assertTrue(recovered);
+        }
+    }
+
+    @Test
+    public void testECKeyRoundTrip() throws Exception {
+        for (Sample s : samples(10)) {
+            ECKey key = ECKey.fromPrivate(s.priv);
+            ECDSASignature sig = key.sign(s.hash);
+            assertArrayEquals(key.getAddress(), ECKey.signatureToAddress(s.hash, sig));
+            assertTrue(ECKey.verify(s.hash, sig, key.getPubKey()));
+        }
+    }
+
+    @Ignore
+    @Test
+    public void benchmark() {
+        Sample[] samples = samples(1000);
+        for (int pass = 0; pass < 5; pass++) {
+            long s = System.nanoTime();
+            for (Sample sample : samples) {
+                Secp256k1.recoverPubBytes(0, sample.sig.r, sample.sig.s, sample.hash);
+            }
+            long e = System.nanoTime();
+            for (Sample sample : samples) {
+                genericRecover(sample);
+            }
+            long g = System.nanoTime();
+            for (Sample sample : samples) {
+                Secp256k1.verify(sample.hash, sample.sig.r, sample.sig.s, sample.pub);
+            }
+            long v = System.nanoTime();
+            for (Sample sample : samples) {
+                genericVerify(sample);
+            }
+            long gv = System.nanoTime();
+
+            System.out.printf("Recovery: optimized %d us, generic %d us; verification: optimized %d us, generic %d us%n",
+                    (e - s) / 1000 / samples.length, (g - e) / 1000 / samples.length,
+                    (v - g) / 1000 / samples.length, (gv - v) / 1000 / samples.length);
+        }
+    }
+
+    /**
+     * Recovery on the generic curve the way {@link ECKey} does it without the optimized implementation
+     */
+    private static byte[] genericRecover(Sample s) {
+        BigInteger n = ECKey.CURVE.getN();
+        ECPoint R = ECKey.CURVE.getCurve().decodePoint(merge(new byte[] {0x02}, bigIntegerToBytes(s.sig.r, 32)));
+        if (!R.multiply(n).isInfinity()) return null;
+        BigInteger rInv = s.sig.r.modInverse(n);
+        BigInteger eInv = BigInteger.ZERO.subtract(new BigInteger(1, s.hash)).mod(n);
+        return ECAlgorithms.sumOfTwoMultiplies(ECKey.CURVE.getG(), rInv.multiply(eInv).mod(n),
+                R, rInv.multiply(s.sig.s).mod(n)).getEncoded(false);
+    }
+
+    private static boolean genericVerify(Sample s) {
+        ECDSASigner signer = new ECDSASigner();
+        signer.init(false, new ECPublicKeyParameters(ECKey.CURVE.getCurve().decodePoint(s.pub), ECKey.CURVE));
+        return signer.verifySignature(s.hash, s.sig.r, s.sig.s);
+    }
+}
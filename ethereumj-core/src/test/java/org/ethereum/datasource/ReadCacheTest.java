@@ -88,4 +88,60 @@ public class ReadCacheTest {
         assertEquals(str(intToValue(9_901)), str(readCache.getCached(intToKey(9_901)).value()));
         assertNull(readCache.getCached(intToKey(9_900)));
     }
+
+    @Test
+    public void testMaxSize() {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        ReadCache.BytesKey<byte[]> readCache = new ReadCache.BytesKey<>(src);
+        readCache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+        readCache.withMaxSize(1024 * 1024);
+        for (int i = 0; i < 100_000; ++i) {
+            src.put(intToKey(i), intToValue(i));
+            assertEquals(str(intToValue(i)), str(readCache.get(intToKey(i))));
+        }
+
+        assertTrue(readCache.estimateCacheSize() > 0);
+        assertTrue(readCache.estimateCacheSize() <= 1024 * 1024);
+        assertEquals(100_000, readCache.getMissCount());
+        assertEquals(0, readCache.getHitCount());
+        assertTrue(readCache.getEvictionCount() > 0);
+
+        // the null is cached once admitted, that is counted as hit
+        readCache.get(intToKey(-1));
+        readCache.get(intToKey(-1));
+        readCache.get(intToKey(-1));
+        assertNull(readCache.getCached(intToKey(-1)).value());
+        assertTrue(readCache.getHitCount() > 0);
+        assertEquals(100_003, readCache.getHitCount() + readCache.getMissCount());
+    }
+
+    @Test
+    public void testScanResistance() {
+        Source<byte[], byte[]> src = new HashMapDB<>();
+        ReadCache.BytesKey<byte[]> readCache = new ReadCache.BytesKey<>(src);
+        readCache.withSizeEstimators(MemSizeEstimator.ByteArrayEstimator, MemSizeEstimator.ByteArrayEstimator);
+        // ~2000 entries
+        readCache.withMaxSize(256 * 1024);
+        for (int i = 0; i < 100_000; ++i) {
+            src.put(intToKey(i), intToValue(i));
+        }
+
+        // 500 hot entries are read once per 5000 reads of the one pass scan
+        int hot = 0;
+        for (int i = 1_000; i < 100_000; ++i) {
+            readCache.get(intToKey(i));
+            if (i % 10 == 0) readCache.get(intToKey(hot++ % 500));
+        }
+
+        int cached = 0;
+        for (int i = 0; i < 500; ++i) {
+            if (readCache.getCached(intToKey(i)) != null) cached++;
+        }
+        assertTrue("Hot entries cached: " + cached, cached > 450);
+
+        // cached entries are updated
+        readCache.put(intToKey(0), intToValue(1));
+        assertEquals(str(intToValue(1)), str(readCache.getCached(intToKey(0)).value()));
+        assertEquals(str(intToValue(1)), str(src.get(intToKey(0))));
+    }
 }
@@ -0,0 +1,84 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Bloom;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.jsonrpc.LogFilter;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.assertEquals;
+
+public class BloomIndexTest {
+
+    private static byte[] bloom(byte[]... items) {
+        Bloom ret = new Bloom();
+        for (byte[] item : items) {
+            ret.or(Bloom.create(sha3(item)));
+        }
+        return ret.getData();
+    }
+
+    @Test
+    public void simpleTest() {
+        byte[] addr1 = "addr1".getBytes();
+        byte[] addr2 = "addr2".getBytes();
+        byte[] topic = "topic".getBytes();
+
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        BloomIndex index = new BloomIndex(db);
+        assertEquals(Long.MAX_VALUE, index.getFirstIndexedBlock());
+
+        for (long i = 100; i < 3 * BloomIndex.SECTION_SIZE; i++) {
+            if (i == 200) {
+                index.addBlock(i, bloom(addr1, topic));
+            } else if (i == BloomIndex.SECTION_SIZE + 5) {
+                index.addBlock(i, bloom(addr2));
+            } else if (i == 2 * BloomIndex.SECTION_SIZE + 7) {
+                index.addBlock(i, bloom(addr1));
+            } else {
+                index.addBlock(i, new byte[256]);
+            }
+        }
+        assertEquals(100, index.getFirstIndexedBlock());
+
+        LogFilter addr1Filter = new LogFilter().withContractAddress(addr1);
+        assertEquals(Arrays.asList(200L, 2L * BloomIndex.SECTION_SIZE + 7),
+                index.getMatchingBlocks(addr1Filter.getFilterBlooms(), 0, 3 * BloomIndex.SECTION_SIZE));
+        assertEquals(Collections.singletonList(200L),
+                index.getMatchingBlocks(addr1Filter.getFilterBlooms(), 0, 2L * BloomIndex.SECTION_SIZE));
+
+        LogFilter addrTopicFilter = new LogFilter().withContractAddress(addr1).withTopic(topic);
+        assertEquals(Collections.singletonList(200L),
+                index.getMatchingBlocks(addrTopicFilter.getFilterBlooms(), 0, 3 * BloomIndex.SECTION_SIZE));
+
+        LogFilter orFilter = new LogFilter().withContractAddress(addr1, addr2);
+        assertEquals(Arrays.asList(BloomIndex.SECTION_SIZE + 5L, 2L * BloomIndex.SECTION_SIZE + 7),
+                index.getMatchingBlocks(orFilter.getFilterBlooms(), 201, 3 * BloomIndex.SECTION_SIZE));
+
+        LogFilter anyFilter = new LogFilter();
+        assertEquals(11, index.getMatchingBlocks(anyFilter.getFilterBlooms(), 90, 110).size());
+
+        BloomIndex reopened = new BloomIndex(db);
+        assertEquals(100, reopened.getFirstIndexedBlock());
+    }
+}
@@ -0,0 +1,174 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.core.Block;
+import org.ethereum.core.Repository;
+import org.ethereum.core.Transaction;
+import org.ethereum.core.TransactionInfo;
+import org.ethereum.crypto.ECKey;
+import org.ethereum.datasource.CountingBytesSource;
+import org.ethereum.datasource.DbSource;
+import org.ethereum.datasource.Source;
+import org.ethereum.datasource.XorDataSource;
+import org.ethereum.datasource.leveldb.LevelDbDataSource;
+import org.ethereum.jsonrpc.LogFilter;
+import org.ethereum.util.FileUtil;
+import org.ethereum.util.RLP;
+import org.ethereum.util.blockchain.StandaloneBlockchain;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.math.BigInteger;
+import java.nio.file.Files;
+import java.util.Collections;
+import java.util.Map;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class DbStoresMigrationTest {
+
+    // emits LOG0 with the empty data in the constructor
+    private static final byte[] LOG_INIT_CODE = Hex.decode("60006000a000");
+
+    private File dbDir;
+
+    @Before
+    public void setup() throws IOException {
+        dbDir = Files.createTempDirectory("dbMigration").toFile();
+        SystemProperties.getDefault().setDataBaseDir(dbDir.getAbsolutePath());
+    }
+
+    @After
+    public void cleanup() {
+        SystemProperties.resetToDefault();
+        FileUtil.recursiveDelete(dbDir.getAbsolutePath());
+    }
+
+    @Test
+    public void testMigrateLegacyDb() throws IOException {
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        ECKey alice = new ECKey();
+
+        bc.sendEther(alice.getAddress(), BigInteger.valueOf(100));
+        Block b1 = bc.createBlock();
+        Transaction contractTx = bc.createTransaction(1, new byte[0], 0, LOG_INIT_CODE);
+        bc.submitTransaction(contractTx);
+        Block b2 = bc.createBlock();
+        bc.createBlock();
+        Block best = bc.getBlockchain().getBestBlock();
+
+        writeLegacyDb(bc, best.getNumber());
+
+        assertTrue(new DbStoresMigration(SystemProperties.getDefault()).migrate());
+        assertTrue(new File(dbDir, DbStoresMigration.LEGACY_DB_NAME).exists());
+        // can't be migrated twice
+        assertFalse(new DbStoresMigration(SystemProperties.getDefault()).migrate());
+
+        DbSource<byte[]> indexDb = openDB("index");
+        DbSource<byte[]> blockDb = openDB("block");
+        DbSource<byte[]> txDb = openDB("transactions");
+        DbSource<byte[]> stateDb = openDB("state");
+        DbSource<byte[]> bloomDb = openDB("bloomIndex");
+        try {
+            IndexedBlockStore blockStore = new IndexedBlockStore();
+            blockStore.init(indexDb, blockDb);
+            assertArrayEquals(best.getHash(), blockStore.getBestBlock().getHash());
+            assertArrayEquals(b1.getHash(), blockStore.getChainBlockByNumber(1).getHash());
+            assertEquals(bc.getBlockchain().getTotalDifficulty(), blockStore.getTotalDifficultyForHash(best.getHash()));
+
+            TransactionStore txStore = new TransactionStore(txDb);
+            Transaction sendTx = b1.getTransactionsList().get(0);
+            TransactionInfo info = txStore.get(sendTx.getHash(), b1.getHash());
+            assertNotNull(info);
+            assertTrue(info.getReceipt().isValid());
+            assertEquals(1, txStore.get(contractTx.getHash()).size());
+
+            Repository repo = new RepositoryRoot(new CountingBytesSource(stateDb), best.getStateRoot());
+            assertEquals(BigInteger.valueOf(100), repo.getBalance(alice.getAddress()));
+            assertTrue(repo.isExist(contractTx.getContractAddress()));
+
+            BloomIndex bloomIndex = new BloomIndex(bloomDb);
+            assertEquals(0, bloomIndex.getFirstIndexedBlock());
+            LogFilter filter = new LogFilter().withContractAddress(contractTx.getContractAddress());
+            assertEquals(Collections.singletonList(b2.getNumber()),
+                    bloomIndex.getMatchingBlocks(filter.getFilterBlooms(), 0, best.getNumber()));
+        } finally {
+            indexDb.close();
+            blockDb.close();
+            txDb.close();
+            stateDb.close();
+            bloomDb.close();
+        }
+    }
+
+    /**
+     * Writes the blockchain in the version 5 layout: all the stores in the single
+     * 'blockchain' DB with the keys XOR-ed by the store name hash
+     */
+    private void writeLegacyDb(StandaloneBlockchain bc, long bestNumber) throws IOException {
+        DbSource<byte[]> legacyDb = openDB("blockchain");
+
+        IndexedBlockStore legacyBlocks = new IndexedBlockStore();
+        legacyBlocks.init(legacyStore(legacyDb, "index"), legacyStore(legacyDb, "block"));
+        Source<byte[], byte[]> legacyTxs = legacyStore(legacyDb, "transactions");
+        BloomIndex legacyBloom = new BloomIndex(legacyStore(legacyDb, "bloomIndex"));
+
+        BlockStore blockStore = bc.getBlockchain().getBlockStore();
+        for (long i = 0; i <= bestNumber; i++) {
+            Block block = blockStore.getChainBlockByNumber(i);
+            legacyBlocks.saveBlock(block, blockStore.getTotalDifficultyForHash(block.getHash()), true);
+            for (Transaction tx : block.getTransactionsList()) {
+                TransactionInfo info = bc.getBlockchain().getTransactionStore().get(tx.getHash(), block.getHash());
+                legacyTxs.put(tx.getHash(), RLP.encodeList(info.getEncoded()));
+            }
+            legacyBloom.addBlock(i, block.getLogBloom());
+        }
+        legacyBlocks.flush();
+        legacyBloom.flush();
+
+        // the state nodes with the reference counters
+        Source<byte[], byte[]> legacyState = legacyStore(legacyDb, "state");
+        for (Map.Entry<byte[], byte[]> entry : bc.getStateDS().getStorage().entrySet()) {
+            legacyState.put(entry.getKey(), entry.getValue());
+        }
+        legacyDb.close();
+
+        try (Writer writer = new FileWriter(new File(dbDir, "version.properties"))) {
+            writer.write("databaseVersion=" + DbStoresMigration.LEGACY_VERSION + "\n");
+        }
+    }
+
+    private static Source<byte[], byte[]> legacyStore(DbSource<byte[]> legacyDb, String name) {
+        return new XorDataSource<>(legacyDb, sha3(name.getBytes()));
+    }
+
+    private static DbSource<byte[]> openDB(String name) {
+        DbSource<byte[]> ret = new LevelDbDataSource(name);
+        ret.init();
+        return ret;
+    }
+}
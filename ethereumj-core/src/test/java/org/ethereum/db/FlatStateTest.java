@@ -0,0 +1,243 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Repository;
+import org.ethereum.datasource.NoDeleteSource;
+import org.ethereum.datasource.Source;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.vm.DataWord;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+
+import static org.ethereum.crypto.HashUtil.EMPTY_TRIE_HASH;
+import static org.junit.Assert.*;
+
+public class FlatStateTest {
+
+    private static final byte[] cow = Hex.decode("CD2A3D9F938E13CD947EC05ABC7FE734DF8DD826");
+    private static final byte[] horse = Hex.decode("13978AEE95F38490E9769C39B2773ED763D9CD5F");
+
+    /**
+     * Creates a repository which can read the state from the flat state only
+     */
+    private static Repository flatOnly(FlatState flatState, byte[] root) {
+        return new RepositoryRoot(new HashMapDB<byte[]>(), root, flatState);
+    }
+
+    @Test
+    public void testReadsMatchTrie() {
+        HashMapDB<byte[]> stateDb = new HashMapDB<>();
+        FlatState flatState = new FlatState(new HashMapDB<byte[]>(), 2);
+        RepositoryRoot repo = new RepositoryRoot(stateDb, null, flatState);
+
+        repo.addBalance(cow, BigInteger.TEN);
+        repo.addStorageRow(cow, new DataWord(1), new DataWord(100));
+        repo.addStorageRow(cow, new DataWord(2), new DataWord(200));
+        repo.commit();
+        byte[] root1 = repo.getRoot();
+
+        repo.addBalance(horse, BigInteger.ONE);
+        repo.addStorageRow(cow, new DataWord(1), DataWord.ZERO);
+        repo.addStorageRow(cow, new DataWord(3), new DataWord(300));
+        repo.commit();
+        byte[] root2 = repo.getRoot();
+
+        Repository flat1 = flatOnly(flatState, root1);
+        assertEquals(BigInteger.TEN, flat1.getBalance(cow));
+        assertFalse(flat1.isExist(horse));
+        assertEquals(new DataWord(100), flat1.getStorageValue(cow, new DataWord(1)));
+        assertNull(flat1.getStorageValue(cow, new DataWord(3)));
+
+        Repository flat2 = flatOnly(flatState, root2);
+        assertEquals(BigInteger.ONE, flat2.getBalance(horse));
+        assertNull(flat2.getStorageValue(cow, new DataWord(1)));
+        assertEquals(new DataWord(200), flat2.getStorageValue(cow, new DataWord(2)));
+        assertEquals(new DataWord(300), flat2.getStorageValue(cow, new DataWord(3)));
+
+        Repository trie2 = new RepositoryRoot(stateDb, root2);
+        assertEquals(trie2.getBalance(horse), flat2.getBalance(horse));
+        assertEquals(trie2.getStorageValue(cow, new DataWord(3)), flat2.getStorageValue(cow, new DataWord(3)));
+    }
+
+    @Test
+    public void testDeletedStorage() {
+        FlatState flatState = new FlatState(new HashMapDB<byte[]>(), 16);
+        RepositoryRoot repo = new RepositoryRoot(new HashMapDB<byte[]>(), null, flatState);
+
+        repo.addStorageRow(cow, new DataWord(1), new DataWord(100));
+        repo.commit();
+
+        repo.delete(cow);
+        repo.commit();
+        byte[] deletedRoot = repo.getRoot();
+        assertFalse(flatOnly(flatState, deletedRoot).isExist(cow));
+
+        repo.addStorageRow(cow, new DataWord(2), new DataWord(200));
+        repo.commit();
+
+        Repository flat = flatOnly(flatState, repo.getRoot());
+        assertTrue(flat.isExist(cow));
+        // the slot of the deleted contract is not visible anymore
+        assertNull(flat.getStorageValue(cow, new DataWord(1)));
+        assertEquals(new DataWord(200), flat.getStorageValue(cow, new DataWord(2)));
+    }
+
+    @Test
+    public void testLayersMerge() {
+        HashMapDB<byte[]> flatDb = new HashMapDB<>();
+        FlatState flatState = new FlatState(flatDb, 2);
+        RepositoryRoot repo = new RepositoryRoot(new HashMapDB<byte[]>(), null, flatState);
+
+        byte[][] roots = new byte[5][];
+        for (int i = 0; i < roots.length; i++) {
+            repo.addBalance(cow, BigInteger.ONE);
+            repo.addStorageRow(cow, new DataWord(i), new DataWord(i + 1));
+            repo.commit();
+            roots[i] = repo.getRoot();
+        }
+
+        // only the last 2 layers and the base are kept
+        assertNull(flatState.getView(roots[1]));
+        assertNotNull(flatState.getView(roots[2]));
+        assertEquals(BigInteger.valueOf(3), flatOnly(flatState, roots[2]).getBalance(cow));
+
+        Repository flat = flatOnly(flatState, roots[4]);
+        assertEquals(BigInteger.valueOf(5), flat.getBalance(cow));
+        for (int i = 0; i < roots.length; i++) {
+            assertEquals(new DataWord(i + 1), flat.getStorageValue(cow, new DataWord(i)));
+        }
+
+        // the saved state is picked up on restart
+        repo.close();
+        FlatState restarted = new FlatState(flatDb, 2);
+        assertNotNull(restarted.getView(roots[4]));
+        assertNull(restarted.getView(roots[3]));
+        assertEquals(BigInteger.valueOf(5), flatOnly(restarted, roots[4]).getBalance(cow));
+    }
+
+    @Test
+    public void testForks() {
+        // the trie nodes of the forks are not pruned
+        Source<byte[], byte[]> stateDb = new NoDeleteSource<>(new HashMapDB<byte[]>());
+        FlatState flatState = new FlatState(new HashMapDB<byte[]>(), 2);
+        RepositoryRoot repo = new RepositoryRoot(stateDb, null, flatState);
+        repo.addBalance(cow, BigInteger.TEN);
+        repo.commit();
+        byte[] parent = repo.getRoot();
+
+        Repository fork1 = repo.getSnapshotTo(parent);
+        fork1.addBalance(cow, BigInteger.ONE);
+        fork1.commit();
+
+        Repository fork2 = repo.getSnapshotTo(parent);
+        fork2.addBalance(horse, BigInteger.ONE);
+        fork2.commit();
+
+        assertEquals(BigInteger.valueOf(11), flatOnly(flatState, fork1.getRoot()).getBalance(cow));
+        assertEquals(BigInteger.TEN, flatOnly(flatState, fork2.getRoot()).getBalance(cow));
+        assertEquals(BigInteger.ONE, flatOnly(flatState, fork2.getRoot()).getBalance(horse));
+
+        // growing the first fork discards the second one
+        for (int i = 0; i < 2; i++) {
+            fork1.addBalance(cow, BigInteger.ONE);
+            fork1.commit();
+        }
+        assertNull(flatState.getView(fork2.getRoot()));
+        assertEquals(BigInteger.valueOf(13), flatOnly(flatState, fork1.getRoot()).getBalance(cow));
+
+        // the discarded fork state is still read from the trie
+        assertEquals(BigInteger.ONE, repo.getSnapshotTo(fork2.getRoot()).getBalance(horse));
+        fork2.addBalance(horse, BigInteger.ONE);
+        fork2.commit();
+        assertEquals(BigInteger.valueOf(2), fork2.getBalance(horse));
+    }
+
+    @Test
+    public void testRecurringRoot() {
+        FlatState flatState = new FlatState(new HashMapDB<byte[]>(), 16);
+        RepositoryRoot repo = new RepositoryRoot(new HashMapDB<byte[]>(), null, flatState);
+
+        repo.addBalance(cow, BigInteger.TEN);
+        repo.commit();
+        byte[] root1 = repo.getRoot();
+
+        // back to the empty state which is the base
+        repo.delete(cow);
+        repo.commit();
+        assertArrayEquals(EMPTY_TRIE_HASH, repo.getRoot());
+
+        repo.addBalance(horse, BigInteger.ONE);
+        repo.commit();
+
+        assertEquals(BigInteger.TEN, flatOnly(flatState, root1).getBalance(cow));
+        Repository flat = flatOnly(flatState, repo.getRoot());
+        assertFalse(flat.isExist(cow));
+        assertEquals(BigInteger.ONE, flat.getBalance(horse));
+    }
+
+    @Test
+    public void testUnknownRoot() {
+        FlatState flatState = new FlatState(new HashMapDB<byte[]>(), 2);
+        assertNotNull(flatState.getView(EMPTY_TRIE_HASH));
+        assertNull(flatState.getView(cow));
+    }
+
+    @Test
+    public void testGenerate() {
+        Source<byte[], byte[]> stateDb = new NoDeleteSource<>(new HashMapDB<byte[]>());
+        HashMapDB<byte[]> flatDb = new HashMapDB<>();
+        RepositoryRoot repo = new RepositoryRoot(stateDb, null, new FlatState(flatDb, 2));
+        repo.addBalance(cow, BigInteger.TEN);
+        repo.addStorageRow(cow, new DataWord(1), new DataWord(100));
+        repo.addBalance(horse, BigInteger.ONE);
+        repo.commit();
+        byte[] root1 = repo.getRoot();
+        repo.close();
+
+        // the blocks imported without the flat state, e.g. before an unclean shutdown
+        RepositoryRoot trieOnly = new RepositoryRoot(stateDb, root1);
+        trieOnly.delete(horse);
+        trieOnly.addStorageRow(cow, new DataWord(1), DataWord.ZERO);
+        trieOnly.addStorageRow(cow, new DataWord(2), new DataWord(200));
+        trieOnly.commit();
+        byte[] root2 = trieOnly.getRoot();
+
+        FlatState restarted = new FlatState(flatDb, 2);
+        assertNull(restarted.getView(root2));
+        RepositoryRoot head = new RepositoryRoot(stateDb, null, restarted);
+        head.syncToRoot(root2);
+        assertNotNull(restarted.getView(root2));
+
+        Repository flat = flatOnly(restarted, root2);
+        assertEquals(BigInteger.TEN, flat.getBalance(cow));
+        // the values of the previous base are ignored
+        assertFalse(flat.isExist(horse));
+        assertNull(flat.getStorageValue(cow, new DataWord(1)));
+        assertEquals(new DataWord(200), flat.getStorageValue(cow, new DataWord(2)));
+
+        // the generated state is followed by the new blocks
+        head.addStorageRow(cow, new DataWord(3), new DataWord(300));
+        head.commit();
+        flat = flatOnly(restarted, head.getRoot());
+        assertEquals(new DataWord(200), flat.getStorageValue(cow, new DataWord(2)));
+        assertEquals(new DataWord(300), flat.getStorageValue(cow, new DataWord(3)));
+    }
+}
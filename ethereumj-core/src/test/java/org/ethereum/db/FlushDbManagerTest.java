@@ -25,7 +25,10 @@ import org.ethereum.datasource.inmem.HashMapDB;
 import org.junit.Assert;
 import org.junit.Test;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
+import java.util.List;
 import java.util.concurrent.CountDownLatch;
 
 import static org.ethereum.datasource.MemSizeEstimator.ByteArrayEstimator;
@@ -132,4 +135,61 @@ public class FlushDbManagerTest {
 
         if (exception[0] != null) throw exception[0];
     }
+
+    @Test
+    public void testDbCaches() {
+        // each store is flushed through its own DB cache
+        HashMapDB<byte[]> db1 = new HashMapDB<>();
+        HashMapDB<byte[]> db2 = new HashMapDB<>();
+        WriteCache<byte[], byte[]> dbCache1 = new WriteCache.BytesKey<>(db1, WriteCache.CacheType.SIMPLE);
+        dbCache1.setFlushSource(true);
+        WriteCache<byte[], byte[]> dbCache2 = new WriteCache.BytesKey<>(db2, WriteCache.CacheType.SIMPLE);
+        dbCache2.setFlushSource(true);
+        WriteCache<byte[], byte[]> cache1 = new WriteCache.BytesKey<>(dbCache1, WriteCache.CacheType.SIMPLE);
+        WriteCache<byte[], byte[]> cache2 = new WriteCache.BytesKey<>(dbCache2, WriteCache.CacheType.SIMPLE);
+
+        DbFlushManager dbFlushManager = new DbFlushManager(SystemProperties.getDefault(), Collections.<DbSource>emptySet());
+        dbFlushManager.addCache(cache1);
+        dbFlushManager.addCache(cache2);
+        dbFlushManager.addDbCache(dbCache1);
+        dbFlushManager.addDbCache(dbCache2);
+
+        cache1.put(intToBytes(1), intToBytes(1));
+        cache2.put(intToBytes(2), intToBytes(2));
+        dbFlushManager.flushSync();
+
+        Assert.assertArrayEquals(intToBytes(1), db1.get(intToBytes(1)));
+        Assert.assertNull(db1.get(intToBytes(2)));
+        Assert.assertArrayEquals(intToBytes(2), db2.get(intToBytes(2)));
+    }
+
+    @Test
+    public void testDbCachesOrder() {
+        final List<String> flushed = new ArrayList<>();
+        DbFlushManager dbFlushManager = new DbFlushManager(SystemProperties.getDefault(), Collections.<DbSource>emptySet());
+        List<WriteCache<byte[], byte[]>> dbCaches = new ArrayList<>();
+        String[] names = {"index", "state", "block", "journal"};
+        int[] orders = {3, 0, 2, 0};
+        for (int i = 0; i < names.length; i++) {
+            final String name = names[i];
+            WriteCache<byte[], byte[]> dbCache = new WriteCache.BytesKey<>(new HashMapDB<byte[]>() {
+                @Override
+                public void put(byte[] key, byte[] val) {
+                    flushed.add(name);
+                    super.put(key, val);
+                }
+            }, WriteCache.CacheType.SIMPLE);
+            dbCache.setFlushSource(true);
+            dbFlushManager.addDbCache(dbCache, orders[i]);
+            dbCaches.add(dbCache);
+        }
+
+        for (WriteCache<byte[], byte[]> dbCache : dbCaches) {
+            dbCache.put(intToBytes(1), intToBytes(1));
+        }
+        dbFlushManager.flushSync();
+
+        // the same order keeps the order of adding
+        Assert.assertEquals(Arrays.asList("state", "journal", "block", "index"), flushed);
+    }
 }
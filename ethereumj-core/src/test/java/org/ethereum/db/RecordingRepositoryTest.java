@@ -0,0 +1,100 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.db;
+
+import org.ethereum.core.Repository;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.vm.DataWord;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.math.BigInteger;
+
+import static org.junit.Assert.*;
+
+public class RecordingRepositoryTest {
+
+    byte[] cow   = Hex.decode("CD2A3D9F938E13CD947EC05ABC7FE734DF8DD826");
+    byte[] horse = Hex.decode("13978AEE95F38490E9769C39B2773ED763D9CD5F");
+    byte[] pig   = Hex.decode("1111111111111111111111111111111111111111");
+
+    @Test
+    public void testReadWriteSets() {
+        RepositoryRoot repository = new RepositoryRoot(new HashMapDB<byte[]>());
+        repository.addBalance(cow, BigInteger.TEN);
+        repository.addBalance(horse, BigInteger.TEN);
+        repository.commit();
+
+        RecordingRepository rec = new RecordingRepository(repository.startTracking());
+        rec.getBalance(cow);
+        rec.addBalance(horse, BigInteger.ONE);       // blind write
+        rec.addBalance(cow, BigInteger.ZERO);        // existing account: not a modification
+        rec.getStorageValue(pig, new DataWord(1));
+
+        Repository child = rec.startTracking();
+        child.addStorageRow(pig, new DataWord(2), new DataWord(3));
+        child.rollback();
+
+        Repository child1 = rec.startTracking();
+        child1.addStorageRow(horse, new DataWord(4), new DataWord(5));
+        child1.commit();
+
+        assertTrue(rec.getAccountsRead().contains(new ByteArrayWrapper(cow)));
+        assertTrue(rec.getAccountsRead().contains(new ByteArrayWrapper(pig)));
+        assertTrue(rec.getStorageRead().contains(RecordingRepository.storageKey(pig, new DataWord(1))));
+
+        assertEquals(1, rec.getAccountsWritten().size());
+        assertTrue(rec.getAccountsWritten().contains(new ByteArrayWrapper(horse)));
+        assertEquals(1, rec.getStorageWritten().size());
+        assertTrue(rec.getStorageWritten().contains(RecordingRepository.storageKey(horse, new DataWord(4))));
+    }
+
+    @Test
+    public void testReplay() {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        RepositoryRoot repository = new RepositoryRoot(db);
+        repository.addBalance(cow, BigInteger.TEN);
+        repository.commit();
+
+        RecordingRepository rec = new RecordingRepository(repository.getSnapshotTo(repository.getRoot()).startTracking());
+        rec.increaseNonce(cow);
+        Repository child = rec.startTracking();
+        child.addBalance(cow, BigInteger.ONE.negate());
+        child.addBalance(horse, BigInteger.ONE);
+        child.addStorageRow(horse, new DataWord(1), new DataWord(2));
+        child.commit();
+
+        // the state has changed meanwhile in an account which wasn't read
+        repository.addBalance(pig, BigInteger.ONE);
+        repository.commit();
+
+        RepositoryRoot expected = new RepositoryRoot(db, repository.getRoot());
+        expected.increaseNonce(cow);
+        expected.addBalance(cow, BigInteger.ONE.negate());
+        expected.addBalance(horse, BigInteger.ONE);
+        expected.addStorageRow(horse, new DataWord(1), new DataWord(2));
+
+        Repository track = repository.startTracking();
+        rec.replay(track);
+        track.commit();
+
+        assertArrayEquals(expected.getRoot(), repository.getRoot());
+        assertEquals(BigInteger.valueOf(9), repository.getBalance(cow));
+        assertEquals(new DataWord(2), repository.getStorageValue(horse, new DataWord(1)));
+    }
+}
@@ -23,7 +23,9 @@ import org.ethereum.config.net.MainNetConfig;
 import org.ethereum.core.Block;
 import org.ethereum.core.Transaction;
 import org.ethereum.core.TransactionInfo;
+import org.ethereum.core.TransactionReceipt;
 import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.util.RLP;
 import org.ethereum.util.blockchain.SolidityContract;
 import org.ethereum.util.blockchain.StandaloneBlockchain;
 import org.ethereum.vm.DataWord;
@@ -34,6 +36,10 @@ import org.junit.Test;
 
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.ethereum.crypto.HashUtil.sha3;
 
 /**
  * Created by Anton Nashatyrev on 08.04.2016.
@@ -136,4 +142,31 @@ public class TransactionStoreTest {
         TransactionInfo info1 = transactionStore1.get(tx.getHash()).get(0);
         Assert.assertArrayEquals(info1.getReceipt().getPostTxState(), info.getReceipt().getPostTxState());
     }
+
+    @Test
+    public void legacyIndexUpdateTest() {
+        // check that the legacy entry stays readable when the transaction gets into another block
+
+        HashMapDB<byte[]> txDb = new HashMapDB<>();
+        TransactionStore transactionStore = new TransactionStore(txDb);
+        StandaloneBlockchain bc = new StandaloneBlockchain();
+        bc.getBlockchain().withTransactionStore(transactionStore);
+
+        bc.sendEther(new byte[20], BigInteger.valueOf(1000));
+        Block b1 = bc.createBlock();
+        Transaction tx = b1.getTransactionsList().get(0);
+        TransactionInfo info = transactionStore.get(tx.getHash()).get(0);
+
+        txDb.put(tx.getHash(), RLP.encodeList(info.getEncoded())); // legacy serialization
+        byte[] forkBlockHash = sha3(b1.getHash());
+        TransactionReceipt receipt = info.getReceipt();
+        receipt.setTransaction(tx);
+        transactionStore.put(forkBlockHash, Collections.singletonList(receipt));
+
+        List<TransactionInfo> infos = new TransactionStore(txDb).get(tx.getHash());
+        Assert.assertEquals(2, infos.size());
+        Assert.assertArrayEquals(b1.getHash(), infos.get(0).getBlockHash());
+        Assert.assertArrayEquals(forkBlockHash, infos.get(1).getBlockHash());
+        Assert.assertArrayEquals(receipt.getEncoded(), infos.get(1).getReceipt().getEncoded());
+    }
 }
@@ -0,0 +1,87 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.listener;
+
+import org.ethereum.core.*;
+import org.ethereum.core.EventDispatchThread.OverflowPolicy;
+import org.junit.After;
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CompositeEthereumListenerTest {
+
+    private CompositeEthereumListener listener = new CompositeEthereumListener();
+
+    @After
+    public void tearDown() {
+        listener.eventDispatchThread.shutdown();
+    }
+
+    @Test
+    public void testAdapterOverloadSubscription() throws InterruptedException {
+        listener.eventDispatchThread = new EventDispatchThread(16, OverflowPolicy.BLOCK, 2);
+        final CountDownLatch received = new CountDownLatch(1);
+        listener.addListener(new EthereumListenerAdapter() {
+            @Override
+            public void onBlock(Block block, List<TransactionReceipt> receipts) {
+                received.countDown();
+            }
+        });
+
+        assertTrue(listener.isSubscribed("onBlock"));
+        assertFalse(listener.isSubscribed("trace"));
+
+        listener.onBlock(new BlockSummary(null, new HashMap<byte[], java.math.BigInteger>(),
+                new ArrayList<TransactionReceipt>(), new ArrayList<TransactionExecutionSummary>()));
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testSharedLanes() throws InterruptedException {
+        listener.eventDispatchThread = new EventDispatchThread(16, OverflowPolicy.COALESCE, 2);
+        final CountDownLatch received = new CountDownLatch(3);
+        List<EthereumListener> listeners = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            EthereumListener l = new EthereumListenerAdapter() {
+                @Override
+                public void onPendingStateChanged(PendingState pendingState) {
+                    received.countDown();
+                }
+            };
+            listeners.add(l);
+            listener.addListener(l);
+        }
+
+        Set<EventDispatchThread.Lane> lanes = new HashSet<>();
+        for (EthereumListener l : listeners) {
+            lanes.add(listener.getLane(l));
+        }
+        assertEquals(2, lanes.size());
+        // main lane and the shared ones
+        assertEquals(3, listener.eventDispatchThread.getLanes().size());
+
+        // the same event for the listeners sharing the lane is not coalesced
+        listener.onPendingStateChanged(null);
+        assertTrue(received.await(10, TimeUnit.SECONDS));
+    }
+}
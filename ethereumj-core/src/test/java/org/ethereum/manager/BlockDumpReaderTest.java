@@ -0,0 +1,107 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.manager;
+
+import org.ethereum.util.ByteUtil;
+import org.ethereum.util.RLP;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class BlockDumpReaderTest {
+
+    private static File hexDump;
+    private static List<byte[]> blocks;
+
+    @BeforeClass
+    public static void setup() throws Exception {
+        URL url = ClassLoader.getSystemResource("sync/main-b1-b10.dmp");
+        hexDump = new File(url.toURI());
+        blocks = new ArrayList<>();
+        for (String line : Files.readAllLines(hexDump.toPath(), StandardCharsets.UTF_8)) {
+            blocks.add(Hex.decode(line));
+        }
+    }
+
+    @Test
+    public void testHex() throws IOException {
+        assertEquals(blocks, BlockDumpReader.Format.HEX, hexDump);
+    }
+
+    @Test
+    public void testConcatenatedRlp() throws IOException {
+        byte[] data = ByteUtil.merge(blocks.toArray(new byte[0][]));
+        assertEquals(blocks, BlockDumpReader.Format.RLP, write(data));
+    }
+
+    @Test
+    public void testWrappedRlp() throws IOException {
+        byte[] data = RLP.encodeList(blocks.toArray(new byte[0][]));
+        assertEquals(blocks, BlockDumpReader.Format.RLP, write(data));
+    }
+
+    @Test
+    public void testSeveralWrappedRlp() throws IOException {
+        byte[] data = ByteUtil.merge(
+                RLP.encodeList(blocks.subList(0, 3).toArray(new byte[0][])),
+                RLP.encodeList(),
+                blocks.get(3),
+                RLP.encodeList(blocks.subList(4, blocks.size()).toArray(new byte[0][])));
+        assertEquals(blocks, BlockDumpReader.Format.RLP, write(data));
+    }
+
+    @Test(expected = EOFException.class)
+    public void testTruncatedRlp() throws IOException {
+        byte[] data = ByteUtil.merge(blocks.toArray(new byte[0][]));
+        try (BlockDumpReader reader = new BlockDumpReader(write(Arrays.copyOf(data, data.length - 1)),
+                BlockDumpReader.Format.RLP)) {
+            while (reader.next() != null);
+        }
+    }
+
+    private static void assertEquals(List<byte[]> expected, BlockDumpReader.Format format, File file) throws IOException {
+        try (BlockDumpReader reader = new BlockDumpReader(file, format)) {
+            for (byte[] block : expected) {
+                assertArrayEquals(block, reader.next());
+            }
+            assertNull(reader.next());
+            if (format == BlockDumpReader.Format.RLP) {
+                org.junit.Assert.assertEquals(file.length(), reader.getPosition());
+            }
+        }
+    }
+
+    private static File write(byte[] data) throws IOException {
+        File file = File.createTempFile("blocks", ".rlp");
+        file.deleteOnExit();
+        Files.write(file.toPath(), data);
+        return file;
+    }
+}
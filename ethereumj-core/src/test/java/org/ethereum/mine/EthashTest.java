@@ -27,10 +27,16 @@ import org.ethereum.util.blockchain.StandaloneBlockchain;
 import org.junit.*;
 import org.spongycastle.util.encoders.Hex;
 
+import java.io.File;
+import java.nio.file.Files;
 import java.util.List;
+import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import static org.ethereum.crypto.HashUtil.sha3;
 import static org.ethereum.util.ByteUtil.*;
@@ -196,6 +202,91 @@ public class EthashTest {
     }
 
 
+    @Test
+    public void mappedDatasetTest() throws Exception {
+        EthashAlgo ethash = new EthashAlgo();
+        byte[] seed = "~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~".getBytes();
+        long cacheSize = 1024;
+        long fullSize = 1024 * 32;
+        int[] cache = ethash.makeCache(cacheSize, seed);
+
+        File file = File.createTempFile("ethash", ".dat");
+        file.deleteOnExit();
+        EthashDataset dataset = EthashDataset.map(file, fullSize, ethash.getParams().getHASH_BYTES());
+        for (int i = 0; i < dataset.getItemsCount(); i++) {
+            dataset.putItem(i, ethash.calcDatasetItem(cache, i));
+        }
+        dataset.flush();
+        Assert.assertEquals(fullSize, file.length());
+
+        byte[] blockHash = "~~~X~~~~~~~~~~~~~~~~~~~~~~~~~~~~".getBytes();
+        long nonce = 0x7c7c597cL;
+        Pair<byte[], byte[]> light = ethash.hashimotoLight(fullSize, cache, blockHash, longToBytes(nonce));
+        Pair<byte[], byte[]> full = ethash.hashimotoFull(fullSize, dataset, blockHash, longToBytes(nonce));
+        Assert.assertArrayEquals(light.getLeft(), full.getLeft());
+        Assert.assertArrayEquals(light.getRight(), full.getRight());
+
+        // the words are stored little-endian
+        EthashDataset mapped = EthashDataset.map(file, fullSize, ethash.getParams().getHASH_BYTES());
+        int[] item = new int[16];
+        mapped.getItem(0, item, 0);
+        Assert.assertArrayEquals(intsToBytes(item, false), Hex.decode("b1698f829f90b35455804e5185d78f549fcb1bdce2bee006d4d7e68eb154b596be1427769eb1c3c3e93180c760af75f81d1023da6a0ffbe321c153a7c0103597"));
+        full = ethash.hashimotoFull(fullSize, mapped, blockHash, longToBytes(nonce));
+        Assert.assertArrayEquals(light.getRight(), full.getRight());
+    }
+
+    @Test
+    public void nextEpochPreparationTest() throws Exception {
+        File dir = Files.createTempDirectory("ethash").toFile();
+        final SystemProperties config = new SystemProperties();
+        config.overrideParams("ethash.dir", dir.getAbsolutePath());
+        // tiny datasets to generate them fast
+        Ethash.ethashParams = new EthashParams() {
+            @Override
+            public long getCacheSize(long blockNumber) {
+                return 1024;
+            }
+
+            @Override
+            public long getFullSize(long blockNumber) {
+                return 1024 * 32;
+            }
+        };
+        ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            new Ethash(config, 0).getFullDataset();
+            File epoch0 = new File(dir, "mine-dag-0.dat");
+            File epoch1 = new File(dir, "mine-dag-1.dat");
+            File epoch2 = new File(dir, "mine-dag-2.dat");
+            awaitFile(epoch1);
+            // the mined epoch dataset is kept while the next one is prepared
+            Assert.assertTrue(epoch0.exists());
+
+            // the miner switching to the prepared epoch doesn't wait for the preparation forever
+            Future<EthashDataset> dataset = executor.submit(new Callable<EthashDataset>() {
+                @Override
+                public EthashDataset call() {
+                    return new Ethash(config, 30_000).getFullDataset();
+                }
+            });
+            Assert.assertEquals(1024 * 32 / 64, dataset.get(10, TimeUnit.SECONDS).getItemsCount());
+            Assert.assertFalse(epoch0.exists());
+            Assert.assertTrue(epoch1.exists());
+            awaitFile(epoch2);
+        } finally {
+            executor.shutdownNow();
+            Ethash.ethashParams = new EthashParams();
+        }
+    }
+
+    private static void awaitFile(File file) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 10_000;
+        while (!file.exists() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        Assert.assertTrue(file.getName() + " is not generated", file.exists());
+    }
+
     @Test
     public void blockMineTest()throws Exception {
        byte[] rlp = Hex.decode("f9021af90215a0809870664d9a43cf1827aa515de6374e2fad1bf64290a9f261dd49c525d6a0efa01dcc4de8dec75d7aab85b567b6ccd41ad312451b948a7413f0a142fd40d4934794f927a40c8b7f6e07c5af7fa2155b4864a4112b13a010c8ec4f62ecea600c616443bcf527d97e5b1c5bb4a9769c496d1bf32636c95da056e81f171bcc55a6ff8345e692c0f86e5b48e01b996cadc001622fb5e363b421a056e81f171bcc55a6ff8345e692c0f86e5b48e01b996cadc001622fb5e363b421b90100000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000008600000000010082bf958302472c808455c4e47b99476574682f76312e302e312f6c696e75782f676f312e342e32a0788ac534cb2f6a226a01535e29b11a96602d447aed972463b5cbcc7dd5d633f288e2ff1b6435006517c0c0");
@@ -0,0 +1,140 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.net;
+
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.embedded.EmbeddedChannel;
+import org.ethereum.listener.EthereumListenerAdapter;
+import org.ethereum.net.message.Message;
+import org.ethereum.net.p2p.P2pMessageCodes;
+import org.ethereum.net.p2p.PongMessage;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.ethereum.net.message.StaticMessages.PING_MESSAGE;
+import static org.ethereum.net.message.StaticMessages.PONG_MESSAGE;
+import static org.junit.Assert.*;
+
+public class MessageQueueTest {
+
+    /**
+     * Request answered by PONG
+     */
+    private static class TestRequest extends Message {
+        @Override
+        public byte[] getEncoded() {
+            return new byte[0];
+        }
+
+        @Override
+        public Class<?> getAnswerMessage() {
+            return PongMessage.class;
+        }
+
+        @Override
+        public String toString() {
+            return "TestRequest";
+        }
+
+        @Override
+        public Enum getCommand() {
+            return P2pMessageCodes.USER;
+        }
+    }
+
+    private EmbeddedChannel channel;
+    private MessageQueue queue;
+
+    @Before
+    public void setup() {
+        channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+        queue = new MessageQueue();
+        queue.ethereumListener = new EthereumListenerAdapter();
+        queue.activate(channel.pipeline().firstContext());
+    }
+
+    private List<Object> sent() {
+        channel.runPendingTasks();
+        List<Object> ret = new ArrayList<>();
+        for (Object msg; (msg = channel.readOutbound()) != null; ) {
+            ret.add(msg);
+        }
+        return ret;
+    }
+
+    @Test
+    public void testResponsesSentAtOnce() {
+        queue.sendMessage(PONG_MESSAGE);
+        queue.sendMessage(PONG_MESSAGE);
+        queue.sendMessage(PONG_MESSAGE);
+
+        List<Object> sent = sent();
+        assertEquals(3, sent.size());
+        assertTrue(sent().isEmpty());
+
+        queue.sendMessage(PONG_MESSAGE);
+        assertEquals(1, sent().size());
+    }
+
+    @Test
+    public void testRequestWaitsForAnswer() throws InterruptedException {
+        TestRequest req1 = new TestRequest();
+        TestRequest req2 = new TestRequest();
+        queue.sendMessage(req1);
+        queue.sendMessage(req2);
+        queue.sendMessage(PONG_MESSAGE);
+
+        List<Object> sent = sent();
+        assertEquals(2, sent.size());
+        assertSame(PONG_MESSAGE, sent.get(0));
+        assertSame(req1, sent.get(1));
+
+        // the request is sent once
+        queue.sendMessage(PONG_MESSAGE);
+        assertEquals(1, sent().size());
+
+        queue.receivedMessage(new PongMessage());
+        sent = sent();
+        assertEquals(1, sent.size());
+        assertSame(req2, sent.get(0));
+
+        queue.receivedMessage(new PongMessage());
+        assertTrue(sent().isEmpty());
+    }
+
+    @Test
+    public void testSinglePing() throws InterruptedException {
+        queue.sendMessage(PING_MESSAGE);
+        queue.sendMessage(PING_MESSAGE);
+        assertEquals(1, sent().size());
+
+        queue.receivedMessage(new PongMessage());
+        queue.sendMessage(PING_MESSAGE);
+        assertEquals(1, sent().size());
+    }
+
+    @Test
+    public void testClosed() {
+        queue.close();
+        queue.sendMessage(PONG_MESSAGE);
+        assertTrue(sent().isEmpty());
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.sync;
+
+import org.ethereum.datasource.Serializer;
+import org.ethereum.datasource.inmem.HashMapDB;
+import org.ethereum.util.ByteUtil;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.junit.Assert.*;
+
+public class FastSyncNodeQueueTest {
+
+    private static final Serializer<Long, byte[]> serializer = new Serializer<Long, byte[]>() {
+        @Override
+        public byte[] serialize(Long object) {
+            return ByteUtil.longToBytes(object);
+        }
+
+        @Override
+        public Long deserialize(byte[] stream) {
+            return ByteUtil.byteArrayToLong(stream);
+        }
+    };
+
+    private static List<Long> drain(FastSyncNodeQueue<Long> queue) {
+        List<Long> ret = new ArrayList<>();
+        for (Long item; (item = queue.poll()) != null; ) {
+            ret.add(item);
+        }
+        return ret;
+    }
+
+    @Test
+    public void testSpill() {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        FastSyncNodeQueue<Long> queue = new FastSyncNodeQueue<>(db, serializer, 10, 4);
+        for (long i = 0; i < 30; i++) {
+            queue.addLast(i);
+        }
+        assertEquals(30, queue.size());
+        assertFalse(db.getStorage().isEmpty());
+
+        // memory part first, then the chunks starting from the most recently spilled
+        assertEquals(Arrays.asList(0L, 1L, 2L, 3L, 4L, 5L, 6L, 27L, 28L, 29L,
+                23L, 24L, 25L, 26L, 19L, 20L, 21L, 22L, 15L, 16L, 17L, 18L,
+                11L, 12L, 13L, 14L, 7L, 8L, 9L, 10L), drain(queue));
+        assertTrue(queue.isEmpty());
+        assertEquals(0, queue.size());
+    }
+
+    @Test
+    public void testCheckpoint() {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        FastSyncNodeQueue<Long> queue = new FastSyncNodeQueue<>(db, serializer, 10, 4);
+        for (long i = 0; i < 30; i++) {
+            queue.addLast(i);
+        }
+        Set<Long> taken = new HashSet<>();
+        for (int i = 0; i < 5; i++) {
+            taken.add(queue.poll());
+        }
+        queue.checkpoint(Collections.singletonList(100L));
+
+        // drain including the chunks loaded after the checkpoint
+        Set<Long> expected = new HashSet<>(drain(queue));
+        expected.add(100L);
+
+        FastSyncNodeQueue<Long> restored = new FastSyncNodeQueue<>(db, serializer, 10, 4);
+        assertTrue(restored.restore());
+        assertEquals(26, restored.size());
+        assertEquals(Long.valueOf(100), restored.poll());
+        Set<Long> items = new HashSet<>(drain(restored));
+        items.add(100L);
+        assertEquals(expected, items);
+        assertTrue(Collections.disjoint(taken, items));
+    }
+
+    @Test
+    public void testClear() {
+        HashMapDB<byte[]> db = new HashMapDB<>();
+        FastSyncNodeQueue<Long> queue = new FastSyncNodeQueue<>(db, serializer, 10, 4);
+        for (long i = 0; i < 30; i++) {
+            queue.addFirst(i);
+        }
+        queue.checkpoint(Collections.<Long>emptyList());
+        queue.clear();
+
+        assertTrue(queue.isEmpty());
+        assertTrue(db.getStorage().isEmpty());
+        assertFalse(new FastSyncNodeQueue<>(db, serializer, 10, 4).restore());
+    }
+}
@@ -1142,4 +1142,39 @@ public class TrieTest {
             System.out.println((System.nanoTime() - s) / 1_000_000 + " ms, root: " + (System.nanoTime() - s1) / 1_000_000 + " ms");
         }
     }
+
+    @Test
+    public void testAsyncEncode() {
+        // the concurrent encoding should produce the same trie
+        HashMapDB<byte[]> syncDb = new HashMapDB<>();
+        HashMapDB<byte[]> asyncDb = new HashMapDB<>();
+        TrieImpl syncTrie = new TrieImpl(syncDb);
+        syncTrie.setAsync(false);
+        TrieImpl asyncTrie = new TrieImpl(asyncDb);
+        asyncTrie.setAsync(true);
+
+        for (int i = 0; i < 20_000; i++) {
+            byte[] k = sha3(intToBytes(i));
+            syncTrie.put(k, intToBytes(i));
+            asyncTrie.put(k, intToBytes(i));
+        }
+        assertArrayEquals(syncTrie.getRootHash(), asyncTrie.getRootHash());
+
+        // deeper modifications of the committed trie
+        for (int i = 0; i < 20_000; i += 3) {
+            byte[] k = sha3(intToBytes(i));
+            syncTrie.put(k, intToBytes(i + 1));
+            asyncTrie.delete(k);
+        }
+        for (int i = 0; i < 20_000; i += 3) {
+            asyncTrie.put(sha3(intToBytes(i)), intToBytes(i + 1));
+        }
+        syncTrie.flush();
+        asyncTrie.flush();
+        assertArrayEquals(syncTrie.getRootHash(), asyncTrie.getRootHash());
+
+        TrieImpl restored = new TrieImpl(asyncDb, asyncTrie.getRootHash());
+        assertArrayEquals(intToBytes(4), restored.get(sha3(intToBytes(3))));
+        assertArrayEquals(intToBytes(5), restored.get(sha3(intToBytes(5))));
+    }
 }
@@ -1150,4 +1150,55 @@ public class RLPTest {
         String res = new String((byte[])decode(rlpEncoded, 0).getDecoded());
         assertEquals(testString, res); //Fails
     }
-}
\ No newline at end of file
+
+    @Test
+    public void lazyListTest() {
+        byte[][] items = new byte[40][];
+        for (int i = 0; i < items.length; i++) {
+            items[i] = encodeElement(new byte[i]);
+        }
+        byte[] nested = encodeList(encodeInt(0x7f), encodeElement(new byte[0]), encodeList(items));
+        byte[] rlp = encodeList(encodeBigInteger(BigInteger.valueOf(1_000_000)), nested, encodeElement(new byte[100]));
+
+        LList list = decodeLazyList(rlp);
+        assertEquals(1_000_000, list.getLong(0));
+        assertEquals(1_000_000, list.getInt(0));
+        assertFalse(list.isList(0));
+        assertTrue(list.isList(1));
+        assertArrayEquals(nested, list.getEncoded(1));
+        assertArrayEquals(new byte[100], list.getBytes(2));
+        assertEquals(3, list.size());
+        assertArrayEquals(rlp, list.getEncoded());
+
+        LList sub = list.getList(1);
+        assertArrayEquals(new byte[] {0x7f}, sub.getBytes(0));
+        assertEquals(BigInteger.valueOf(0x7f), sub.getBigInteger(0));
+        assertTrue(sub.isEmpty(1));
+        assertNull(sub.getBytesOrNull(1));
+        assertEquals(0, sub.getLong(1));
+
+        LList longList = sub.getList(2);
+        assertEquals(40, longList.size());
+        for (int i = 0; i < items.length; i++) {
+            assertArrayEquals(new byte[i], longList.getBytes(i));
+            assertArrayEquals(items[i], longList.getEncoded(i));
+        }
+
+        // consistent with decode2
+        RLPList decoded = (RLPList) decode2(rlp).get(0);
+        assertArrayEquals(decoded.get(2).getRLPData(), list.getBytesOrNull(2));
+        assertArrayEquals(decoded.get(1).getRLPData(), list.getEncoded(1));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void lazyListOutOfBoundsTest() {
+        decodeLazyList(encodeList(encodeInt(1))).getBytes(1);
+    }
+
+    @Test(expected = RuntimeException.class)
+    public void lazyListMalformedTest() {
+        // the item length exceeds the list
+        byte[] rlp = Hex.decode("c3850102");
+        decodeLazyList(rlp).getBytes(0);
+    }
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.validator;
+
+import org.ethereum.config.SystemProperties;
+import org.ethereum.core.Block;
+import org.ethereum.core.BlockHeader;
+import org.ethereum.mine.EthashValidationHelper;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class EthashRuleTest {
+
+    private static EthashValidationHelper helper;
+    private static EthashRule rule;
+
+    // mainnet block #49045
+    private static final String BLOCK_RLP = "f9021af90215a0809870664d9a43cf1827aa515de6374e2fad1bf64290a9f261dd49c525d6a0efa01dcc4de8dec75d7aab85b567b6ccd41ad312451b948a7413f0a142fd40d4934794f927a40c8b7f6e07c5af7fa2155b4864a4112b13a010c8ec4f62ecea600c616443bcf527d97e5b1c5bb4a9769c496d1bf32636c95da056e81f171bcc55a6ff8345e692c0f86e5b48e01b996cadc001622fb5e363b421a056e81f171bcc55a6ff8345e692c0f86e5b48e01b996cadc001622fb5e363b421b901000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000000086015a1c28ae5e82bf958302472c808455c4e47b99476574682f76312e302e312f6c696e75782f676f312e342e32a0788ac534cb2f6a226a01535e29b11a96602d447aed972463b5cbcc7dd5d633f288e2ff1b6435006517c0c0";
+
+    @BeforeClass
+    public static void setup() {
+        helper = new EthashValidationHelper(SystemProperties.getDefault(), EthashValidationHelper.CacheOrder.direct);
+        rule = new EthashRule(helper);
+    }
+
+    @AfterClass
+    public static void cleanup() {
+        helper.close();
+    }
+
+    @Test
+    public void testValid() {
+        BlockHeader header = new Block(Hex.decode(BLOCK_RLP)).getHeader();
+        assertTrue(rule.validate(header).success);
+    }
+
+    @Test
+    public void testForgedMixHash() {
+        BlockHeader header = new Block(Hex.decode(BLOCK_RLP)).getHeader();
+        byte[] mixHash = header.getMixHash().clone();
+        mixHash[0] ^= 1;
+        header.setMixHash(mixHash);
+        assertFalse(rule.validate(header).success);
+    }
+
+    @Test
+    public void testWrongNonce() {
+        BlockHeader header = new Block(Hex.decode(BLOCK_RLP)).getHeader();
+        byte[] nonce = header.getNonce().clone();
+        nonce[7] ^= 1;
+        header.setNonce(nonce);
+        assertFalse(rule.validate(header).success);
+    }
+
+    @Test
+    public void testNoFileCache() {
+        File file = new File(SystemProperties.getDefault().ethashDir(), "mine-dag-light-1.dat");
+        boolean existed = file.exists();
+
+        BlockHeader header = new Block(Hex.decode(BLOCK_RLP)).getHeader();
+        assertTrue(rule.validate(header).success);
+        // the validation caches are not saved
+        assertEquals(existed, file.exists());
+    }
+}
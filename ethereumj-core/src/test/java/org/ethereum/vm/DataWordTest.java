@@ -17,12 +17,16 @@
  */
 package org.ethereum.vm;
 
+import org.ethereum.util.ByteUtil;
 import org.junit.Test;
 
 import org.spongycastle.util.encoders.Hex;
 
 import java.math.BigInteger;
+import java.util.Arrays;
+import java.util.Random;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 
@@ -410,6 +414,126 @@ public class DataWordTest {
         assertTrue(wr.isZero());
     }
 
+    private static final BigInteger _2_256 = BigInteger.ONE.shiftLeft(256);
+
+    private static byte[] randomWord(Random rnd) {
+        byte[] ret = new byte[32];
+        switch (rnd.nextInt(5)) {
+            case 0: // small
+                ret[31] = (byte) rnd.nextInt();
+                break;
+            case 1: // 64 bit
+                for (int i = 24; i < 32; i++) ret[i] = (byte) rnd.nextInt();
+                break;
+            case 2: // negative
+                Arrays.fill(ret, (byte) 0xFF);
+                ret[31] = (byte) rnd.nextInt();
+                break;
+            case 3: // min signed
+                ret[0] = (byte) 0x80;
+                break;
+            default:
+                rnd.nextBytes(ret);
+        }
+        return ret;
+    }
+
+    private static byte[] toWord(BigInteger val) {
+        return ByteUtil.copyToArray(val.mod(_2_256));
+    }
+
+    /**
+     * Checks the limb arithmetic against the straightforward BigInteger implementation
+     */
+    @Test
+    public void testArithmeticAgainstBigInteger() {
+        Random rnd = new Random(0);
+        for (int i = 0; i < 20000; i++) {
+            byte[] a = randomWord(rnd), b = randomWord(rnd), c = randomWord(rnd);
+            BigInteger ua = new BigInteger(1, a), ub = new BigInteger(1, b), uc = new BigInteger(1, c);
+            BigInteger sa = new BigInteger(a), sb = new BigInteger(b);
+            boolean bZero = ub.signum() == 0;
+
+            DataWord w = new DataWord(a.clone());
+            w.mul(new DataWord(b.clone()));
+            assertArrayEquals(toWord(ua.multiply(ub)), w.getData());
+
+            w = new DataWord(a.clone());
+            w.sub(new DataWord(b.clone()));
+            assertArrayEquals(toWord(ua.subtract(ub)), w.getData());
+
+            w = new DataWord(a.clone());
+            w.div(new DataWord(b.clone()));
+            assertArrayEquals(bZero ? new byte[32] : toWord(ua.divide(ub)), w.getData());
+
+            w = new DataWord(a.clone());
+            w.mod(new DataWord(b.clone()));
+            assertArrayEquals(bZero ? new byte[32] : toWord(ua.mod(ub)), w.getData());
+
+            w = new DataWord(a.clone());
+            w.sDiv(new DataWord(b.clone()));
+            assertArrayEquals(bZero ? new byte[32] : toWord(sa.divide(sb)), w.getData());
+
+            w = new DataWord(a.clone());
+            w.sMod(new DataWord(b.clone()));
+            BigInteger sMod = bZero ? BigInteger.ZERO : sa.abs().mod(sb.abs());
+            assertArrayEquals(toWord(sa.signum() < 0 ? sMod.negate() : sMod), w.getData());
+
+            w = new DataWord(a.clone());
+            w.addmod(new DataWord(b.clone()), new DataWord(c.clone()));
+            assertArrayEquals(uc.signum() == 0 ? new byte[32] : toWord(ua.add(ub).mod(uc)), w.getData());
+
+            w = new DataWord(a.clone());
+            w.mulmod(new DataWord(b.clone()), new DataWord(c.clone()));
+            assertArrayEquals(uc.signum() == 0 ? new byte[32] : toWord(ua.multiply(ub).mod(uc)), w.getData());
+
+            w = new DataWord(a.clone());
+            w.exp(new DataWord(b.clone()));
+            assertArrayEquals(toWord(ua.modPow(ub, _2_256)), w.getData());
+
+            w = new DataWord(a.clone());
+            w.bnot();
+            assertArrayEquals(toWord(ua.not()), w.getData());
+
+            assertEquals(ua.compareTo(ub), Integer.signum(new DataWord(a).compareValue(new DataWord(b))));
+            assertEquals(sa.compareTo(sb), Integer.signum(new DataWord(a).sCompareValue(new DataWord(b))));
+        }
+    }
+
+    @Test
+    public void testMulDivPerformance() {
+        boolean enabled = false;
+
+        if (enabled) {
+            Random rnd = new Random(0);
+            byte[][] words = new byte[1024][32];
+            for (byte[] word : words) rnd.nextBytes(word);
+
+            int ITERATIONS = 10000000;
+
+            for (int round = 0; round < 5; round++) {
+                long now1 = System.currentTimeMillis();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    DataWord x = new DataWord(words[i & 1023]);
+                    x.mul(new DataWord(words[(i + 1) & 1023]));
+                    x.div(new DataWord(words[(i + 2) & 1023]));
+                }
+                System.out.println("Limbs mul/div: " + (System.currentTimeMillis() - now1) + "ms");
+
+                long now2 = System.currentTimeMillis();
+                for (int i = 0; i < ITERATIONS; i++) {
+                    BigInteger x = new BigInteger(1, words[i & 1023]);
+                    x = x.multiply(new BigInteger(1, words[(i + 1) & 1023])).and(DataWord.MAX_VALUE);
+                    x = x.divide(new BigInteger(1, words[(i + 2) & 1023]));
+                    ByteUtil.copyToArray(x);
+                }
+                System.out.println("BigInteger mul/div: " + (System.currentTimeMillis() - now2) + "ms");
+            }
+        } else {
+            System.out.println("MUL/DIV performance test is disabled.");
+        }
+    }
+
     public static BigInteger pow(BigInteger x, BigInteger y) {
         if (y.compareTo(BigInteger.ZERO) < 0)
             throw new IllegalArgumentException();
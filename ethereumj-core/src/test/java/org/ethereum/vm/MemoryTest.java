@@ -528,6 +528,57 @@ public class MemoryTest {
         assertTrue(zero == 10);
     }
 
+    @Test
+    public void memoryCopy_1() {
+
+        Memory memoryBuffer = new Memory();
+        byte[] src = new byte[CHUNK_SIZE];
+        Arrays.fill(src, (byte) 1);
 
+        byte[] prev = new byte[50];
+        Arrays.fill(prev, (byte) 7);
+        memoryBuffer.write(CHUNK_SIZE - 100, prev, prev.length, false);
 
-}
\ No newline at end of file
+        // the slice crosses the chunk boundary and goes beyond the source end
+        memoryBuffer.copy(CHUNK_SIZE - 10, src, CHUNK_SIZE - 20, 60);
+
+        assertEquals(2, memoryBuffer.getChunks().size());
+        assertEquals(CHUNK_SIZE + 64, memoryBuffer.size());
+
+        byte[] data = memoryBuffer.read(CHUNK_SIZE - 10, 60);
+        for (int i = 0; i < data.length; i++) {
+            assertEquals(i < 20 ? 1 : 0, data[i]);
+        }
+        assertEquals(7, memoryBuffer.readByte(CHUNK_SIZE - 51));
+        assertEquals(0, memoryBuffer.readByte(CHUNK_SIZE - 50));
+    }
+
+    @Test
+    public void memoryCopy_2() {
+
+        Memory memoryBuffer = new Memory();
+        byte[] src = new byte[] {1, 2, 3};
+
+        // offset beyond the source end: zeroes only
+        memoryBuffer.write(0, new byte[] {5, 5, 5, 5}, 4, false);
+        memoryBuffer.copy(0, src, 10, 4);
+
+        assertEquals(WORD_SIZE, memoryBuffer.size());
+        assertArrayEquals(new byte[4], memoryBuffer.read(0, 4));
+    }
+
+    @Test
+    public void readWord_crossChunk() {
+
+        Memory memoryBuffer = new Memory();
+        byte[] data = new byte[WORD_SIZE];
+        for (int i = 0; i < data.length; i++) data[i] = (byte) (i + 1);
+
+        memoryBuffer.write(CHUNK_SIZE - 16, data, data.length, false);
+
+        assertArrayEquals(data, memoryBuffer.readWord(CHUNK_SIZE - 16).getData());
+        assertArrayEquals(Arrays.copyOfRange(data, 16, 32),
+                Arrays.copyOfRange(memoryBuffer.readWord(CHUNK_SIZE).getData(), 0, 16));
+        assertEquals(CHUNK_SIZE + WORD_SIZE, memoryBuffer.size());
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.program;
+
+import org.junit.Test;
+import org.spongycastle.util.encoders.Hex;
+
+import static org.ethereum.crypto.HashUtil.sha3;
+import static org.junit.Assert.*;
+
+public class ProgramCodeTest {
+
+    @Test
+    public void testDecode() {
+        // PUSH2 0x5b5b JUMPDEST PUSH1 0x03 JUMP PUSH3 0xAABB (truncated)
+        byte[] code = Hex.decode("615b5b5b6003566200aabb");
+        ProgramCode pc = ProgramCode.get(null, code);
+
+        assertArrayEquals(Hex.decode("0000000000000000000000000000000000000000000000000000000000005b5b"),
+                pc.getImmediate(0));
+        assertArrayEquals(Hex.decode("0000000000000000000000000000000000000000000000000000000000000003"),
+                pc.getImmediate(4));
+        assertArrayEquals(Hex.decode("000000000000000000000000000000000000000000000000000000000000aabb"),
+                pc.getImmediate(7));
+        assertNull(pc.getImmediate(3));
+
+        // JUMPDEST bytes inside PUSH arguments are not valid destinations
+        assertFalse(pc.hasJumpDest(1));
+        assertFalse(pc.hasJumpDest(2));
+        assertTrue(pc.hasJumpDest(3));
+        assertFalse(pc.hasJumpDest(-1));
+        assertFalse(pc.hasJumpDest(100));
+    }
+
+    @Test
+    public void testTruncatedPush() {
+        // PUSH3 with a single argument byte is padded on the right
+        ProgramCode pc = ProgramCode.get(null, Hex.decode("62aa"));
+        assertArrayEquals(Hex.decode("0000000000000000000000000000000000000000000000000000000000aa0000"),
+                pc.getImmediate(0));
+    }
+
+    @Test
+    public void testRuns() {
+        // PUSH1 1 PUSH1 2 ADD JUMPDEST PUSH1 0 JUMP PUSH1 0 SLOAD
+        ProgramCode pc = ProgramCode.get(null, Hex.decode("60016002015b6000566000" + "54"));
+        assertEquals(3 + 3 + 3 + 1 + 3 + 8, pc.getRunGas(0));
+        assertEquals(6, pc.getRunLength(0));
+        assertEquals(1 + 3 + 8, pc.getRunGas(5));
+        assertEquals(3, pc.getRunLength(5));
+
+        // the run ends before the dynamic cost SLOAD
+        assertEquals(3, pc.getRunGas(9));
+        assertEquals(1, pc.getRunLength(9));
+        assertEquals(0, pc.getRunLength(11));
+    }
+
+    @Test
+    public void testCache() {
+        byte[] code = Hex.decode("6001600201");
+        byte[] codeHash = sha3(code);
+        assertSame(ProgramCode.get(codeHash, code), ProgramCode.get(codeHash, code.clone()));
+        assertNotSame(ProgramCode.get(null, code), ProgramCode.get(null, code));
+    }
+}
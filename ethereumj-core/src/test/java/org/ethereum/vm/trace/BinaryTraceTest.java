@@ -0,0 +1,133 @@
+/*
+ * Copyright (c) [2016] [ <ether.camp> ]
+ * This file is part of the ethereumJ library.
+ *
+ * The ethereumJ library is free software: you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as published by
+ * the Free Software Foundation, either version 3 of the License, or
+ * (at your option) any later version.
+ *
+ * The ethereumJ library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the
+ * GNU Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public License
+ * along with the ethereumJ library. If not, see <http://www.gnu.org/licenses/>.
+ */
+package org.ethereum.vm.trace;
+
+import org.ethereum.vm.DataWord;
+import org.ethereum.vm.OpCode;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.StringWriter;
+
+import static org.junit.Assert.*;
+
+public class BinaryTraceTest {
+
+    /**
+     * Replays the trace events the way Program does: the ops are saved before
+     * execution with the actions collected since the previous op, the sub call
+     * has its own listener and its trace is merged on return
+     */
+    private static ProgramTrace play(ProgramTraceSink sink) {
+        ProgramTrace trace = new ProgramTrace();
+        trace.setContractAddress("cd2a3d9f938e13cd947ec05abc7fe734df8dd826");
+        ProgramTraceListener root = new ProgramTraceListener(true);
+        if (sink != null) root.setSink(sink, 0);
+
+        op(trace, sink, root, 0, 0, OpCode.PUSH1, 1000);
+        root.onStackPush(new DataWord(0x60));
+        op(trace, sink, root, 0, 2, OpCode.MSTORE, 997);
+        root.onStackPop();
+        root.onStackPop();
+        root.onMemoryExtend(32);
+        root.onMemoryWrite(0, new DataWord(0x60).getData(), 32);
+        op(trace, sink, root, 0, 3, OpCode.CALL, 985);
+        root.onStackPop();
+
+        ProgramTrace subTrace = new ProgramTrace();
+        ProgramTraceListener sub = new ProgramTraceListener(true);
+        if (sink != null) sub.setSink(sink, 1);
+        op(subTrace, sink, sub, 1, 0, OpCode.SWAP1, 500);
+        sub.onStackSwap(0, 1);
+        op(subTrace, sink, sub, 1, 1, OpCode.SSTORE, 497);
+        sub.onStoragePut(new DataWord(1), new DataWord(0xff));
+        sub.onStoragePut(new DataWord(2), DataWord.ZERO);
+        // the actions of the last op are not traced
+        op(subTrace, sink, sub, 1, 2, OpCode.SUICIDE, 100);
+        sub.onStorageClear();
+        trace.merge(subTrace);
+
+        root.onStackPush(new DataWord(1));
+        op(trace, sink, root, 0, 4, OpCode.STOP, 100);
+
+        byte[] result = new byte[]{1, 2, 3};
+        if (sink != null) sink.onFinish(result, null);
+        return trace.result(result).error(null);
+    }
+
+    private static void op(ProgramTrace trace, ProgramTraceSink sink, ProgramTraceListener listener,
+                           int deep, int pc, OpCode code, long gas) {
+        if (sink != null) {
+            sink.onOp(deep, pc, code.val(), new DataWord(gas));
+        } else {
+            trace.addOp(code.val(), pc, deep, new DataWord(gas), listener.resetActions());
+        }
+    }
+
+    private static byte[] write(boolean compressed) throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (BinaryTraceWriter writer = new BinaryTraceWriter(out, "cd2a3d9f938e13cd947ec05abc7fe734df8dd826", compressed)) {
+            play(writer);
+            assertFalse(writer.isFailed());
+        }
+        return out.toByteArray();
+    }
+
+    @Test
+    public void testJsonConversion() throws Exception {
+        String expected = play(null).asJsonString(true);
+        for (boolean compressed : new boolean[] {false, true}) {
+            StringWriter json = new StringWriter();
+            try (BinaryTraceReader reader = new BinaryTraceReader(new ByteArrayInputStream(write(compressed)))) {
+                reader.writeJson(json, true);
+            }
+            assertEquals(expected, json.toString());
+        }
+    }
+
+    @Test
+    public void testReadAll() throws Exception {
+        ProgramTrace expected = play(null);
+        ProgramTrace trace = new BinaryTraceReader(new ByteArrayInputStream(write(true))).readAll();
+        assertEquals(expected.getOps().size(), trace.getOps().size());
+        assertEquals(expected.getContractAddress(), trace.getContractAddress());
+        assertEquals("010203", trace.getResult());
+        assertEquals("", trace.getError());
+        assertEquals(expected.asJsonString(false), trace.asJsonString(false));
+
+        // the op after the call gets the root program actions of the call only
+        Op stop = trace.getOps().get(trace.getOps().size() - 1);
+        assertEquals(OpCode.STOP, stop.getCode());
+        assertEquals(2, stop.getActions().getStack().size());
+        assertTrue(stop.getActions().getStorage().isEmpty());
+    }
+
+    @Test(expected = EOFException.class)
+    public void testUnfinished() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        BinaryTraceWriter writer = new BinaryTraceWriter(out, null, false);
+        writer.onOp(0, 0, OpCode.STOP.val(), new DataWord(1));
+        writer.close();
+
+        BinaryTraceReader reader = new BinaryTraceReader(new ByteArrayInputStream(out.toByteArray()));
+        assertNotNull(reader.next());
+        reader.next();
+    }
+}